@@ -1,6 +1,25 @@
 package com.mudgame;
 
+import com.mudgame.ai.BehaviourLibrary;
+import com.mudgame.engine.ChangeEvent;
+import com.mudgame.engine.ChangeEventBus;
+import com.mudgame.engine.CommandType;
+import com.mudgame.engine.GameEngine;
+import com.mudgame.engine.RenderSnapshot;
 import com.mudgame.model.*;
+import com.mudgame.persistence.FilePlayerStore;
+import com.mudgame.persistence.PlayerRecord;
+import com.mudgame.persistence.WriteBehindPlayerCache;
+import com.mudgame.stats.Leaderboard;
+import com.mudgame.stats.StatKind;
+import com.mudgame.ui.Camera;
+import com.mudgame.ui.DirtyRegion;
+import com.mudgame.ui.LabelCache;
+import com.mudgame.ui.PerfOverlay;
+import com.mudgame.ui.RoomIndex;
+import com.mudgame.ui.SpriteAtlas;
+import com.mudgame.world.WorldLoader;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -10,6 +29,8 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
@@ -18,21 +39,113 @@ import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
 
-import java.util.Random;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Главный класс приложения MUD-игры.
  * 
  * Этот класс содержит весь код для графического интерфейса на JavaFX.
- * Здесь создаются все игровые объекты, кнопки управления и отрисовка на Canvas.
+ * Здесь загружается игровой мир, создаются кнопки управления и отрисовка на Canvas.
+ * 
+ * Модель меняет только движок (GameEngine и акторы комнат): кнопки отправляют ему команды,
+ * а таймер анимации на каждом кадре рисует последний опубликованный снимок состояния.
  */
 public class MUDGame extends Application {
     
+    // Имя файла мира в ресурсах (com/mudgame/world/default.xml)
+    private static final String WORLD_NAME = "default";
+    
+    // Идентификатор игрока, которым управляет этот интерфейс
+    private static final String PLAYER_ID = "player1";
+    
+    // Файл сохраненных игроков (~/.mudgame/players.dat)
+    private static final Path SAVE_FILE = Paths.get(System.getProperty("user.home"), ".mudgame", "players.dat");
+    
     // Игровые объекты
-    private TRoom room;              // Комната, в которой происходит игра
+    private TRoom room;              // Комната, в которую входит игрок
     private TPlayer player;          // Игрок
-    private TNPC npc;                // NPC (враг)
-    private TWeapon weapon;          // Оружие в комнате
+    private TWorld world;            // Игровой мир (все комнаты и игроки)
+    
+    // Движок симуляции (работает в своем потоке)
+    private GameEngine engine;
+    
+    // Кэш сохраненных игроков (null - сохранение недоступно)
+    private WriteBehindPlayerCache persistence;
+    
+    // Размер холста
+    private static final double CANVAS_WIDTH = 500;
+    private static final double CANVAS_HEIGHT = 350;
+    
+    // Во сколько раз меняется масштаб за один щелчок колеса мыши
+    private static final double ZOOM_STEP = 1.1;
+    
+    // Запас вокруг объекта при отсечении (значок и надпись под ним)
+    private static final double ENTITY_MARGIN = 40;
+    
+    // Высота надписи под значком вместе с отступом (для участков перерисовки)
+    private static final double LABEL_HEIGHT = 20;
+    
+    // Сколько изменений модели разбирается за один кадр (остальные - на следующем)
+    private static final int MAX_CHANGES_PER_FRAME = 4096;
+    
+    // Камера, индекс комнат для отсечения и список видимых комнат (переиспользуется между кадрами)
+    private Camera camera;
+    private RoomIndex roomIndex;
+    private List<TRoom> visibleRooms;
+    
+    // Последняя точка перетаскивания мыши
+    private double dragX;
+    private double dragY;
+    
+    // Комната, на которой камера центрировалась в последний раз (левый верхний угол)
+    private double followedRoomX = Double.NaN;
+    private double followedRoomY = Double.NaN;
+    
+    // Панель производительности поверх холста (F3)
+    private PerfOverlay perfOverlay;
+    
+    // Значки объектов и растеризованные надписи (создаются вместе с холстом в потоке JavaFX)
+    private SpriteAtlas sprites;
+    private LabelCache labels;
+    
+    // Шрифты надписей на холсте: названия комнаты, имен игроков и NPC, предметов.
+    // Создаются один раз вместе с холстом: шрифт - ключ кэша надписей
+    private Font roomFont;
+    private Font nameFont;
+    private Font itemFont;
+    
+    // Таймер анимации - вызывается JavaFX на каждом кадре
+    private AnimationTimer renderTimer;
+    
+    // Последний нарисованный снимок
+    private RenderSnapshot lastSnapshot;
+    
+    // Изменения модели от актора комнаты и их обработчик (создается один раз)
+    private ChangeEventBus changeEvents;
+    private Consumer<ChangeEvent> changeHandler;
+    
+    // Участки холста для перерисовки: по изменениям, пришедшим после последнего снимка,
+    // и по изменениям прошлого снимка (изменение может прийти на тик раньше своего снимка)
+    private DirtyRegion freshDirty;
+    private DirtyRegion carriedDirty;
+    
+    // Нужно ли перерисовать весь холст на следующем снимке
+    private boolean fullRedraw = true;
+    
+    // Шаблоны предметов в строках списка инвентаря (по порядку строк)
+    // и строка списка каждого шаблона
+    private List<String> inventoryTemplates;
+    private Map<String, Integer> inventoryRows;
     
     // Элементы интерфейса
     private Canvas canvas;           // Холст для отрисовки игровых объектов
@@ -42,10 +155,20 @@ public class MUDGame extends Application {
     private Button moveButton;       // Кнопка "Переместиться"
     private Button pickUpButton;     // Кнопка "Поднять предмет"
     private ListView<String> inventoryList;  // Список предметов в инвентаре
+    private ListView<String> ordersList;     // Список открытых заявок игрока на аукционе
     private Label healthLabel;       // Метка с информацией о здоровье игрока
+    private Label leaderLabel;       // Метка с лидером по убийствам
+    private TextField commandField;  // Поле для текстовых команд ("attack гоб", "get меч")
+    
+    // Версия таблицы лидеров по убийствам, по которой показан лидер
+    private int shownLeadersVersion;
+    
+    // Показанный лидер по убийствам: идентификатор и счет
+    private String shownLeaderId;
+    private long shownLeaderScore;
     
-    // Объект для генерации случайных чисел
-    private Random random;
+    // Версия заявок игрока, показанная в списке заявок
+    private int shownOrdersVersion;
     
     /**
      * Метод запуска приложения JavaFX.
@@ -54,9 +177,6 @@ public class MUDGame extends Application {
      */
     @Override
     public void start(Stage primaryStage) {
-        // Создаем объект для генерации случайных чисел
-        random = new Random();
-        
         // Инициализируем игровые объекты
         initializeGameObjects();
         
@@ -75,36 +195,128 @@ public class MUDGame extends Application {
         // Запрещаем изменение размера окна
         primaryStage.setResizable(false);
         
+        // F3 показывает и скрывает панель производительности
+        scene.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.F3) {
+                perfOverlay.toggle();
+                redraw();
+            }
+        });
+        
         // Показываем окно
         primaryStage.show();
+        
+        // Запускаем поток симуляции
+        engine = new GameEngine(world);
+        engine.setViewer(player);
+        engine.setPersistence(persistence);
+        changeEvents = engine.getChangeEvents();
+        changeHandler = this::applyChange;
+        freshDirty = new DirtyRegion();
+        carriedDirty = new DirtyRegion();
+        inventoryTemplates = new ArrayList<>();
+        inventoryRows = new HashMap<>();
+        engine.start();
+        
+        // Запускаем таймер анимации: каждый кадр рисуем последний снимок
+        renderTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                renderFrame(now);
+            }
+        };
+        renderTimer.start();
+    }
+    
+    /**
+     * Вызывается JavaFX при закрытии приложения.
+     * 
+     * Останавливает таймер анимации и поток симуляции, затем записывает
+     * на диск игроков, которые еще не сохранены.
+     */
+    @Override
+    public void stop() {
+        if (renderTimer != null) {
+            renderTimer.stop();
+        }
+        if (engine != null) {
+            engine.stop();
+        }
+        if (persistence != null) {
+            try {
+                persistence.close();
+            } catch (IOException e) {
+                // Приложение уже закрывается - сообщить об ошибке некому,
+                // на диске остается последняя успешно записанная пачка
+            }
+        }
     }
     
     /**
      * Инициализирует все игровые объекты.
      * 
-     * Создает комнату, игрока, NPC и оружие с начальными параметрами.
+     * Загружает мир из файла com/mudgame/world/default.xml: комнаты, NPC,
+     * предметы и игроков. NPC получают поведение из библиотеки деревьев поведения.
      */
     private void initializeGameObjects() {
-        // Создаем комнату размером 350x250 пикселей
-        // Позиция комнаты: x=25, y=25 (отступы от краев Canvas)
-        room = new TRoom("Сумеречный лес", "room1", 25, 25, 350, 250);
-        
-        // Создаем игрока с начальными параметрами
-        // Здоровье: 100, базовая сила атаки: 10
-        player = new TPlayer("Игрок", "player1", 200, 100, 100, 10);
-        
-        // Создаем NPC (врага) с начальными параметрами
-        // Здоровье: 50, защита: 5
-        npc = new TNPC("Враг", "npc1", 400, 200, 50, 5);
+        // Загружаем мир (NPC и предметы без координат загрузчик сам ставит в свободные точки)
+        WorldLoader loader = new WorldLoader(new BehaviourLibrary());
+        world = loader.loadResource(WORLD_NAME);
+        
+        // Игрок этого интерфейса и комната, в которую он войдет
+        player = world.findPlayer(PLAYER_ID);
+        room = world.getStartRoom();
+        if (player == null || room == null) {
+            throw new IllegalStateException("В мире " + WORLD_NAME + " нет игрока " + PLAYER_ID
+                    + " или стартовой комнаты");
+        }
         
-        // Создаем оружие с силой атаки 15
-        weapon = new TWeapon("Меч", "weapon1", 300, 300, 15);
+        // Восстанавливаем игрока из прошлой игры
+        restorePlayer();
+    }
+    
+    /**
+     * Открывает хранилище игроков и восстанавливает здоровье, инвентарь и комнату игрока.
+     * 
+     * Если хранилище открыть не удалось, игра идет без сохранения.
+     */
+    private void restorePlayer() {
+        PlayerRecord saved;
+        try {
+            persistence = new WriteBehindPlayerCache(new FilePlayerStore(SAVE_FILE));
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            saved = persistence.get(PLAYER_ID);
+        } catch (IOException e) {
+            // Прочитать не удалось - начинаем заново, но сохранять будем
+            return;
+        }
+        if (saved == null) {
+            return;
+        }
+        saved.applyTo(player);
         
-        // Добавляем NPC в комнату
-        room.addNPC(npc);
+        // Предметы, которые игрок унес в прошлой игре, не должны снова лежать в комнатах
+        Set<String> carried = new HashSet<>();
+        for (PlayerRecord.ItemRecord item : saved.getItems()) {
+            carried.add(item.getId());
+        }
+        for (int i = 0; i < world.getRoomCount(); i++) {
+            TRoom worldRoom = world.getRoom(i);
+            for (int j = worldRoom.getItemCount() - 1; j >= 0; j--) {
+                TItem item = worldRoom.getItem(j);
+                if (carried.contains(item.getId())) {
+                    worldRoom.removeItem(item);
+                }
+            }
+        }
         
-        // Добавляем оружие в комнату
-        room.addItem(weapon);
+        // Игрок входит в комнату, в которой был (если она еще есть в мире)
+        if (saved.getRoomId() != null && world.findRoom(saved.getRoomId()) != null) {
+            room = world.findRoom(saved.getRoomId());
+        }
     }
     
     /**
@@ -188,11 +400,19 @@ public class MUDGame extends Application {
         // Создаем список для отображения предметов
         inventoryList = new ListView<>();
         inventoryList.setPrefWidth(150);  // Ширина равна ширине кнопок
-        inventoryList.setPrefHeight(200);  // Высота для инвентаря
+        inventoryList.setPrefHeight(150);  // Высота для инвентаря
         
         // Добавляем метку и список инвентаря в панель
         panel.getChildren().addAll(inventoryLabel, inventoryList);
         
+        // Создаем метку и список открытых заявок на аукционе ("cancel" отменяет их)
+        Label ordersLabel = new Label("Заявки");
+        ordersLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold;");
+        ordersList = new ListView<>();
+        ordersList.setPrefWidth(150);
+        ordersList.setPrefHeight(100);
+        panel.getChildren().addAll(ordersLabel, ordersList);
+        
         // Возвращаем панель
         return panel;
     }
@@ -209,11 +429,39 @@ public class MUDGame extends Application {
         area.setAlignment(Pos.CENTER);
         
         // Создаем Canvas размером 500x350 пикселей (чтобы помещался в окно)
-        canvas = new Canvas(500, 350);
+        canvas = new Canvas(CANVAS_WIDTH, CANVAS_HEIGHT);
+        
+        // Камера: перетаскивание мышью сдвигает вид, колесо мыши меняет масштаб
+        camera = new Camera(CANVAS_WIDTH, CANVAS_HEIGHT);
+        camera.centerOn(room.getX() + room.getWidth() / 2, room.getY() + room.getHeight() / 2);
+        canvas.setOnMousePressed(e -> {
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        canvas.setOnMouseDragged(e -> {
+            camera.pan(e.getX() - dragX, e.getY() - dragY);
+            dragX = e.getX();
+            dragY = e.getY();
+            redraw();
+        });
+        canvas.setOnScroll(e -> {
+            camera.zoomAt(e.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP, e.getX(), e.getY());
+            redraw();
+        });
         
         // Получаем контекст для рисования
         gc = canvas.getGraphicsContext2D();
         
+        // Значки объектов рисуются один раз в атлас, надписи - при первом показе
+        roomIndex = new RoomIndex(world);
+        visibleRooms = new ArrayList<>();
+        sprites = new SpriteAtlas();
+        perfOverlay = new PerfOverlay();
+        labels = new LabelCache();
+        roomFont = Font.font(16);
+        nameFont = Font.font(12);
+        itemFont = Font.font(10);
+        
         // Добавляем Canvas в контейнер
         area.getChildren().add(canvas);
         
@@ -237,8 +485,19 @@ public class MUDGame extends Application {
         healthLabel = new Label("Здоровье: 100");
         healthLabel.setStyle("-fx-font-size: 14px;");
         
-        // Добавляем метку в панель
-        panel.getChildren().add(healthLabel);
+        // Создаем метку с лидером по убийствам
+        leaderLabel = new Label("Лидер: -");
+        leaderLabel.setStyle("-fx-font-size: 14px;");
+        
+        // Создаем поле для текстовых команд (активно после входа в комнату)
+        commandField = new TextField();
+        commandField.setPromptText("Команда: attack гоб, get меч, move");
+        commandField.setPrefColumnCount(20);
+        commandField.setDisable(true);
+        commandField.setOnAction(e -> sendCommand());
+        
+        // Добавляем метки и поле команд в панель
+        panel.getChildren().addAll(healthLabel, leaderLabel, commandField);
         
         // Возвращаем панель
         return panel;
@@ -247,20 +506,12 @@ public class MUDGame extends Application {
     /**
      * Обработчик нажатия кнопки "Войти в локацию".
      * 
-     * Игрок входит в комнату, размещаются все объекты, активируются кнопки.
+     * Игрок входит в комнату, активируются кнопки.
+     * Вход выполняет актор комнаты: он ставит игрока в случайную свободную точку.
      */
     private void enterRoom() {
-        // Устанавливаем текущую комнату игрока
-        player.setCurrentRoom(room);
-        
-        // Размещаем игрока в случайной позиции внутри комнаты
-        placeObjectInRoom(player);
-        
-        // Размещаем NPC в случайной позиции внутри комнаты
-        placeObjectInRoom(npc);
-        
-        // Размещаем оружие в случайной позиции внутри комнаты
-        placeObjectInRoom(weapon);
+        // Отправляем игрока в комнату
+        engine.enqueue(CommandType.ENTER_ROOM, player.getId(), room.getId());
         
         // Делаем кнопку "Войти в локацию" неактивной
         enterRoomButton.setDisable(true);
@@ -269,77 +520,28 @@ public class MUDGame extends Application {
         attackButton.setDisable(false);
         moveButton.setDisable(false);
         pickUpButton.setDisable(false);
-        
-        // Обновляем список инвентаря (на случай, если уже есть предметы)
-        updateInventoryList();
-        
-        // Обновляем информацию о здоровье
-        updateHealthLabel();
-        
-        // Отрисовываем все объекты на Canvas
-        drawGame();
-    }
-    
-    /**
-     * Размещает объект в случайной позиции внутри комнаты.
-     * 
-     * @param obj объект для размещения
-     */
-    private void placeObjectInRoom(TGameObject obj) {
-        // Получаем границы комнаты
-        double roomX = room.getX();
-        double roomY = room.getY();
-        double roomWidth = room.getWidth();
-        double roomHeight = room.getHeight();
-        
-        // Генерируем случайные координаты внутри комнаты с отступом от краев
-        double minX = roomX + 20;
-        double maxX = roomX + roomWidth - 20;
-        double newX = minX + random.nextDouble() * (maxX - minX);
-        
-        double minY = roomY + 20;
-        double maxY = roomY + roomHeight - 20;
-        double newY = minY + random.nextDouble() * (maxY - minY);
-        
-        // Устанавливаем новые координаты объекта
-        obj.setX(newX);
-        obj.setY(newY);
+        commandField.setDisable(false);
     }
     
     /**
      * Обработчик нажатия кнопки "Атаковать".
      * 
-     * Игрок атакует NPC в комнате.
+     * Игрок атакует ближайшего живого NPC в комнате.
      */
     private void attackNPC() {
-        // Проверяем, что NPC жив
-        if (!npc.isAlive()) {
-            // Если NPC уже мертв, ничего не делаем
-            return;
-        }
-        
-        // Игрок атакует NPC (вся логика находится в методе attack класса TPlayer)
-        player.attack(npc);
-        
-        // Обновляем отрисовку
-        drawGame();
-        
-        // Обновляем информацию о здоровье игрока
-        updateHealthLabel();
+        // Игрок атакует NPC (вся логика находится в методе attack класса TPlayer).
+        // Если живых NPC в комнате нет, команда ничего не делает.
+        engine.enqueue(CommandType.ATTACK, player.getId(), null);
     }
     
     /**
      * Обработчик нажатия кнопки "Переместиться".
      * 
-     * Игрок и NPC случайно перемещаются в комнате.
+     * Игрок случайно перемещается в комнате.
      */
     private void movePlayer() {
         // Игрок перемещается (вся логика находится в методе move класса TPlayer)
-        // Метод move также перемещает всех живых NPC в комнате
-        player.move();
-        
-        // Обновляем отрисовку
-        drawGame();
+        engine.enqueue(CommandType.MOVE, player.getId(), null);
     }
     
     /**
@@ -349,159 +551,355 @@ public class MUDGame extends Application {
      */
     private void pickUpItem() {
         // Игрок поднимает предмет (вся логика находится в методе pickUpItem класса TPlayer)
-        player.pickUpItem();
-        
-        // Обновляем список инвентаря
-        updateInventoryList();
-        
-        // Обновляем отрисовку (предмет исчезнет из комнаты)
-        drawGame();
+        engine.enqueue(CommandType.PICK_UP, player.getId(), null);
+    }
+    
+    /**
+     * Обработчик ввода в поле команд (Enter).
+     * 
+     * Строка отправляется движку как есть, байтами UTF-8 - так же, как пришла бы
+     * по сети; разбирает её актор комнаты игрока.
+     */
+    private void sendCommand() {
+        String text = commandField.getText();
+        if (text == null || text.isBlank()) {
+            return;
+        }
+        engine.enqueueText(player.getId(), StandardCharsets.UTF_8.encode(text));
+        commandField.clear();
+    }
+    
+    /**
+     * Вызывается таймером анимации на каждом кадре.
+     * 
+     * Сначала разбирает изменения модели: они сразу обновляют инвентарь и здоровье
+     * и отмечают участки холста, где объекты появились, пропали или сдвинулись.
+     * Затем берет последний снимок, опубликованный потоком симуляции, и, если он новый,
+     * перерисовывает только отмеченные участки (весь холст - после смены комнаты
+     * или потери изменений). Блокировок нет: снимок неизменяемый.
+     * 
+     * @param now время кадра от таймера анимации (наносекунды)
+     */
+    private void renderFrame(long now) {
+        perfOverlay.onFrame(now);
+        if (changeEvents.takeLost()) {
+            // Очередь переполнилась - актор заново пришлет состояние, холст рисуется целиком
+            fullRedraw = true;
+        }
+        changeEvents.drain(changeHandler, MAX_CHANGES_PER_FRAME);
+        RenderSnapshot snapshot = engine.latestSnapshot();
+        if (snapshot == RenderSnapshot.EMPTY) {
+            // Симуляция еще не сделала ни одного тика
+            return;
+        }
+        if (snapshot == lastSnapshot) {
+            // Симуляция еще не сделала новый тик - кадр остается прежним,
+            // перерисовываем его, только если обновились показания панели производительности
+            if (perfOverlay.sample(now, snapshot, engine)) {
+                redraw();
+            }
+            return;
+        }
+        // Вход в комнату или выход из неё меняет весь холст
+        if (lastSnapshot == null || snapshot.isInRoom() != lastSnapshot.isInRoom()) {
+            fullRedraw = true;
+        }
+        lastSnapshot = snapshot;
+        long renderStart = System.nanoTime();
+        perfOverlay.sample(now, snapshot, engine);
+        
+        // Когда игрок входит в другую комнату, камера переезжает на неё
+        if (snapshot.isInRoom() && (snapshot.getRoomX() != followedRoomX || snapshot.getRoomY() != followedRoomY)) {
+            followedRoomX = snapshot.getRoomX();
+            followedRoomY = snapshot.getRoomY();
+            camera.centerOn(followedRoomX + snapshot.getRoomWidth() / 2, followedRoomY + snapshot.getRoomHeight() / 2);
+            fullRedraw = true;
+        }
         
-        // Если предметов в комнате больше нет, делаем кнопку неактивной
-        if (room.getItemCount() == 0) {
-            pickUpButton.setDisable(true);
+        // Отрисовываем объекты на Canvas и панель производительности поверх них
+        if (fullRedraw) {
+            drawGame(snapshot);
+            perfOverlay.draw(gc);
+            fullRedraw = false;
+        } else if (!freshDirty.isEmpty() || !carriedDirty.isEmpty()) {
+            drawDirty(snapshot);
         }
+        // Изменения, пришедшие до этого снимка, могут попасть только в следующий -
+        // их участки перерисовываются еще раз
+        DirtyRegion drawn = carriedDirty;
+        carriedDirty = freshDirty;
+        freshDirty = drawn;
+        freshDirty.clear();
+        
+        // Обновляем информацию о лидере
+        updateLeaderLabel();
+        
+        // Обновляем список заявок на аукционе
+        updateOrdersList();
+        
+        // Если поднимать в комнате больше нечего, делаем кнопку неактивной
+        if (snapshot.isInRoom()) {
+            pickUpButton.setDisable(!snapshot.hasPickableItem());
+        }
+        perfOverlay.onRender(System.nanoTime() - renderStart);
+    }
+    
+    /**
+     * Перерисовывает последний снимок после движения камеры или обновления
+     * панели производительности (новый снимок может прийти только на следующем тике).
+     */
+    private void redraw() {
+        if (lastSnapshot != null) {
+            drawGame(lastSnapshot);
+            perfOverlay.draw(gc);
+        }
+    }
+    
+    /**
+     * Перерисовывает только участки холста, где изменились объекты.
+     * 
+     * Участки становятся областью отсечения, и сцена рисуется как обычно:
+     * всё, что за пределами участков, JavaFX пропускает.
+     */
+    private void drawDirty(RenderSnapshot snapshot) {
+        double spriteSize = maxSpriteSize() * camera.getZoom();
+        gc.save();
+        gc.beginPath();
+        carriedDirty.addToPath(gc, camera, spriteSize, LABEL_HEIGHT);
+        freshDirty.addToPath(gc, camera, spriteSize, LABEL_HEIGHT);
+        gc.clip();
+        drawGame(snapshot);
+        perfOverlay.draw(gc);
+        gc.restore();
+    }
+    
+    /**
+     * Наибольший размер значка атласа (без масштаба).
+     */
+    private double maxSpriteSize() {
+        double size = sprites.getSize(SpriteAtlas.PLAYER);
+        size = Math.max(size, sprites.getSize(SpriteAtlas.NPC));
+        return Math.max(size, sprites.getSize(SpriteAtlas.ITEM));
     }
     
     /**
      * Отрисовывает все игровые объекты на Canvas.
      * 
-     * Рисует комнату, игрока, NPC и предметы.
+     * Рисует видимые камере комнаты, а в комнате игрока - игрока, NPC и предметы
+     * из снимка состояния. Мировые координаты переводятся в координаты холста камерой.
+     * 
+     * @param snapshot снимок состояния игры
      */
-    private void drawGame() {
+    private void drawGame(RenderSnapshot snapshot) {
         // Очищаем Canvas (закрашиваем белым цветом)
         gc.setFill(Color.WHITE);
         gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
         
+        // Рисуем только комнаты, которые видны камере (их находит индекс комнат)
+        roomIndex.query(camera.getViewLeft(), camera.getViewTop(), camera.getViewRight(), camera.getViewBottom(),
+                visibleRooms);
+        for (int i = 0; i < visibleRooms.size(); i++) {
+            drawRoom(visibleRooms.get(i), snapshot);
+        }
+        
         // Проверяем, что игрок находится в комнате
-        if (player.getCurrentRoom() == null) {
-            // Если игрок не в комнате, ничего не рисуем
+        if (!snapshot.isInRoom()) {
+            // Если игрок не в комнате, объекты не рисуем
             return;
         }
         
-        // Рисуем комнату (прямоугольник с границами)
-        drawRoom();
-        
-        // Рисуем предметы в комнате
-        drawItems();
-        
-        // Рисуем NPC (если он жив)
-        if (npc.isAlive()) {
-            drawNPC();
+        // Рисуем объекты комнаты двумя проходами: сначала все значки из атласа,
+        // потом все надписи из кэша. Каждый проход копирует картинки одного источника
+        // подряд, поэтому JavaFX рисует его одной пачкой
+        // (в снимке объекты уже идут в порядке: предметы, NPC, игроки).
+        // Объекты за пределами видимой области пропускаются
+        double zoom = camera.getZoom();
+        for (int i = 0; i < snapshot.getEntityCount(); i++) {
+            if (camera.isVisible(snapshot.getX(i), snapshot.getY(i), ENTITY_MARGIN)) {
+                sprites.draw(gc, spriteOf(snapshot.getKind(i)), camera.toScreenX(snapshot.getX(i)),
+                        camera.toScreenY(snapshot.getY(i)), zoom);
+            }
+        }
+        for (int i = 0; i < snapshot.getEntityCount(); i++) {
+            if (camera.isVisible(snapshot.getX(i), snapshot.getY(i), ENTITY_MARGIN)) {
+                int sprite = spriteOf(snapshot.getKind(i));
+                Font font = sprite == SpriteAtlas.ITEM ? itemFont : nameFont;
+                // Надпись под значком с отступом в 2 пикселя (сама надпись не масштабируется)
+                double top = camera.toScreenY(snapshot.getY(i)) + sprites.getSize(sprite) * zoom / 2 + 2;
+                labels.draw(gc, snapshot.getName(i), font, camera.toScreenX(snapshot.getX(i)), top);
+            }
         }
-        
-        // Рисуем игрока
-        drawPlayer();
     }
     
     /**
-     * Рисует комнату на Canvas.
+     * Выбирает спрайт атласа для вида объекта снимка.
      */
-    private void drawRoom() {
-        // Рисуем название локации над комнатой
-        gc.setFill(Color.BLACK);  // Черный цвет для текста
-        gc.setFont(Font.font(16));  // Размер шрифта 16, жирный
-        // Вычисляем позицию текста по центру комнаты по горизонтали
-        // Центрируем текст: позиция комнаты + половина ширины - половина ширины текста (примерно 60 пикселей)
-        double textX = room.getX() + room.getWidth() / 2 - 60;  // Примерно по центру
-        double textY = room.getY() - 10;  // Над комнатой с небольшим отступом
-        gc.fillText(room.getName(), textX, textY);
-        
-        // Устанавливаем цвет для границ комнаты (черный)
-        gc.setStroke(Color.BLACK);
-        gc.setLineWidth(2);
+    private static int spriteOf(int kind) {
+        switch (kind) {
+            case RenderSnapshot.KIND_ITEM:
+                return SpriteAtlas.ITEM;
+            case RenderSnapshot.KIND_NPC:
+                return SpriteAtlas.NPC;
+            default:
+                return SpriteAtlas.PLAYER;
+        }
+    }
+    
+    /**
+     * Рисует комнату на Canvas. Комната игрока обводится жирной черной рамкой,
+     * остальные видимые комнаты - тонкой серой.
+     */
+    private void drawRoom(TRoom visibleRoom, RenderSnapshot snapshot) {
+        double x = camera.toScreenX(visibleRoom.getX());
+        double y = camera.toScreenY(visibleRoom.getY());
+        double width = visibleRoom.getWidth() * camera.getZoom();
+        double height = visibleRoom.getHeight() * camera.getZoom();
+        boolean current = snapshot.isInRoom() && visibleRoom.getX() == snapshot.getRoomX()
+                && visibleRoom.getY() == snapshot.getRoomY();
+        
+        // Рисуем название локации над комнатой, по центру (надпись берется из кэша)
+        labels.draw(gc, visibleRoom.getName(), roomFont, x + width / 2, y - 26);
+        
+        // Устанавливаем цвет и толщину границ комнаты
+        gc.setStroke(current ? Color.BLACK : Color.GRAY);
+        gc.setLineWidth(current ? 2 : 1);
         
         // Рисуем прямоугольник (границы комнаты)
-        gc.strokeRect(room.getX(), room.getY(), room.getWidth(), room.getHeight());
+        gc.strokeRect(x, y, width, height);
     }
     
     /**
-     * Рисует игрока на Canvas.
+     * Применяет одно изменение модели к интерфейсу.
+     * 
+     * Инвентарь и здоровье обновляются сразу (меняется одна строка списка, а не весь список),
+     * изменения объектов комнаты отмечают участки холста для перерисовки.
      */
-    private void drawPlayer() {
-        // Устанавливаем цвет для игрока (синий)
-        gc.setFill(Color.BLUE);
-        
-        // Рисуем круг для игрока (радиус 15 пикселей)
-        // Координаты центра круга = координаты игрока
-        gc.fillOval(player.getX() - 15, player.getY() - 15, 30, 30);
-        
-        // Рисуем название игрока под кругом
-        gc.setFill(Color.BLACK);  // Черный цвет для текста
-        gc.setFont(Font.font(12));  // Размер шрифта 12
-        // Рисуем текст под кругом (координата Y + радиус + отступ)
-        gc.fillText(player.getName(), player.getX() - 20, player.getY() + 25);
+    private void applyChange(ChangeEvent event) {
+        switch (event.getKind()) {
+            case INVENTORY_RESET:
+                inventoryList.getItems().clear();
+                inventoryTemplates.clear();
+                inventoryRows.clear();
+                break;
+            case ITEM_ADDED:
+            case ITEM_REMOVED:
+                updateInventoryRow((TItem) event.getObject(), event.getValue());
+                break;
+            case HEALTH_CHANGED:
+                if (event.getObject() == player) {
+                    healthLabel.setText("Здоровье: " + event.getValue());
+                }
+                break;
+            case ROOM_RESET:
+                fullRedraw = true;
+                break;
+            case APPEARED:
+            case DISAPPEARED:
+                freshDirty.add(event.getX(), event.getY(), labelHalfWidth(event.getObject()));
+                break;
+            case MOVED:
+                double half = labelHalfWidth(event.getObject());
+                freshDirty.add(event.getFromX(), event.getFromY(), half);
+                freshDirty.add(event.getX(), event.getY(), half);
+                break;
+            default:
+                break;
+        }
     }
     
     /**
-     * Рисует NPC на Canvas.
+     * Обновляет строку инвентаря для стопки предмета.
+     * 
+     * Строка стопки находится по шаблону через inventoryRows, поэтому изменение
+     * не просматривает список. Стопка нового шаблона добавляется в конец списка,
+     * на место пустой стопки переносится последняя строка: так удаление не сдвигает
+     * остальные строки, но порядок строк после него может отличаться от инвентаря.
+     * 
+     * @param item предмет стопки
+     * @param count количество предметов в стопке после изменения
      */
-    private void drawNPC() {
-        // Устанавливаем цвет для NPC (красный)
-        gc.setFill(Color.RED);
-        
-        // Рисуем круг для NPC (радиус 15 пикселей)
-        gc.fillOval(npc.getX() - 15, npc.getY() - 15, 30, 30);
-        
-        // Рисуем название NPC под кругом
-        gc.setFill(Color.BLACK);  // Черный цвет для текста
-        gc.setFont(Font.font(12));  // Размер шрифта 12
-        // Рисуем текст под кругом (координата Y + радиус + отступ)
-        gc.fillText(npc.getName(), npc.getX() - 15, npc.getY() + 25);
+    private void updateInventoryRow(TItem item, int count) {
+        Integer row = inventoryRows.get(item.getTemplateId());
+        if (count == 0) {
+            if (row != null) {
+                removeInventoryRow(row);
+            }
+        } else if (row == null) {
+            inventoryRows.put(item.getTemplateId(), inventoryTemplates.size());
+            inventoryTemplates.add(item.getTemplateId());
+            inventoryList.getItems().add(RenderSnapshot.inventoryLine(item, count));
+        } else {
+            inventoryList.getItems().set(row, RenderSnapshot.inventoryLine(item, count));
+        }
     }
     
     /**
-     * Рисует предметы в комнате на Canvas.
+     * Убирает строку инвентаря, перенося на её место последнюю строку.
+     * 
+     * @param row номер строки
      */
-    private void drawItems() {
-        // Проходим по всем предметам в комнате
-        for (int i = 0; i < room.getItemCount(); i++) {
-            TItem item = room.getItem(i);
-            // Устанавливаем цвет для предметов (зеленый)
-            gc.setFill(Color.GREEN);
-            
-            // Рисуем квадрат для предмета (размер 10x10 пикселей)
-            // Координаты левого верхнего угла = координаты предмета минус половина размера
-            gc.fillRect(item.getX() - 5, item.getY() - 5, 10, 10);
-            
-            // Рисуем название предмета под квадратом
-            gc.setFill(Color.BLACK);  // Черный цвет для текста
-            gc.setFont(Font.font(10));  // Размер шрифта 10
-            // Рисуем текст под квадратом (координата Y + половина размера + отступ)
-            gc.fillText(item.getName(), item.getX() - 15, item.getY() + 20);
+    private void removeInventoryRow(int row) {
+        int last = inventoryTemplates.size() - 1;
+        inventoryRows.remove(inventoryTemplates.get(row));
+        if (row != last) {
+            String moved = inventoryTemplates.get(last);
+            inventoryTemplates.set(row, moved);
+            inventoryList.getItems().set(row, inventoryList.getItems().get(last));
+            inventoryRows.put(moved, row);
         }
+        inventoryTemplates.remove(last);
+        inventoryList.getItems().remove(last);
     }
     
     /**
-     * Обновляет список инвентаря в интерфейсе.
+     * Половина ширины надписи объекта на холсте (надпись берется из кэша).
      */
-    private void updateInventoryList() {
-        // Очищаем список
-        inventoryList.getItems().clear();
-        
-        // Проходим по инвентарю игрока
-        for (int i = 0; i < player.getInventoryCount(); i++) {
-            TItem item = player.getInventoryItem(i);
-            // Добавляем имя предмета в список
-            String itemName = item.getName();
-            
-            // Если это оружие, добавляем информацию о силе атаки
-            if (item instanceof TWeapon) {
-                TWeapon weapon = (TWeapon) item;
-                itemName = itemName + " (Атака: +" + weapon.getAttackPower() + ")";
-            }
-            
-            // Добавляем предмет в список
-            inventoryList.getItems().add(itemName);
+    private double labelHalfWidth(TGameObject object) {
+        Font font = object instanceof TItem ? itemFont : nameFont;
+        return labels.get(object.getName(), font).getWidth() / 2;
+    }
+    
+    /**
+     * Обновляет список открытых заявок игрока на аукционе.
+     * 
+     * Список собирается заново, только если версия заявок игрока изменилась
+     * (заявка подана, исполнена или отменена).
+     */
+    private void updateOrdersList() {
+        int version = engine.getAuctionHouse().getOrdersVersion(player.getId());
+        if (version == shownOrdersVersion) {
+            return;
         }
+        shownOrdersVersion = version;
+        ordersList.getItems().setAll(engine.getAuctionHouse().describeOrders(player.getId()));
     }
     
     /**
-     * Обновляет метку с информацией о здоровье игрока.
+     * Обновляет метку с лидером по убийствам.
+     * 
+     * Таблица лидеров поддерживается движком при каждом убийстве. Первое место
+     * запрашивается, только если версия таблицы изменилась, а текст меняется,
+     * только если изменились лидер или его счет (таблица меняется и ниже первого места).
      */
-    private void updateHealthLabel() {
-        // Обновляем текст метки с текущим здоровьем игрока
-        healthLabel.setText("Здоровье: " + player.getHealth());
+    private void updateLeaderLabel() {
+        int version = engine.getStats().getLeaderboardVersion(StatKind.KILLS);
+        if (version == shownLeadersVersion) {
+            return;
+        }
+        shownLeadersVersion = version;
+        List<Leaderboard.Entry> top = engine.getStats().top(StatKind.KILLS, 1);
+        if (top.isEmpty()) {
+            return;
+        }
+        Leaderboard.Entry leader = top.get(0);
+        if (leader.getId().equals(shownLeaderId) && leader.getScore() == shownLeaderScore) {
+            return;
+        }
+        shownLeaderId = leader.getId();
+        shownLeaderScore = leader.getScore();
+        TPlayer leaderPlayer = world.findPlayer(leader.getId());
+        String name = leaderPlayer != null ? leaderPlayer.getName() : leader.getId();
+        leaderLabel.setText("Лидер: " + name + " (убийств: " + leader.getScore() + ")");
     }
     
     /**
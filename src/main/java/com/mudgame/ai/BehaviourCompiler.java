@@ -0,0 +1,261 @@
+package com.mudgame.ai;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Компилятор деревьев поведения.
+ * 
+ * Дерево поведения описывается в текстовом файле (*.bt), один узел на строку,
+ * вложенность задается отступом:
+ * <pre>
+ *     # Охотник: убегает при малом здоровье, иначе атакует или преследует
+ *     selector
+ *       sequence
+ *         health_below 0.3
+ *         flee 6
+ *       sequence
+ *         target_within 35
+ *         attack
+ *       sequence
+ *         target_within 150
+ *         chase 5
+ *       wander
+ * </pre>
+ * 
+ * Узлы:
+ * - selector, sequence - составные узлы;
+ * - health_below ДОЛЯ, target_within РАДИУС - условия;
+ * - wander, chase [СКОРОСТЬ], flee [СКОРОСТЬ], attack - действия.
+ * 
+ * Вложенные узлы могут быть только у составных узлов, и у составного узла
+ * должен быть хотя бы один вложенный: иначе дерево выполнялось бы не так,
+ * как записано в файле, поэтому такие ошибки не пропускаются.
+ * 
+ * Строки файла уже идут в порядке "узел, затем его дети", поэтому компилятор
+ * сразу пишет узлы в плоские массивы программы (BehaviourProgram) и не строит
+ * промежуточное дерево объектов.
+ */
+public final class BehaviourCompiler {
+    
+    // Скорость преследования и бегства по умолчанию (пикселей за тик)
+    private static final double DEFAULT_SPEED = 5;
+    
+    // Начальный размер массивов программы
+    private static final int INITIAL_CAPACITY = 16;
+    
+    /**
+     * Конструктор закрыт: класс содержит только статические методы.
+     */
+    private BehaviourCompiler() {
+    }
+    
+    /**
+     * Скомпилировать дерево поведения из текста.
+     * 
+     * @param name имя программы (для сообщений об ошибках)
+     * @param source текст дерева поведения
+     * @return скомпилированная программа
+     * @throws IOException если текст не удалось прочитать
+     * @throws IllegalArgumentException если в тексте ошибка
+     */
+    public static BehaviourProgram compile(String name, Reader source) throws IOException {
+        int[] opcodes = new int[INITIAL_CAPACITY];
+        double[] args = new double[INITIAL_CAPACITY];
+        int[] ends = new int[INITIAL_CAPACITY];
+        int[] indents = new int[INITIAL_CAPACITY];
+        int[] lines = new int[INITIAL_CAPACITY];
+        int size = 0;
+        
+        // Открытые составные узлы (их поддерево еще не закончилось)
+        Deque<Integer> open = new ArrayDeque<>();
+        
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber = lineNumber + 1;
+            
+            // Пропускаем пустые строки и комментарии
+            String text = line.trim();
+            if (text.isEmpty() || text.startsWith("#")) {
+                continue;
+            }
+            int indent = indentOf(line);
+            
+            // Вложить строку можно только в составной узел
+            if (size > 0 && indent > indents[size - 1] && !isComposite(opcodes[size - 1])) {
+                throw error(name, lineNumber, "у узла '" + nameOf(opcodes[size - 1])
+                        + "' не может быть вложенных узлов");
+            }
+            
+            // Закрываем составные узлы, в которые эта строка уже не вложена
+            while (!open.isEmpty() && indents[open.peek()] >= indent) {
+                close(name, open.pop(), size, ends, opcodes, lines);
+            }
+            if (size > 0 && open.isEmpty()) {
+                throw error(name, lineNumber, "у дерева может быть только один корень");
+            }
+            
+            // Если массивы заполнены, увеличиваем их вдвое
+            if (size == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, size * 2);
+                args = Arrays.copyOf(args, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                indents = Arrays.copyOf(indents, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            
+            // Разбираем узел: имя и необязательный числовой параметр
+            String[] parts = text.split("\\s+");
+            int opcode = opcodeOf(parts[0]);
+            if (opcode < 0) {
+                throw error(name, lineNumber, "неизвестный узел '" + parts[0] + "'");
+            }
+            opcodes[size] = opcode;
+            args[size] = argumentOf(name, lineNumber, opcode, parts);
+            indents[size] = indent;
+            lines[size] = lineNumber;
+            ends[size] = size + 1;
+            
+            // Составной узел остается открытым, пока не встретится строка с меньшим отступом
+            if (isComposite(opcode)) {
+                open.push(size);
+            }
+            size = size + 1;
+        }
+        
+        // Закрываем оставшиеся открытые узлы
+        while (!open.isEmpty()) {
+            close(name, open.pop(), size, ends, opcodes, lines);
+        }
+        if (size == 0) {
+            throw error(name, lineNumber, "дерево поведения пустое");
+        }
+        return new BehaviourProgram(name, Arrays.copyOf(opcodes, size), Arrays.copyOf(args, size), Arrays.copyOf(ends, size));
+    }
+    
+    /**
+     * Закрыть составной узел: его поддерево кончается перед узлом end.
+     * 
+     * @throws IllegalArgumentException если у узла нет вложенных узлов
+     */
+    private static void close(String name, int node, int end, int[] ends, int[] opcodes, int[] lines) {
+        if (end == node + 1) {
+            throw error(name, lines[node], "у узла '" + nameOf(opcodes[node]) + "' нет вложенных узлов");
+        }
+        ends[node] = end;
+    }
+    
+    /**
+     * Проверить, составной ли узел (selector или sequence).
+     */
+    private static boolean isComposite(int opcode) {
+        return opcode == BehaviourProgram.OP_SELECTOR || opcode == BehaviourProgram.OP_SEQUENCE;
+    }
+    
+    /**
+     * Получить имя узла по коду (обратно opcodeOf).
+     */
+    private static String nameOf(int opcode) {
+        switch (opcode) {
+            case BehaviourProgram.OP_SELECTOR:
+                return "selector";
+            case BehaviourProgram.OP_SEQUENCE:
+                return "sequence";
+            case BehaviourProgram.OP_HEALTH_BELOW:
+                return "health_below";
+            case BehaviourProgram.OP_TARGET_WITHIN:
+                return "target_within";
+            case BehaviourProgram.OP_WANDER:
+                return "wander";
+            case BehaviourProgram.OP_CHASE:
+                return "chase";
+            case BehaviourProgram.OP_FLEE:
+                return "flee";
+            case BehaviourProgram.OP_ATTACK:
+                return "attack";
+            default:
+                return String.valueOf(opcode);
+        }
+    }
+    
+    /**
+     * Получить код узла по имени.
+     * 
+     * @return код узла или -1, если имя неизвестно
+     */
+    private static int opcodeOf(String word) {
+        switch (word) {
+            case "selector":
+                return BehaviourProgram.OP_SELECTOR;
+            case "sequence":
+                return BehaviourProgram.OP_SEQUENCE;
+            case "health_below":
+                return BehaviourProgram.OP_HEALTH_BELOW;
+            case "target_within":
+                return BehaviourProgram.OP_TARGET_WITHIN;
+            case "wander":
+                return BehaviourProgram.OP_WANDER;
+            case "chase":
+                return BehaviourProgram.OP_CHASE;
+            case "flee":
+                return BehaviourProgram.OP_FLEE;
+            case "attack":
+                return BehaviourProgram.OP_ATTACK;
+            default:
+                return -1;
+        }
+    }
+    
+    /**
+     * Разобрать числовой параметр узла.
+     */
+    private static double argumentOf(String name, int lineNumber, int opcode, String[] parts) {
+        boolean required = opcode == BehaviourProgram.OP_HEALTH_BELOW || opcode == BehaviourProgram.OP_TARGET_WITHIN;
+        boolean optional = opcode == BehaviourProgram.OP_CHASE || opcode == BehaviourProgram.OP_FLEE;
+        if (parts.length > 2 || (parts.length == 2 && !required && !optional)) {
+            throw error(name, lineNumber, "лишние параметры у узла '" + parts[0] + "'");
+        }
+        if (parts.length == 1) {
+            if (required) {
+                throw error(name, lineNumber, "у узла '" + parts[0] + "' нет параметра");
+            }
+            return optional ? DEFAULT_SPEED : 0;
+        }
+        try {
+            return Double.parseDouble(parts[1]);
+        } catch (NumberFormatException e) {
+            throw error(name, lineNumber, "параметр '" + parts[1] + "' не число");
+        }
+    }
+    
+    /**
+     * Посчитать отступ строки (табуляция считается за 4 пробела).
+     */
+    private static int indentOf(String line) {
+        int indent = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ') {
+                indent = indent + 1;
+            } else if (c == '\t') {
+                indent = indent + 4;
+            } else {
+                break;
+            }
+        }
+        return indent;
+    }
+    
+    /**
+     * Создать исключение с указанием файла и строки.
+     */
+    private static IllegalArgumentException error(String name, int lineNumber, String message) {
+        return new IllegalArgumentException("Поведение " + name + ", строка " + lineNumber + ": " + message);
+    }
+}
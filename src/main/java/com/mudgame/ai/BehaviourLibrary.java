@@ -0,0 +1,75 @@
+package com.mudgame.ai;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Библиотека деревьев поведения.
+ * 
+ * Деревья поведения лежат в ресурсах приложения в папке com/mudgame/ai
+ * (файлы вида hunter.bt). Каждое дерево компилируется один раз при первом
+ * запросе, после чего одна и та же программа используется всеми NPC с этим поведением.
+ */
+public final class BehaviourLibrary {
+    
+    // Папка с файлами поведения внутри ресурсов
+    private static final String RESOURCE_FOLDER = "/com/mudgame/ai/";
+    
+    // Расширение файлов поведения
+    private static final String EXTENSION = ".bt";
+    
+    // Уже скомпилированные программы по имени
+    private final Map<String, BehaviourProgram> programs;
+    
+    /**
+     * Конструктор - создает пустую библиотеку.
+     */
+    public BehaviourLibrary() {
+        this.programs = new HashMap<>();
+    }
+    
+    /**
+     * Получить программу поведения по имени, при необходимости скомпилировав её.
+     * 
+     * @param name имя поведения (например, "hunter")
+     * @return скомпилированная программа
+     * @throws IllegalArgumentException если такого поведения нет или в нем ошибка
+     */
+    public synchronized BehaviourProgram get(String name) {
+        BehaviourProgram program = programs.get(name);
+        if (program == null) {
+            program = load(name);
+            programs.put(name, program);
+        }
+        return program;
+    }
+    
+    /**
+     * Добавить в библиотеку программу, скомпилированную из другого источника.
+     * 
+     * @param program программа поведения
+     */
+    public synchronized void register(BehaviourProgram program) {
+        programs.put(program.getName(), program);
+    }
+    
+    /**
+     * Загрузить и скомпилировать поведение из ресурсов.
+     */
+    private static BehaviourProgram load(String name) {
+        InputStream stream = BehaviourLibrary.class.getResourceAsStream(RESOURCE_FOLDER + name + EXTENSION);
+        if (stream == null) {
+            throw new IllegalArgumentException("Поведение " + name + " не найдено");
+        }
+        try (InputStreamReader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            return BehaviourCompiler.compile(name, reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.mudgame.ai;
+
+import com.mudgame.model.TBehaviour;
+import com.mudgame.model.TNPC;
+import com.mudgame.model.TPlayer;
+
+/**
+ * Скомпилированное дерево поведения NPC.
+ * 
+ * Дерево хранится не графом объектов, а плоскими массивами в порядке обхода
+ * "сначала узел, потом его дети" (как строки в файле поведения):
+ * - opcodes[i] - что делает узел i (OP_*);
+ * - args[i]    - числовой параметр узла (радиус, доля здоровья, скорость);
+ * - ends[i]    - индекс первого узла после поддерева узла i.
+ * 
+ * Дети составного узла i - это узлы i+1, ends[i+1], ends[ends[i+1]], ... до ends[i].
+ * Выполнение - это рекурсивный проход по индексам (счетчик команд), без создания
+ * объектов, поэтому одну программу могут выполнять сколько угодно NPC каждый тик.
+ * 
+ * Программа неизменяема и может одновременно использоваться из разных потоков.
+ * 
+ * Взаимодействия (Collaborators):
+ * - BehaviourCompiler - создает программы из текстового описания
+ * - TNPC - выполняет программу каждый тик (через интерфейс TBehaviour)
+ */
+public final class BehaviourProgram implements TBehaviour {
+    
+    // Выбор: выполняет детей по очереди до первого успешного
+    static final int OP_SELECTOR = 0;
+    
+    // Последовательность: выполняет детей по очереди до первого неуспешного
+    static final int OP_SEQUENCE = 1;
+    
+    // Условие: здоровье NPC меньше args[i] от максимального
+    static final int OP_HEALTH_BELOW = 2;
+    
+    // Условие: цель (игрок с наибольшей угрозой или ближайший живой игрок) не дальше args[i] пикселей
+    static final int OP_TARGET_WITHIN = 3;
+    
+    // Действие: сделать случайный шаг
+    static final int OP_WANDER = 4;
+    
+    // Действие: шаг к цели по полю потока комнаты со скоростью args[i]
+    static final int OP_CHASE = 5;
+    
+    // Действие: шаг от цели со скоростью args[i]
+    static final int OP_FLEE = 6;
+    
+    // Действие: атаковать цель
+    static final int OP_ATTACK = 7;
+    
+    // Имя программы (например, "hunter")
+    private final String name;
+    
+    // Код узлов
+    private final int[] opcodes;
+    
+    // Параметры узлов
+    private final double[] args;
+    
+    // Конец поддерева каждого узла
+    private final int[] ends;
+    
+    /**
+     * Конструктор - вызывается только компилятором.
+     */
+    BehaviourProgram(String name, int[] opcodes, double[] args, int[] ends) {
+        this.name = name;
+        this.opcodes = opcodes;
+        this.args = args;
+        this.ends = ends;
+    }
+    
+    /**
+     * Получить имя программы.
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Получить количество узлов программы.
+     */
+    public int size() {
+        return opcodes.length;
+    }
+    
+    /**
+     * Выполнить один тик поведения для NPC.
+     * 
+     * Цель NPC - игрок с наибольшей угрозой (TNPC.getThreatTarget), а если NPC
+     * никто не ранил - ближайший живой игрок в его комнате (или null, если игроков нет).
+     * Ближайший игрок берется из поля потока комнаты, а не поиском по всем игрокам.
+     * 
+     * @param npc NPC, который действует
+     */
+    @Override
+    public void tick(TNPC npc) {
+        TPlayer target = npc.getThreatTarget();
+        if (target == null) {
+            target = npc.getLocation().getFlowField().targetAt(npc.getX(), npc.getY());
+        }
+        run(0, npc, target);
+    }
+    
+    /**
+     * Выполнить узел pc и вернуть результат: true - успех, false - неудача.
+     */
+    private boolean run(int pc, TNPC npc, TPlayer target) {
+        switch (opcodes[pc]) {
+            case OP_SELECTOR:
+                for (int child = pc + 1; child < ends[pc]; child = ends[child]) {
+                    if (run(child, npc, target)) {
+                        return true;
+                    }
+                }
+                return false;
+            case OP_SEQUENCE:
+                for (int child = pc + 1; child < ends[pc]; child = ends[child]) {
+                    if (!run(child, npc, target)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OP_HEALTH_BELOW:
+                return npc.getHealth() < args[pc] * npc.getMaxHealth();
+            case OP_TARGET_WITHIN:
+                return target != null && distanceSquared(npc, target) <= args[pc] * args[pc];
+            case OP_WANDER:
+                return npc.wander();
+            case OP_CHASE:
+                return target != null && npc.chase(args[pc]);
+            case OP_FLEE:
+                return target != null && npc.stepAway(target.getX(), target.getY(), args[pc]);
+            case OP_ATTACK:
+                return target != null && npc.attack(target);
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Квадрат расстояния между NPC и игроком.
+     */
+    private static double distanceSquared(TNPC npc, TPlayer player) {
+        double dx = player.getX() - npc.getX();
+        double dy = player.getY() - npc.getY();
+        return dx * dx + dy * dy;
+    }
+}
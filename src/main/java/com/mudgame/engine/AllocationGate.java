@@ -0,0 +1,166 @@
+package com.mudgame.engine;
+
+import com.mudgame.ai.BehaviourLibrary;
+import com.mudgame.model.TItem;
+import com.mudgame.model.TNPC;
+import com.mudgame.model.TPlayer;
+import com.mudgame.model.TRoom;
+import com.mudgame.model.TWeapon;
+import com.mudgame.stats.CombatStats;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Проверка горячих путей на выделение памяти: перемещение, атака, подъем предмета, ход NPC.
+ * 
+ * Эти пути выполняются тысячи раз за тик, и каждый выделенный на них байт -
+ * это работа сборщика мусора на сервере. В установившемся режиме они не должны
+ * создавать ни одного объекта. Проверка прогревает каждый путь (чтобы JIT
+ * скомпилировал его), затем выполняет его много раз и считает выделенную
+ * потоком память по com.sun.management.ThreadMXBean.
+ * 
+ * Не проверяется то, что создает объекты намеренно: публикация вида комнаты
+ * (неизменяемые состояния для читателей из других потоков), добыча погибшего NPC,
+ * первая стопка нового шаблона в инвентаре.
+ * 
+ * Запуск: java com.mudgame.engine.AllocationGate [повторов на путь]
+ * Код выхода 1 - какой-то путь снова выделяет память.
+ */
+public final class AllocationGate {
+    
+    // Повторов на путь по умолчанию и на прогрев
+    private static final int DEFAULT_OPERATIONS = 2_000_000;
+    private static final int WARMUP_OPERATIONS = 500_000;
+    
+    // NPC в комнате проверки
+    private static final int NPC_COUNT = 20;
+    
+    // Предметов, которые поднимаются за один заход (потом их возвращают на пол)
+    private static final int ITEMS_PER_ROUND = 8;
+    
+    // Поток, чья память считается
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    private AllocationGate() {
+    }
+    
+    /**
+     * Один проверяемый путь.
+     */
+    private interface HotPath {
+        
+        /**
+         * Выполнить путь count раз.
+         * 
+         * @return сколько байт выделено на самом пути (без подготовки между заходами)
+         */
+        long run(int count);
+    }
+    
+    /**
+     * Точка входа.
+     * 
+     * @param args количество повторов на путь (необязательно)
+     */
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_OPERATIONS;
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        BehaviourLibrary behaviours = new BehaviourLibrary();
+        CombatStats stats = new CombatStats();
+        
+        TRoom room = new TRoom("Пещера", "cave", 0, 0, 600, 400);
+        for (int i = 0; i < NPC_COUNT; i++) {
+            // Здоровья хватает на всю проверку - NPC не гибнут и не роняют добычу
+            TNPC npc = new TNPC(i % 4 == 0 ? "Гоблин-шаман" : "Гоблин", "npc" + i,
+                    30 + i * 25, 50 + (i % 5) * 60, Integer.MAX_VALUE, 0);
+            String[] names = {"hunter", "coward", "guard"};
+            npc.setBehaviour(behaviours.get(names[i % names.length]));
+            room.addNPC(npc);
+        }
+        TPlayer player = new TPlayer("Игрок", "player", 300, 200, Integer.MAX_VALUE, 1);
+        player.setCurrentRoom(room);
+        // Стопки зелий и мечей уже есть - подъем кладет предмет в существующую стопку
+        player.getInventory().add(new TItem("Зелье", "potion", 0, 0));
+        player.getInventory().add(new TWeapon("Ржавый меч", "sword", 0, 0, 5));
+        TItem[] floor = new TItem[ITEMS_PER_ROUND];
+        for (int i = 0; i < floor.length; i++) {
+            floor[i] = i % 2 == 0
+                    ? new TItem("Зелье", "potion" + i, 100 + i * 10, 300)
+                    : new TWeapon("Ржавый меч", "sword" + i, 100 + i * 10, 300, 5);
+        }
+        room.publishView(0);
+        
+        boolean failed = false;
+        failed |= check("перемещение игрока", count -> measure(() -> {
+            for (int i = 0; i < count; i++) {
+                player.move();
+            }
+        }), operations);
+        failed |= check("перемещение NPC", count -> measure(() -> {
+            for (int i = 0; i < count; i++) {
+                room.getNPC(i % NPC_COUNT).moveRandom();
+            }
+        }), operations);
+        failed |= check("атака", count -> measure(() -> {
+            for (int i = 0; i < count; i++) {
+                TNPC npc = room.getNPC(i % NPC_COUNT);
+                int damage = player.attack(npc);
+                stats.recordHit(player.getId(), npc.getName(), damage, !npc.isAlive());
+            }
+        }), operations);
+        failed |= check("ход NPC", count -> measure(() -> {
+            for (int i = 0; i < count; i++) {
+                // Раз за обход комнаты - то, что актор делает каждый тик вокруг ходов NPC
+                if (i % NPC_COUNT == 0) {
+                    room.getFlowField().update();
+                    room.resolveCollisions();
+                }
+                room.getNPC(i % NPC_COUNT).tick();
+            }
+        }), operations);
+        failed |= check("подъем предмета", count -> {
+            long bytes = 0;
+            for (int done = 0; done < count; done = done + floor.length) {
+                // Предметы возвращаются на пол вне замера
+                for (TItem item : floor) {
+                    player.getInventory().remove(item);
+                    room.addItem(item);
+                }
+                bytes = bytes + measure(() -> {
+                    for (int i = 0; i < floor.length; i++) {
+                        player.pickUpItem(i % 2 == 0 ? "зел" : "меч");
+                    }
+                });
+            }
+            return bytes;
+        }, operations);
+        
+        if (failed) {
+            System.out.println("ОШИБКА: горячий путь выделяет память");
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Прогреть путь, замерить его и напечатать результат.
+     * 
+     * @return true если путь выделил память
+     */
+    private static boolean check(String name, HotPath path, int operations) {
+        path.run(WARMUP_OPERATIONS);
+        long bytes = path.run(operations);
+        System.out.printf("%s: %d байт всего, %.4f байт на операцию%n",
+                name, bytes, (double) bytes / operations);
+        return bytes > 0;
+    }
+    
+    /**
+     * Выполнить код и вернуть, сколько байт выделил на нем текущий поток.
+     */
+    private static long measure(Runnable code) {
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        code.run();
+        return THREADS.getCurrentThreadAllocatedBytes() - before;
+    }
+}
@@ -0,0 +1,98 @@
+package com.mudgame.engine;
+
+import com.mudgame.model.TChangeKind;
+import com.mudgame.model.TGameObject;
+
+/**
+ * Изменение модели - ячейка кольцевого буфера шины изменений (ChangeEventBus).
+ * 
+ * Как и команды (Command), ячейки создаются один раз вместе с буфером и потом
+ * используются повторно, поэтому поля изменяемые. Обработчик не должен
+ * сохранять ссылку на ячейку: после обработки её заполнит следующее изменение.
+ */
+public final class ChangeEvent {
+    
+    // Вид изменения
+    private TChangeKind kind;
+    
+    // Объект изменения (null для ROOM_RESET)
+    private TGameObject object;
+    
+    // Число изменения: здоровье или количество в стопке
+    private int value;
+    
+    // Прежние и новые координаты объекта
+    private double fromX;
+    private double fromY;
+    private double x;
+    private double y;
+    
+    /**
+     * Заполнить ячейку (параметры - как в TChangeListener.onChange).
+     */
+    void set(TChangeKind kind, TGameObject object, int value, double fromX, double fromY, double x, double y) {
+        this.kind = kind;
+        this.object = object;
+        this.value = value;
+        this.fromX = fromX;
+        this.fromY = fromY;
+        this.x = x;
+        this.y = y;
+    }
+    
+    /**
+     * Очистить ячейку, чтобы она не держала объект в памяти.
+     */
+    void clear() {
+        this.object = null;
+    }
+    
+    /**
+     * Получить вид изменения.
+     */
+    public TChangeKind getKind() {
+        return kind;
+    }
+    
+    /**
+     * Получить объект изменения (читать можно только неизменяемые поля: id, имя, шаблон).
+     */
+    public TGameObject getObject() {
+        return object;
+    }
+    
+    /**
+     * Получить число изменения: здоровье или количество в стопке.
+     */
+    public int getValue() {
+        return value;
+    }
+    
+    /**
+     * Получить прежнюю координату X (для MOVED).
+     */
+    public double getFromX() {
+        return fromX;
+    }
+    
+    /**
+     * Получить прежнюю координату Y (для MOVED).
+     */
+    public double getFromY() {
+        return fromY;
+    }
+    
+    /**
+     * Получить координату X объекта.
+     */
+    public double getX() {
+        return x;
+    }
+    
+    /**
+     * Получить координату Y объекта.
+     */
+    public double getY() {
+        return y;
+    }
+}
@@ -0,0 +1,123 @@
+package com.mudgame.engine;
+
+import com.mudgame.model.TChangeKind;
+import com.mudgame.model.TChangeListener;
+import com.mudgame.model.TGameObject;
+
+import java.util.function.Consumer;
+
+/**
+ * Шина изменений модели для интерфейса.
+ * 
+ * Актор комнаты наблюдаемого игрока назначает шину получателем изменений
+ * игрока и его комнаты (TPlayer.setChangeListener, TRoom.setChangeListener),
+ * и модель кладет в неё изменения: предмет попал в инвентарь, изменилось здоровье,
+ * объект переместился. Интерфейс в своем потоке забирает их (drain) и обновляет
+ * только то, что изменилось: строки инвентаря и участки холста.
+ * 
+ * Изменения идут через кольцевой буфер MpscRingBuffer с заранее созданными
+ * ячейками, поэтому сообщение об изменении ничего не создает. Писатель никогда
+ * не ждет: если интерфейс не успевает забирать изменения (например, окно свернуто)
+ * и буфер заполнен, изменение отбрасывается, а шина запоминает потерю. Интерфейс,
+ * увидев потерю (takeLost), перерисовывает всё, а актор по запросу (takeResetRequest)
+ * заново присылает состояние игрока и комнаты.
+ */
+public final class ChangeEventBus implements TChangeListener {
+    
+    // Размер буфера (степень двойки): изменения комнаты с тысячами NPC за несколько кадров
+    private static final int CAPACITY = 16384;
+    
+    // Буфер изменений
+    private final MpscRingBuffer<ChangeEvent> ring;
+    
+    // true - с прошлой проверки изменения терялись (буфер был заполнен)
+    private volatile boolean lost;
+    
+    // true - интерфейс просит заново прислать состояние игрока и комнаты
+    private volatile boolean resetRequested;
+    
+    // Обработчик, которому drain передает ячейки (чтобы очищать ячейку после него)
+    private Consumer<? super ChangeEvent> handler;
+    private final Consumer<ChangeEvent> clearing;
+    
+    /**
+     * Конструктор - пустая шина.
+     */
+    public ChangeEventBus() {
+        this.ring = new MpscRingBuffer<>(CAPACITY, ChangeEvent::new);
+        this.clearing = event -> {
+            try {
+                handler.accept(event);
+            } finally {
+                event.clear();
+            }
+        };
+    }
+    
+    /**
+     * Положить изменение в буфер (вызывается моделью в потоке актора комнаты).
+     */
+    @Override
+    public void onChange(TChangeKind kind, TGameObject object, int value,
+            double fromX, double fromY, double x, double y) {
+        long sequence = ring.tryClaim();
+        if (sequence < 0) {
+            lost = true;
+            return;
+        }
+        ring.get(sequence).set(kind, object, value, fromX, fromY, x, y);
+        ring.publish(sequence);
+    }
+    
+    /**
+     * Обработать накопившиеся изменения по порядку (вызывается только потоком интерфейса).
+     * 
+     * @param handler обработчик изменения (не должен сохранять ссылку на ячейку)
+     * @param maxBatch сколько изменений обработать за раз
+     * @return сколько изменений обработано
+     */
+    public int drain(Consumer<? super ChangeEvent> handler, int maxBatch) {
+        this.handler = handler;
+        try {
+            return ring.drain(clearing, maxBatch);
+        } finally {
+            this.handler = null;
+        }
+    }
+    
+    /**
+     * Проверить, терялись ли изменения, и сбросить признак потери.
+     * 
+     * Если терялись, шина сама просит актора заново прислать состояние:
+     * до него интерфейсу остается перерисовать всё по снимку.
+     * 
+     * @return true если изменения терялись
+     */
+    public boolean takeLost() {
+        if (!lost) {
+            return false;
+        }
+        lost = false;
+        resetRequested = true;
+        return true;
+    }
+    
+    /**
+     * Проверить, просит ли интерфейс заново прислать состояние, и сбросить просьбу
+     * (вызывается актором комнаты наблюдаемого игрока).
+     */
+    boolean takeResetRequest() {
+        if (!resetRequested) {
+            return false;
+        }
+        resetRequested = false;
+        return true;
+    }
+    
+    /**
+     * Получить примерное количество необработанных изменений.
+     */
+    public int size() {
+        return ring.size();
+    }
+}
@@ -0,0 +1,141 @@
+package com.mudgame.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Команда игрока - ячейка кольцевого буфера команд.
+ * 
+ * Объекты команд создаются один раз вместе с буфером и потом используются
+ * повторно: писатель заполняет ячейку, движок выполняет команду и очищает её.
+ * Поэтому поля изменяемые, а строки-идентификаторы не копируются.
+ * 
+ * Текстовая команда (CommandType.TEXT) копирует байты строки в собственный буфер
+ * ячейки - он создается при первой текстовой команде этой ячейки и дальше
+ * используется повторно.
+ */
+public final class Command {
+    
+    // Максимальная длина строки текстовой команды в байтах (остаток строки отбрасывается)
+    public static final int MAX_TEXT_LENGTH = 256;
+    
+    // Вид команды
+    private CommandType type;
+    
+    // Идентификатор игрока, который отдал команду
+    private String playerId;
+    
+    // Идентификатор цели (комнаты, NPC) или null, если цель не нужна
+    private String targetId;
+    
+    // true - это не команда игрока, а сообщение о приходе игрока в комнату от актора прежней комнаты
+    private boolean arrival;
+    
+    // Строка текстовой команды в UTF-8 (null - ячейка еще не несла текстовых команд)
+    private ByteBuffer text;
+    
+    /**
+     * Заполнить команду.
+     * 
+     * @param type вид команды
+     * @param playerId идентификатор игрока
+     * @param targetId идентификатор цели или null
+     */
+    public void set(CommandType type, String playerId, String targetId) {
+        this.type = type;
+        this.playerId = playerId;
+        this.targetId = targetId;
+        this.arrival = false;
+    }
+    
+    /**
+     * Заполнить команду как текстовую: скопировать строку команды в буфер ячейки.
+     * 
+     * Копируются байты от position до limit (не больше MAX_TEXT_LENGTH);
+     * позиция буфера source не меняется.
+     * 
+     * @param playerId идентификатор игрока
+     * @param source строка команды в UTF-8
+     */
+    public void setText(String playerId, ByteBuffer source) {
+        set(CommandType.TEXT, playerId, null);
+        if (text == null) {
+            text = ByteBuffer.allocate(MAX_TEXT_LENGTH);
+        }
+        int length = Math.min(source.remaining(), text.capacity());
+        text.clear();
+        text.put(0, source, source.position(), length);
+        text.limit(length);
+    }
+    
+    /**
+     * Заполнить команду копией другой команды (при пересылке другому актору).
+     * 
+     * @param other команда, которую нужно скопировать
+     */
+    void copyFrom(Command other) {
+        if (other.type == CommandType.TEXT) {
+            setText(other.playerId, other.text);
+        } else {
+            set(other.type, other.playerId, other.targetId);
+        }
+        this.arrival = other.arrival;
+    }
+    
+    /**
+     * Заполнить команду как сообщение о приходе игрока в комнату.
+     * 
+     * @param playerId идентификатор игрока
+     * @param roomId идентификатор комнаты, в которую пришел игрок
+     */
+    void setArrival(String playerId, String roomId) {
+        set(CommandType.ENTER_ROOM, playerId, roomId);
+        this.arrival = true;
+    }
+    
+    /**
+     * Очистить команду, чтобы ячейка не удерживала ссылки на строки.
+     */
+    void clear() {
+        this.type = null;
+        this.playerId = null;
+        this.targetId = null;
+        this.arrival = false;
+    }
+    
+    /**
+     * Получить вид команды.
+     */
+    public CommandType getType() {
+        return type;
+    }
+    
+    /**
+     * Получить идентификатор игрока.
+     */
+    public String getPlayerId() {
+        return playerId;
+    }
+    
+    /**
+     * Получить идентификатор цели.
+     */
+    public String getTargetId() {
+        return targetId;
+    }
+    
+    /**
+     * Получить строку текстовой команды (байты от position до limit).
+     * 
+     * Буфер принадлежит ячейке и действует только до её очистки.
+     */
+    public ByteBuffer getText() {
+        return text;
+    }
+    
+    /**
+     * Проверить, является ли команда сообщением о приходе игрока в комнату.
+     */
+    boolean isArrival() {
+        return arrival;
+    }
+}
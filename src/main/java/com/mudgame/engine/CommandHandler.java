@@ -0,0 +1,22 @@
+package com.mudgame.engine;
+
+import com.mudgame.model.TPlayer;
+
+/**
+ * Обработчик команды игрока - элемент таблицы команд CommandParser.
+ * 
+ * Один и тот же обработчик выполняет команду и из кнопок интерфейса
+ * (цель - строка-идентификатор), и из набранного текста (цель - часть строки,
+ * которая действует только до конца вызова, сохранять её нельзя).
+ */
+@FunctionalInterface
+public interface CommandHandler {
+    
+    /**
+     * Выполнить команду.
+     * 
+     * @param player игрок, отдавший команду
+     * @param target цель команды или null, если цель не указана
+     */
+    void execute(TPlayer player, CharSequence target);
+}
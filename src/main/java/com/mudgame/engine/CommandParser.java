@@ -0,0 +1,329 @@
+package com.mudgame.engine;
+
+import com.mudgame.model.TPlayer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Разбор текстовых команд игрока ("attack 2.гоблин", "get меч", "m") без создания объектов.
+ * 
+ * Строка команды приходит байтами UTF-8 (так, как её принимает сеть) и разбирается
+ * прямо из ByteBuffer: байты декодируются в заранее созданный массив символов,
+ * глагол ищется в дереве глаголов (trie) посимвольно, а цель передается обработчику
+ * как окно в этот же массив (CharSequence), которое используется повторно.
+ * Поэтому на одну команду не создается ни одной строки и ни одного объекта.
+ * 
+ * Дерево глаголов строится один раз в конструкторе из глаголов CommandType
+ * и хранится плоскими массивами. Каждый узел помнит команду своего глагола
+ * (если глагол кончается здесь) и команду для сокращения - первую объявленную
+ * команду, глагол которой начинается с этого префикса. Поэтому "a", "att" и "attack"
+ * находятся одним проходом по символам глагола.
+ * 
+ * По найденной команде выбирается обработчик из таблицы (массив по номеру CommandType).
+ * 
+ * Парсер не потокобезопасен: у каждого актора комнаты свой.
+ * 
+ * Взаимодействия (Collaborators):
+ * - CommandType - глаголы команд
+ * - CommandHandler - обработчики команд
+ * - RoomActor - разбирает текстовые команды своих игроков
+ */
+public final class CommandParser {
+    
+    // Замена для неверной последовательности байтов UTF-8
+    private static final char REPLACEMENT = '\uFFFD';
+    
+    // Дерево глаголов: метка узла (символ), первый потомок и следующий брат (-1 - нет)
+    private char[] label;
+    private int[] firstChild;
+    private int[] nextSibling;
+    
+    // Команда, глагол которой кончается в узле, и команда для сокращения (номер CommandType, -1 - нет)
+    private int[] exact;
+    private int[] completion;
+    
+    // Количество узлов дерева
+    private int nodeCount;
+    
+    // Обработчики по номеру CommandType
+    private final CommandHandler[] handlers;
+    
+    // Декодированная строка команды (массив переиспользуется)
+    private final char[] line;
+    
+    // Цель команды - окно в массив line (объект переиспользуется)
+    private final Argument target;
+    
+    /**
+     * Конструктор - строит дерево глаголов.
+     * 
+     * @param maxLength максимальная длина строки команды в байтах (остаток строки отбрасывается)
+     */
+    public CommandParser(int maxLength) {
+        this.label = new char[32];
+        this.firstChild = new int[32];
+        this.nextSibling = new int[32];
+        this.exact = new int[32];
+        this.completion = new int[32];
+        this.nodeCount = 0;
+        this.handlers = new CommandHandler[CommandType.values().length];
+        // В UTF-8 символ занимает не меньше байта, поэтому символов не больше, чем байтов
+        this.line = new char[maxLength];
+        this.target = new Argument();
+        
+        newNode('\0');
+        for (CommandType type : CommandType.values()) {
+            for (int i = 0; i < type.getVerbCount(); i++) {
+                addVerb(type.getVerb(i), type.ordinal());
+            }
+        }
+    }
+    
+    /**
+     * Назначить обработчик команды.
+     * 
+     * @param type вид команды
+     * @param handler обработчик
+     */
+    public void on(CommandType type, CommandHandler handler) {
+        handlers[type.ordinal()] = handler;
+    }
+    
+    /**
+     * Разобрать строку команды и выполнить её.
+     * 
+     * Читаются байты от position до limit; позиция буфера не меняется.
+     * 
+     * @param player игрок, отдавший команду
+     * @param text строка команды в UTF-8
+     * @return true если глагол распознан и у команды есть обработчик
+     */
+    public boolean execute(TPlayer player, ByteBuffer text) {
+        int length = decode(text);
+        
+        // Глагол - первое слово, цель - всё после него без пробелов по краям
+        int verbStart = skipSpaces(0, length);
+        int verbEnd = verbStart;
+        while (verbEnd < length && !Character.isWhitespace(line[verbEnd])) {
+            verbEnd = verbEnd + 1;
+        }
+        int type = lookup(verbStart, verbEnd);
+        if (type < 0 || handlers[type] == null) {
+            return false;
+        }
+        int targetStart = skipSpaces(verbEnd, length);
+        int targetEnd = length;
+        while (targetEnd > targetStart && Character.isWhitespace(line[targetEnd - 1])) {
+            targetEnd = targetEnd - 1;
+        }
+        
+        target.set(targetStart, targetEnd);
+        handlers[type].execute(player, targetStart < targetEnd ? target : null);
+        return true;
+    }
+    
+    /**
+     * Найти глагол line[start, end) в дереве.
+     * 
+     * @return номер CommandType или -1
+     */
+    private int lookup(int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            node = child(node, Character.toLowerCase(line[i]));
+            if (node < 0) {
+                return -1;
+            }
+        }
+        return exact[node] >= 0 ? exact[node] : completion[node];
+    }
+    
+    /**
+     * Найти потомка узла с меткой c.
+     * 
+     * @return номер узла или -1
+     */
+    private int child(int node, char c) {
+        int child = firstChild[node];
+        while (child >= 0 && label[child] != c) {
+            child = nextSibling[child];
+        }
+        return child;
+    }
+    
+    /**
+     * Добавить глагол в дерево. Команда, добавленная раньше, остается командой
+     * для сокращений общего префикса.
+     */
+    private void addVerb(String verb, int type) {
+        int node = 0;
+        for (int i = 0; i < verb.length(); i++) {
+            char c = Character.toLowerCase(verb.charAt(i));
+            int child = child(node, c);
+            if (child < 0) {
+                child = newNode(c);
+                nextSibling[child] = firstChild[node];
+                firstChild[node] = child;
+            }
+            node = child;
+            if (completion[node] < 0) {
+                completion[node] = type;
+            }
+        }
+        if (exact[node] < 0) {
+            exact[node] = type;
+        }
+    }
+    
+    /**
+     * Создать узел дерева.
+     * 
+     * @return номер узла
+     */
+    private int newNode(char c) {
+        if (nodeCount == label.length) {
+            int capacity = nodeCount * 2;
+            label = Arrays.copyOf(label, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            exact = Arrays.copyOf(exact, capacity);
+            completion = Arrays.copyOf(completion, capacity);
+        }
+        int node = nodeCount;
+        nodeCount = nodeCount + 1;
+        label[node] = c;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        exact[node] = -1;
+        completion[node] = -1;
+        return node;
+    }
+    
+    /**
+     * Декодировать байты UTF-8 буфера в массив line.
+     * 
+     * Байты приходят из сети как есть, поэтому допускаются только правильные формы
+     * (RFC 3629): второй байт после E0 - A0..BF (иначе символ записан длиннее нужного),
+     * после ED - 80..9F (иначе это половинка суррогатной пары), после F0 - 90..BF,
+     * после F4 - 80..8F (иначе символ больше U+10FFFF). Неверная последовательность
+     * заменяется символом REPLACEMENT, и разбор продолжается со следующего байта.
+     * 
+     * @return количество символов
+     */
+    private int decode(ByteBuffer text) {
+        int position = text.position();
+        int limit = Math.min(text.limit(), position + line.length);
+        int length = 0;
+        while (position < limit) {
+            int b = text.get(position) & 0xFF;
+            int extra;
+            int code;
+            // Допустимые значения второго байта последовательности
+            int low = 0x80;
+            int high = 0xBF;
+            if (b < 0x80) {
+                extra = 0;
+                code = b;
+            } else if (b >= 0xC2 && b < 0xE0) {
+                extra = 1;
+                code = b & 0x1F;
+            } else if (b >= 0xE0 && b < 0xF0) {
+                extra = 2;
+                code = b & 0x0F;
+                if (b == 0xE0) {
+                    low = 0xA0;
+                } else if (b == 0xED) {
+                    high = 0x9F;
+                }
+            } else if (b >= 0xF0 && b < 0xF5) {
+                extra = 3;
+                code = b & 0x07;
+                if (b == 0xF0) {
+                    low = 0x90;
+                } else if (b == 0xF4) {
+                    high = 0x8F;
+                }
+            } else {
+                extra = -1;
+                code = REPLACEMENT;
+            }
+            position = position + 1;
+            for (int i = 0; i < extra; i++) {
+                int next = position < limit ? text.get(position) & 0xFF : 0;
+                boolean valid = i == 0 ? next >= low && next <= high : (next & 0xC0) == 0x80;
+                if (!valid) {
+                    // Последовательность оборвалась или неверна - заменяем символ, следующий байт читаем заново
+                    code = REPLACEMENT;
+                    extra = -1;
+                    break;
+                }
+                code = (code << 6) | (next & 0x3F);
+                position = position + 1;
+            }
+            if (code > 0xFFFF) {
+                // Символ вне основной плоскости - два символа Java (из четырех байтов, место есть)
+                line[length] = Character.highSurrogate(code);
+                line[length + 1] = Character.lowSurrogate(code);
+                length = length + 2;
+            } else {
+                line[length] = (char) code;
+                length = length + 1;
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * Пропустить пробелы, начиная с позиции start.
+     */
+    private int skipSpaces(int start, int end) {
+        while (start < end && Character.isWhitespace(line[start])) {
+            start = start + 1;
+        }
+        return start;
+    }
+    
+    /**
+     * Цель команды - окно в массив разобранной строки.
+     * 
+     * Действует до следующего разбора: toString() создает копию, если её нужно сохранить.
+     */
+    private final class Argument implements CharSequence {
+        
+        // Границы окна в массиве line
+        private int start;
+        private int end;
+        
+        /**
+         * Задать границы окна.
+         */
+        void set(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        public int length() {
+            return end - start;
+        }
+        
+        @Override
+        public char charAt(int index) {
+            return line[start + index];
+        }
+        
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(line, start + from, to - from);
+        }
+        
+        @Override
+        public String toString() {
+            return new String(line, start, end - start);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.mudgame.engine;
+
+import com.mudgame.model.TItem;
+import com.mudgame.model.TNPC;
+import com.mudgame.model.TPlayer;
+import com.mudgame.model.TRoom;
+import com.mudgame.model.TWeapon;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Замер разбора текстовых команд: время и выделенная память на одну команду.
+ * 
+ * Собирает комнату с гоблинами и предметами, кодирует набор команд в прямые
+ * ByteBuffer (как их отдает сеть) и много раз разбирает и выполняет их
+ * через CommandParser с обработчиками, вызывающими TPlayer.attack, move и pickUpItem.
+ * Выделенная потоком память считается по com.sun.management.ThreadMXBean.
+ * 
+ * Запуск: java com.mudgame.engine.CommandParserBenchmark [количество команд]
+ * Код выхода 1 - на замеренных командах выделялась память.
+ */
+public final class CommandParserBenchmark {
+    
+    // Количество команд по умолчанию и на прогрев (чтобы JIT успел скомпилировать разбор)
+    private static final int DEFAULT_COMMANDS = 5_000_000;
+    private static final int WARMUP_COMMANDS = 1_000_000;
+    
+    // Команды замера: полные и сокращенные глаголы, номера, промахи
+    private static final String[] LINES = {
+        "attack гоб",
+        "a 2.гоблин",
+        "  KILL   шаман  ",
+        "бить 3.гоб",
+        "get меч",
+        "взять зел",
+        "m",
+        "xyzzy",
+        "attack",
+    };
+    
+    private CommandParserBenchmark() {
+    }
+    
+    /**
+     * Точка входа.
+     * 
+     * @param args количество замеряемых команд (необязательно)
+     */
+    public static void main(String[] args) {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COMMANDS;
+        
+        TRoom room = new TRoom("Пещера", "cave", 0, 0, 600, 400);
+        for (int i = 0; i < 20; i++) {
+            // Здоровья хватает на весь замер - гоблины не гибнут и не роняют добычу
+            room.addNPC(new TNPC(i % 4 == 0 ? "Гоблин-шаман" : "Гоблин", "npc" + i,
+                    30 + i * 25, 50 + (i % 5) * 60, Integer.MAX_VALUE, 0));
+        }
+        room.addItem(new TWeapon("Ржавый меч", "sword", 100, 300, 5));
+        room.addItem(new TItem("Зелье", "potion", 120, 300));
+        TPlayer player = new TPlayer("Игрок", "player", 300, 200, 100, 1);
+        player.setCurrentRoom(room);
+        
+        int[] executed = new int[CommandType.values().length];
+        CommandParser parser = new CommandParser(Command.MAX_TEXT_LENGTH);
+        parser.on(CommandType.ATTACK, (p, target) -> {
+            TNPC npc = target != null ? room.findNPCByName(target) : room.getNPC(0);
+            if (npc != null) {
+                p.attack(npc);
+            }
+            executed[CommandType.ATTACK.ordinal()]++;
+        });
+        parser.on(CommandType.MOVE, (p, target) -> {
+            p.move();
+            executed[CommandType.MOVE.ordinal()]++;
+        });
+        parser.on(CommandType.PICK_UP, (p, target) -> {
+            // Предметы поднимаются на прогреве, дальше поиск промахивается
+            p.pickUpItem(target);
+            executed[CommandType.PICK_UP.ordinal()]++;
+        });
+        
+        ByteBuffer[] lines = new ByteBuffer[LINES.length];
+        for (int i = 0; i < LINES.length; i++) {
+            byte[] bytes = LINES[i].getBytes(StandardCharsets.UTF_8);
+            lines[i] = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        }
+        
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        
+        int recognized = run(parser, player, lines, WARMUP_COMMANDS);
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        recognized = recognized + run(parser, player, lines, commands);
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        
+        System.out.printf("команд: %d, распознано: %d (атак %d, перемещений %d, подъемов %d)%n",
+                commands + WARMUP_COMMANDS, recognized, executed[CommandType.ATTACK.ordinal()],
+                executed[CommandType.MOVE.ordinal()], executed[CommandType.PICK_UP.ordinal()]);
+        System.out.printf("время: %.1f нс на команду%n", (double) nanos / commands);
+        System.out.printf("память: %d байт всего, %.4f байт на команду%n", bytes, (double) bytes / commands);
+        if (bytes > 0) {
+            System.out.println("ОШИБКА: разбор команд выделяет память");
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Разобрать и выполнить count команд по кругу.
+     * 
+     * @return сколько команд распознано
+     */
+    private static int run(CommandParser parser, TPlayer player, ByteBuffer[] lines, int count) {
+        int recognized = 0;
+        for (int i = 0; i < count; i++) {
+            if (parser.execute(player, lines[i % lines.length])) {
+                recognized = recognized + 1;
+            }
+        }
+        return recognized;
+    }
+}
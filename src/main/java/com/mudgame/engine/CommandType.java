@@ -0,0 +1,61 @@
+package com.mudgame.engine;
+
+/**
+ * Вид команды игрока.
+ * 
+ * У команд, которые можно набрать текстом, есть глаголы (см. CommandParser).
+ * Глаголы можно сокращать: при неоднозначном сокращении выбирается
+ * команда, объявленная здесь раньше, и глагол, указанный раньше.
+ */
+public enum CommandType {
+    
+    // Войти в комнату (targetId - идентификатор комнаты)
+    ENTER_ROOM,
+    
+    // Переместиться в случайную свободную точку комнаты
+    MOVE("move", "идти"),
+    
+    // Атаковать NPC (targetId - начало имени ("2.гоблин"), идентификатор NPC или null - ближайший живой NPC)
+    ATTACK("attack", "kill", "атаковать", "бить"),
+    
+    // Поднять предмет с пола комнаты (targetId - начало имени предмета или null - первый предмет)
+    PICK_UP("get", "take", "взять", "поднять"),
+    
+    // Выставить предмет инвентаря на аукцион (targetId - "<начало имени> <цена>")
+    SELL("sell", "продать"),
+    
+    // Подать на аукцион заявку на покупку (targetId - "<начало имени> <цена>")
+    BUY("buy", "купить"),
+    
+    // Отменить свои заявки на аукционе (targetId - начало имени предмета или null - все заявки)
+    CANCEL("cancel", "отменить"),
+    
+    // Текстовая команда игрока (строка в Command.getText(), разбирается актором комнаты)
+    TEXT;
+    
+    // Глаголы текстовой команды (в нижнем регистре)
+    private final String[] verbs;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param verbs глаголы, которыми команду можно набрать текстом
+     */
+    CommandType(String... verbs) {
+        this.verbs = verbs;
+    }
+    
+    /**
+     * Получить количество глаголов команды.
+     */
+    int getVerbCount() {
+        return verbs.length;
+    }
+    
+    /**
+     * Получить глагол по индексу (индекс от 0 до getVerbCount()-1).
+     */
+    String getVerb(int index) {
+        return verbs[index];
+    }
+}
@@ -0,0 +1,845 @@
+package com.mudgame.engine;
+
+import com.mudgame.market.AuctionHouse;
+import com.mudgame.model.TPlayer;
+import com.mudgame.model.TRoom;
+import com.mudgame.model.TRoomView;
+import com.mudgame.model.TWorld;
+import com.mudgame.persistence.PlayerRecord;
+import com.mudgame.persistence.WriteBehindPlayerCache;
+import com.mudgame.stats.CombatStats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Движок симуляции.
+ * 
+ * Каждой комнате мира движок назначает актора (RoomActor) - единственного владельца
+ * комнаты, её NPC, предметов и находящихся в ней игроков. Акторы выполняются на общем
+ * пуле потоков, поэтому занятые комнаты считаются параллельно на разных ядрах
+ * и не ждут друг друга, а глобальной блокировки мира нет.
+ * 
+ * Сам движок работает в отдельном потоке и с постоянной частотой (TICKS_PER_SECOND):
+ * 1. забирает команды игроков из кольцевого буфера (MpscRingBuffer) пачкой
+ *    и пересылает каждую актору комнаты, в которой находится игрок;
+ * 2. определяет уровень симуляции каждой комнаты (SimulationLevel) и просит
+ *    акторов выполнить тик (ход NPC и разрешение столкновений);
+ * 3. если наблюдаемый игрок не в комнате, сам публикует его снимок.
+ * 
+ * Уровни симуляции: комнаты с игроками считаются каждый тик, соседние с ними
+ * (по выходам TRoom.getExit) - раз в REDUCED_INTERVAL тиков, остальные спят
+ * и не стоят ничего. Когда комната просыпается, актор прокручивает пропущенное
+ * время сразу (возрождение NPC, блуждания), поэтому нагрузка зависит от количества
+ * комнат рядом с игроками, а не от размера мира.
+ * 
+ * Снимки двойные по смыслу: поток JavaFX рисует последний опубликованный снимок
+ * (передний буфер), пока акторы строят следующий. Снимок комнаты с наблюдаемым
+ * игроком публикует её актор в конце своего тика. Публикация - это запись ссылки
+ * в volatile-поле, поэтому ни одна из сторон не ждет другую.
+ * 
+ * Игрок, который не находится ни в одной комнате, принадлежит потоку движка.
+ * Справочник владельцев (owners) говорит, актору какой комнаты принадлежит игрок.
+ * 
+ * Усыпление: если включено сохранение, игрок, не отдававший команд дольше
+ * порога (setHibernation), выгружается из памяти. Актор его комнаты кладет
+ * последнюю запись игрока в кэш сохранения (она уйдет на диск и освободит кэш),
+ * убирает игрока из комнаты и мира, а в движке остается только маленькая
+ * заглушка HibernatedPlayer. Первая же команда игрока будит его: запись читается
+ * в отдельном потоке (чтение может ждать диска - записи и уплотнения файла
+ * потоком кэша), а команды игрока тем временем копятся в заглушке. Прочитанная
+ * запись возвращается движку сообщением; на следующем тике поток движка собирает
+ * игрока заново, отправляет в его комнату и пересылает туда накопленные команды.
+ * Поэтому возвращение одного игрока не задерживает команды и тики остальных.
+ * Время пробуждения - от первой команды до отправки в комнату - замеряется
+ * (getLastThawNanos).
+ */
+public final class GameEngine {
+    
+    // Сколько тиков симуляции в секунду
+    public static final int TICKS_PER_SECOND = 10;
+    
+    // Длительность одного тика в наносекундах
+    static final long TICK_NANOS = 1_000_000_000L / TICKS_PER_SECOND;
+    
+    // Размер кольцевого буфера команд игроков (степень двойки)
+    public static final int COMMAND_BUFFER_SIZE = 4096;
+    
+    // Сколько команд игроков пересылается за один тик (остальные ждут следующего тика)
+    private static final int MAX_COMMANDS_PER_TICK = COMMAND_BUFFER_SIZE;
+    
+    // Раз во сколько тиков симулируются комнаты уровня REDUCED
+    public static final int REDUCED_INTERVAL = 5;
+    
+    // Через сколько миллисекунд без команд игрок усыпляется (по умолчанию)
+    public static final long DEFAULT_HIBERNATE_AFTER_MILLIS = 5 * 60 * 1000;
+    
+    // Мир, который симулирует движок
+    private final TWorld world;
+    
+    // Команды игроков, ожидающие пересылки акторам комнат
+    private final MpscRingBuffer<Command> playerCommands;
+    
+    // Пересылка команды владельцу игрока (создается один раз)
+    private final Consumer<Command> router;
+    
+    // Пул потоков, на котором выполняются акторы комнат
+    private final ExecutorService executor;
+    
+    // true - пул создан движком, и движок должен его остановить
+    private final boolean ownsExecutor;
+    
+    // Акторы комнат по идентификатору комнаты (не меняется после создания движка)
+    private final Map<String, RoomActor> actors;
+    
+    // Акторы комнат в порядке комнат мира
+    private final RoomActor[] actorList;
+    
+    // Владелец каждого игрока, который находится в комнате
+    private final ConcurrentHashMap<String, RoomActor> owners;
+    
+    // Комнаты с игроками на текущем тике (заполняется потоком движка, массив переиспользуется)
+    private RoomActor[] occupied;
+    
+    // Сколько комнат на каждом уровне симуляции на последнем тике
+    private volatile int fullRoomCount;
+    private volatile int reducedRoomCount;
+    
+    // Снимки наблюдаемого игрока, когда он не в комнате
+    private final SnapshotBuilder lobbySnapshots;
+    
+    // Последний опубликованный снимок (передний буфер)
+    private volatile RenderSnapshot frontSnapshot;
+    
+    // Игрок, для которого строятся снимки (чья комната видна на экране)
+    private volatile TPlayer viewer;
+    
+    // Боевая статистика (пишут акторы комнат, читает кто угодно)
+    private final CombatStats stats;
+    
+    // Аукцион (заявки подают акторы комнат из своих потоков)
+    private final AuctionHouse auctionHouse;
+    
+    // Изменения наблюдаемого игрока и его комнаты (пишут акторы комнат, читает интерфейс)
+    private final ChangeEventBus changeEvents;
+    
+    // Кэш сохраненных игроков (null - игроки не сохраняются)
+    private volatile WriteBehindPlayerCache persistence;
+    
+    // Через сколько тиков без команд игрок усыпляется (0 - не усыплять)
+    private volatile long hibernateAfterTicks;
+    
+    // Заглушки усыпленных игроков по идентификатору
+    private final ConcurrentHashMap<String, HibernatedPlayer> hibernated;
+    
+    // Поток, читающий записи просыпающихся игроков (создается при первом пробуждении)
+    private final ExecutorService thawLoader;
+    
+    // Прочитанные записи, которые ждут потока движка
+    private final ConcurrentLinkedQueue<LoadedPlayer> loadedPlayers;
+    
+    // Замеры пробуждения (пишет только поток движка)
+    private volatile long thawCount;
+    private volatile long lastThawNanos;
+    private volatile long maxThawNanos;
+    
+    // true - поток симуляции должен продолжать работу
+    private volatile boolean running;
+    
+    // Поток симуляции
+    private Thread thread;
+    
+    // Номер текущего тика (меняется только потоком симуляции, читают акторы)
+    private volatile long tick;
+    
+    // Длительность этапов тика, которые выполняет поток движка (последний тик)
+    private volatile long commandNanos;
+    private volatile long schedulingNanos;
+    
+    // Длительность этапов тика для снимков, которые строит сам движок (массив переиспользуется)
+    private final long[] lobbyPhases = new long[TickPhase.values().length];
+    
+    /**
+     * Конструктор - создает движок для мира со своим пулом потоков
+     * (по одному потоку на ядро процессора). Поток запускается методом start().
+     * 
+     * @param world игровой мир
+     */
+    public GameEngine(TWorld world) {
+        this(world, createRoomPool(), true);
+    }
+    
+    /**
+     * Конструктор - создает движок для мира, акторы которого выполняются на заданном пуле.
+     * Пул остается во владении вызывающего и движком не останавливается.
+     * 
+     * @param world игровой мир
+     * @param executor пул потоков для акторов комнат
+     */
+    public GameEngine(TWorld world, ExecutorService executor) {
+        this(world, executor, false);
+    }
+    
+    /**
+     * Общий конструктор.
+     */
+    private GameEngine(TWorld world, ExecutorService executor, boolean ownsExecutor) {
+        this.world = world;
+        this.playerCommands = new MpscRingBuffer<>(COMMAND_BUFFER_SIZE, Command::new);
+        this.router = this::route;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.actors = new HashMap<>();
+        this.actorList = new RoomActor[world.getRoomCount()];
+        this.owners = new ConcurrentHashMap<>();
+        this.occupied = new RoomActor[Math.max(1, actorList.length)];
+        this.lobbySnapshots = new SnapshotBuilder();
+        this.stats = new CombatStats();
+        this.auctionHouse = new AuctionHouse();
+        this.changeEvents = new ChangeEventBus();
+        this.frontSnapshot = RenderSnapshot.EMPTY;
+        this.hibernated = new ConcurrentHashMap<>();
+        this.thawLoader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mud-thaw");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loadedPlayers = new ConcurrentLinkedQueue<>();
+        this.hibernateAfterTicks = DEFAULT_HIBERNATE_AFTER_MILLIS * TICKS_PER_SECOND / 1000;
+        
+        for (int i = 0; i < world.getRoomCount(); i++) {
+            TRoom room = world.getRoom(i);
+            RoomActor actor = new RoomActor(room, this, executor);
+            actors.put(room.getId(), actor);
+            actorList[i] = actor;
+            // Игроки, которые уже стоят в комнате, принадлежат её актору
+            for (int j = 0; j < room.getPlayerCount(); j++) {
+                owners.put(room.getPlayer(j).getId(), actor);
+            }
+            // Первый вид - содержимое, загруженное до запуска (дальше вид публикует актор)
+            room.publishView(0);
+        }
+    }
+    
+    /**
+     * Создать пул потоков для акторов комнат: по потоку на ядро, потоки-демоны.
+     */
+    private static ExecutorService createRoomPool() {
+        AtomicInteger number = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "mud-room-" + number.incrementAndGet());
+            // Поток-демон не мешает приложению завершиться
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Получить мир, который симулирует движок.
+     */
+    public TWorld getWorld() {
+        return world;
+    }
+    
+    /**
+     * Назначить игрока, чья комната попадает в снимки.
+     * 
+     * @param viewer наблюдаемый игрок
+     */
+    public void setViewer(TPlayer viewer) {
+        this.viewer = viewer;
+    }
+    
+    /**
+     * Получить игрока, чья комната попадает в снимки.
+     */
+    TPlayer getViewer() {
+        return viewer;
+    }
+    
+    /**
+     * Получить количество команд игроков, ожидающих пересылки акторам.
+     * Если оно растет, движок не успевает за вводом.
+     */
+    public int getPendingCommandCount() {
+        return playerCommands.size();
+    }
+    
+    /**
+     * Записать длительность этапов, которые выполняет поток движка, в массив этапов тика.
+     * 
+     * Актор комнаты может начать тик раньше, чем движок закончит планирование,
+     * поэтому этап SCHEDULING иногда относится к предыдущему тику движка.
+     * 
+     * @param phaseNanos длительность этапов по номеру TickPhase
+     */
+    void copyEnginePhases(long[] phaseNanos) {
+        phaseNanos[TickPhase.COMMANDS.ordinal()] = commandNanos;
+        phaseNanos[TickPhase.SCHEDULING.ordinal()] = schedulingNanos;
+    }
+    
+    /**
+     * Получить боевую статистику: счетчики игроков и типов NPC и таблицы лидеров.
+     * Читать статистику можно из любого потока.
+     */
+    public CombatStats getStats() {
+        return stats;
+    }
+    
+    /**
+     * Получить аукцион - общий для всех комнат. Заявки можно подавать из любого потока.
+     */
+    public AuctionHouse getAuctionHouse() {
+        return auctionHouse;
+    }
+    
+    /**
+     * Получить шину изменений наблюдаемого игрока (setViewer) и его комнаты.
+     * Забирать изменения из шины должен один поток - поток интерфейса.
+     */
+    public ChangeEventBus getChangeEvents() {
+        return changeEvents;
+    }
+    
+    /**
+     * Включить сохранение игроков. Акторы комнат после каждого тика кладут
+     * в кэш изменившихся игроков, а на диск их пишет фоновый поток кэша.
+     * 
+     * Движок кэш не закрывает: это делает владелец кэша после stop().
+     * 
+     * @param persistence кэш сохраненных игроков или null, чтобы выключить сохранение
+     */
+    public void setPersistence(WriteBehindPlayerCache persistence) {
+        this.persistence = persistence;
+    }
+    
+    /**
+     * Получить кэш сохраненных игроков (null - игроки не сохраняются).
+     */
+    WriteBehindPlayerCache getPersistence() {
+        return persistence;
+    }
+    
+    /**
+     * Задать, через сколько времени без команд игрок усыпляется (выгружается на диск).
+     * 
+     * Усыпление работает только при включенном сохранении (setPersistence).
+     * Наблюдаемый игрок (setViewer) не усыпляется никогда: его объект держит интерфейс.
+     * 
+     * @param idleMillis порог простоя в миллисекундах (0 - не усыплять)
+     */
+    public void setHibernation(long idleMillis) {
+        this.hibernateAfterTicks = Math.max(0, idleMillis) * TICKS_PER_SECOND / 1000;
+    }
+    
+    /**
+     * Получить, через сколько тиков без команд игрок усыпляется (0 - не усыплять).
+     */
+    long getHibernateAfterTicks() {
+        return persistence == null ? 0 : hibernateAfterTicks;
+    }
+    
+    /**
+     * Получить номер текущего тика движка.
+     */
+    long getTick() {
+        return tick;
+    }
+    
+    /**
+     * Получить количество усыпленных игроков.
+     */
+    public int getHibernatedCount() {
+        return hibernated.size();
+    }
+    
+    /**
+     * Получить, сколько раз игроки просыпались.
+     */
+    public long getThawCount() {
+        return thawCount;
+    }
+    
+    /**
+     * Получить длительность последнего пробуждения (наносекунды): от первой команды
+     * усыпленного игрока до отправки собранного игрока в его комнату (с чтением
+     * записи в фоне и ожиданием тика движка).
+     */
+    public long getLastThawNanos() {
+        return lastThawNanos;
+    }
+    
+    /**
+     * Получить наибольшую длительность пробуждения (наносекунды).
+     */
+    public long getMaxThawNanos() {
+        return maxThawNanos;
+    }
+    
+    /**
+     * Поставить команду игрока в очередь на выполнение.
+     * 
+     * Метод можно вызывать из любого потока, он не берет блокировок и не создает
+     * объектов. Если буфер команд заполнен, метод ждет, пока движок его разгрузит.
+     * Команда выполнится актором комнаты, в которой игрок находится в этот момент.
+     * 
+     * @param type вид команды
+     * @param playerId идентификатор игрока
+     * @param targetId идентификатор цели (комнаты, NPC) или null
+     */
+    public void enqueue(CommandType type, String playerId, String targetId) {
+        long sequence = playerCommands.claim();
+        playerCommands.get(sequence).set(type, playerId, targetId);
+        playerCommands.publish(sequence);
+    }
+    
+    /**
+     * Поставить текстовую команду игрока ("attack гоб", "get меч") в очередь на выполнение.
+     * 
+     * Строка копируется в ячейку буфера команд (байты от position до limit,
+     * позиция буфера line не меняется), разбирает её актор комнаты игрока
+     * (CommandParser). Как и enqueue, метод не берет блокировок и не создает объектов
+     * (кроме буфера ячейки при первой текстовой команде, которая в неё попала).
+     * 
+     * @param playerId идентификатор игрока
+     * @param line строка команды в UTF-8
+     */
+    public void enqueueText(String playerId, ByteBuffer line) {
+        long sequence = playerCommands.claim();
+        playerCommands.get(sequence).setText(playerId, line);
+        playerCommands.publish(sequence);
+    }
+    
+    /**
+     * Получить последний опубликованный снимок. Метод можно вызывать из любого потока.
+     * 
+     * @return снимок (никогда не null)
+     */
+    public RenderSnapshot latestSnapshot() {
+        return frontSnapshot;
+    }
+    
+    /**
+     * Получить, сколько комнат симулировалось каждый тик на последнем тике движка.
+     */
+    public int getFullRoomCount() {
+        return fullRoomCount;
+    }
+    
+    /**
+     * Получить, сколько комнат симулировалось с пониженной частотой на последнем тике движка.
+     */
+    public int getReducedRoomCount() {
+        return reducedRoomCount;
+    }
+    
+    /**
+     * Получить уровень симуляции комнаты на последнем тике движка.
+     * 
+     * @param roomId идентификатор комнаты
+     * @return уровень или null, если такой комнаты нет
+     */
+    public SimulationLevel getLevel(String roomId) {
+        RoomActor actor = actorOf(roomId);
+        return actor == null ? null : actor.getLevel();
+    }
+    
+    /**
+     * Получить последний опубликованный вид комнаты.
+     * 
+     * Можно вызывать из любого потока (отрисовка, рассылка, статистика):
+     * вид неизменяем и не мешает актору комнаты считать следующий тик.
+     * 
+     * @param roomId идентификатор комнаты
+     * @return вид комнаты или null, если такой комнаты нет
+     */
+    public TRoomView getRoomView(String roomId) {
+        RoomActor actor = actorOf(roomId);
+        return actor == null ? null : actor.getRoom().getView();
+    }
+    
+    /**
+     * Опубликовать снимок (вызывается актором комнаты наблюдаемого игрока).
+     */
+    void publish(RenderSnapshot snapshot) {
+        frontSnapshot = snapshot;
+    }
+    
+    /**
+     * Получить актора комнаты по идентификатору комнаты.
+     * 
+     * @return актор или null, если такой комнаты нет
+     */
+    RoomActor actorOf(String roomId) {
+        return roomId == null ? null : actors.get(roomId);
+    }
+    
+    /**
+     * Получить актора, которому принадлежит игрок.
+     * 
+     * @return актор или null, если игрок не в комнате
+     */
+    RoomActor ownerOf(String playerId) {
+        return owners.get(playerId);
+    }
+    
+    /**
+     * Записать нового владельца игрока (вызывается при переходе между комнатами).
+     */
+    void setOwner(String playerId, RoomActor owner) {
+        owners.put(playerId, owner);
+    }
+    
+    /**
+     * Усыпить игрока: оставить от него заглушку и убрать из мира.
+     * 
+     * Вызывается актором комнаты, который уже положил последнюю запись игрока
+     * в кэш сохранения и убрал игрока из комнаты. Заглушка появляется раньше,
+     * чем пропадает владелец, поэтому поток движка всегда видит либо владельца,
+     * либо заглушку.
+     */
+    void hibernate(TPlayer player) {
+        hibernated.put(player.getId(), new HibernatedPlayer(player.getBaseAttackPower()));
+        world.removePlayer(player.getId());
+        owners.remove(player.getId());
+    }
+    
+    /**
+     * Проверить, усыплен ли игрок.
+     */
+    boolean isHibernated(String playerId) {
+        return hibernated.containsKey(playerId);
+    }
+    
+    /**
+     * Вернуть команду в очередь движка (вызывается актором, к которому пришла
+     * команда уже усыпленного игрока: разбудить игрока может только поток движка).
+     */
+    void requeue(Command command) {
+        long sequence = playerCommands.claim();
+        playerCommands.get(sequence).copyFrom(command);
+        playerCommands.publish(sequence);
+    }
+    
+    /**
+     * Начать пробуждение игрока (только поток движка): отдать чтение его записи
+     * фоновому потоку. Результат вернется в loadedPlayers.
+     * 
+     * @return false если разбудить игрока нельзя (сохранение выключено)
+     */
+    private boolean startThaw(String playerId, HibernatedPlayer stub) {
+        if (stub.isLoading()) {
+            return true;
+        }
+        WriteBehindPlayerCache cache = persistence;
+        if (cache == null) {
+            return false;
+        }
+        stub.startLoading(System.nanoTime());
+        thawLoader.execute(() -> {
+            PlayerRecord record = null;
+            try {
+                record = cache.get(playerId);
+            } catch (IOException e) {
+                // Запись не прочиталась - игрок остается усыпленным
+            } finally {
+                loadedPlayers.add(new LoadedPlayer(playerId, record));
+            }
+        });
+        return true;
+    }
+    
+    /**
+     * Закончить пробуждения, записи для которых уже прочитаны (только поток движка):
+     * собрать игроков заново, отправить в комнаты, в которых они уснули,
+     * и переслать туда команды, накопленные за время чтения.
+     */
+    private void finishThaws() {
+        LoadedPlayer loaded;
+        while ((loaded = loadedPlayers.poll()) != null) {
+            String playerId = loaded.playerId;
+            HibernatedPlayer stub = hibernated.get(playerId);
+            if (stub == null) {
+                continue;
+            }
+            PlayerRecord record = loaded.record;
+            RoomActor target = record == null ? null : actorOf(record.getRoomId());
+            if (record != null && target == null && world.getStartRoom() != null) {
+                // Комнаты больше нет в мире - игрок просыпается в стартовой
+                target = actorOf(world.getStartRoom().getId());
+            }
+            if (target == null) {
+                // Заглушка остается, и следующая команда попробует снова
+                stub.loadFailed();
+                continue;
+            }
+            TRoom room = target.getRoom();
+            TPlayer player = new TPlayer(record.getName(), playerId, room.getX(), room.getY(),
+                    record.getHealth(), stub.getBaseAttackPower());
+            record.applyTo(player);
+            world.addPlayer(player);
+            owners.put(playerId, target);
+            hibernated.remove(playerId);
+            target.postArrival(playerId);
+            Command command;
+            while ((command = stub.pollPending()) != null) {
+                target.post(command);
+            }
+            
+            long nanos = System.nanoTime() - stub.getThawStart();
+            thawCount = thawCount + 1;
+            lastThawNanos = nanos;
+            maxThawNanos = Math.max(maxThawNanos, nanos);
+        }
+    }
+    
+    /**
+     * Запустить поток симуляции.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::runLoop, "mud-simulation");
+        // Поток-демон не мешает приложению завершиться
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Остановить поток симуляции и дождаться его завершения.
+     * Если пул акторов создан движком, он тоже останавливается.
+     * 
+     * Открытые заявки аукциона не сохраняются, поэтому при остановке они
+     * отменяются, а залог возвращается игрокам (см. settleAuction).
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TICK_NANOS / 1_000_000 * 5);
+                if (ownsExecutor) {
+                    executor.shutdown();
+                    executor.awaitTermination(TICK_NANOS * 5, TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        thawLoader.shutdown();
+        settleAuction();
+    }
+    
+    /**
+     * Отменить все открытые заявки аукциона и отдать игрокам всё, что им доставлено,
+     * сохранив их в кэш. Вызывается при остановке, когда тики уже не идут: иначе
+     * залог, который есть только в памяти, пропал бы, а списанное с игрока - осталось.
+     * 
+     * Игроки в мире получают доставки сами; усыпленные собираются из записи
+     * и записываются обратно с той же комнатой.
+     */
+    private void settleAuction() {
+        awaitIdleActors();
+        auctionHouse.cancelAllOrders();
+        WriteBehindPlayerCache cache = persistence;
+        for (String playerId : auctionHouse.getPlayersWithDeliveries()) {
+            TPlayer player = world.findPlayer(playerId);
+            if (player != null) {
+                auctionHouse.collect(player);
+                if (cache != null) {
+                    cache.put(PlayerRecord.of(player));
+                }
+                continue;
+            }
+            HibernatedPlayer stub = hibernated.get(playerId);
+            if (stub == null || cache == null) {
+                continue;
+            }
+            try {
+                PlayerRecord record = cache.get(playerId);
+                if (record == null) {
+                    continue;
+                }
+                TPlayer sleeper = new TPlayer(record.getName(), playerId, 0, 0, record.getHealth(),
+                        stub.getBaseAttackPower());
+                record.applyTo(sleeper);
+                auctionHouse.collect(sleeper);
+                cache.putAndRelease(PlayerRecord.of(sleeper, record.getRoomId()));
+            } catch (IOException e) {
+                // Запись не прочиталась - доставка этого игрока теряется
+            }
+        }
+    }
+    
+    /**
+     * Дождаться, пока акторы закончат последние запуски (пул может быть чужим
+     * и продолжать работу после остановки движка). Ждет не дольше нескольких тиков.
+     */
+    private void awaitIdleActors() {
+        long deadline = System.nanoTime() + TICK_NANOS * 5;
+        for (RoomActor actor : actorList) {
+            while (!actor.isIdle() && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+    
+    /**
+     * Главный цикл потока симуляции: тик с постоянным шагом по времени.
+     */
+    private void runLoop() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            tick(start);
+            
+            // Ждем начала следующего тика. Если тик затянулся, не пытаемся
+            // "догнать" пропущенные тики пачкой - начинаем следующий сразу.
+            nextTick = Math.max(nextTick + TICK_NANOS, System.nanoTime());
+            long wait = nextTick - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+    
+    /**
+     * Выполнить один тик движка.
+     * 
+     * @param start время начала тика (System.nanoTime())
+     */
+    void tick(long start) {
+        tick = tick + 1;
+        
+        // 1. Заканчиваем пробуждения и пересылаем команды игроков акторам комнат
+        finishThaws();
+        playerCommands.drain(router, MAX_COMMANDS_PER_TICK);
+        long routed = System.nanoTime();
+        commandNanos = routed - start;
+        
+        // 2. Уровни симуляции и тики комнат
+        scheduleRooms();
+        schedulingNanos = System.nanoTime() - routed;
+        
+        // 3. Если наблюдаемый игрок не в комнате, снимок строит сам движок
+        TPlayer player = viewer;
+        if (player != null && owners.get(player.getId()) == null) {
+            copyEnginePhases(lobbyPhases);
+            frontSnapshot = lobbySnapshots.capture(tick, System.nanoTime() - start, null, false, lobbyPhases,
+                    0, 0);
+        }
+    }
+    
+    /**
+     * Определить уровень симуляции комнат и попросить нужные комнаты сделать тик.
+     */
+    private void scheduleRooms() {
+        // Комнаты с игроками
+        int occupiedCount = 0;
+        for (RoomActor actor : owners.values()) {
+            if (actor.markOccupied(tick)) {
+                if (occupiedCount == occupied.length) {
+                    occupied = Arrays.copyOf(occupied, occupied.length * 2);
+                }
+                occupied[occupiedCount] = actor;
+                occupiedCount = occupiedCount + 1;
+            }
+        }
+        
+        // Соседи комнат с игроками (выходы не меняются после загрузки мира)
+        for (int i = 0; i < occupiedCount; i++) {
+            TRoom room = occupied[i].getRoom();
+            for (int j = 0; j < room.getExitCount(); j++) {
+                RoomActor neighbour = actors.get(room.getExit(j).getId());
+                if (neighbour != null) {
+                    neighbour.markNearby(tick);
+                }
+            }
+        }
+        Arrays.fill(occupied, 0, occupiedCount, null);
+        
+        int full = 0;
+        int reduced = 0;
+        for (RoomActor actor : actorList) {
+            switch (actor.updateLevel(tick)) {
+                case FULL:
+                    full = full + 1;
+                    actor.requestTick(tick);
+                    break;
+                case REDUCED:
+                    reduced = reduced + 1;
+                    if (tick % REDUCED_INTERVAL == 0) {
+                        actor.requestTick(tick);
+                    }
+                    break;
+                default:
+                    // Спящая комната не симулируется: время она догонит при пробуждении
+                    break;
+            }
+        }
+        fullRoomCount = full;
+        reducedRoomCount = reduced;
+    }
+    
+    /**
+     * Переслать команду игрока актору его комнаты и очистить ячейку.
+     */
+    private void route(Command command) {
+        try {
+            String playerId = command.getPlayerId();
+            RoomActor owner = owners.get(playerId);
+            HibernatedPlayer stub = owner == null ? hibernated.get(playerId) : null;
+            if (stub != null) {
+                // Первая команда усыпленного игрока будит его; команды ждут пробуждения в заглушке
+                if (startThaw(playerId, stub)) {
+                    stub.buffer(command);
+                }
+            } else if (owner != null) {
+                owner.post(command);
+            } else if (command.getType() == CommandType.ENTER_ROOM) {
+                // Игрок не в комнате и принадлежит движку - отправляем его в комнату сами
+                RoomActor target = actorOf(command.getTargetId());
+                if (target != null && world.findPlayer(playerId) != null) {
+                    target.postArrival(playerId);
+                    owners.put(playerId, target);
+                }
+            }
+        } finally {
+            command.clear();
+        }
+    }
+    
+    /**
+     * Запись просыпающегося игрока, прочитанная фоновым потоком.
+     */
+    private static final class LoadedPlayer {
+        
+        // Идентификатор игрока
+        final String playerId;
+        
+        // Запись или null, если прочитать её не удалось
+        final PlayerRecord record;
+        
+        /**
+         * Конструктор.
+         */
+        LoadedPlayer(String playerId, PlayerRecord record) {
+            this.playerId = playerId;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.mudgame.engine;
+
+import java.util.ArrayDeque;
+
+/**
+ * Заглушка усыпленного игрока - всё, что остается от него в памяти.
+ * 
+ * Здоровье, инвентарь и комната усыпленного игрока лежат в хранилище
+ * (PlayerRecord), а сам объект TPlayer с инвентарем удален из мира.
+ * Заглушка хранит только то, чего нет в записи, - базовую силу атаки,
+ * чтобы при пробуждении собрать игрока заново. Идентификатор игрока -
+ * ключ, под которым заглушка лежит в движке.
+ * 
+ * Пока запись игрока читается с диска (в фоне, см. GameEngine), его команды
+ * копируются в очередь заглушки и пересылаются в комнату после пробуждения
+ * в том же порядке. Очередь создается только у просыпающегося игрока.
+ * 
+ * Всё, кроме конструктора, вызывается только потоком движка.
+ */
+final class HibernatedPlayer {
+    
+    // Базовая сила атаки игрока (без оружия)
+    private final int baseAttackPower;
+    
+    // true - запись игрока читается, пробуждение еще не закончено
+    private boolean loading;
+    
+    // Время первой команды, которая начала пробуждение (System.nanoTime())
+    private long thawStart;
+    
+    // Команды, пришедшие во время чтения записи (null - команд не было)
+    private ArrayDeque<Command> pending;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param baseAttackPower базовая сила атаки игрока
+     */
+    HibernatedPlayer(int baseAttackPower) {
+        this.baseAttackPower = baseAttackPower;
+    }
+    
+    /**
+     * Получить базовую силу атаки игрока.
+     */
+    int getBaseAttackPower() {
+        return baseAttackPower;
+    }
+    
+    /**
+     * Проверить, читается ли запись игрока.
+     */
+    boolean isLoading() {
+        return loading;
+    }
+    
+    /**
+     * Отметить начало пробуждения.
+     * 
+     * @param now время команды, которая будит игрока (System.nanoTime())
+     */
+    void startLoading(long now) {
+        loading = true;
+        thawStart = now;
+    }
+    
+    /**
+     * Запись прочитать не удалось: команды, ждавшие пробуждения, отбрасываются,
+     * и следующая команда игрока попробует снова.
+     */
+    void loadFailed() {
+        loading = false;
+        pending = null;
+    }
+    
+    /**
+     * Получить время начала пробуждения (System.nanoTime()).
+     */
+    long getThawStart() {
+        return thawStart;
+    }
+    
+    /**
+     * Сохранить копию команды до пробуждения (ячейка буфера команд будет очищена).
+     * 
+     * @param command команда игрока
+     */
+    void buffer(Command command) {
+        if (pending == null) {
+            pending = new ArrayDeque<>();
+        }
+        Command copy = new Command();
+        copy.copyFrom(command);
+        pending.add(copy);
+    }
+    
+    /**
+     * Забрать следующую команду, ждавшую пробуждения.
+     * 
+     * @return команда или null, если команд больше нет
+     */
+    Command pollPending() {
+        return pending == null ? null : pending.poll();
+    }
+}
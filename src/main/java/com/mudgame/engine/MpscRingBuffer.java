@@ -0,0 +1,178 @@
+package com.mudgame.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Кольцевой буфер "много писателей - один читатель" без блокировок.
+ * 
+ * Буфер заранее заполнен объектами-ячейками, которые используются повторно,
+ * поэтому передача сообщения через буфер не создает мусора.
+ * 
+ * Писатель (любой поток):
+ * <pre>
+ *     long sequence = ring.claim();        // занять ячейку
+ *     ring.get(sequence).set(...);         // заполнить её
+ *     ring.publish(sequence);              // сделать видимой читателю
+ * </pre>
+ * 
+ * Читатель (единственный поток) забирает опубликованные ячейки пачками через drain().
+ * 
+ * Как это работает (по образцу LMAX Disruptor):
+ * - писатели раздают себе номера ячеек атомарным счетчиком claimed (compareAndSet);
+ * - номер ячейки в массиве - это номер по модулю размера буфера;
+ * - опубликованная ячейка помечается своим номером в массиве published;
+ * - читатель идет по номерам подряд и останавливается на первой неопубликованной ячейке;
+ * - писатель не занимает ячейку, пока читатель не обработал её прошлое содержимое.
+ * 
+ * @param <T> тип ячейки
+ */
+public final class MpscRingBuffer<T> {
+    
+    // Сколько раз писатель крутится в ожидании места, прежде чем уступить процессор
+    private static final int MAX_SPINS = 100;
+    
+    // Ячейки буфера
+    private final Object[] slots;
+    
+    // Маска для получения индекса ячейки по номеру (размер буфера - степень двойки)
+    private final int mask;
+    
+    // Номер последней занятой писателями ячейки
+    private final AtomicLong claimed;
+    
+    // Номер, под которым опубликована каждая ячейка
+    private final AtomicLongArray published;
+    
+    // Номер последней обработанной читателем ячейки
+    private volatile long consumed;
+    
+    /**
+     * Конструктор - создает буфер и заполняет его ячейками.
+     * 
+     * @param capacity размер буфера (степень двойки)
+     * @param slotFactory создает пустую ячейку
+     */
+    public MpscRingBuffer(int capacity, Supplier<T> slotFactory) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Размер буфера должен быть степенью двойки: " + capacity);
+        }
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+        this.claimed = new AtomicLong(-1);
+        this.published = new AtomicLongArray(capacity);
+        this.consumed = -1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = slotFactory.get();
+            // Ни одна ячейка еще не опубликована
+            published.set(i, -1);
+        }
+    }
+    
+    /**
+     * Получить размер буфера.
+     */
+    public int capacity() {
+        return slots.length;
+    }
+    
+    /**
+     * Занять следующую ячейку. Если буфер заполнен, ждет, пока читатель его разгрузит:
+     * сначала недолго крутится в цикле, потом уступает процессор другим потокам
+     * (иначе на одном ядре писатель мешал бы читателю освободить место).
+     * 
+     * @return номер занятой ячейки
+     */
+    public long claim() {
+        int spins = 0;
+        while (true) {
+            long sequence = tryClaim();
+            if (sequence >= 0) {
+                return sequence;
+            }
+            if (spins < MAX_SPINS) {
+                spins = spins + 1;
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+    
+    /**
+     * Попробовать занять следующую ячейку, не дожидаясь читателя.
+     * 
+     * @return номер занятой ячейки или -1, если буфер заполнен
+     */
+    public long tryClaim() {
+        while (true) {
+            long current = claimed.get();
+            long next = current + 1;
+            // Ячейка next еще хранит необработанное сообщение с номером next - capacity
+            if (next - slots.length > consumed) {
+                return -1;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+    
+    /**
+     * Получить ячейку по номеру (для заполнения писателем).
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long sequence) {
+        return (T) slots[(int) (sequence & mask)];
+    }
+    
+    /**
+     * Опубликовать заполненную ячейку - после этого её увидит читатель.
+     */
+    public void publish(long sequence) {
+        published.lazySet((int) (sequence & mask), sequence);
+    }
+    
+    /**
+     * Обработать опубликованные ячейки (вызывается только из потока-читателя).
+     * 
+     * Ячейки обрабатываются по порядку номеров; обработка останавливается
+     * на первой еще не опубликованной ячейке или после maxBatch ячеек.
+     * После обработчика ячейка снова может быть занята писателем,
+     * поэтому обработчик не должен сохранять ссылку на неё.
+     * 
+     * @param handler обработчик ячейки
+     * @param maxBatch максимальный размер пачки
+     * @return сколько ячеек обработано
+     */
+    public int drain(Consumer<? super T> handler, int maxBatch) {
+        long first = consumed + 1;
+        int count = 0;
+        try {
+            while (count < maxBatch) {
+                long sequence = first + count;
+                int index = (int) (sequence & mask);
+                if (published.get(index) != sequence) {
+                    break;
+                }
+                count = count + 1;
+                handler.accept(get(sequence));
+            }
+        } finally {
+            // Освобождаем всю пачку разом - одна запись в volatile-поле на пачку
+            if (count > 0) {
+                consumed = first + count - 1;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Примерное количество опубликованных, но еще не обработанных ячеек.
+     */
+    public int size() {
+        return (int) Math.max(0, claimed.get() - consumed);
+    }
+}
@@ -0,0 +1,244 @@
+package com.mudgame.engine;
+
+import com.mudgame.model.TItem;
+import com.mudgame.model.TObjectState;
+import com.mudgame.model.TRoomView;
+import com.mudgame.model.TWeapon;
+
+/**
+ * Снимок состояния игры для отрисовки.
+ * 
+ * Снимок создается потоком симуляции в конце каждого тика и после этого
+ * никогда не меняется. Поэтому поток JavaFX может рисовать его без блокировок,
+ * пока поток симуляции уже считает следующий тик.
+ * 
+ * В снимке хранится комната, в которой находится наблюдаемый игрок,
+ * вид этой комнаты (TRoomView) и замеры тика. Объекты комнаты не копируются в снимок:
+ * вид неизменяем, и снимок лишь ссылается на версию, опубликованную комнатой.
+ * Здоровье и инвентарь игрока интерфейс получает из событий изменений (ChangeEventBus).
+ */
+public final class RenderSnapshot {
+    
+    // Вид объекта: игрок
+    public static final byte KIND_PLAYER = 0;
+    
+    // Вид объекта: NPC
+    public static final byte KIND_NPC = 1;
+    
+    // Вид объекта: предмет
+    public static final byte KIND_ITEM = 2;
+    
+    // Пустой снимок - пока симуляция не сделала ни одного тика
+    public static final RenderSnapshot EMPTY = new RenderSnapshot(0, 0, false, 0, 0, 0, 0,
+            TRoomView.EMPTY, false, new long[TickPhase.values().length], 0, 0);
+    
+    // Номер тика, после которого сделан снимок
+    private final long tick;
+    
+    // Сколько наносекунд занял этот тик
+    private final long tickNanos;
+    
+    // Сколько наносекунд занял каждый этап тика (по номеру TickPhase)
+    private final long[] phaseNanos;
+    
+    // Комната наблюдаемого игрока (если игрок в комнате)
+    private final boolean inRoom;
+    private final double roomX;
+    private final double roomY;
+    private final double roomWidth;
+    private final double roomHeight;
+    
+    // Вид комнаты (объекты по порядку отрисовки: предметы, живые NPC, игроки)
+    private final TRoomView view;
+    
+    // Есть ли в комнате предмет, который наблюдаемый игрок может поднять
+    private final boolean pickableItem;
+    
+    // Сколько работы комната отложила на этом тике и сколько её тиков не уложились в бюджет
+    private final int deferredWork;
+    private final long overBudgetTicks;
+    
+    /**
+     * Конструктор - вызывается только движком. Массивы не копируются:
+     * движок передает новые массивы и больше их не меняет.
+     */
+    RenderSnapshot(long tick, long tickNanos, boolean inRoom, double roomX, double roomY, double roomWidth,
+                   double roomHeight, TRoomView view, boolean pickableItem, long[] phaseNanos, int deferredWork, long overBudgetTicks) {
+        this.tick = tick;
+        this.tickNanos = tickNanos;
+        this.phaseNanos = phaseNanos;
+        this.inRoom = inRoom;
+        this.roomX = roomX;
+        this.roomY = roomY;
+        this.roomWidth = roomWidth;
+        this.roomHeight = roomHeight;
+        this.view = view;
+        this.pickableItem = pickableItem;
+        this.deferredWork = deferredWork;
+        this.overBudgetTicks = overBudgetTicks;
+    }
+    
+    /**
+     * Получить номер тика, после которого сделан снимок.
+     */
+    public long getTick() {
+        return tick;
+    }
+    
+    /**
+     * Получить длительность тика в наносекундах.
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+    
+    /**
+     * Получить длительность этапа тика в наносекундах.
+     * 
+     * @param phase этап тика
+     * @return длительность этапа (0, если этап на этом тике не выполнялся)
+     */
+    public long getPhaseNanos(TickPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+    
+    /**
+     * Проверить, находится ли наблюдаемый игрок в комнате.
+     */
+    public boolean isInRoom() {
+        return inRoom;
+    }
+    
+    /**
+     * Получить координату X левой границы комнаты.
+     */
+    public double getRoomX() {
+        return roomX;
+    }
+    
+    /**
+     * Получить координату Y верхней границы комнаты.
+     */
+    public double getRoomY() {
+        return roomY;
+    }
+    
+    /**
+     * Получить ширину комнаты.
+     */
+    public double getRoomWidth() {
+        return roomWidth;
+    }
+    
+    /**
+     * Получить высоту комнаты.
+     */
+    public double getRoomHeight() {
+        return roomHeight;
+    }
+    
+    /**
+     * Получить вид комнаты, по которому построен снимок (пустой, если игрок не в комнате).
+     */
+    public TRoomView getView() {
+        return view;
+    }
+    
+    /**
+     * Получить количество объектов в снимке.
+     */
+    public int getEntityCount() {
+        return view.getObjectCount();
+    }
+    
+    /**
+     * Получить вид объекта (KIND_PLAYER, KIND_NPC или KIND_ITEM).
+     */
+    public byte getKind(int index) {
+        if (index < view.getItems().size()) {
+            return KIND_ITEM;
+        }
+        if (index < view.getItems().size() + view.getNPCs().size()) {
+            return KIND_NPC;
+        }
+        return KIND_PLAYER;
+    }
+    
+    /**
+     * Получить координату X объекта.
+     */
+    public double getX(int index) {
+        return stateOf(index).getX();
+    }
+    
+    /**
+     * Получить координату Y объекта.
+     */
+    public double getY(int index) {
+        return stateOf(index).getY();
+    }
+    
+    /**
+     * Получить имя объекта.
+     */
+    public String getName(int index) {
+        return stateOf(index).getName();
+    }
+    
+    /**
+     * Проверить, есть ли в комнате предмет, который наблюдаемый игрок может поднять
+     * (см. TPlayer.canPickUpItem).
+     */
+    public boolean hasPickableItem() {
+        return pickableItem;
+    }
+    
+    /**
+     * Собрать строку инвентаря для стопки предметов: имя, количество
+     * (если предметов несколько) и бонус атаки (для оружия).
+     * 
+     * @param item любой предмет стопки
+     * @param count количество предметов в стопке
+     */
+    public static String inventoryLine(TItem item, int count) {
+        String line = item.getName();
+        // Если предметов в стопке несколько, показываем их количество
+        if (count > 1) {
+            line = line + " x" + count;
+        }
+        // Если это оружие, добавляем информацию о силе атаки
+        if (item instanceof TWeapon) {
+            line = line + " (Атака: +" + ((TWeapon) item).getAttackPower() + ")";
+        }
+        return line;
+    }
+    
+    /**
+     * Получить, сколько работы (ходов NPC, сохранений) комната отложила на этом тике.
+     */
+    public int getDeferredWork() {
+        return deferredWork;
+    }
+    
+    /**
+     * Получить, сколько тиков комнаты не уложились в бюджет (TickGovernor).
+     */
+    public long getOverBudgetTicks() {
+        return overBudgetTicks;
+    }
+    
+    /**
+     * Найти состояние объекта по сквозному номеру: сначала предметы, потом NPC, потом игроки.
+     */
+    private TObjectState stateOf(int index) {
+        int items = view.getItems().size();
+        if (index < items) {
+            return view.getItems().get(index);
+        }
+        int npcs = view.getNPCs().size();
+        if (index < items + npcs) {
+            return view.getNPCs().get(index - items);
+        }
+        return view.getPlayers().get(index - items - npcs);
+    }
+}
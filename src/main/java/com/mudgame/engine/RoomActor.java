@@ -0,0 +1,730 @@
+package com.mudgame.engine;
+
+import com.mudgame.market.AuctionHouse;
+import com.mudgame.model.TItem;
+import com.mudgame.model.TNPC;
+import com.mudgame.model.TPlayer;
+import com.mudgame.model.TRoom;
+import com.mudgame.persistence.PlayerRecord;
+import com.mudgame.persistence.WriteBehindPlayerCache;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Актор комнаты - единственный владелец комнаты и всего, что в ней находится.
+ * 
+ * Комнату, её NPC, предметы и находящихся в ней игроков меняет только актор
+ * этой комнаты. Всё остальное общается с ним сообщениями через его почтовый ящик
+ * (кольцевой буфер команд): команды игроков, вход игрока в комнату, запрос тика.
+ * 
+ * Актор не держит за собой поток: когда в ящике появляются сообщения, он ставит
+ * себя в очередь общего пула потоков и обрабатывает всё накопившееся за один запуск.
+ * Один актор никогда не выполняется двумя потоками сразу, а разные комнаты
+ * выполняются параллельно на разных ядрах и не ждут друг друга.
+ * 
+ * Переход игрока в другую комнату - это тоже сообщение: актор старой комнаты
+ * убирает игрока из своей комнаты и отправляет актору новой сообщение о приходе,
+ * после чего команды игрока идут новому владельцу.
+ * 
+ * Тики приходят не каждому актору: движок решает, как часто симулировать комнату
+ * (SimulationLevel). Если с прошлого хода NPC прошло несколько тиков движка,
+ * актор не выполняет их по одному, а прокручивает итог сразу (TNPC.fastForward).
+ * 
+ * Тик комнаты укладывается в бюджет (TickGovernor): NPC в бою ходят каждый тик,
+ * а NPC вне боя - по кругу, пока есть время; до остальных очередь дойдет
+ * на следующих тиках, и они прокрутят пропущенное. Откладываемая работа не может
+ * голодать, даже если обязательная одна съедает весь бюджет: за тик ходят
+ * не меньше MIN_IDLE_NPCS_PER_TICK NPC вне боя (каждый NPC ходит хотя бы раз
+ * за ceil(NPC / MIN_IDLE_NPCS_PER_TICK) тиков комнаты), а игроки отдаются в кэш
+ * сохранения не реже раза в MAX_SAVE_DELAY_TICKS тиков.
+ * 
+ * Торговля на аукционе (AuctionHouse) тоже не нарушает владения: актор сам
+ * забирает у игрока залог заявки и сам отдает ему доставки аукциона в начале тика.
+ * 
+ * Отправка сообщения актору никогда не ждет: если ящик заполнен, сообщение
+ * кладется в очередь переполнения. Иначе актор, пересылающий команды в заполненный
+ * ящик другого актора, занял бы поток пула, который нужен получателю
+ * (а на одноядерной машине поток в пуле всего один).
+ */
+final class RoomActor implements Runnable {
+    
+    // Размер почтового ящика комнаты (степень двойки)
+    private static final int MAILBOX_SIZE = 1024;
+    
+    // Сколько сообщений обрабатывается за один запуск (остальные ждут следующего)
+    private static final int MAX_MESSAGES_PER_RUN = MAILBOX_SIZE;
+    
+    // Бюджет тика комнаты: пятая часть тика движка
+    private static final long TICK_BUDGET_NANOS = GameEngine.TICK_NANOS / 5;
+    
+    // Раз во сколько NPC вне боя проверяется, остался ли бюджет
+    private static final int BUDGET_CHECK_INTERVAL = 16;
+    
+    // Сколько NPC вне боя ходят за тик, даже если бюджет уже кончился
+    static final int MIN_IDLE_NPCS_PER_TICK = 64;
+    
+    // Сохранение и усыпление игроков откладываются не больше чем на столько тиков подряд
+    // (комната с игроками тикает каждый тик движка - это одна секунда)
+    static final int MAX_SAVE_DELAY_TICKS = GameEngine.TICKS_PER_SECOND;
+    
+    // Комната актора
+    private final TRoom room;
+    
+    // Движок (справочник владельцев игроков и публикация снимков)
+    private final GameEngine engine;
+    
+    // Пул потоков, на котором выполняется актор
+    private final Executor executor;
+    
+    // Почтовый ящик
+    private final MpscRingBuffer<Command> mailbox;
+    
+    // Сообщения, не поместившиеся в ящик (обрабатываются после сообщений из ящика)
+    private final ConcurrentLinkedQueue<Command> overflow;
+    
+    // Обработчик сообщений из ящика (создается один раз, чтобы не создавать его каждый запуск)
+    private final Consumer<Command> handler;
+    
+    // true - актор уже стоит в очереди пула или выполняется
+    private final AtomicBoolean scheduled;
+    
+    // Последний тик, который движок попросил выполнить
+    private volatile long requestedTick;
+    
+    // Последний выполненный тик (меняется только самим актором)
+    private long completedTick;
+    
+    // Последний тик движка, на котором в комнате были игроки и на котором
+    // комната была соседней с комнатой игроков (меняются только потоком движка)
+    private long occupiedTick;
+    private long nearbyTick;
+    
+    // Уровень симуляции на последнем тике движка
+    private volatile SimulationLevel level;
+    
+    // Снимки для игрока, которого показывает интерфейс
+    private final SnapshotBuilder snapshots;
+    
+    // Генератор случайных чисел для размещения входящих игроков
+    private final Random random;
+    
+    // Длительность этапов последнего тика по номеру TickPhase (массив переиспользуется)
+    private final long[] phaseNanos;
+    
+    // Регулятор бюджета тика
+    private final TickGovernor governor;
+    
+    // Тик движка, на котором каждый NPC комнаты (по номеру) ходил последний раз
+    private long[] npcTicks;
+    
+    // С какого NPC начинается следующий обход NPC вне боя
+    private int idleCursor;
+    
+    // Сколько тиков подряд сохранение откладывалось из-за бюджета
+    private int savesDeferred;
+    
+    // Обработчики команд по номеру CommandType и разбор текстовых команд
+    private final CommandHandler[] handlers;
+    private final CommandParser parser;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param room комната
+     * @param engine движок
+     * @param executor пул потоков для выполнения актора
+     */
+    RoomActor(TRoom room, GameEngine engine, Executor executor) {
+        this.room = room;
+        this.engine = engine;
+        this.executor = executor;
+        this.mailbox = new MpscRingBuffer<>(MAILBOX_SIZE, Command::new);
+        this.overflow = new ConcurrentLinkedQueue<>();
+        this.handler = this::handle;
+        this.scheduled = new AtomicBoolean(false);
+        this.snapshots = new SnapshotBuilder();
+        this.random = new Random();
+        this.phaseNanos = new long[TickPhase.values().length];
+        this.level = SimulationLevel.DORMANT;
+        this.governor = new TickGovernor(TICK_BUDGET_NANOS);
+        this.npcTicks = new long[0];
+        this.idleCursor = 0;
+        
+        // Одна таблица обработчиков и для кнопок, и для набранного текста
+        this.handlers = new CommandHandler[CommandType.values().length];
+        this.parser = new CommandParser(Command.MAX_TEXT_LENGTH);
+        on(CommandType.ENTER_ROOM, this::transfer);
+        on(CommandType.MOVE, (player, target) -> player.move());
+        on(CommandType.ATTACK, this::attack);
+        on(CommandType.PICK_UP, this::pickUp);
+        on(CommandType.SELL, this::sell);
+        on(CommandType.BUY, this::buy);
+        on(CommandType.CANCEL, this::cancel);
+    }
+    
+    /**
+     * Назначить обработчик команды - для кнопок и, если у команды есть глаголы, для текста.
+     */
+    private void on(CommandType type, CommandHandler handler) {
+        handlers[type.ordinal()] = handler;
+        if (type.getVerbCount() > 0) {
+            parser.on(type, handler);
+        }
+    }
+    
+    /**
+     * Получить комнату актора.
+     */
+    TRoom getRoom() {
+        return room;
+    }
+    
+    /**
+     * Отметить, что на тике tick в комнате есть игроки (вызывается потоком движка).
+     * 
+     * @return true если комната отмечена впервые на этом тике
+     */
+    boolean markOccupied(long tick) {
+        if (occupiedTick == tick) {
+            return false;
+        }
+        occupiedTick = tick;
+        return true;
+    }
+    
+    /**
+     * Отметить, что на тике tick комната соседняя с комнатой игроков (вызывается потоком движка).
+     */
+    void markNearby(long tick) {
+        nearbyTick = tick;
+    }
+    
+    /**
+     * Определить уровень симуляции на тике tick по отметкам (вызывается потоком движка).
+     */
+    SimulationLevel updateLevel(long tick) {
+        if (occupiedTick == tick) {
+            level = SimulationLevel.FULL;
+        } else if (nearbyTick == tick) {
+            level = SimulationLevel.REDUCED;
+        } else {
+            level = SimulationLevel.DORMANT;
+        }
+        return level;
+    }
+    
+    /**
+     * Получить уровень симуляции на последнем тике движка.
+     */
+    SimulationLevel getLevel() {
+        return level;
+    }
+    
+    /**
+     * Отправить актору копию команды. Метод можно вызывать из любого потока.
+     * 
+     * @param source команда (после вызова её ячейку можно использовать снова)
+     */
+    void post(Command source) {
+        // Пока в очереди переполнения что-то есть, новые сообщения идут туда же,
+        // чтобы сообщения одного отправителя не обгоняли друг друга
+        long sequence = overflow.isEmpty() ? mailbox.tryClaim() : -1;
+        if (sequence >= 0) {
+            mailbox.get(sequence).copyFrom(source);
+            mailbox.publish(sequence);
+        } else {
+            Command command = new Command();
+            command.copyFrom(source);
+            overflow.add(command);
+        }
+        schedule();
+    }
+    
+    /**
+     * Сообщить актору, что игрок пришел в его комнату. Метод можно вызывать из любого потока,
+     * но только после того, как прежний владелец убрал игрока из своей комнаты.
+     * 
+     * @param playerId идентификатор игрока
+     */
+    void postArrival(String playerId) {
+        long sequence = overflow.isEmpty() ? mailbox.tryClaim() : -1;
+        if (sequence >= 0) {
+            mailbox.get(sequence).setArrival(playerId, room.getId());
+            mailbox.publish(sequence);
+        } else {
+            Command command = new Command();
+            command.setArrival(playerId, room.getId());
+            overflow.add(command);
+        }
+        schedule();
+    }
+    
+    /**
+     * Попросить актора выполнить тик. Тики, пропущенные с прошлого тика комнаты
+     * (комната спала, симулировалась реже или не успевала), не выполняются
+     * по одному - их итог прокручивается сразу.
+     * 
+     * @param tick номер тика
+     */
+    void requestTick(long tick) {
+        requestedTick = tick;
+        schedule();
+    }
+    
+    /**
+     * Проверить, что актор не выполняется и не стоит в очереди пула.
+     */
+    boolean isIdle() {
+        return !scheduled.get();
+    }
+    
+    /**
+     * Поставить актора в очередь пула, если он там еще не стоит.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+    }
+    
+    /**
+     * Один запуск актора: обработать сообщения и, если нужно, выполнить тик.
+     */
+    @Override
+    public void run() {
+        try {
+            long start = System.nanoTime();
+            mailbox.drain(handler, MAX_MESSAGES_PER_RUN);
+            Command command;
+            for (int i = 0; i < MAX_MESSAGES_PER_RUN && (command = overflow.poll()) != null; i++) {
+                handle(command);
+            }
+            long tick = requestedTick;
+            if (tick > completedTick) {
+                completedTick = tick;
+                simulate(tick, start);
+            }
+        } finally {
+            scheduled.set(false);
+            // Сообщение могло прийти после drain, но до сброса флага - тогда его
+            // отправитель не смог поставить актора в очередь, и это делаем мы
+            if (mailbox.size() > 0 || !overflow.isEmpty() || requestedTick > completedTick) {
+                schedule();
+            }
+        }
+    }
+    
+    /**
+     * Выполнить тик комнаты, опубликовать её вид и, если в ней наблюдаемый игрок, снимок.
+     * 
+     * Обязательная работа (NPC в бою, столкновения, вид) выполняется всегда,
+     * откладываемая (NPC вне боя, сохранение) - пока не кончился бюджет тика.
+     * 
+     * @param tick номер тика движка
+     * @param start время начала запуска актора (System.nanoTime()), включая обработку сообщений
+     */
+    private void simulate(long tick, long start) {
+        governor.startTick(start);
+        watchViewer();
+        collectDeliveries();
+        long time = System.nanoTime();
+        phaseNanos[TickPhase.ROOM_MESSAGES.ordinal()] = time - start;
+        // Поле потока пересчитывается только если игроки сменили ячейки
+        room.getFlowField().update();
+        time = phase(TickPhase.FLOW_FIELD, time);
+        tickCombatNPCs(tick);
+        time = phase(TickPhase.NPCS, time);
+        room.resolveCollisions();
+        time = phase(TickPhase.COLLISIONS, time);
+        tickIdleNPCs(tick);
+        time = phase(TickPhase.IDLE_NPCS, time);
+        if (governor.hasTime() || savesDeferred >= MAX_SAVE_DELAY_TICKS) {
+            // Сохранение идет и без бюджета, если откладывалось слишком долго:
+            // иначе при постоянной перегрузке игроки комнаты не попали бы в кэш никогда
+            hibernateIdlePlayers(tick);
+            save();
+            savesDeferred = 0;
+        } else {
+            // Изменившиеся игроки не потеряются: кэш сравнивает версии, и их отдаст следующий тик
+            savesDeferred = savesDeferred + 1;
+            governor.defer(1);
+        }
+        time = phase(TickPhase.SAVE, time);
+        room.publishView(tick);
+        time = phase(TickPhase.PUBLISH, time);
+        governor.endTick(time);
+        
+        TPlayer viewer = engine.getViewer();
+        if (viewer != null && room.containsPlayer(viewer)) {
+            engine.copyEnginePhases(phaseNanos);
+            engine.publish(snapshots.capture(tick, System.nanoTime() - start, room, viewer.canPickUpItem(),
+                    phaseNanos, governor.getDeferred(), governor.getOverBudgetTicks()));
+        }
+    }
+    
+    /**
+     * Подключить шину изменений к наблюдаемому игроку и его комнате, пока он здесь,
+     * и отключить от комнаты, когда он ушел.
+     * 
+     * Подключение присылает интерфейсу всё состояние заново; то же делается,
+     * если интерфейс потерял изменения и попросил состояние снова.
+     */
+    private void watchViewer() {
+        ChangeEventBus bus = engine.getChangeEvents();
+        TPlayer viewer = engine.getViewer();
+        boolean watched = viewer != null && room.containsPlayer(viewer);
+        if (!watched) {
+            if (room.getChangeListener() != null) {
+                room.setChangeListener(null);
+            }
+            return;
+        }
+        boolean reset = bus.takeResetRequest();
+        if (reset || viewer.getChangeListener() != bus) {
+            viewer.setChangeListener(bus);
+        }
+        if (reset || room.getChangeListener() != bus) {
+            room.setChangeListener(bus);
+        }
+    }
+    
+    /**
+     * Отдать игрокам комнаты то, что им доставил аукцион: купленное, выручку, возвращенный залог.
+     */
+    private void collectDeliveries() {
+        AuctionHouse house = engine.getAuctionHouse();
+        for (int i = 0; i < room.getPlayerCount(); i++) {
+            TPlayer player = room.getPlayer(i);
+            if (house.hasDeliveries(player.getId())) {
+                house.collect(player);
+            }
+        }
+    }
+    
+    /**
+     * Обязательная работа: ход каждого NPC, занятого боем (TNPC.isInCombat).
+     */
+    private void tickCombatNPCs(long tick) {
+        int count = room.getNPCCount();
+        if (npcTicks.length < count) {
+            // Новые NPC считаются ходившими на прошлом тике - прокручивать им нечего
+            int old = npcTicks.length;
+            npcTicks = Arrays.copyOf(npcTicks, count);
+            Arrays.fill(npcTicks, old, count, tick - 1);
+        }
+        for (int i = 0; i < count; i++) {
+            if (room.getNPC(i).isInCombat()) {
+                tickNPC(i, tick);
+            }
+        }
+    }
+    
+    /**
+     * Откладываемая работа: ходы NPC вне боя по кругу, пока есть бюджет.
+     * 
+     * Очередной обход начинается с NPC, на котором остановился прошлый, и за тик
+     * проходит не меньше MIN_IDLE_NPCS_PER_TICK NPC, даже без бюджета. Поэтому
+     * при любой перегрузке до каждого NPC очередь доходит (и погибшие возрождаются).
+     */
+    private void tickIdleNPCs(long tick) {
+        int count = room.getNPCCount();
+        for (int visited = 0; visited < count; visited++) {
+            if (visited >= MIN_IDLE_NPCS_PER_TICK && visited % BUDGET_CHECK_INTERVAL == 0 && !governor.hasTime()) {
+                // Бюджет кончился - считаем, сколько NPC остались без хода
+                int waiting = 0;
+                for (int i = 0; i < count; i++) {
+                    if (npcTicks[i] < tick) {
+                        waiting = waiting + 1;
+                    }
+                }
+                governor.defer(waiting);
+                return;
+            }
+            int i = idleCursor;
+            idleCursor = (idleCursor + 1) % count;
+            if (npcTicks[i] < tick) {
+                tickNPC(i, tick);
+            }
+        }
+    }
+    
+    /**
+     * Ход NPC: сначала прокрутка тиков, которые он пропустил (комната спала
+     * или его ход откладывался), потом ход текущего тика.
+     */
+    private void tickNPC(int index, long tick) {
+        TNPC npc = room.getNPC(index);
+        long missed = tick - npcTicks[index] - 1;
+        if (missed > 0) {
+            npc.fastForward((int) Math.min(Integer.MAX_VALUE, missed));
+        }
+        npc.tick();
+        npcTicks[index] = tick;
+    }
+    
+    /**
+     * Записать длительность этапа тика, начавшегося в момент since.
+     * 
+     * @return время окончания этапа (начало следующего)
+     */
+    private long phase(TickPhase phase, long since) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] = now - since;
+        return now;
+    }
+    
+    /**
+     * Усыпить игроков, которые не отдавали команд дольше порога движка.
+     * 
+     * Последняя запись игрока уходит в кэш сохранения (и после записи на диск
+     * покидает память), игрок выходит из комнаты, а движок оставляет от него заглушку.
+     */
+    private void hibernateIdlePlayers(long tick) {
+        long idleTicks = engine.getHibernateAfterTicks();
+        WriteBehindPlayerCache cache = engine.getPersistence();
+        if (idleTicks <= 0 || cache == null) {
+            return;
+        }
+        TPlayer viewer = engine.getViewer();
+        // С конца, потому что усыпленный игрок удаляется из массива комнаты
+        for (int i = room.getPlayerCount() - 1; i >= 0; i--) {
+            TPlayer player = room.getPlayer(i);
+            if (player != viewer && tick - player.getLastActiveTick() > idleTicks) {
+                cache.putAndRelease(PlayerRecord.of(player));
+                player.setCurrentRoom(null);
+                engine.hibernate(player);
+            }
+        }
+    }
+    
+    /**
+     * Отдать в кэш сохранения игроков комнаты, изменившихся с прошлого сохранения.
+     * 
+     * Запись снимается здесь, потому что читать игрока может только владелец;
+     * на диск её запишет фоновый поток кэша.
+     */
+    private void save() {
+        WriteBehindPlayerCache cache = engine.getPersistence();
+        if (cache == null) {
+            return;
+        }
+        for (int i = 0; i < room.getPlayerCount(); i++) {
+            TPlayer player = room.getPlayer(i);
+            if (!cache.isCurrent(player.getId(), player.getVersion())) {
+                cache.put(PlayerRecord.of(player));
+            }
+        }
+    }
+    
+    /**
+     * Обработать одно сообщение из ящика и очистить ячейку.
+     */
+    private void handle(Command command) {
+        try {
+            execute(command);
+        } finally {
+            command.clear();
+        }
+    }
+    
+    /**
+     * Выполнить команду игрока.
+     */
+    private void execute(Command command) {
+        TPlayer player = engine.getWorld().findPlayer(command.getPlayerId());
+        if (player == null) {
+            // Игрок уснул, пока команда шла сюда, - будить его должен движок
+            if (engine.isHibernated(command.getPlayerId())) {
+                engine.requeue(command);
+            }
+            return;
+        }
+        
+        if (command.isArrival()) {
+            // Игрок пришел в эту комнату (прежний владелец уже убрал его из своей)
+            player.setCurrentRoom(room);
+            room.moveToFreeSpot(player, random);
+            player.markActive(engine.getTick());
+            return;
+        }
+        if (!room.containsPlayer(player)) {
+            // Игрок уже ушел отсюда - пересылаем команду новому владельцу
+            RoomActor owner = engine.ownerOf(player.getId());
+            if (owner != null && owner != this) {
+                owner.post(command);
+            }
+            return;
+        }
+        
+        player.markActive(engine.getTick());
+        if (!player.isAlive()) {
+            return;
+        }
+        if (command.getType() == CommandType.TEXT) {
+            // Набранная текстом команда разбирается прямо из байтов ячейки
+            parser.execute(player, command.getText());
+            return;
+        }
+        CommandHandler handler = handlers[command.getType().ordinal()];
+        if (handler != null) {
+            handler.execute(player, command.getTargetId());
+        }
+    }
+    
+    /**
+     * Атаковать NPC комнаты.
+     * 
+     * Без цели игрок атакует ближайшего живого NPC; цель - начало имени
+     * ("гоб", "2.гоблин") или идентификатор NPC.
+     */
+    private void attack(TPlayer player, CharSequence target) {
+        TNPC npc = target != null
+                ? findTarget(target)
+                : room.npcs().alive().nearest(player.getX(), player.getY());
+        if (npc != null && npc.isAlive()) {
+            int damage = player.attack(npc);
+            engine.getStats().recordHit(player.getId(), npc.getName(), damage, !npc.isAlive());
+        }
+    }
+    
+    /**
+     * Поднять предмет: без цели - первый предмет комнаты, иначе - предмет по началу имени.
+     */
+    private void pickUp(TPlayer player, CharSequence target) {
+        TItem item = target != null ? player.pickUpItem(target) : player.pickUpItem();
+        if (item != null) {
+            engine.getStats().recordPickUp(player.getId());
+        }
+    }
+    
+    /**
+     * Выставить предмет инвентаря на аукцион: "меч 50" - продать первый меч не дешевле 50.
+     * 
+     * Предмет сразу уходит из инвентаря в залог аукциона; если заявку отменят,
+     * он вернется доставкой.
+     */
+    private void sell(TPlayer player, CharSequence target) {
+        int priceStart = priceStart(target);
+        if (priceStart < 0) {
+            return;
+        }
+        long price = parsePrice(target, priceStart);
+        TItem item = player.getInventory().findByName(target.subSequence(0, priceStart).toString().trim());
+        if (price <= 0 || item == null) {
+            return;
+        }
+        player.getInventory().remove(item);
+        engine.getAuctionHouse().sell(player.getId(), item, price);
+    }
+    
+    /**
+     * Подать на аукцион заявку на покупку: "меч 60" - купить меч не дороже 60.
+     * 
+     * Купить можно только то, что на аукционе уже выставляли (шаблон ищется по имени).
+     * Золото по цене заявки сразу уходит в залог; сдача придет вместе с предметом.
+     */
+    private void buy(TPlayer player, CharSequence target) {
+        int priceStart = priceStart(target);
+        if (priceStart < 0) {
+            return;
+        }
+        long price = parsePrice(target, priceStart);
+        AuctionHouse house = engine.getAuctionHouse();
+        String templateId = house.findTemplate(target.subSequence(0, priceStart).toString().trim());
+        if (price <= 0 || templateId == null || !player.spendGold(price)) {
+            return;
+        }
+        house.buy(player.getId(), templateId, price);
+    }
+    
+    /**
+     * Отменить заявки игрока на аукционе: без имени - все, "меч" - заявки на меч.
+     * Залог вернется доставкой.
+     */
+    private void cancel(TPlayer player, CharSequence target) {
+        AuctionHouse house = engine.getAuctionHouse();
+        String name = target == null ? "" : target.toString().trim();
+        if (name.isEmpty()) {
+            house.cancelAll(player.getId());
+            return;
+        }
+        String templateId = house.findTemplate(name);
+        if (templateId != null) {
+            house.cancelAll(player.getId(), templateId);
+        }
+    }
+    
+    /**
+     * Найти начало цены - последнего слова заявки, состоящего из цифр.
+     * 
+     * @return индекс начала цены или -1, если цены или имени нет
+     */
+    private static int priceStart(CharSequence target) {
+        if (target == null) {
+            return -1;
+        }
+        int end = target.length();
+        int start = end;
+        while (start > 0 && Character.isDigit(target.charAt(start - 1))) {
+            start = start - 1;
+        }
+        if (start == end || start == 0 || !Character.isWhitespace(target.charAt(start - 1))) {
+            return -1;
+        }
+        return start;
+    }
+    
+    /**
+     * Разобрать цену с индекса start до конца заявки.
+     * 
+     * @return цена или -1, если число слишком велико
+     */
+    private static long parsePrice(CharSequence target, int start) {
+        long price = 0;
+        for (int i = start; i < target.length(); i++) {
+            price = price * 10 + Character.digit(target.charAt(i), 10);
+            if (price > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return price;
+    }
+    
+    /**
+     * Найти NPC-цель атаки по началу имени или по идентификатору.
+     * 
+     * Сначала индекс имен (обычный путь текстовых команд), и только если имя
+     * не нашлось - перебор по идентификатору.
+     */
+    private TNPC findTarget(CharSequence target) {
+        TNPC npc = room.findNPCByName(target);
+        return npc != null ? npc : room.findNPC(target);
+    }
+    
+    /**
+     * Перевести игрока из этой комнаты в другую.
+     * 
+     * @param roomId идентификатор комнаты (вход в комнату текстом не набирается,
+     *               поэтому здесь всегда строка из Command.getTargetId())
+     */
+    private void transfer(TPlayer player, CharSequence roomId) {
+        if (roomId == null) {
+            return;
+        }
+        RoomActor target = engine.actorOf(roomId.toString());
+        if (target == null || target == this) {
+            return;
+        }
+        // Сначала уходим отсюда, потом отправляем сообщение новой комнате
+        // и только после этого меняем владельца: команды, пришедшие сюда позже,
+        // будут пересланы и окажутся в ящике новой комнаты после входа игрока
+        player.setCurrentRoom(null);
+        target.postArrival(player.getId());
+        engine.setOwner(player.getId(), target);
+    }
+}
@@ -0,0 +1,16 @@
+package com.mudgame.engine;
+
+/**
+ * Уровень детализации симуляции комнаты.
+ */
+public enum SimulationLevel {
+    
+    // В комнате есть игроки - тик каждый тик движка
+    FULL,
+    
+    // Соседняя с комнатой игрока - тик раз в GameEngine.REDUCED_INTERVAL тиков
+    REDUCED,
+    
+    // Никого рядом - комната не симулируется и догоняет время при пробуждении
+    DORMANT
+}
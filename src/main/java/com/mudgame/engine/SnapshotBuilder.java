@@ -0,0 +1,46 @@
+package com.mudgame.engine;
+
+import com.mudgame.model.TRoom;
+import com.mudgame.model.TRoomView;
+
+/**
+ * Построитель снимков состояния для отрисовки.
+ * 
+ * Снимок строит тот поток, которому сейчас принадлежат комната и игрок:
+ * актор комнаты (RoomActor), если игрок в комнате, или поток движка, если нет.
+ * 
+ * Объекты комнаты в снимок не копируются: снимок ссылается на последний
+ * опубликованный вид комнаты (TRoom.publishView), который уже неизменяем.
+ * Инвентарь и здоровье игрока в снимок не попадают: интерфейс узнает
+ * о них из событий изменений (ChangeEventBus).
+ */
+final class SnapshotBuilder {
+    
+    /**
+     * Конструктор.
+     */
+    SnapshotBuilder() {
+    }
+    
+    /**
+     * Построить снимок комнаты игрока.
+     * 
+     * @param tick номер тика
+     * @param tickNanos длительность тика в наносекундах
+     * @param room комната игрока или null, если игрок не в комнате
+     * @param pickableItem может ли игрок поднять предмет в комнате (TPlayer.canPickUpItem)
+     * @param phaseNanos длительность этапов тика по номеру TickPhase (массив копируется)
+     * @param deferredWork сколько работы комната отложила на этом тике (TickGovernor)
+     * @param overBudgetTicks сколько тиков комнаты не уложились в бюджет
+     * @return новый снимок
+     */
+    RenderSnapshot capture(long tick, long tickNanos, TRoom room, boolean pickableItem, long[] phaseNanos,
+                           int deferredWork, long overBudgetTicks) {
+        if (room == null) {
+            return new RenderSnapshot(tick, tickNanos, false, 0, 0, 0, 0, TRoomView.EMPTY, false,
+                    phaseNanos.clone(), 0, 0);
+        }
+        return new RenderSnapshot(tick, tickNanos, true, room.getX(), room.getY(), room.getWidth(),
+                room.getHeight(), room.getView(), pickableItem, phaseNanos.clone(), deferredWork, overBudgetTicks);
+    }
+}
@@ -0,0 +1,91 @@
+package com.mudgame.engine;
+
+/**
+ * Регулятор тика комнаты - следит, чтобы тик укладывался в бюджет времени.
+ * 
+ * Работа тика делится на обязательную и откладываемую. Обязательная выполняется
+ * всегда: команды игроков, ходы NPC в бою, столкновения, публикация вида.
+ * Откладываемая - ходы NPC вне боя (блуждания, ожидание возрождения, прокрутка
+ * тиков, которые комната проспала) и передача игроков в кэш сохранения -
+ * выполняется, только пока не кончился бюджет, а остаток переходит на следующие тики.
+ * 
+ * Поэтому всплеск боя или ИИ в одной комнате не растягивает тик без предела:
+ * тик длится не дольше бюджета плюс обязательная работа, а отложенное
+ * догоняется, когда нагрузка спадет (NPC прокручивают пропущенные тики сразу).
+ * 
+ * У каждого актора комнаты свой регулятор; регулятор не потокобезопасен.
+ */
+final class TickGovernor {
+    
+    // Бюджет тика комнаты в наносекундах
+    private final long budgetNanos;
+    
+    // Момент, после которого откладываемая работа не начинается (System.nanoTime())
+    private long deadline;
+    
+    // Сколько единиц работы отложено на текущем тике
+    private int deferred;
+    
+    // Сколько тиков не уложились в бюджет (всего)
+    private long overBudgetTicks;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param budgetNanos бюджет тика комнаты в наносекундах
+     */
+    TickGovernor(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+    
+    /**
+     * Начать тик.
+     * 
+     * @param start время начала тика (System.nanoTime()), включая обработку сообщений
+     */
+    void startTick(long start) {
+        deadline = start + budgetNanos;
+        deferred = 0;
+    }
+    
+    /**
+     * Проверить, остался ли бюджет на откладываемую работу.
+     */
+    boolean hasTime() {
+        return System.nanoTime() - deadline < 0;
+    }
+    
+    /**
+     * Записать, что часть работы отложена на следующие тики.
+     * 
+     * @param units сколько единиц работы отложено (NPC, сохранений)
+     */
+    void defer(int units) {
+        deferred = deferred + units;
+    }
+    
+    /**
+     * Закончить тик.
+     * 
+     * @param end время окончания тика (System.nanoTime())
+     */
+    void endTick(long end) {
+        if (end - deadline > 0) {
+            overBudgetTicks = overBudgetTicks + 1;
+        }
+    }
+    
+    /**
+     * Получить, сколько единиц работы отложено на последнем тике.
+     */
+    int getDeferred() {
+        return deferred;
+    }
+    
+    /**
+     * Получить, сколько тиков не уложились в бюджет.
+     */
+    long getOverBudgetTicks() {
+        return overBudgetTicks;
+    }
+}
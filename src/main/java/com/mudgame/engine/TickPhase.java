@@ -0,0 +1,36 @@
+package com.mudgame.engine;
+
+/**
+ * Этапы тика, длительность которых попадает в снимок (для панели производительности).
+ * 
+ * Первые два этапа выполняет поток движка, остальные - актор комнаты наблюдаемого игрока.
+ */
+public enum TickPhase {
+    
+    // Пересылка команд игроков акторам комнат (поток движка)
+    COMMANDS,
+    
+    // Уровни симуляции и запросы тиков комнатам (поток движка)
+    SCHEDULING,
+    
+    // Обработка сообщений из почтового ящика комнаты
+    ROOM_MESSAGES,
+    
+    // Пересчет поля потока
+    FLOW_FIELD,
+    
+    // Ходы NPC в бою (обязательная работа)
+    NPCS,
+    
+    // Разрешение столкновений
+    COLLISIONS,
+    
+    // Ходы NPC вне боя и прокрутка пропущенных ими тиков (откладываемая работа, TickGovernor)
+    IDLE_NPCS,
+    
+    // Передача изменившихся игроков в кэш сохранения (откладываемая работа)
+    SAVE,
+    
+    // Публикация вида комнаты для читателей из других потоков (TRoom.publishView)
+    PUBLISH
+}
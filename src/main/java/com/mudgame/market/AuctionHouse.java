@@ -0,0 +1,453 @@
+package com.mudgame.market;
+
+import com.mudgame.model.TItem;
+import com.mudgame.model.TPlayer;
+import com.mudgame.model.TRoom;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Аукцион - торговля предметами между игроками из любых комнат.
+ * 
+ * Игрок выставляет предмет на продажу (заявка на продажу) или просит купить
+ * предмет шаблона не дороже цены (заявка на покупку). У каждого шаблона предмета
+ * своя книга заявок (OrderBook); заявки на покупку и продажу сводятся, как только
+ * цена покупки не ниже цены продажи.
+ * 
+ * Игроками владеют акторы комнат, и аукцион их не меняет. Поэтому торговля идет
+ * через залог: перед подачей заявки владелец игрока забирает у него предмет
+ * (продажа) или золото по цене заявки (покупка) и отдает их аукциону. Сделка
+ * меняет залоги местами под блокировкой книги - предмет в каждый момент лежит
+ * ровно в одном месте (у продавца, в залоге или в доставке покупателю), и ни
+ * предмет, ни золото не могут потеряться или удвоиться. Результат сделки ждет
+ * в доставках, пока актор комнаты игрока не заберет его (collect).
+ * 
+ * Все методы, кроме collect, можно вызывать из любых потоков одновременно:
+ * книги разных шаблонов сводятся параллельно, справочники заявок и доставок -
+ * ConcurrentHashMap, очереди доставок - без блокировок.
+ * 
+ * Игрок отменяет свои заявки командой (cancelAll), и залог возвращается доставкой.
+ * Заявки живут только в памяти, поэтому при остановке движка все открытые заявки
+ * отменяются (cancelAllOrders), а возвращенный залог отдается игрокам и сохраняется
+ * вместе с ними - иначе после перезапуска залог пропал бы, а списание осталось.
+ * 
+ * Предмет доставки, который инвентарь не принял (предмет с таким id уже есть),
+ * не пропадает и не ждет в очереди: он один раз кладется на пол комнаты игрока.
+ * 
+ * Взаимодействия (Collaborators):
+ * - OrderBook - книга заявок шаблона
+ * - RoomActor - подает заявки игроков своей комнаты и забирает их доставки
+ * - TPlayer - золото и инвентарь, в которые попадают доставки
+ */
+public final class AuctionHouse {
+    
+    // Книги заявок по шаблону предмета
+    private final ConcurrentHashMap<String, OrderBook> books;
+    
+    // Заявки, ждущие в книгах, по номеру (для отмены)
+    private final ConcurrentHashMap<Long, Order> openOrders;
+    
+    // Доставки по идентификатору игрока
+    private final ConcurrentHashMap<String, ConcurrentLinkedQueue<Delivery>> deliveries;
+    
+    // Имя предмета по шаблону (для поиска шаблона по имени в заявке на покупку)
+    private final ConcurrentHashMap<String, String> templateNames;
+    
+    // Открытые заявки каждого игрока (для отмены и показа заявок игрока)
+    private final ConcurrentHashMap<String, PlayerOrders> ordersByPlayer;
+    
+    // Номер следующей заявки
+    private final AtomicLong nextOrderId;
+    
+    // Сколько заявок подано и сколько сделок заключено
+    private final LongAdder orderCount;
+    private final LongAdder tradeCount;
+    
+    /**
+     * Конструктор - аукцион без заявок.
+     */
+    public AuctionHouse() {
+        this.books = new ConcurrentHashMap<>();
+        this.openOrders = new ConcurrentHashMap<>();
+        this.deliveries = new ConcurrentHashMap<>();
+        this.templateNames = new ConcurrentHashMap<>();
+        this.ordersByPlayer = new ConcurrentHashMap<>();
+        this.nextOrderId = new AtomicLong();
+        this.orderCount = new LongAdder();
+        this.tradeCount = new LongAdder();
+    }
+    
+    /**
+     * Выставить предмет на продажу.
+     * 
+     * Предмет уже должен быть убран из инвентаря продавца: теперь он в залоге аукциона.
+     * 
+     * @param sellerId идентификатор продавца
+     * @param item предмет
+     * @param price цена, не ниже которой продать
+     * @return номер заявки (для отмены)
+     */
+    public long sell(String sellerId, TItem item, long price) {
+        if (price <= 0) {
+            throw new IllegalArgumentException("Цена должна быть положительной: " + price);
+        }
+        templateNames.putIfAbsent(item.getTemplateId(), item.getName());
+        return submit(new Order(nextOrderId.incrementAndGet(), sellerId, item.getTemplateId(), false, price, item));
+    }
+    
+    /**
+     * Подать заявку на покупку одного предмета шаблона.
+     * 
+     * Золото по цене заявки уже должно быть списано с покупателя: теперь оно в залоге
+     * аукциона. Если сделка пройдет дешевле, разница вернется покупателю с предметом.
+     * 
+     * @param buyerId идентификатор покупателя
+     * @param templateId шаблон предмета
+     * @param price цена, не выше которой купить
+     * @return номер заявки (для отмены)
+     */
+    public long buy(String buyerId, String templateId, long price) {
+        if (price <= 0) {
+            throw new IllegalArgumentException("Цена должна быть положительной: " + price);
+        }
+        return submit(new Order(nextOrderId.incrementAndGet(), buyerId, templateId, true, price, null));
+    }
+    
+    /**
+     * Отменить заявку, если она еще не исполнена. Залог вернется в доставках.
+     * 
+     * @param orderId номер заявки
+     * @return true если заявка отменена
+     */
+    public boolean cancel(long orderId) {
+        Order order = openOrders.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        return bookOf(order.getTemplateId()).cancel(order, this);
+    }
+    
+    /**
+     * Отменить открытые заявки игрока. Залог вернется в доставках.
+     * 
+     * @param playerId идентификатор игрока
+     * @return сколько заявок отменено
+     */
+    public int cancelAll(String playerId) {
+        return cancelAll(playerId, null);
+    }
+    
+    /**
+     * Отменить открытые заявки игрока по одному шаблону предмета. Залог вернется в доставках.
+     * 
+     * @param playerId идентификатор игрока
+     * @param templateId шаблон предмета (null - все шаблоны)
+     * @return сколько заявок отменено
+     */
+    public int cancelAll(String playerId, String templateId) {
+        int cancelled = 0;
+        for (Order order : ordersOf(playerId)) {
+            if ((templateId == null || templateId.equals(order.getTemplateId()))
+                    && bookOf(order.getTemplateId()).cancel(order, this)) {
+                cancelled = cancelled + 1;
+            }
+        }
+        return cancelled;
+    }
+    
+    /**
+     * Отменить все открытые заявки всех игроков (при остановке: заявки не переживают перезапуск).
+     * Залог вернется в доставках.
+     * 
+     * @return сколько заявок отменено
+     */
+    public int cancelAllOrders() {
+        int cancelled = 0;
+        for (Order order : new ArrayList<>(openOrders.values())) {
+            if (bookOf(order.getTemplateId()).cancel(order, this)) {
+                cancelled = cancelled + 1;
+            }
+        }
+        return cancelled;
+    }
+    
+    /**
+     * Отдать игроку всё, что ему доставлено: купленные предметы, выручку, возвращенный залог.
+     * 
+     * Если инвентарь не принял предмет (в нем уже есть предмет с таким id), золото
+     * доставки выдается, а предмет кладется на пол комнаты под игроком - игрок
+     * его видит, и предмет не перебирается заново на каждом тике. Если игрок
+     * не в комнате (усыпленный игрок при остановке, см. GameEngine), такому
+     * предмету деться некуда, и он теряется.
+     * 
+     * Вызывается только владельцем игрока (актором его комнаты).
+     * 
+     * @param player игрок
+     * @return сколько доставок получено
+     */
+    public int collect(TPlayer player) {
+        ConcurrentLinkedQueue<Delivery> queue = deliveries.get(player.getId());
+        if (queue == null) {
+            return 0;
+        }
+        int count = 0;
+        Delivery delivery;
+        while ((delivery = queue.poll()) != null) {
+            player.addGold(delivery.getGold());
+            TItem item = delivery.getItem();
+            if (item != null && !player.getInventory().add(item)) {
+                dropAt(player, item);
+            }
+            count = count + 1;
+        }
+        return count;
+    }
+    
+    /**
+     * Положить предмет на пол комнаты под игроком (если игрок в комнате).
+     */
+    private static void dropAt(TPlayer player, TItem item) {
+        TRoom room = player.getCurrentRoom();
+        if (room == null) {
+            return;
+        }
+        item.setX(player.getX());
+        item.setY(player.getY());
+        room.addItem(item);
+    }
+    
+    /**
+     * Получить игроков, которых ждут доставки.
+     */
+    public List<String> getPlayersWithDeliveries() {
+        List<String> players = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentLinkedQueue<Delivery>> entry : deliveries.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                players.add(entry.getKey());
+            }
+        }
+        return players;
+    }
+    
+    /**
+     * Получить версию открытых заявок игрока: она меняется, когда заявка
+     * игрока ложится в книгу, исполняется или отменяется.
+     * 
+     * @param playerId идентификатор игрока
+     * @return версия (0 - у игрока еще не было открытых заявок)
+     */
+    public int getOrdersVersion(String playerId) {
+        PlayerOrders orders = ordersByPlayer.get(playerId);
+        return orders == null ? 0 : orders.version;
+    }
+    
+    /**
+     * Описать открытые заявки игрока для показа: "Продажа: Меч за 50", "Покупка: Меч до 60".
+     * 
+     * @param playerId идентификатор игрока
+     * @return строки заявок в порядке подачи
+     */
+    public List<String> describeOrders(String playerId) {
+        List<Order> orders = ordersOf(playerId);
+        orders.sort(Comparator.comparingLong(Order::getId));
+        List<String> lines = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            String name = templateNames.getOrDefault(order.getTemplateId(), order.getTemplateId());
+            lines.add(order.isBuy()
+                    ? "Покупка: " + name + " до " + order.getPrice()
+                    : "Продажа: " + name + " за " + order.getPrice());
+        }
+        return lines;
+    }
+    
+    /**
+     * Проверить, ждут ли игрока доставки.
+     * 
+     * @param playerId идентификатор игрока
+     * @return true если есть что забрать
+     */
+    public boolean hasDeliveries(String playerId) {
+        ConcurrentLinkedQueue<Delivery> queue = deliveries.get(playerId);
+        return queue != null && !queue.isEmpty();
+    }
+    
+    /**
+     * Найти шаблон предмета по началу имени (без учета регистра) среди предметов,
+     * которые когда-либо выставлялись на продажу.
+     * 
+     * @param query начало имени
+     * @return шаблон или null, если такого предмета не продавали
+     */
+    public String findTemplate(CharSequence query) {
+        String prefix = query.toString();
+        for (Map.Entry<String, String> entry : templateNames.entrySet()) {
+            String name = entry.getValue();
+            if (name.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Получить лучшую цену покупки шаблона.
+     * 
+     * @return цена или -1, если покупок нет
+     */
+    public long getBestBid(String templateId) {
+        OrderBook book = books.get(templateId);
+        return book == null ? -1 : book.getBestBid();
+    }
+    
+    /**
+     * Получить лучшую цену продажи шаблона.
+     * 
+     * @return цена или -1, если продаж нет
+     */
+    public long getBestAsk(String templateId) {
+        OrderBook book = books.get(templateId);
+        return book == null ? -1 : book.getBestAsk();
+    }
+    
+    /**
+     * Проверить, перекрещена ли книга шаблона (для проверок в замере).
+     */
+    boolean isCrossed(String templateId) {
+        OrderBook book = books.get(templateId);
+        return book != null && book.isCrossed();
+    }
+    
+    /**
+     * Получить количество заявок, ждущих в книгах.
+     */
+    public int getOpenOrderCount() {
+        return openOrders.size();
+    }
+    
+    /**
+     * Получить, сколько всего подано заявок.
+     */
+    public long getOrderCount() {
+        return orderCount.sum();
+    }
+    
+    /**
+     * Получить, сколько всего заключено сделок.
+     */
+    public long getTradeCount() {
+        return tradeCount.sum();
+    }
+    
+    /**
+     * Отдать заявку в книгу её шаблона.
+     */
+    private long submit(Order order) {
+        orderCount.increment();
+        bookOf(order.getTemplateId()).submit(order, this);
+        return order.getId();
+    }
+    
+    /**
+     * Получить книгу шаблона (книга создается при первой заявке).
+     */
+    private OrderBook bookOf(String templateId) {
+        return books.computeIfAbsent(templateId, key -> new OrderBook());
+    }
+    
+    /**
+     * Сделка: предмет продажи уходит покупателю, золото по цене сделки - продавцу,
+     * остаток залога покупателя возвращается ему. Вызывается книгой под её блокировкой.
+     */
+    void trade(Order buy, Order sell, long price) {
+        buy.closed = true;
+        sell.closed = true;
+        openOrders.remove(buy.getId());
+        openOrders.remove(sell.getId());
+        closed(buy);
+        closed(sell);
+        deliver(buy.getPlayerId(), sell.getItem(), buy.getPrice() - price);
+        deliver(sell.getPlayerId(), null, price);
+        tradeCount.increment();
+    }
+    
+    /**
+     * Заявка легла в книгу. Вызывается книгой под её блокировкой.
+     */
+    void opened(Order order) {
+        openOrders.put(order.getId(), order);
+        ordersByPlayer.compute(order.getPlayerId(), (playerId, orders) -> {
+            PlayerOrders result = orders != null ? orders : new PlayerOrders();
+            result.open.add(order);
+            result.version = result.version + 1;
+            return result;
+        });
+    }
+    
+    /**
+     * Заявка отменена: залог возвращается игроку. Вызывается книгой под её блокировкой.
+     */
+    void cancelled(Order order) {
+        openOrders.remove(order.getId());
+        closed(order);
+        deliver(order.getPlayerId(), order.getItem(), order.isBuy() ? order.getPrice() : 0);
+    }
+    
+    /**
+     * Убрать заявку из открытых заявок её игрока (если она там была).
+     */
+    private void closed(Order order) {
+        ordersByPlayer.computeIfPresent(order.getPlayerId(), (playerId, orders) -> {
+            if (orders.open.remove(order)) {
+                orders.version = orders.version + 1;
+            }
+            return orders;
+        });
+    }
+    
+    /**
+     * Получить копию открытых заявок игрока.
+     */
+    private List<Order> ordersOf(String playerId) {
+        List<Order> copy = new ArrayList<>();
+        // Набор меняется только внутри compute по ключу игрока - там же он и копируется
+        ordersByPlayer.computeIfPresent(playerId, (key, orders) -> {
+            copy.addAll(orders.open);
+            return orders;
+        });
+        return copy;
+    }
+    
+    /**
+     * Положить доставку в очередь игрока.
+     */
+    private void deliver(String playerId, TItem item, long gold) {
+        if (item == null && gold == 0) {
+            return;
+        }
+        deliveries.computeIfAbsent(playerId, key -> new ConcurrentLinkedQueue<>()).add(new Delivery(item, gold));
+    }
+    
+    /**
+     * Открытые заявки одного игрока. Меняются только внутри compute справочника
+     * ordersByPlayer по ключу игрока, поэтому обычного HashSet достаточно.
+     * Запись игрока не удаляется, когда заявок не осталось: иначе версия началась
+     * бы заново, и интерфейс мог бы не заметить изменения.
+     */
+    private static final class PlayerOrders {
+        
+        // Открытые заявки игрока
+        final Set<Order> open = new HashSet<>();
+        
+        // Версия заявок (растет при каждом изменении)
+        volatile int version;
+    }
+}
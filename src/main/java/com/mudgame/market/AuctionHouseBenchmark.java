@@ -0,0 +1,248 @@
+package com.mudgame.market;
+
+import com.mudgame.model.TItem;
+import com.mudgame.model.TItemCategory;
+import com.mudgame.model.TItemStack;
+import com.mudgame.model.TPlayer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Нагрузочный замер аукциона: заявки в секунду и проверка, что торговля ничего не теряет.
+ * 
+ * Несколько потоков (как акторы комнат) владеют каждый своими игроками и подают
+ * от их имени случайные заявки на продажу и покупку по нескольким шаблонам,
+ * отменяют часть заявок и забирают доставки - всё одновременно.
+ * После замера все открытые заявки отменяются, доставки забираются, и проверяется:
+ * - золота у игроков ровно столько, сколько было;
+ * - предметов столько же, и ни один предмет не лежит у двух игроков сразу;
+ * - во время торговли книги не были перекрещены (лучшая покупка дешевле лучшей продажи).
+ * 
+ * Запуск: java com.mudgame.market.AuctionHouseBenchmark [потоков] [секунд]
+ * Код выхода 1 - нарушено сохранение золота или предметов.
+ */
+public final class AuctionHouseBenchmark {
+    
+    // Параметры по умолчанию: длительность замера, игроков на поток, шаблонов
+    private static final int DEFAULT_SECONDS = 5;
+    private static final int PLAYERS_PER_THREAD = 50;
+    private static final int TEMPLATES = 8;
+    
+    // Начальные запасы игрока
+    private static final int START_ITEMS = 10;
+    private static final long START_GOLD = 10_000;
+    
+    // Цены заявок: от MIN_PRICE до MIN_PRICE + PRICE_SPREAD - 1
+    private static final int MIN_PRICE = 50;
+    private static final int PRICE_SPREAD = 100;
+    
+    private AuctionHouseBenchmark() {
+    }
+    
+    /**
+     * Точка входа.
+     * 
+     * @param args количество потоков и длительность замера в секундах (необязательно)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        
+        AuctionHouse house = new AuctionHouse();
+        TPlayer[][] players = new TPlayer[threadCount][PLAYERS_PER_THREAD];
+        int itemCount = 0;
+        for (int t = 0; t < threadCount; t++) {
+            for (int p = 0; p < PLAYERS_PER_THREAD; p++) {
+                TPlayer player = new TPlayer("Торговец", "trader" + t + "_" + p, 0, 0, 100, 1);
+                player.setGold(START_GOLD);
+                for (int i = 0; i < START_ITEMS; i++) {
+                    int template = (p + i) % TEMPLATES;
+                    player.getInventory().add(new TItem("Товар" + template, "item" + itemCount, 0, 0,
+                            "goods" + template, TItemCategory.MISC));
+                    itemCount = itemCount + 1;
+                }
+                players[t][p] = player;
+            }
+        }
+        long goldBefore = (long) threadCount * PLAYERS_PER_THREAD * START_GOLD;
+        
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean crossed = new AtomicBoolean(false);
+        Trader[] traders = new Trader[threadCount];
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            traders[t] = new Trader(house, players[t], running, crossed);
+            threads[t] = new Thread(traders[t], "trader-" + t);
+        }
+        
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - start;
+        
+        // Все заявки отменяются, залог возвращается доставками
+        int cancelled = 0;
+        for (Trader trader : traders) {
+            cancelled = cancelled + trader.cancelAll();
+        }
+        for (TPlayer[] own : players) {
+            for (TPlayer player : own) {
+                house.collect(player);
+            }
+        }
+        
+        long goldAfter = 0;
+        int itemsAfter = 0;
+        Set<String> itemIds = new HashSet<>();
+        boolean duplicate = false;
+        for (TPlayer[] own : players) {
+            for (TPlayer player : own) {
+                goldAfter = goldAfter + player.getGold();
+                for (TItemStack stack : player.getInventory().getStacks()) {
+                    for (TItem item : stack.getItems()) {
+                        itemsAfter = itemsAfter + 1;
+                        duplicate = duplicate | !itemIds.add(item.getId());
+                    }
+                }
+            }
+        }
+        
+        long orders = house.getOrderCount();
+        System.out.printf("потоков: %d, игроков: %d, шаблонов: %d%n",
+                threadCount, threadCount * PLAYERS_PER_THREAD, TEMPLATES);
+        System.out.printf("заявок: %d, сделок: %d, отменено в конце: %d%n",
+                orders, house.getTradeCount(), cancelled);
+        System.out.printf("скорость: %.0f заявок в секунду%n", orders * 1e9 / nanos);
+        System.out.printf("золото: %d -> %d, предметы: %d -> %d, открытых заявок: %d%n",
+                goldBefore, goldAfter, itemCount, itemsAfter, house.getOpenOrderCount());
+        
+        boolean failed = false;
+        if (goldAfter != goldBefore) {
+            System.out.println("ОШИБКА: золото не сохранилось");
+            failed = true;
+        }
+        if (itemsAfter != itemCount || duplicate) {
+            System.out.println("ОШИБКА: предметы потерялись или удвоились");
+            failed = true;
+        }
+        if (crossed.get()) {
+            System.out.println("ОШИБКА: книга заявок перекрещена");
+            failed = true;
+        }
+        if (house.getOpenOrderCount() != 0) {
+            System.out.println("ОШИБКА: после отмены остались открытые заявки");
+            failed = true;
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Поток-торговец: владеет своими игроками, как актор комнаты.
+     */
+    private static final class Trader implements Runnable {
+        
+        // Аукцион
+        private final AuctionHouse house;
+        
+        // Свои игроки
+        private final TPlayer[] players;
+        
+        // Идет ли замер и найдена ли перекрещенная книга
+        private final AtomicBoolean running;
+        private final AtomicBoolean crossed;
+        
+        // Номера поданных заявок (для отмены)
+        private long[] orderIds;
+        private int orderCount;
+        
+        /**
+         * Конструктор.
+         */
+        Trader(AuctionHouse house, TPlayer[] players, AtomicBoolean running, AtomicBoolean crossed) {
+            this.house = house;
+            this.players = players;
+            this.running = running;
+            this.crossed = crossed;
+            this.orderIds = new long[1024];
+            this.orderCount = 0;
+        }
+        
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            List<TItem> items = new ArrayList<>();
+            while (running.get()) {
+                TPlayer player = players[random.nextInt(players.length)];
+                house.collect(player);
+                long price = MIN_PRICE + random.nextInt(PRICE_SPREAD);
+                int action = random.nextInt(10);
+                if (action < 4) {
+                    // Продать случайный предмет из инвентаря
+                    items.clear();
+                    for (TItemStack stack : player.getInventory().getStacks()) {
+                        items.add(stack.getFirst());
+                    }
+                    if (!items.isEmpty()) {
+                        TItem item = items.get(random.nextInt(items.size()));
+                        player.getInventory().remove(item);
+                        record(house.sell(player.getId(), item, price));
+                    }
+                } else if (action < 8) {
+                    // Купить предмет случайного шаблона
+                    if (player.spendGold(price)) {
+                        record(house.buy(player.getId(), "goods" + random.nextInt(TEMPLATES), price));
+                    }
+                } else if (action < 9) {
+                    // Отменить одну из недавних заявок
+                    if (orderCount > 0) {
+                        house.cancel(orderIds[orderCount - 1 - random.nextInt(Math.min(orderCount, 64))]);
+                    }
+                } else {
+                    if (house.isCrossed("goods" + random.nextInt(TEMPLATES))) {
+                        crossed.set(true);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Отменить все свои заявки.
+         * 
+         * @return сколько заявок еще ждало в книгах
+         */
+        int cancelAll() {
+            int cancelled = 0;
+            for (int i = 0; i < orderCount; i++) {
+                if (house.cancel(orderIds[i])) {
+                    cancelled = cancelled + 1;
+                }
+            }
+            return cancelled;
+        }
+        
+        /**
+         * Запомнить номер заявки.
+         */
+        private void record(long orderId) {
+            if (orderCount == orderIds.length) {
+                orderIds = Arrays.copyOf(orderIds, orderCount * 2);
+            }
+            orderIds[orderCount] = orderId;
+            orderCount = orderCount + 1;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.mudgame.market;
+
+import com.mudgame.model.TItem;
+
+/**
+ * Доставка игроку: купленный предмет, выручка, возврат залога.
+ * 
+ * Аукцион не меняет игроков сам - игроком владеет актор его комнаты.
+ * Доставки ждут в аукционе, пока владелец не заберет их (AuctionHouse.collect).
+ */
+final class Delivery {
+    
+    // Предмет (null - доставка только золота)
+    private final TItem item;
+    
+    // Золото
+    private final long gold;
+    
+    /**
+     * Конструктор.
+     */
+    Delivery(TItem item, long gold) {
+        this.item = item;
+        this.gold = gold;
+    }
+    
+    /**
+     * Получить предмет (null - доставка только золота).
+     */
+    TItem getItem() {
+        return item;
+    }
+    
+    /**
+     * Получить золото.
+     */
+    long getGold() {
+        return gold;
+    }
+}
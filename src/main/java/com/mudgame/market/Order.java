@@ -0,0 +1,93 @@
+package com.mudgame.market;
+
+import com.mudgame.model.TItem;
+
+/**
+ * Заявка аукциона: продажа одного предмета или покупка одного предмета шаблона.
+ * 
+ * Всё, что заявка обещает, уже лежит в залоге аукциона: у заявки на продажу -
+ * сам предмет, у заявки на покупку - золото по её цене. Поэтому сделка
+ * не обращается к игрокам: она лишь меняет залоги местами.
+ * 
+ * Поля cancelled и closed меняются только под блокировкой книги заявок шаблона.
+ */
+final class Order {
+    
+    // Номер заявки (растет со временем - по нему же определяется очередность при равной цене)
+    private final long id;
+    
+    // Игрок, подавший заявку
+    private final String playerId;
+    
+    // Шаблон предмета (TItem.getTemplateId)
+    private final String templateId;
+    
+    // true - покупка, false - продажа
+    private final boolean buy;
+    
+    // Цена: для продажи - не меньше которой продать, для покупки - не больше которой купить
+    private final long price;
+    
+    // Продаваемый предмет (у покупки - null)
+    private final TItem item;
+    
+    // true - заявка отменена (лежит в куче книги, пока до нее не дойдет очередь)
+    boolean cancelled;
+    
+    // true - заявка исполнена или отменена и больше не участвует в торгах
+    boolean closed;
+    
+    /**
+     * Конструктор.
+     */
+    Order(long id, String playerId, String templateId, boolean buy, long price, TItem item) {
+        this.id = id;
+        this.playerId = playerId;
+        this.templateId = templateId;
+        this.buy = buy;
+        this.price = price;
+        this.item = item;
+    }
+    
+    /**
+     * Получить номер заявки.
+     */
+    long getId() {
+        return id;
+    }
+    
+    /**
+     * Получить игрока, подавшего заявку.
+     */
+    String getPlayerId() {
+        return playerId;
+    }
+    
+    /**
+     * Получить шаблон предмета.
+     */
+    String getTemplateId() {
+        return templateId;
+    }
+    
+    /**
+     * Проверить, покупка ли это.
+     */
+    boolean isBuy() {
+        return buy;
+    }
+    
+    /**
+     * Получить цену заявки.
+     */
+    long getPrice() {
+        return price;
+    }
+    
+    /**
+     * Получить продаваемый предмет (у покупки - null).
+     */
+    TItem getItem() {
+        return item;
+    }
+}
@@ -0,0 +1,136 @@
+package com.mudgame.market;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Книга заявок одного шаблона предмета.
+ * 
+ * Заявки на покупку лежат в куче по убыванию цены, заявки на продажу - по возрастанию;
+ * при равной цене раньше исполняется более старая заявка. Новая заявка сначала
+ * сводится со встречными заявками (покупка - с самой дешевой продажей, продажа -
+ * с самой дорогой покупкой), а если встречной подходящей нет - ложится в книгу.
+ * Сделка идет по цене заявки, которая ждала в книге.
+ * 
+ * Книга защищена своей блокировкой: заявки разных шаблонов сводятся параллельно,
+ * а заявки одного шаблона - по очереди (иначе два покупателя могли бы купить
+ * один предмет). Блокировка держится только на время сведения, в памяти.
+ * 
+ * Отмененные заявки не ищутся в куче: они помечаются и выбрасываются,
+ * когда окажутся на вершине, а если их стало больше половины - разом.
+ */
+final class OrderBook {
+    
+    // Порядок покупок: дороже - раньше, при равной цене - старше
+    private static final Comparator<Order> BIDS = (a, b) -> a.getPrice() != b.getPrice()
+            ? Long.compare(b.getPrice(), a.getPrice()) : Long.compare(a.getId(), b.getId());
+    
+    // Порядок продаж: дешевле - раньше, при равной цене - старше
+    private static final Comparator<Order> ASKS = (a, b) -> a.getPrice() != b.getPrice()
+            ? Long.compare(a.getPrice(), b.getPrice()) : Long.compare(a.getId(), b.getId());
+    
+    // Заявки на покупку и на продажу, ждущие встречных
+    private final PriorityQueue<Order> bids;
+    private final PriorityQueue<Order> asks;
+    
+    // Сколько отмененных заявок еще лежит в кучах
+    private int cancelledCount;
+    
+    /**
+     * Конструктор.
+     */
+    OrderBook() {
+        this.bids = new PriorityQueue<>(BIDS);
+        this.asks = new PriorityQueue<>(ASKS);
+        this.cancelledCount = 0;
+    }
+    
+    /**
+     * Свести новую заявку со встречными, а остаток положить в книгу.
+     * 
+     * @param order новая заявка
+     * @param house аукцион (доставки и учет открытых заявок)
+     */
+    synchronized void submit(Order order, AuctionHouse house) {
+        PriorityQueue<Order> opposite = order.isBuy() ? asks : bids;
+        Order best = peekLive(opposite);
+        if (best != null && (order.isBuy() ? best.getPrice() <= order.getPrice() : best.getPrice() >= order.getPrice())) {
+            opposite.poll();
+            if (order.isBuy()) {
+                house.trade(order, best, best.getPrice());
+            } else {
+                house.trade(best, order, best.getPrice());
+            }
+            return;
+        }
+        (order.isBuy() ? bids : asks).add(order);
+        house.opened(order);
+    }
+    
+    /**
+     * Отменить заявку, если она еще ждет в книге.
+     * 
+     * @param order заявка
+     * @param house аукцион (возврат залога)
+     * @return true если заявка отменена
+     */
+    synchronized boolean cancel(Order order, AuctionHouse house) {
+        if (order.closed) {
+            return false;
+        }
+        order.cancelled = true;
+        order.closed = true;
+        cancelledCount = cancelledCount + 1;
+        house.cancelled(order);
+        // Отмененных больше половины - чистим кучи разом, чтобы они не росли
+        if (cancelledCount * 2 > bids.size() + asks.size()) {
+            bids.removeIf(o -> o.cancelled);
+            asks.removeIf(o -> o.cancelled);
+            cancelledCount = 0;
+        }
+        return true;
+    }
+    
+    /**
+     * Получить лучшую цену покупки.
+     * 
+     * @return цена или -1, если покупок нет
+     */
+    synchronized long getBestBid() {
+        Order best = peekLive(bids);
+        return best == null ? -1 : best.getPrice();
+    }
+    
+    /**
+     * Получить лучшую цену продажи.
+     * 
+     * @return цена или -1, если продаж нет
+     */
+    synchronized long getBestAsk() {
+        Order best = peekLive(asks);
+        return best == null ? -1 : best.getPrice();
+    }
+    
+    /**
+     * Проверить, перекрещена ли книга (лучшая покупка не дешевле лучшей продажи).
+     * В исправной книге такого не бывает: такие заявки сводятся при подаче.
+     */
+    synchronized boolean isCrossed() {
+        Order bid = peekLive(bids);
+        Order ask = peekLive(asks);
+        return bid != null && ask != null && bid.getPrice() >= ask.getPrice();
+    }
+    
+    /**
+     * Получить вершину кучи, выбросив отмененные заявки над ней.
+     */
+    private Order peekLive(PriorityQueue<Order> queue) {
+        Order top = queue.peek();
+        while (top != null && top.cancelled) {
+            queue.poll();
+            cancelledCount = cancelledCount - 1;
+            top = queue.peek();
+        }
+        return top;
+    }
+}
@@ -0,0 +1,25 @@
+package com.mudgame.model;
+
+/**
+ * Поведение NPC.
+ * 
+ * Поведение решает, что NPC делает за один тик: бродит, преследует игрока,
+ * убегает или атакует. Сама модель не знает, как устроено поведение -
+ * конкретные реализации (например, скомпилированные деревья поведения)
+ * находятся в пакете com.mudgame.ai.
+ * 
+ * Взаимодействия (Collaborators):
+ * - TNPC - вызывает поведение каждый тик
+ */
+public interface TBehaviour {
+    
+    /**
+     * Выполнить один тик поведения для NPC.
+     * 
+     * Метод вызывается очень часто (для каждого NPC каждый тик),
+     * поэтому реализации не должны создавать новые объекты.
+     * 
+     * @param npc NPC, который действует
+     */
+    void tick(TNPC npc);
+}
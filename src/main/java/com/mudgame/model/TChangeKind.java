@@ -0,0 +1,35 @@
+package com.mudgame.model;
+
+/**
+ * Вид изменения модели, о котором сообщает TChangeListener.
+ * 
+ * Изменения инвентаря и здоровья сообщает игрок (TPlayer, его TInventory),
+ * изменения объектов на экране комнаты - комната (TRoom) при публикации вида.
+ */
+public enum TChangeKind {
+    
+    // Наблюдение за игроком началось заново: прежнее содержимое инвентаря забыть,
+    // следом придут ITEM_ADDED по каждой стопке и HEALTH_CHANGED
+    INVENTORY_RESET,
+    
+    // Предмет попал в инвентарь (object - предмет, value - сколько теперь в его стопке)
+    ITEM_ADDED,
+    
+    // Предмет ушел из инвентаря (object - предмет, value - сколько осталось в его стопке)
+    ITEM_REMOVED,
+    
+    // Изменилось здоровье (object - игрок или NPC, value - новое здоровье)
+    HEALTH_CHANGED,
+    
+    // Наблюдение за комнатой началось заново: всё, что было известно о комнате, устарело
+    ROOM_RESET,
+    
+    // Объект появился в комнате: предмет упал на пол, NPC возродился, игрок вошел (x, y - где)
+    APPEARED,
+    
+    // Объект пропал из комнаты: предмет подняли, NPC погиб, игрок ушел (x, y - где был)
+    DISAPPEARED,
+    
+    // Объект переместился из (fromX, fromY) в (x, y)
+    MOVED
+}
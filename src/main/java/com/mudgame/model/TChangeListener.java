@@ -0,0 +1,33 @@
+package com.mudgame.model;
+
+/**
+ * Получатель изменений модели - например, интерфейс, который обновляет
+ * только изменившиеся строки инвентаря и участки холста.
+ * 
+ * Изменение передается простыми значениями, без объекта-события, поэтому
+ * сообщение о нем ничего не создает. Получатель вызывается в потоке владельца
+ * игрока или комнаты (актора комнаты) и не должен в нем задерживаться:
+ * обычно он только кладет изменение в очередь для своего потока.
+ * 
+ * Объект изменения можно читать из другого потока только по неизменяемым
+ * полям (идентификатор, имя, шаблон предмета); изменяемое состояние передано в значениях.
+ * 
+ * Взаимодействия (Collaborators):
+ * - TPlayer, TInventory - сообщают об изменениях инвентаря и здоровья игрока
+ * - TRoom - сообщает об изменениях объектов комнаты
+ */
+public interface TChangeListener {
+    
+    /**
+     * Сообщить об изменении.
+     * 
+     * @param kind вид изменения
+     * @param object объект изменения (null для ROOM_RESET)
+     * @param value число изменения: здоровье, количество в стопке (см. TChangeKind)
+     * @param fromX прежняя координата X (для MOVED, иначе равна x)
+     * @param fromY прежняя координата Y (для MOVED, иначе равна y)
+     * @param x координата X объекта
+     * @param y координата Y объекта
+     */
+    void onChange(TChangeKind kind, TGameObject object, int value, double fromX, double fromY, double x, double y);
+}
@@ -0,0 +1,339 @@
+package com.mudgame.model;
+
+import java.util.Arrays;
+
+/**
+ * Сетка столкновений комнаты.
+ * 
+ * Все "тела" комнаты (игроки и живые NPC) - это круги одинакового радиуса
+ * BODY_RADIUS, такие же, какими они рисуются на холсте.
+ * 
+ * Проверка столкновений идет в две фазы:
+ * 1. Широкая фаза - комната разбита на квадратные ячейки со стороной в диаметр тела.
+ *    Каждое тело лежит в списке своей ячейки, поэтому соседей тела нужно искать
+ *    только в 3x3 ячейках вокруг него, а не среди всех тел комнаты.
+ * 2. Узкая фаза - для найденных соседей проверяется точное пересечение кругов.
+ * 
+ * Поэтому и проверка одной точки, и разрешение всех пересечений за тик
+ * выполняются в среднем за время, пропорциональное количеству тел.
+ * 
+ * Сетка обновляется сама: TGameObject.setX/setY сообщают ей о перемещении тела.
+ * 
+ * Взаимодействия (Collaborators):
+ * - TRoom - владеет сеткой, добавляет и удаляет тела
+ * - TGameObject - тело, положение которого отслеживает сетка
+ */
+public class TCollisionGrid {
+    
+    // Радиус тела (игрока или NPC) в пикселях
+    public static final double BODY_RADIUS = 15;
+    
+    // Минимальное расстояние между центрами двух тел
+    private static final double MIN_DISTANCE = BODY_RADIUS * 2;
+    
+    // Небольшой запас при раздвигании, чтобы из-за округления тела не остались "касающимися внутрь"
+    private static final double SEPARATION_SLOP = 0.01;
+    
+    // Сторона ячейки сетки: при ней пересекающиеся тела всегда лежат в соседних ячейках
+    private static final double CELL_SIZE = MIN_DISTANCE;
+    
+    // Начальный размер массивов тел
+    private static final int INITIAL_CAPACITY = 16;
+    
+    // Комната, которой принадлежит сетка (её границы ограничивают тела)
+    private final TRoom room;
+    
+    // Размер сетки в ячейках
+    private final int columns;
+    private final int rows;
+    
+    // Первое тело в списке каждой ячейки (-1 - ячейка пуста)
+    private final int[] cellHead;
+    
+    // Тела сетки; индекс тела в этом массиве хранится в самом теле (TGameObject.collisionSlot)
+    private TGameObject[] bodies;
+    
+    // Ячейка, в которой сейчас числится тело
+    private int[] bodyCell;
+    
+    // Соседи тела в двусвязном списке ячейки (-1 - нет соседа)
+    private int[] nextInCell;
+    private int[] prevInCell;
+    
+    // Количество тел
+    private int bodyCount;
+    
+    /**
+     * Конструктор - создает пустую сетку по размерам комнаты.
+     * 
+     * @param room комната
+     */
+    TCollisionGrid(TRoom room) {
+        this.room = room;
+        this.columns = Math.max(1, (int) Math.ceil(room.getWidth() / CELL_SIZE));
+        this.rows = Math.max(1, (int) Math.ceil(room.getHeight() / CELL_SIZE));
+        this.cellHead = new int[columns * rows];
+        Arrays.fill(cellHead, -1);
+        this.bodies = new TGameObject[INITIAL_CAPACITY];
+        this.bodyCell = new int[INITIAL_CAPACITY];
+        this.nextInCell = new int[INITIAL_CAPACITY];
+        this.prevInCell = new int[INITIAL_CAPACITY];
+        this.bodyCount = 0;
+    }
+    
+    /**
+     * Получить количество тел в сетке.
+     */
+    public int getBodyCount() {
+        return bodyCount;
+    }
+    
+    /**
+     * Добавить тело в сетку.
+     * 
+     * @param body игрок или NPC
+     */
+    void add(TGameObject body) {
+        if (body.collisionGrid != null) {
+            // Тело уже числится в какой-то сетке - сначала убираем его оттуда
+            body.collisionGrid.remove(body);
+        }
+        
+        // Если массивы заполнены, увеличиваем их вдвое
+        if (bodyCount == bodies.length) {
+            int capacity = bodies.length * 2;
+            bodies = Arrays.copyOf(bodies, capacity);
+            bodyCell = Arrays.copyOf(bodyCell, capacity);
+            nextInCell = Arrays.copyOf(nextInCell, capacity);
+            prevInCell = Arrays.copyOf(prevInCell, capacity);
+        }
+        
+        int slot = bodyCount;
+        bodies[slot] = body;
+        bodyCount = bodyCount + 1;
+        body.collisionGrid = this;
+        body.collisionSlot = slot;
+        link(slot, cellOf(body.getX(), body.getY()));
+    }
+    
+    /**
+     * Убрать тело из сетки.
+     * 
+     * @param body игрок или NPC
+     */
+    void remove(TGameObject body) {
+        if (body.collisionGrid != this) {
+            return;
+        }
+        int slot = body.collisionSlot;
+        unlink(slot);
+        
+        // На место удаленного тела ставим последнее, чтобы массив оставался без дыр
+        int last = bodyCount - 1;
+        if (slot != last) {
+            TGameObject moved = bodies[last];
+            int cell = bodyCell[last];
+            unlink(last);
+            bodies[slot] = moved;
+            moved.collisionSlot = slot;
+            link(slot, cell);
+        }
+        bodies[last] = null;
+        bodyCount = last;
+        body.collisionGrid = null;
+        body.collisionSlot = -1;
+    }
+    
+    /**
+     * Сообщить сетке, что тело переместилось (вызывается из TGameObject.setX/setY).
+     */
+    void relink(TGameObject body) {
+        int slot = body.collisionSlot;
+        int cell = cellOf(body.getX(), body.getY());
+        if (bodyCell[slot] != cell) {
+            unlink(slot);
+            link(slot, cell);
+        }
+    }
+    
+    /**
+     * Найти тело, с которым пересекся бы круг с центром (x, y).
+     * 
+     * @param x координата X центра
+     * @param y координата Y центра
+     * @param self тело, которое не нужно учитывать (само перемещаемое тело), может быть null
+     * @return первое пересекающееся тело или null, если место свободно
+     */
+    public TGameObject findOverlap(double x, double y, TGameObject self) {
+        int column = columnOf(x);
+        int row = rowOf(y);
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                for (int i = cellHead[r * columns + c]; i != -1; i = nextInCell[i]) {
+                    TGameObject other = bodies[i];
+                    if (other != self && overlaps(x, y, other.getX(), other.getY())) {
+                        return other;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Проверить, свободно ли место для тела с центром (x, y).
+     */
+    public boolean isFree(double x, double y, TGameObject self) {
+        return findOverlap(x, y, self) == null;
+    }
+    
+    /**
+     * Раздвинуть все пересекающиеся тела.
+     * 
+     * Каждая пара пересекающихся тел раздвигается поровну вдоль линии между центрами.
+     * За один проход разрешаются не все цепочки столкновений, поэтому проход
+     * повторяется до iterations раз или пока пересечения не закончатся.
+     * 
+     * @param iterations максимальное количество проходов
+     * @return количество пар, раздвинутых на последнем проходе (0 - пересечений не осталось)
+     */
+    public int resolveOverlaps(int iterations) {
+        int resolved = 0;
+        for (int pass = 0; pass < iterations; pass++) {
+            resolved = 0;
+            for (int i = 0; i < bodyCount; i++) {
+                resolved = resolved + separateFromNeighbours(i);
+            }
+            if (resolved == 0) {
+                break;
+            }
+        }
+        return resolved;
+    }
+    
+    /**
+     * Раздвинуть тело i с соседями, у которых индекс больше (каждая пара - один раз).
+     */
+    private int separateFromNeighbours(int i) {
+        TGameObject body = bodies[i];
+        int column = columnOf(body.getX());
+        int row = rowOf(body.getY());
+        int separated = 0;
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                int j = cellHead[r * columns + c];
+                while (j != -1) {
+                    // Запоминаем следующего заранее: перемещение может перенести тело в другую ячейку
+                    int next = nextInCell[j];
+                    if (j > i && separate(body, bodies[j])) {
+                        separated = separated + 1;
+                    }
+                    j = next;
+                }
+            }
+        }
+        return separated;
+    }
+    
+    /**
+     * Раздвинуть два тела, если они пересекаются.
+     * 
+     * @return true если тела пересекались
+     */
+    private boolean separate(TGameObject a, TGameObject b) {
+        double dx = b.getX() - a.getX();
+        double dy = b.getY() - a.getY();
+        double distanceSquared = dx * dx + dy * dy;
+        if (distanceSquared >= MIN_DISTANCE * MIN_DISTANCE) {
+            return false;
+        }
+        double distance = Math.sqrt(distanceSquared);
+        if (distance == 0) {
+            // Тела точно друг на друге - раздвигаем по горизонтали
+            dx = 1;
+            dy = 0;
+            distance = 1;
+        }
+        // Каждое тело сдвигается на половину глубины пересечения (плюс небольшой запас)
+        double push = (MIN_DISTANCE - distance) / 2 + SEPARATION_SLOP;
+        double nx = dx / distance;
+        double ny = dy / distance;
+        moveClamped(a, a.getX() - nx * push, a.getY() - ny * push);
+        moveClamped(b, b.getX() + nx * push, b.getY() + ny * push);
+        return true;
+    }
+    
+    /**
+     * Переместить тело, не выпуская его за стены комнаты.
+     */
+    private void moveClamped(TGameObject body, double x, double y) {
+        double minX = room.getX() + BODY_RADIUS;
+        double maxX = room.getX() + room.getWidth() - BODY_RADIUS;
+        double minY = room.getY() + BODY_RADIUS;
+        double maxY = room.getY() + room.getHeight() - BODY_RADIUS;
+        body.setX(Math.max(minX, Math.min(maxX, x)));
+        body.setY(Math.max(minY, Math.min(maxY, y)));
+    }
+    
+    /**
+     * Проверить пересечение двух кругов по их центрам.
+     */
+    private static boolean overlaps(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        return dx * dx + dy * dy < MIN_DISTANCE * MIN_DISTANCE;
+    }
+    
+    /**
+     * Номер столбца сетки для координаты X (тела за стенами попадают в крайние ячейки).
+     */
+    private int columnOf(double x) {
+        int column = (int) ((x - room.getX()) / CELL_SIZE);
+        return Math.max(0, Math.min(columns - 1, column));
+    }
+    
+    /**
+     * Номер строки сетки для координаты Y.
+     */
+    private int rowOf(double y) {
+        int row = (int) ((y - room.getY()) / CELL_SIZE);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+    
+    /**
+     * Номер ячейки для точки (x, y).
+     */
+    private int cellOf(double x, double y) {
+        return rowOf(y) * columns + columnOf(x);
+    }
+    
+    /**
+     * Вставить тело в начало списка ячейки.
+     */
+    private void link(int slot, int cell) {
+        int head = cellHead[cell];
+        bodyCell[slot] = cell;
+        prevInCell[slot] = -1;
+        nextInCell[slot] = head;
+        if (head != -1) {
+            prevInCell[head] = slot;
+        }
+        cellHead[cell] = slot;
+    }
+    
+    /**
+     * Вынуть тело из списка его ячейки.
+     */
+    private void unlink(int slot) {
+        int prev = prevInCell[slot];
+        int next = nextInCell[slot];
+        if (prev != -1) {
+            nextInCell[prev] = next;
+        } else {
+            cellHead[bodyCell[slot]] = next;
+        }
+        if (next != -1) {
+            prevInCell[next] = prev;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.mudgame.model;
+
+import java.util.Arrays;
+
+/**
+ * Поле потока комнаты - общая карта "куда идти к ближайшему игроку".
+ * 
+ * Если каждый NPC сам ищет ближайшего игрока и путь к нему, то работа растет
+ * как (количество NPC) x (количество игроков). Поле потока считается один раз
+ * на всю комнату: комната разбита на ячейки, и для каждой ячейки известно
+ * расстояние до ближайшего живого игрока и какой это игрок. NPC, который
+ * преследует игрока, смотрит только на свою ячейку и 8 соседних и шагает
+ * в сторону соседа с меньшим расстоянием - это O(1) на NPC, сколько бы их ни было.
+ * 
+ * Расстояние считается двумя проходами по сетке (дистанционное преобразование
+ * с весами 5 по горизонтали/вертикали и 7 по диагонали, что близко к евклидову
+ * расстоянию). Источников может быть сколько угодно - все игроки комнаты
+ * учитываются за те же два прохода.
+ * 
+ * Поле пересчитывается методом update() только тогда, когда кто-то из живых
+ * игроков перешел в другую ячейку, вошел в комнату, вышел из нее или погиб.
+ * 
+ * Взаимодействия (Collaborators):
+ * - TRoom - владеет полем
+ * - TNPC - читает поле при преследовании (chase)
+ * - TPlayer - источники поля
+ */
+public class TFlowField {
+    
+    // Сторона ячейки поля (как у сетки столкновений - диаметр тела)
+    private static final double CELL_SIZE = TCollisionGrid.BODY_RADIUS * 2;
+    
+    // Вес шага по горизонтали/вертикали и по диагонали
+    private static final int STRAIGHT_COST = 5;
+    private static final int DIAGONAL_COST = 7;
+    
+    // Расстояние "игрока нет" (поле без источников)
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+    
+    // Смещения соседних ячеек по кругу: восток, юго-восток, юг, юго-запад, запад, северо-запад, север, северо-восток
+    private static final int[] NEIGHBOUR_COLUMN = {1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] NEIGHBOUR_ROW = {0, 1, 1, 1, 0, -1, -1, -1};
+    
+    // Единичный вектор направления на каждого соседа
+    static final double[] DIRECTION_X = new double[8];
+    static final double[] DIRECTION_Y = new double[8];
+    
+    static {
+        for (int i = 0; i < 8; i++) {
+            double length = Math.sqrt(NEIGHBOUR_COLUMN[i] * NEIGHBOUR_COLUMN[i] + NEIGHBOUR_ROW[i] * NEIGHBOUR_ROW[i]);
+            DIRECTION_X[i] = NEIGHBOUR_COLUMN[i] / length;
+            DIRECTION_Y[i] = NEIGHBOUR_ROW[i] / length;
+        }
+    }
+    
+    // Комната, которой принадлежит поле
+    private final TRoom room;
+    
+    // Размер поля в ячейках
+    private final int columns;
+    private final int rows;
+    
+    // Расстояние от каждой ячейки до ближайшего игрока
+    private final int[] distance;
+    
+    // Ближайший игрок для каждой ячейки (индекс в массиве sources, -1 - игроков нет)
+    private final int[] nearest;
+    
+    // Живые игроки, по которым построено поле, и их ячейки
+    private TPlayer[] sources;
+    private int[] sourceCells;
+    private int sourceCount;
+    
+    // Сколько раз поле пересчитывалось
+    private int version;
+    
+    /**
+     * Конструктор - создает пустое поле по размерам комнаты.
+     * 
+     * @param room комната
+     */
+    TFlowField(TRoom room) {
+        this.room = room;
+        this.columns = Math.max(1, (int) Math.ceil(room.getWidth() / CELL_SIZE));
+        this.rows = Math.max(1, (int) Math.ceil(room.getHeight() / CELL_SIZE));
+        this.distance = new int[columns * rows];
+        this.nearest = new int[columns * rows];
+        Arrays.fill(distance, UNREACHABLE);
+        Arrays.fill(nearest, -1);
+        this.sources = new TPlayer[4];
+        this.sourceCells = new int[4];
+        this.sourceCount = 0;
+    }
+    
+    /**
+     * Пересчитать поле, если игроки комнаты сменили ячейки.
+     * 
+     * Вызывается один раз за тик перед ходом NPC.
+     * 
+     * @return true если поле пересчитано
+     */
+    public boolean update() {
+        if (!sourcesChanged()) {
+            return false;
+        }
+        collectSources();
+        rebuild();
+        version = version + 1;
+        return true;
+    }
+    
+    /**
+     * Получить количество пересчетов поля.
+     */
+    public int getVersion() {
+        return version;
+    }
+    
+    /**
+     * Найти ближайшего живого игрока для точки (x, y).
+     * 
+     * @return игрок или null, если живых игроков в комнате нет
+     */
+    public TPlayer targetAt(double x, double y) {
+        int source = nearest[cellOf(x, y)];
+        return source < 0 ? null : sources[source];
+    }
+    
+    /**
+     * Выбрать направление шага из точки (x, y) к ближайшему игроку.
+     * 
+     * @return номер направления (индекс в DIRECTION_X/DIRECTION_Y) или -1,
+     *         если точка уже в ячейке игрока (или игроков нет) и идти нужно прямо к нему
+     */
+    int directionAt(double x, double y) {
+        int column = columnOf(x);
+        int row = rowOf(y);
+        int best = distance[row * columns + column];
+        int direction = -1;
+        for (int i = 0; i < 8; i++) {
+            int c = column + NEIGHBOUR_COLUMN[i];
+            int r = row + NEIGHBOUR_ROW[i];
+            if (c >= 0 && c < columns && r >= 0 && r < rows && distance[r * columns + c] < best) {
+                best = distance[r * columns + c];
+                direction = i;
+            }
+        }
+        return direction;
+    }
+    
+    /**
+     * Проверить, изменился ли набор живых игроков или их ячейки со времени прошлого пересчета.
+     */
+    private boolean sourcesChanged() {
+        int n = 0;
+        for (int i = 0; i < room.getPlayerCount(); i++) {
+            TPlayer player = room.getPlayer(i);
+            if (player.isAlive()) {
+                if (n >= sourceCount || sources[n] != player
+                        || sourceCells[n] != cellOf(player.getX(), player.getY())) {
+                    return true;
+                }
+                n = n + 1;
+            }
+        }
+        return n != sourceCount;
+    }
+    
+    /**
+     * Запомнить живых игроков комнаты и их ячейки.
+     */
+    private void collectSources() {
+        if (sources.length < room.getPlayerCount()) {
+            sources = Arrays.copyOf(sources, room.getPlayerCount() * 2);
+            sourceCells = Arrays.copyOf(sourceCells, room.getPlayerCount() * 2);
+        }
+        Arrays.fill(sources, null);
+        sourceCount = 0;
+        for (int i = 0; i < room.getPlayerCount(); i++) {
+            TPlayer player = room.getPlayer(i);
+            if (player.isAlive()) {
+                sources[sourceCount] = player;
+                sourceCells[sourceCount] = cellOf(player.getX(), player.getY());
+                sourceCount = sourceCount + 1;
+            }
+        }
+    }
+    
+    /**
+     * Построить поле заново: расстояния и ближайшего игрока для каждой ячейки.
+     */
+    private void rebuild() {
+        Arrays.fill(distance, UNREACHABLE);
+        Arrays.fill(nearest, -1);
+        if (sourceCount == 0) {
+            return;
+        }
+        for (int s = 0; s < sourceCount; s++) {
+            distance[sourceCells[s]] = 0;
+            nearest[sourceCells[s]] = s;
+        }
+        
+        // Прямой проход: сверху вниз, слева направо - соседи слева и сверху
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int cell = row * columns + column;
+                if (column > 0) {
+                    relax(cell, cell - 1, STRAIGHT_COST);
+                }
+                if (row > 0) {
+                    relax(cell, cell - columns, STRAIGHT_COST);
+                    if (column > 0) {
+                        relax(cell, cell - columns - 1, DIAGONAL_COST);
+                    }
+                    if (column < columns - 1) {
+                        relax(cell, cell - columns + 1, DIAGONAL_COST);
+                    }
+                }
+            }
+        }
+        
+        // Обратный проход: снизу вверх, справа налево - соседи справа и снизу
+        for (int row = rows - 1; row >= 0; row--) {
+            for (int column = columns - 1; column >= 0; column--) {
+                int cell = row * columns + column;
+                if (column < columns - 1) {
+                    relax(cell, cell + 1, STRAIGHT_COST);
+                }
+                if (row < rows - 1) {
+                    relax(cell, cell + columns, STRAIGHT_COST);
+                    if (column < columns - 1) {
+                        relax(cell, cell + columns + 1, DIAGONAL_COST);
+                    }
+                    if (column > 0) {
+                        relax(cell, cell + columns - 1, DIAGONAL_COST);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Улучшить расстояние ячейки cell через соседа, если путь через него короче.
+     */
+    private void relax(int cell, int neighbour, int cost) {
+        int candidate = distance[neighbour] + cost;
+        if (candidate < distance[cell]) {
+            distance[cell] = candidate;
+            nearest[cell] = nearest[neighbour];
+        }
+    }
+    
+    /**
+     * Номер столбца поля для координаты X.
+     */
+    private int columnOf(double x) {
+        int column = (int) ((x - room.getX()) / CELL_SIZE);
+        return Math.max(0, Math.min(columns - 1, column));
+    }
+    
+    /**
+     * Номер строки поля для координаты Y.
+     */
+    private int rowOf(double y) {
+        int row = (int) ((y - room.getY()) / CELL_SIZE);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+    
+    /**
+     * Номер ячейки для точки (x, y).
+     */
+    private int cellOf(double x, double y) {
+        return rowOf(y) * columns + columnOf(x);
+    }
+}
@@ -24,6 +24,24 @@ public abstract class TGameObject {
     // Координата Y - позиция объекта по вертикали на экране
     private double y;
     
+    // Сетка столкновений, в которой числится объект как тело (null - объект не тело)
+    TCollisionGrid collisionGrid;
+    
+    // Индекс объекта внутри сетки столкновений (-1 - объект не в сетке)
+    int collisionSlot = -1;
+    
+    // Позиция объекта в векторе вида его комнаты (-1 - объекта нет в виде, см. TRoomViewWriter)
+    int viewSlot = -1;
+    
+    // Запись вида, в которой числится объект (null - объекта нет ни в одном виде)
+    TRoomViewWriter viewWriter;
+    
+    // Позиция объекта в списке изменившихся объектов записи вида (-1 - объект не менялся)
+    int viewDirtySlot = -1;
+    
+    // Номер добавления объекта в индекс имен его комнаты (-1 - объекта нет в индексе, см. TNameIndex)
+    long nameSequence = -1;
+    
     /**
      * Конструктор - создает новый игровой объект с заданными параметрами.
      * 
@@ -49,6 +67,15 @@ public abstract class TGameObject {
         return name;
     }
     
+    /**
+     * Получить уникальный идентификатор объекта.
+     * 
+     * @return идентификатор объекта
+     */
+    public String getId() {
+        return id;
+    }
+    
     /**
      * Получить координату X (горизонтальная позиция).
      * 
@@ -65,6 +92,11 @@ public abstract class TGameObject {
      */
     public void setX(double x) {
         this.x = x;
+        // Если объект - тело в сетке столкновений, сообщаем сетке о перемещении
+        if (collisionGrid != null) {
+            collisionGrid.relink(this);
+        }
+        viewChanged();
     }
     
     /**
@@ -83,5 +115,20 @@ public abstract class TGameObject {
      */
     public void setY(double y) {
         this.y = y;
+        // Если объект - тело в сетке столкновений, сообщаем сетке о перемещении
+        if (collisionGrid != null) {
+            collisionGrid.relink(this);
+        }
+        viewChanged();
+    }
+    
+    /**
+     * Сообщить записи вида комнаты, что объект переместился или изменилось его здоровье:
+     * при публикации вида обновятся только такие объекты.
+     */
+    final void viewChanged() {
+        if (viewWriter != null && viewDirtySlot < 0) {
+            viewWriter.markDirty(this);
+        }
     }
 }
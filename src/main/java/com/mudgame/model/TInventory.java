@@ -0,0 +1,298 @@
+package com.mudgame.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+
+/**
+ * Инвентарь игрока.
+ * 
+ * Инвентарь не ограничен по размеру и хранит предметы стопками (TItemStack):
+ * одинаковые предметы (с одним и тем же шаблоном) складываются в одну стопку.
+ * 
+ * Для быстрых запросов инвентарь поддерживает несколько индексов:
+ * - по идентификатору предмета (удаление и поиск по id за O(1));
+ * - по шаблону (количество предметов "X" за O(1));
+ * - по категории (оружие, расходуемые предметы и т.д.);
+ * - сумма силы атаки и лучшее оружие (без перебора всех предметов).
+ * 
+ * Добавление и удаление предмета, стопка которого уже есть, не создают объектов
+ * (индекс по id - TItemTable, предметы стопки - массив). Объекты создаются
+ * только для новой стопки.
+ * 
+ * Взаимодействия (Collaborators):
+ * - TPlayer - владеет инвентарем
+ * - TItem, TWeapon - предметы в инвентаре
+ * - TItemStack - стопка одинаковых предметов
+ */
+public class TInventory {
+    
+    // Стопки по идентификатору шаблона (в порядке появления - для отображения)
+    private final LinkedHashMap<String, TItemStack> stacks;
+    
+    // Стопки, разложенные по категориям
+    private final EnumMap<TItemCategory, LinkedHashMap<String, TItemStack>> stacksByCategory;
+    
+    // Предметы по их идентификатору
+    private final TItemTable itemsById;
+    
+    // Общее количество предметов во всех стопках
+    private int totalCount;
+    
+    // Сумма силы атаки всего оружия в инвентаре
+    private int weaponAttackSum;
+    
+    // Лучшее оружие (с наибольшей силой атаки)
+    private TWeapon bestWeapon;
+    
+    // true, если лучшее оружие нужно пересчитать (его только что удалили)
+    private boolean bestWeaponDirty;
+    
+    // Версия инвентаря - увеличивается при каждом изменении
+    // (по ней интерфейс понимает, что список предметов нужно перерисовать)
+    private int version;
+    
+    // Получатель изменений инвентаря (null - никто не наблюдает)
+    private TChangeListener changeListener;
+    
+    /**
+     * Конструктор - создает пустой инвентарь.
+     */
+    public TInventory() {
+        this.stacks = new LinkedHashMap<>();
+        this.stacksByCategory = new EnumMap<>(TItemCategory.class);
+        for (TItemCategory category : TItemCategory.values()) {
+            stacksByCategory.put(category, new LinkedHashMap<>());
+        }
+        this.itemsById = new TItemTable();
+        this.totalCount = 0;
+        this.weaponAttackSum = 0;
+        this.bestWeapon = null;
+        this.bestWeaponDirty = false;
+    }
+    
+    /**
+     * Добавить предмет в инвентарь.
+     * 
+     * Предмет кладется в стопку своего шаблона (стопка создается при необходимости).
+     * 
+     * @param item предмет, который нужно добавить
+     * @return true если предмет добавлен, false если предмет с таким id уже есть
+     */
+    public boolean add(TItem item) {
+        // Один и тот же предмет не может лежать в инвентаре дважды
+        if (!itemsById.add(item)) {
+            return false;
+        }
+        
+        // Ищем стопку для шаблона предмета, если её нет - создаем
+        TItemStack stack = stacks.get(item.getTemplateId());
+        if (stack == null) {
+            stack = new TItemStack(item.getTemplateId(), item.getCategory());
+            stacks.put(stack.getTemplateId(), stack);
+            stacksByCategory.get(stack.getCategory()).put(stack.getTemplateId(), stack);
+        }
+        
+        // Кладем предмет в стопку (в индекс по id он уже добавлен)
+        stack.add(item);
+        totalCount = totalCount + 1;
+        version = version + 1;
+        changed(TChangeKind.ITEM_ADDED, item, stack.getCount());
+        
+        // Обновляем индексы оружия
+        if (item instanceof TWeapon) {
+            TWeapon weapon = (TWeapon) item;
+            weaponAttackSum = weaponAttackSum + weapon.getAttackPower();
+            if (!bestWeaponDirty && (bestWeapon == null || weapon.getAttackPower() > bestWeapon.getAttackPower())) {
+                bestWeapon = weapon;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Удалить предмет из инвентаря по идентификатору.
+     * 
+     * @param itemId идентификатор предмета
+     * @return удаленный предмет или null, если такого предмета нет
+     */
+    public TItem removeById(String itemId) {
+        TItem item = itemsById.remove(itemId);
+        if (item == null) {
+            return null;
+        }
+        
+        // Убираем предмет из его стопки; пустую стопку удаляем из индексов
+        TItemStack stack = stacks.get(item.getTemplateId());
+        stack.remove(item);
+        if (stack.getCount() == 0) {
+            stacks.remove(stack.getTemplateId());
+            stacksByCategory.get(stack.getCategory()).remove(stack.getTemplateId());
+        }
+        totalCount = totalCount - 1;
+        version = version + 1;
+        changed(TChangeKind.ITEM_REMOVED, item, stack.getCount());
+        
+        // Обновляем индексы оружия
+        if (item instanceof TWeapon) {
+            TWeapon weapon = (TWeapon) item;
+            weaponAttackSum = weaponAttackSum - weapon.getAttackPower();
+            if (weapon == bestWeapon) {
+                // Лучшее оружие пересчитаем при следующем запросе
+                bestWeapon = null;
+                bestWeaponDirty = true;
+            }
+        }
+        return item;
+    }
+    
+    /**
+     * Удалить предмет из инвентаря.
+     * 
+     * @param item предмет, который нужно удалить
+     * @return true если предмет был в инвентаре
+     */
+    public boolean remove(TItem item) {
+        return removeById(item.getId()) != null;
+    }
+    
+    /**
+     * Проверить, есть ли в инвентаре предмет с заданным идентификатором.
+     */
+    public boolean contains(String itemId) {
+        return itemsById.get(itemId) != null;
+    }
+    
+    /**
+     * Найти предмет по идентификатору.
+     * 
+     * @return предмет или null, если такого нет
+     */
+    public TItem getById(String itemId) {
+        return itemsById.get(itemId);
+    }
+    
+    /**
+     * Найти предмет по началу имени (без учета регистра).
+     * 
+     * Стопки перебираются в порядке появления; из подходящей стопки берется первый предмет.
+     * 
+     * @param query начало имени (например, "меч")
+     * @return предмет или null, если такого нет
+     */
+    public TItem findByName(CharSequence query) {
+        String prefix = query.toString();
+        for (TItemStack stack : stacks.values()) {
+            TItem item = stack.getFirst();
+            if (item != null && item.getName().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                return item;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Получить количество предметов заданного шаблона.
+     * 
+     * @param templateId идентификатор шаблона (например, "Меч")
+     * @return количество предметов
+     */
+    public int countOf(String templateId) {
+        TItemStack stack = stacks.get(templateId);
+        if (stack == null) {
+            return 0;
+        }
+        return stack.getCount();
+    }
+    
+    /**
+     * Получить стопку предметов заданного шаблона.
+     * 
+     * @return стопка или null, если таких предметов нет
+     */
+    public TItemStack getStack(String templateId) {
+        return stacks.get(templateId);
+    }
+    
+    /**
+     * Получить общее количество предметов в инвентаре.
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+    
+    /**
+     * Получить версию инвентаря (меняется при каждом добавлении и удалении предмета).
+     */
+    public int getVersion() {
+        return version;
+    }
+    
+    /**
+     * Получить количество стопок (разных шаблонов) в инвентаре.
+     */
+    public int getStackCount() {
+        return stacks.size();
+    }
+    
+    /**
+     * Получить все стопки в порядке появления (только для чтения).
+     */
+    public Collection<TItemStack> getStacks() {
+        return Collections.unmodifiableCollection(stacks.values());
+    }
+    
+    /**
+     * Получить стопки заданной категории (только для чтения).
+     */
+    public Collection<TItemStack> getStacks(TItemCategory category) {
+        return Collections.unmodifiableCollection(stacksByCategory.get(category).values());
+    }
+    
+    /**
+     * Получить сумму силы атаки всего оружия в инвентаре.
+     */
+    public int getWeaponAttackSum() {
+        return weaponAttackSum;
+    }
+    
+    /**
+     * Назначить получателя изменений инвентаря (null - перестать сообщать).
+     * Назначает игрок-владелец (TPlayer.setChangeListener).
+     */
+    void setChangeListener(TChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+    
+    /**
+     * Получить лучшее оружие (с наибольшей силой атаки).
+     * 
+     * Обычно ответ берется из кэша. Пересчет нужен только после удаления
+     * самого лучшего оружия, и перебираются при этом только стопки оружия.
+     * 
+     * @return лучшее оружие или null, если оружия нет
+     */
+    public TWeapon getBestWeapon() {
+        if (bestWeaponDirty) {
+            bestWeapon = null;
+            for (TItemStack stack : stacksByCategory.get(TItemCategory.WEAPON).values()) {
+                TWeapon weapon = (TWeapon) stack.getFirst();
+                if (bestWeapon == null || weapon.getAttackPower() > bestWeapon.getAttackPower()) {
+                    bestWeapon = weapon;
+                }
+            }
+            bestWeaponDirty = false;
+        }
+        return bestWeapon;
+    }
+    
+    /**
+     * Сообщить получателю об изменении стопки предмета.
+     */
+    private void changed(TChangeKind kind, TItem item, int count) {
+        if (changeListener != null) {
+            changeListener.onChange(kind, item, count, 0, 0, 0, 0);
+        }
+    }
+}
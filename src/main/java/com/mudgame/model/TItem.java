@@ -16,20 +16,74 @@ public class TItem extends TGameObject {
     // Если null, значит предмет не находится ни в одной комнате (например, в инвентаре игрока)
     private TRoom location;
     
+    // Идентификатор шаблона - одинаковые предметы (например, два одинаковых меча)
+    // имеют один шаблон и складываются в инвентаре в одну стопку
+    private String templateId;
+    
+    // Категория предмета (оружие, расходуемый предмет и т.д.)
+    private TItemCategory category;
+    
     /**
      * Конструктор - создает новый предмет.
      * 
+     * Шаблоном предмета считается его имя, категория - "прочее".
+     * 
      * @param name имя предмета
      * @param id уникальный идентификатор предмета
      * @param x координата X позиции предмета
      * @param y координата Y позиции предмета
      */
     public TItem(String name, String id, double x, double y) {
+        this(name, id, x, y, name, TItemCategory.MISC);
+    }
+    
+    /**
+     * Конструктор - создает новый предмет с заданным шаблоном и категорией.
+     * 
+     * @param name имя предмета
+     * @param id уникальный идентификатор предмета
+     * @param x координата X позиции предмета
+     * @param y координата Y позиции предмета
+     * @param templateId идентификатор шаблона предмета
+     * @param category категория предмета
+     */
+    public TItem(String name, String id, double x, double y, String templateId, TItemCategory category) {
         // Вызываем конструктор родительского класса TGameObject
         super(name, id, x, y);
         
         // Изначально предмет не находится ни в одной комнате
         this.location = null;
+        
+        // Сохраняем шаблон и категорию
+        this.templateId = templateId;
+        this.category = category;
+    }
+    
+    /**
+     * Получить идентификатор шаблона предмета.
+     * 
+     * @return идентификатор шаблона
+     */
+    public String getTemplateId() {
+        return templateId;
+    }
+    
+    /**
+     * Получить категорию предмета.
+     * 
+     * @return категория предмета
+     */
+    public TItemCategory getCategory() {
+        return category;
+    }
+    
+    /**
+     * Получить комнату, в которой находится предмет.
+     * 
+     * @return комната или null, если предмет не лежит в комнате
+     */
+    public TRoom getLocation() {
+        return location;
     }
     
     /**
@@ -0,0 +1,20 @@
+package com.mudgame.model;
+
+/**
+ * Категория предмета.
+ * 
+ * Категория определяет, в какой раздел инвентаря попадает предмет.
+ * Инвентарь (TInventory) ведёт отдельный индекс для каждой категории,
+ * чтобы быстро отвечать на вопросы вида "какое у игрока лучшее оружие".
+ */
+public enum TItemCategory {
+    
+    // Оружие - увеличивает силу атаки игрока
+    WEAPON,
+    
+    // Расходуемые предметы (зелья, еда и т.п.)
+    CONSUMABLE,
+    
+    // Всё остальное (ключи, квестовые предметы, хлам)
+    MISC
+}
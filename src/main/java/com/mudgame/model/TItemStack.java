@@ -0,0 +1,117 @@
+package com.mudgame.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Стопка одинаковых предметов в инвентаре.
+ * 
+ * Предметы считаются одинаковыми, если у них совпадает шаблон (templateId).
+ * Каждый предмет в стопке при этом сохраняет свой собственный идентификатор.
+ * 
+ * Предметы лежат в массиве в порядке добавления: добавление и удаление
+ * не создают объектов (массив растет только при заполнении), поэтому подъем
+ * предмета в уже существующую стопку не оставляет мусора.
+ * 
+ * Взаимодействия (Collaborators):
+ * - TInventory - создает стопки и управляет ими
+ * - TItem - предметы, лежащие в стопке
+ */
+public class TItemStack {
+    
+    // Идентификатор шаблона, общий для всех предметов стопки
+    private final String templateId;
+    
+    // Категория предметов стопки
+    private final TItemCategory category;
+    
+    // Начальный размер массива предметов
+    private static final int INITIAL_CAPACITY = 4;
+    
+    // Предметы стопки в порядке добавления (заняты первые count ячеек)
+    private TItem[] items;
+    
+    // Количество предметов
+    private int count;
+    
+    /**
+     * Конструктор - создает пустую стопку для заданного шаблона.
+     * 
+     * @param templateId идентификатор шаблона
+     * @param category категория предметов
+     */
+    TItemStack(String templateId, TItemCategory category) {
+        this.templateId = templateId;
+        this.category = category;
+        this.items = new TItem[INITIAL_CAPACITY];
+        this.count = 0;
+    }
+    
+    /**
+     * Получить идентификатор шаблона стопки.
+     */
+    public String getTemplateId() {
+        return templateId;
+    }
+    
+    /**
+     * Получить категорию предметов стопки.
+     */
+    public TItemCategory getCategory() {
+        return category;
+    }
+    
+    /**
+     * Получить количество предметов в стопке.
+     */
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * Получить любой предмет стопки (первый добавленный).
+     * 
+     * Используется для отображения: имя и параметры у всех предметов стопки одинаковые.
+     * 
+     * @return предмет или null, если стопка пуста
+     */
+    public TItem getFirst() {
+        return count == 0 ? null : items[0];
+    }
+    
+    /**
+     * Получить все предметы стопки (только для чтения).
+     */
+    public Collection<TItem> getItems() {
+        return Collections.unmodifiableList(Arrays.asList(items).subList(0, count));
+    }
+    
+    /**
+     * Добавить предмет в стопку.
+     */
+    void add(TItem item) {
+        if (count == items.length) {
+            items = Arrays.copyOf(items, count * 2);
+        }
+        items[count] = item;
+        count = count + 1;
+    }
+    
+    /**
+     * Удалить предмет из стопки (остальные сдвигаются, порядок сохраняется).
+     * 
+     * @return true если предмет был в стопке
+     */
+    boolean remove(TItem item) {
+        for (int i = 0; i < count; i++) {
+            if (items[i] == item) {
+                System.arraycopy(items, i + 1, items, i, count - i - 1);
+                count = count - 1;
+                items[count] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,134 @@
+package com.mudgame.model;
+
+/**
+ * Таблица предметов по идентификатору - индекс инвентаря "id -> предмет".
+ * 
+ * HashMap на каждое добавление создает узел, а на удаление выбрасывает его,
+ * поэтому каждый подъем предмета оставлял мусор. Здесь предметы лежат прямо
+ * в массиве (открытая адресация с линейным пробированием): добавление и удаление
+ * не создают объектов, пока таблица не выросла. Удаление сдвигает назад
+ * следующие записи цепочки, поэтому пометок "удалено" нет и поиск не деградирует.
+ * 
+ * Таблица заполнена не больше чем наполовину - цепочки короткие, поиск O(1).
+ * 
+ * Таблица не потокобезопасна (как и инвентарь, которому она принадлежит).
+ */
+final class TItemTable {
+    
+    // Начальная вместимость (степень двойки)
+    private static final int INITIAL_CAPACITY = 16;
+    
+    // Ячейки таблицы (null - свободная ячейка)
+    private TItem[] slots;
+    
+    // Количество предметов
+    private int size;
+    
+    /**
+     * Конструктор - создает пустую таблицу.
+     */
+    TItemTable() {
+        this.slots = new TItem[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+    
+    /**
+     * Найти предмет по идентификатору.
+     * 
+     * @return предмет или null, если такого нет
+     */
+    TItem get(String itemId) {
+        int mask = slots.length - 1;
+        for (int i = indexOf(itemId, mask); slots[i] != null; i = (i + 1) & mask) {
+            if (slots[i].getId().equals(itemId)) {
+                return slots[i];
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Добавить предмет.
+     * 
+     * @return true если предмет добавлен, false если предмет с таким id уже есть
+     */
+    boolean add(TItem item) {
+        if ((size + 1) * 2 > slots.length) {
+            grow();
+        }
+        int mask = slots.length - 1;
+        int i = indexOf(item.getId(), mask);
+        while (slots[i] != null) {
+            if (slots[i].getId().equals(item.getId())) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = item;
+        size = size + 1;
+        return true;
+    }
+    
+    /**
+     * Удалить предмет по идентификатору.
+     * 
+     * @return удаленный предмет или null, если такого нет
+     */
+    TItem remove(String itemId) {
+        int mask = slots.length - 1;
+        int i = indexOf(itemId, mask);
+        while (slots[i] != null && !slots[i].getId().equals(itemId)) {
+            i = (i + 1) & mask;
+        }
+        TItem removed = slots[i];
+        if (removed == null) {
+            return null;
+        }
+        // Сдвигаем назад записи цепочки, которые иначе оказались бы за дыркой
+        int hole = i;
+        for (int j = (i + 1) & mask; slots[j] != null; j = (j + 1) & mask) {
+            int home = indexOf(slots[j].getId(), mask);
+            // Запись j можно перенести в дырку, если её место не лежит между дыркой и j (по кругу)
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                slots[hole] = slots[j];
+                hole = j;
+            }
+        }
+        slots[hole] = null;
+        size = size - 1;
+        return removed;
+    }
+    
+    /**
+     * Получить количество предметов.
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Увеличить таблицу вдвое и заново разложить предметы.
+     */
+    private void grow() {
+        TItem[] old = slots;
+        slots = new TItem[old.length * 2];
+        int mask = slots.length - 1;
+        for (TItem item : old) {
+            if (item != null) {
+                int i = indexOf(item.getId(), mask);
+                while (slots[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = item;
+            }
+        }
+    }
+    
+    /**
+     * Начальная ячейка идентификатора: хэш строки (она его кэширует) с перемешанными старшими битами.
+     */
+    private static int indexOf(String itemId, int mask) {
+        int hash = itemId.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,95 @@
+package com.mudgame.model;
+
+/**
+ * Строка таблицы добычи - шаблон предмета, который может выпасть, и его вес.
+ * 
+ * Чем больше вес, тем чаще выпадает предмет: вероятность строки равна её весу,
+ * деленному на сумму весов таблицы. Строка без шаблона означает "ничего не выпало".
+ * 
+ * Взаимодействия (Collaborators):
+ * - TLootTable - таблица, в которой лежит строка
+ * - TItem, TWeapon - предметы, которые создаются по строке
+ */
+public class TLootEntry {
+    
+    // Имя создаваемого предмета (null - строка "ничего")
+    private final String name;
+    
+    // Шаблон предмета (по нему предметы складываются в стопки)
+    private final String templateId;
+    
+    // Категория предмета
+    private final TItemCategory category;
+    
+    // Сила атаки (только у оружия)
+    private final int attackPower;
+    
+    // Вес строки
+    private final double weight;
+    
+    /**
+     * Конструктор - строка с предметом.
+     * 
+     * @param name имя предмета
+     * @param templateId шаблон предмета
+     * @param category категория предмета (WEAPON - будет создано оружие)
+     * @param attackPower сила атаки оружия (для остальных категорий не используется)
+     * @param weight вес строки (больше 0)
+     */
+    public TLootEntry(String name, String templateId, TItemCategory category, int attackPower, double weight) {
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Вес строки добычи должен быть положительным: " + weight);
+        }
+        this.name = name;
+        this.templateId = templateId;
+        this.category = category;
+        this.attackPower = attackPower;
+        this.weight = weight;
+    }
+    
+    /**
+     * Создать строку "ничего не выпало".
+     * 
+     * @param weight вес строки (больше 0)
+     * @return пустая строка
+     */
+    public static TLootEntry nothing(double weight) {
+        return new TLootEntry(null, null, TItemCategory.MISC, 0, weight);
+    }
+    
+    /**
+     * Проверить, что строка означает "ничего не выпало".
+     */
+    public boolean isNothing() {
+        return name == null;
+    }
+    
+    /**
+     * Получить вес строки.
+     */
+    public double getWeight() {
+        return weight;
+    }
+    
+    /**
+     * Получить шаблон предмета (null у пустой строки).
+     */
+    public String getTemplateId() {
+        return templateId;
+    }
+    
+    /**
+     * Создать предмет по строке.
+     * 
+     * @param id идентификатор нового предмета
+     * @param x координата X
+     * @param y координата Y
+     * @return новый предмет (не лежит ни в какой комнате)
+     */
+    TItem createItem(String id, double x, double y) {
+        if (category == TItemCategory.WEAPON) {
+            return new TWeapon(name, id, x, y, attackPower, templateId);
+        }
+        return new TItem(name, id, x, y, templateId, category);
+    }
+}
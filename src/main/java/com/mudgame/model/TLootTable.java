@@ -0,0 +1,134 @@
+package com.mudgame.model;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Таблица добычи типа NPC - что выпадает из NPC, когда он погибает.
+ * 
+ * Выбор строки по весам делается методом алиасов (вариант Воуза) за O(1),
+ * сколько бы строк ни было в таблице: при построении таблицы веса
+ * раскладываются по n "корзинам" одинаковой высоты, в каждой корзине
+ * не больше двух строк - своя (с вероятностью probability[i]) и алиас.
+ * Выбор - это одно случайное число для корзины и одно для выбора внутри неё.
+ * 
+ * Таблица не меняется после создания, поэтому одну таблицу могут
+ * одновременно использовать NPC из разных комнат (разных потоков).
+ * 
+ * Взаимодействия (Collaborators):
+ * - TLootEntry - строки таблицы
+ * - TNPC - при гибели бросает добычу в свою комнату
+ */
+public class TLootTable {
+    
+    // Номер для идентификаторов выпавших предметов. Начинается со времени запуска,
+    // чтобы предметы новой игры не совпали по id с сохраненными предметами прошлой
+    private static final AtomicLong DROP_SEQUENCE = new AtomicLong(System.currentTimeMillis() * 1000);
+    
+    // Строки таблицы
+    private final TLootEntry[] entries;
+    
+    // Вероятность выбрать свою строку корзины (иначе выбирается алиас)
+    private final double[] probability;
+    
+    // Строка-алиас каждой корзины
+    private final int[] alias;
+    
+    /**
+     * Конструктор - строит таблицу алиасов по весам строк за O(n).
+     * 
+     * @param entries строки таблицы (хотя бы одна)
+     */
+    public TLootTable(List<TLootEntry> entries) {
+        int n = entries.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("Таблица добычи пуста");
+        }
+        this.entries = entries.toArray(new TLootEntry[0]);
+        this.probability = new double[n];
+        this.alias = new int[n];
+        
+        double total = 0;
+        for (TLootEntry entry : this.entries) {
+            total = total + entry.getWeight();
+        }
+        
+        // Веса в масштабе "средняя корзина = 1"; корзины меньше 1 добираются алиасами из больших
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = this.entries[i].getWeight() * n / total;
+            if (scaled[i] < 1) {
+                small[smallCount] = i;
+                smallCount = smallCount + 1;
+            } else {
+                large[largeCount] = i;
+                largeCount = largeCount + 1;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            smallCount = smallCount - 1;
+            int less = small[smallCount];
+            largeCount = largeCount - 1;
+            int more = large[largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            // Большая корзина отдала меньшей недостающую часть
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount] = more;
+                smallCount = smallCount + 1;
+            } else {
+                large[largeCount] = more;
+                largeCount = largeCount + 1;
+            }
+        }
+        // Оставшиеся корзины полные (с точностью до ошибок округления)
+        while (largeCount > 0) {
+            largeCount = largeCount - 1;
+            probability[large[largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            smallCount = smallCount - 1;
+            probability[small[smallCount]] = 1;
+        }
+    }
+    
+    /**
+     * Выбрать строку таблицы с вероятностью, пропорциональной её весу. Время O(1).
+     * 
+     * @param random генератор случайных чисел
+     * @return выбранная строка
+     */
+    public TLootEntry sample(Random random) {
+        int column = random.nextInt(entries.length);
+        return random.nextDouble() < probability[column] ? entries[column] : entries[alias[column]];
+    }
+    
+    /**
+     * Бросить добычу: выбрать строку и создать по ней предмет в точке (x, y).
+     * 
+     * @param x координата X
+     * @param y координата Y
+     * @param random генератор случайных чисел
+     * @return новый предмет или null, если выпала строка "ничего"
+     */
+    public TItem roll(double x, double y, Random random) {
+        TLootEntry entry = sample(random);
+        if (entry.isNothing()) {
+            return null;
+        }
+        return entry.createItem(entry.getTemplateId() + "#" + DROP_SEQUENCE.getAndIncrement(), x, y);
+    }
+    
+    /**
+     * Получить количество строк таблицы.
+     */
+    public int size() {
+        return entries.length;
+    }
+}
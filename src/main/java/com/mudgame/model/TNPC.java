@@ -1,30 +1,76 @@
 package com.mudgame.model;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Класс NPC (Non-Player Character) - неигровой персонаж.
  * 
  * NPC - это враг, с которым игрок может сражаться.
  * NPC имеет здоровье, защиту и может случайно перемещаться по комнате.
+ * Если NPC назначено поведение (TBehaviour), каждый тик он действует по нему:
+ * бродит, преследует игрока, убегает или атакует.
  * 
  * Взаимодействия (Collaborators):
  * - TRoom - NPC находится в комнате
- * - TPlayer - NPC получает урон от игрока при атаке
+ * - TPlayer - NPC получает урон от игрока при атаке и сам атакует игрока
+ * - TBehaviour - поведение NPC
+ * - TThreatTable - угроза игроков, нанесших NPC урон (по ней NPC выбирает цель)
  */
 public class TNPC extends TGameObject {
     
+    // Сила атаки NPC по умолчанию
+    public static final int DEFAULT_ATTACK_POWER = 5;
+    
+    // Через сколько тиков погибший NPC возрождается (30 секунд при 10 тиках в секунду)
+    public static final int RESPAWN_TICKS = 300;
+    
+    // Если NPC не наблюдали столько тиков, его случайные блуждания приводят в случайную точку комнаты
+    private static final int SCATTER_TICKS = 50;
+    
+    // Сколько тиков NPC ждет между двумя атаками
+    private static final int ATTACK_COOLDOWN_TICKS = 10;
+    
+    // Длина шага при блуждании (в пикселях за тик)
+    private static final double WANDER_STEP = 4;
+    
+    // За сколько тиков угроза игрока уменьшается вдвое (10 секунд)
+    private static final double THREAT_HALF_LIFE_TICKS = 100;
+    
+    // На каком расстоянии от игрока NPC считается в бою (радиус преследования поведений)
+    private static final double COMBAT_DISTANCE = 150;
+    
     // Здоровье NPC - когда становится 0 или меньше, NPC умирает
     private int health;
     
+    // Начальное (максимальное) здоровье NPC
+    private int maxHealth;
+    
+    // Сила атаки NPC - сколько урона он наносит игроку
+    private int attackPower;
+    
+    // Сколько тиков осталось до следующей атаки (0 - можно атаковать)
+    private int attackCooldown;
+    
+    // Поведение NPC (null - NPC только случайно перемещается вместе с игроком)
+    private TBehaviour behaviour;
+    
+    // Таблица добычи (null - из NPC ничего не выпадает); общая для NPC одного типа
+    private TLootTable lootTable;
+    
     // Защита NPC - уменьшает получаемый урон от атак
     private int defense;
     
     // Комната, в которой находится NPC
     private TRoom location;
     
-    // Объект для генерации случайных чисел (для случайного перемещения)
-    private Random random;
+    // Сколько тиков осталось до возрождения погибшего NPC
+    private int respawnTimer;
+    
+    // Собственные часы NPC: сколько тиков он прожил, включая прокрученные (время таблицы угрозы)
+    private long clock;
+    
+    // Угроза игроков, нанесших NPC урон
+    private TThreatTable threats;
     
     /**
      * Конструктор - создает нового NPC.
@@ -37,18 +83,99 @@ public class TNPC extends TGameObject {
      * @param defense защита NPC
      */
     public TNPC(String name, String id, double x, double y, int health, int defense) {
+        this(name, id, x, y, health, defense, DEFAULT_ATTACK_POWER);
+    }
+    
+    /**
+     * Конструктор - создает нового NPC с заданной силой атаки.
+     * 
+     * @param name имя NPC (например, "Враг", "Гоблин")
+     * @param id уникальный идентификатор NPC
+     * @param x координата X начальной позиции
+     * @param y координата Y начальной позиции
+     * @param health начальное здоровье
+     * @param defense защита NPC
+     * @param attackPower сила атаки NPC
+     */
+    public TNPC(String name, String id, double x, double y, int health, int defense, int attackPower) {
         // Вызываем конструктор родительского класса TGameObject
         super(name, id, x, y);
         
-        // Сохраняем здоровье и защиту
+        // Сохраняем здоровье, защиту и силу атаки
         this.health = health;
+        this.maxHealth = health;
         this.defense = defense;
+        this.attackPower = attackPower;
+        this.attackCooldown = 0;
+        this.behaviour = null;
+        this.clock = 0;
+        this.threats = new TThreatTable(THREAT_HALF_LIFE_TICKS);
         
         // Изначально NPC не находится ни в одной комнате
         this.location = null;
-        
-        // Создаем объект для генерации случайных чисел
-        this.random = new Random();
+    }
+    
+    /**
+     * Получить текущее здоровье NPC.
+     * 
+     * @return здоровье NPC
+     */
+    public int getHealth() {
+        return health;
+    }
+    
+    /**
+     * Получить начальное (максимальное) здоровье NPC.
+     * 
+     * @return максимальное здоровье
+     */
+    public int getMaxHealth() {
+        return maxHealth;
+    }
+    
+    /**
+     * Получить силу атаки NPC.
+     * 
+     * @return сила атаки
+     */
+    public int getAttackPower() {
+        return attackPower;
+    }
+    
+    /**
+     * Получить поведение NPC.
+     * 
+     * @return поведение или null, если поведение не назначено
+     */
+    public TBehaviour getBehaviour() {
+        return behaviour;
+    }
+    
+    /**
+     * Назначить NPC поведение.
+     * 
+     * @param behaviour поведение (null - без поведения)
+     */
+    public void setBehaviour(TBehaviour behaviour) {
+        this.behaviour = behaviour;
+    }
+    
+    /**
+     * Получить таблицу добычи NPC.
+     * 
+     * @return таблица добычи или null, если из NPC ничего не выпадает
+     */
+    public TLootTable getLootTable() {
+        return lootTable;
+    }
+    
+    /**
+     * Назначить NPC таблицу добычи.
+     * 
+     * @param lootTable таблица добычи (null - из NPC ничего не выпадает)
+     */
+    public void setLootTable(TLootTable lootTable) {
+        this.lootTable = lootTable;
     }
     
     /**
@@ -87,6 +214,8 @@ public class TNPC extends TGameObject {
      * @param damage количество урона, которое нужно нанести
      */
     public void takeDamage(int damage) {
+        boolean wasAlive = isAlive();
+        
         // Уменьшаем здоровье на полученный урон
         health = health - damage;
         
@@ -94,6 +223,100 @@ public class TNPC extends TGameObject {
         if (health < 0) {
             health = 0;
         }
+        viewChanged();
+        
+        // Погибший NPC перестает быть препятствием в комнате, бросает добычу
+        // и через время возрождается
+        if (wasAlive && health == 0) {
+            respawnTimer = RESPAWN_TICKS;
+            // Мертвый NPC никого не преследует, возрожденный начинает с чистой таблицы
+            threats.clear();
+            if (location != null) {
+                location.onNPCDied(this);
+                dropLoot();
+            }
+        }
+    }
+    
+    /**
+     * Получить урон от атаки игрока.
+     * 
+     * Отнятое здоровье становится угрозой нападающего: если NPC выживет,
+     * он будет преследовать того, кто ранил его сильнее всех.
+     * 
+     * @param damage количество урона
+     * @param attacker игрок, нанесший урон
+     */
+    public void takeDamage(int damage, TPlayer attacker) {
+        int healthBefore = health;
+        takeDamage(damage);
+        if (isAlive()) {
+            threats.addThreat(attacker, healthBefore - health, clock);
+        }
+    }
+    
+    /**
+     * Получить таблицу угрозы NPC.
+     * 
+     * @return таблица угрозы
+     */
+    public TThreatTable getThreats() {
+        return threats;
+    }
+    
+    /**
+     * Получить цель NPC - игрока с наибольшей угрозой.
+     * 
+     * Игроки, которые погибли или ушли из комнаты NPC, при этом забываются.
+     * 
+     * @return игрок или null, если NPC никто не угрожает
+     */
+    public TPlayer getThreatTarget() {
+        TPlayer target = threats.getTop(clock);
+        while (target != null && (!target.isAlive() || target.getCurrentRoom() != location)) {
+            threats.remove(target);
+            target = threats.getTop(clock);
+        }
+        return target;
+    }
+    
+    /**
+     * Проверить, занят ли NPC боем: его кто-то ранил или игрок подошел на расстояние преследования.
+     * 
+     * Ходы NPC в бою выполняются каждый тик, а ходы остальных NPC (блуждания,
+     * ожидание возрождения) движок может отложить, если тик не укладывается во время.
+     * 
+     * @return true если NPC жив и занят боем
+     */
+    public boolean isInCombat() {
+        if (!isAlive() || location == null) {
+            return false;
+        }
+        if (getThreatTarget() != null) {
+            return true;
+        }
+        TPlayer nearest = location.getFlowField().targetAt(getX(), getY());
+        if (nearest == null) {
+            return false;
+        }
+        double dx = nearest.getX() - getX();
+        double dy = nearest.getY() - getY();
+        return dx * dx + dy * dy <= COMBAT_DISTANCE * COMBAT_DISTANCE;
+    }
+    
+    /**
+     * Бросить добычу из таблицы добычи в комнату, на место гибели.
+     * 
+     * Выбор предмета занимает O(1) при любом размере таблицы (см. TLootTable).
+     */
+    private void dropLoot() {
+        if (lootTable == null) {
+            return;
+        }
+        TItem loot = lootTable.roll(getX(), getY(), ThreadLocalRandom.current());
+        if (loot != null) {
+            location.addItem(loot);
+        }
     }
     
     /**
@@ -108,8 +331,9 @@ public class TNPC extends TGameObject {
     /**
      * Случайно переместить NPC в пределах комнаты.
      * 
-     * Этот метод генерирует случайные координаты внутри комнаты и перемещает NPC туда.
-     * Вызывается автоматически при перемещении игрока.
+     * Этот метод выбирает случайную свободную точку внутри комнаты и перемещает NPC туда.
+     * Точки, где NPC пересекся бы с игроком или другим NPC, пропускаются.
+     * Вызывается из tick(), если NPC не назначено поведение.
      */
     public void moveRandom() {
         // Проверяем, что NPC находится в комнате
@@ -118,26 +342,213 @@ public class TNPC extends TGameObject {
             return;
         }
         
-        // Получаем границы комнаты
-        double roomX = location.getX();
-        double roomY = location.getY();
-        double roomWidth = location.getWidth();
-        double roomHeight = location.getHeight();
+        // Комната сама подбирает свободную точку с помощью сетки столкновений.
+        // Случайные числа берутся из генератора потока: свой Random у каждого NPC
+        // занимал память и на каждом вызове делал атомарную операцию над общим семенем
+        location.moveToFreeSpot(this, ThreadLocalRandom.current());
+    }
+    
+    /**
+     * Выполнить один тик NPC.
+     * 
+     * Мертвый NPC только ждет возрождения. Живой NPC действует по своему поведению,
+     * а если поведение не назначено - случайно перемещается по комнате.
+     */
+    public void tick() {
+        if (location == null) {
+            return;
+        }
+        clock = clock + 1;
+        if (!isAlive()) {
+            waitRespawn(1);
+            return;
+        }
         
-        // Генерируем случайные координаты внутри комнаты
-        // Минимальная координата X = координата комнаты + небольшой отступ (чтобы не вплотную к стене)
-        // Максимальная координата X = координата комнаты + ширина комнаты - отступ
-        double minX = roomX + 20;
-        double maxX = roomX + roomWidth - 20;
-        double newX = minX + random.nextDouble() * (maxX - minX);
+        // Ожидание между атаками уменьшается каждый тик
+        if (attackCooldown > 0) {
+            attackCooldown = attackCooldown - 1;
+        }
         
-        // Аналогично для координаты Y
-        double minY = roomY + 20;
-        double maxY = roomY + roomHeight - 20;
-        double newY = minY + random.nextDouble() * (maxY - minY);
+        if (behaviour != null) {
+            behaviour.tick(this);
+        } else {
+            moveRandom();
+        }
+    }
+    
+    /**
+     * Прокрутить вперед тики, которые NPC провел без наблюдения (комната спала).
+     * 
+     * Вместо того чтобы выполнять каждый пропущенный тик, сразу вычисляется их итог:
+     * погибший NPC приближается к возрождению, ожидание атаки заканчивается,
+     * а после долгих блужданий NPC оказывается в случайной свободной точке комнаты.
+     * 
+     * @param ticks количество пропущенных тиков
+     */
+    public void fastForward(int ticks) {
+        if (location == null || ticks <= 0) {
+            return;
+        }
+        clock = clock + ticks;
+        if (!isAlive()) {
+            waitRespawn(ticks);
+            return;
+        }
+        attackCooldown = Math.max(0, attackCooldown - ticks);
+        if (ticks >= SCATTER_TICKS) {
+            moveRandom();
+        }
+    }
+    
+    /**
+     * Отсчитать тики до возрождения и возродить NPC, когда время пришло.
+     */
+    private void waitRespawn(int ticks) {
+        respawnTimer = respawnTimer - ticks;
+        if (respawnTimer <= 0) {
+            health = maxHealth;
+            attackCooldown = 0;
+            respawnTimer = 0;
+            // Возрожденный NPC снова тело в сетке столкновений и появляется в свободной точке
+            location.onNPCRespawned(this);
+            location.moveToFreeSpot(this, ThreadLocalRandom.current());
+        }
+    }
+    
+    /**
+     * Сделать шаг к точке (x, y).
+     * 
+     * NPC не проходит сквозь другие тела: если место после шага занято, NPC остается на месте.
+     * 
+     * @param targetX координата X цели
+     * @param targetY координата Y цели
+     * @param step длина шага в пикселях
+     * @return true если NPC сдвинулся
+     */
+    public boolean stepToward(double targetX, double targetY, double step) {
+        double dx = targetX - getX();
+        double dy = targetY - getY();
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance == 0 || location == null) {
+            return false;
+        }
         
-        // Устанавливаем новые координаты NPC
+        // Не перешагиваем через цель
+        if (step > distance) {
+            step = distance;
+        }
+        return stepBy(dx / distance * step, dy / distance * step);
+    }
+    
+    /**
+     * Сделать шаг к ближайшему живому игроку комнаты по полю потока комнаты.
+     * 
+     * NPC не ищет игрока и путь к нему сам, а берет направление из своей ячейки поля,
+     * поэтому преследование стоит O(1) независимо от количества NPC и игроков.
+     * Если прямой шаг занят другим телом, NPC пробует обойти его, отклонившись на 45 градусов.
+     * 
+     * Если у NPC есть цель по угрозе (getThreatTarget) и это не ближайший игрок,
+     * NPC идет прямо к ней: поле потока ведет только к ближайшему.
+     * 
+     * @param step длина шага в пикселях
+     * @return true если NPC сдвинулся
+     */
+    public boolean chase(double step) {
+        if (location == null) {
+            return false;
+        }
+        TFlowField field = location.getFlowField();
+        TPlayer target = field.targetAt(getX(), getY());
+        TPlayer threatTarget = getThreatTarget();
+        if (threatTarget != null && threatTarget != target) {
+            return stepToward(threatTarget.getX(), threatTarget.getY(), step);
+        }
+        if (target == null) {
+            return false;
+        }
+        int direction = field.directionAt(getX(), getY());
+        if (direction < 0) {
+            // NPC уже в ячейке игрока - идем прямо к нему
+            return stepToward(target.getX(), target.getY(), step);
+        }
+        return stepAlong(direction, step)
+                || stepAlong((direction + 1) % 8, step)
+                || stepAlong((direction + 7) % 8, step);
+    }
+    
+    /**
+     * Сделать шаг в направлении поля потока (индекс в TFlowField.DIRECTION_X/DIRECTION_Y).
+     */
+    private boolean stepAlong(int direction, double step) {
+        return stepBy(TFlowField.DIRECTION_X[direction] * step, TFlowField.DIRECTION_Y[direction] * step);
+    }
+    
+    /**
+     * Сделать шаг от точки (x, y) - например, убегая от игрока.
+     * 
+     * @param fromX координата X точки, от которой нужно уйти
+     * @param fromY координата Y точки, от которой нужно уйти
+     * @param step длина шага в пикселях
+     * @return true если NPC сдвинулся
+     */
+    public boolean stepAway(double fromX, double fromY, double step) {
+        double dx = getX() - fromX;
+        double dy = getY() - fromY;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance == 0 || location == null) {
+            return false;
+        }
+        return stepBy(dx / distance * step, dy / distance * step);
+    }
+    
+    /**
+     * Сделать небольшой шаг в случайном направлении.
+     * 
+     * @return true если NPC сдвинулся
+     */
+    public boolean wander() {
+        if (location == null) {
+            return false;
+        }
+        double angle = ThreadLocalRandom.current().nextDouble() * 2 * Math.PI;
+        return stepBy(Math.cos(angle) * WANDER_STEP, Math.sin(angle) * WANDER_STEP);
+    }
+    
+    /**
+     * Атаковать игрока, если закончилось ожидание после прошлой атаки.
+     * 
+     * @param player игрок, которого атакует NPC
+     * @return true если атака состоялась
+     */
+    public boolean attack(TPlayer player) {
+        if (attackCooldown > 0 || !player.isAlive()) {
+            return false;
+        }
+        player.takeDamage(attackPower);
+        attackCooldown = ATTACK_COOLDOWN_TICKS;
+        return true;
+    }
+    
+    /**
+     * Сдвинуться на (dx, dy), если новое место внутри комнаты и не занято другим телом.
+     */
+    private boolean stepBy(double dx, double dy) {
+        double newX = getX() + dx;
+        double newY = getY() + dy;
+        
+        // Не выходим за стены комнаты
+        double radius = TCollisionGrid.BODY_RADIUS;
+        if (newX < location.getX() + radius || newX > location.getX() + location.getWidth() - radius
+                || newY < location.getY() + radius || newY > location.getY() + location.getHeight() - radius) {
+            return false;
+        }
+        
+        // Не заходим в другие тела
+        if (!location.getCollisionGrid().isFree(newX, newY, this)) {
+            return false;
+        }
         setX(newX);
         setY(newY);
+        return true;
     }
 }
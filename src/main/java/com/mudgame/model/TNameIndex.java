@@ -0,0 +1,439 @@
+package com.mudgame.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Упорядоченный индекс имен объектов комнаты - для команд вида "attack gob" и "get 2.меч".
+ * 
+ * Игрок пишет не идентификатор, а начало имени, поэтому цель команды нужно найти
+ * по префиксу. Перебирать все объекты комнаты и сравнивать строки - это O(n)
+ * на каждую команду. Индекс хранит разные ключи (слова имени в нижнем регистре)
+ * в отсортированном массиве: все ключи с общим префиксом лежат подряд,
+ * начало этого отрезка находится двоичным поиском, и просматриваются только
+ * подходящие ключи.
+ * 
+ * Ключи объекта - каждое слово его имени и, если слов несколько, имя целиком
+ * (чтобы находилось и "ржавый м"). Регистр не учитывается.
+ * 
+ * У каждого ключа своя корзина - объекты ключа в порядке добавления. Добавление
+ * дописывает объект в конец корзины, удаление находит его двоичным поиском
+ * по номеру добавления (номер хранится в самом объекте) и оставляет на его месте
+ * дыру; когда дыр в корзине становится больше, чем объектов, корзина сжимается.
+ * Поэтому добавление и удаление стоят O(log K + log m) (K - разных ключей,
+ * m - объектов ключа) и не сдвигают остальные записи, сколько бы их ни было:
+ * 10 000 волков в комнате не делают подбор предмета или загрузку комнаты
+ * квадратичными. Сдвиг массива ключей (O(K)) бывает только при первой встрече
+ * нового ключа; ключ остается в индексе и тогда, когда его объектов не осталось.
+ * 
+ * Если подходящих объектов несколько, они нумеруются в порядке добавления
+ * в индекс, и запрос "2.гоблин" выбирает второй из них. Без номера выбирается первый.
+ * При одном подходящем ключе (100 волков с ключом "волк") поиск берет объекты
+ * с начала корзины и останавливается на k-м подходящем. Если префикс подходит
+ * к нескольким ключам, их корзины сливаются по номеру добавления: O(ключей * k),
+ * а не O(записей).
+ * 
+ * Поиск не создает объектов: запрос сравнивается с ключами посимвольно,
+ * поэтому его можно передавать и как часть строки (start, end).
+ * 
+ * Ключи имени строятся один раз и запоминаются по имени, поэтому добавление
+ * и удаление объекта с уже встречавшимся именем (предмет подняли, NPC возродился)
+ * тоже не создают объектов. Запомненных имен столько, сколько разных имен
+ * было в комнате.
+ * 
+ * Объект может быть только в одном индексе сразу (в индексе NPC или предметов
+ * своей комнаты): его номер добавления хранится в нем самом.
+ * 
+ * Индекс не потокобезопасен и изменяется вместе с комнатой, в её потоке.
+ * 
+ * Взаимодействия (Collaborators):
+ * - TRoom - держит индексы своих NPC и предметов и обновляет их в addNPC/addItem/removeItem
+ * - TGameObject - имя объекта служит ключом, в объекте хранится его номер добавления
+ * 
+ * @param <T> тип объектов индекса
+ */
+public final class TNameIndex<T extends TGameObject> {
+    
+    // Начальный размер массивов (при заполнении массивы увеличиваются вдвое)
+    private static final int INITIAL_CAPACITY = 16;
+    
+    // Разделитель номера и имени в запросе ("2.гоблин")
+    private static final char ORDINAL_SEPARATOR = '.';
+    
+    // Разные ключи в порядке возрастания
+    private String[] keys;
+    
+    // Корзина каждого ключа
+    private Bucket[] buckets;
+    
+    // Количество разных ключей
+    private int keyCount;
+    
+    // Количество записей (пар "ключ - объект")
+    private int size;
+    
+    // Счетчик добавлений
+    private long nextSequence;
+    
+    // Ключи по имени объекта (строятся при первой встрече имени)
+    private final Map<String, String[]> keysByName;
+    
+    // Текущие позиции в корзинах подходящих ключей при слиянии в find (переиспользуются)
+    private int[] runHeads;
+    
+    /**
+     * Конструктор - создает пустой индекс.
+     */
+    public TNameIndex() {
+        this.keys = new String[INITIAL_CAPACITY];
+        this.buckets = new Bucket[INITIAL_CAPACITY];
+        this.keyCount = 0;
+        this.size = 0;
+        this.nextSequence = 0;
+        this.keysByName = new HashMap<>();
+        this.runHeads = new int[4];
+    }
+    
+    /**
+     * Добавить объект в индекс.
+     * 
+     * @param object объект (не должен быть ни в каком индексе)
+     */
+    public void add(T object) {
+        long sequence = nextSequence;
+        nextSequence = nextSequence + 1;
+        object.nameSequence = sequence;
+        for (String key : keysOf(object.getName())) {
+            bucketOf(key).append(object, sequence);
+            size = size + 1;
+        }
+    }
+    
+    /**
+     * Удалить объект из индекса.
+     * 
+     * Имя объекта не должно меняться, пока он в индексе: по нему ищутся его ключи.
+     * 
+     * @param object объект
+     */
+    public void remove(T object) {
+        long sequence = object.nameSequence;
+        if (sequence < 0) {
+            return;
+        }
+        object.nameSequence = -1;
+        for (String key : keysOf(object.getName())) {
+            int index = lowerBound(key, 0, key.length());
+            if (index < keyCount && keys[index].equals(key) && buckets[index].remove(sequence)) {
+                size = size - 1;
+            }
+        }
+    }
+    
+    /**
+     * Получить количество записей (пар "ключ - объект") индекса.
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Найти объект по запросу вида "гоб" или "2.гоблин".
+     * 
+     * @param query запрос
+     * @param filter условие, которому должен удовлетворять объект (null - любой)
+     * @return объект или null, если подходящего нет
+     */
+    public T find(String query, Predicate<? super T> filter) {
+        return find(query, 0, query.length(), filter);
+    }
+    
+    /**
+     * Найти объект по запросу, записанному в части строки.
+     * 
+     * @param query строка с запросом
+     * @param start начало запроса (включительно)
+     * @param end конец запроса (не включительно)
+     * @param filter условие, которому должен удовлетворять объект (null - любой)
+     * @return объект или null, если подходящего нет
+     */
+    public T find(CharSequence query, int start, int end, Predicate<? super T> filter) {
+        // Номер совпадения: "2.гоблин" - второй гоблин, без номера - первый
+        int ordinal = 1;
+        int separator = ordinalEnd(query, start, end);
+        if (separator >= 0) {
+            ordinal = 0;
+            for (int i = start; i < separator; i++) {
+                ordinal = ordinal * 10 + (query.charAt(i) - '0');
+            }
+            start = separator + 1;
+        }
+        if (ordinal < 1 || start >= end) {
+            return null;
+        }
+        
+        // Ключи, начинающиеся с запроса, лежат подряд с first
+        int first = lowerBound(query, start, end);
+        int last = first;
+        while (last < keyCount && startsWith(keys[last], query, start, end)) {
+            last = last + 1;
+        }
+        int runs = last - first;
+        if (runs > runHeads.length) {
+            runHeads = new int[Math.max(runs, runHeads.length * 2)];
+        }
+        Arrays.fill(runHeads, 0, runs, 0);
+        
+        // k-й по порядку добавления среди подходящих объектов: корзины упорядочены
+        // по номеру добавления, на каждом шаге берется наименьшее из их начал.
+        // Один объект может совпасть несколькими ключами - номера у них одинаковые,
+        // и такие записи пропускаются (как и дыры удаленных объектов)
+        long previous = -1;
+        int matched = 0;
+        while (true) {
+            int best = -1;
+            long bestSequence = Long.MAX_VALUE;
+            for (int r = 0; r < runs; r++) {
+                Bucket bucket = buckets[first + r];
+                int head = runHeads[r];
+                while (head < bucket.count
+                        && (bucket.objects[head] == null || bucket.sequences[head] <= previous)) {
+                    head = head + 1;
+                }
+                runHeads[r] = head;
+                if (head < bucket.count && bucket.sequences[head] < bestSequence) {
+                    best = r;
+                    bestSequence = bucket.sequences[head];
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            previous = bestSequence;
+            T object = object(buckets[first + best].objects[runHeads[best]]);
+            if (filter == null || filter.test(object)) {
+                matched = matched + 1;
+                if (matched == ordinal) {
+                    return object;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Привести объект корзины к типу индекса.
+     */
+    @SuppressWarnings("unchecked")
+    private T object(Object object) {
+        return (T) object;
+    }
+    
+    /**
+     * Получить корзину ключа; новый ключ вставляется в массив ключей с сохранением порядка.
+     */
+    private Bucket bucketOf(String key) {
+        int index = lowerBound(key, 0, key.length());
+        if (index < keyCount && keys[index].equals(key)) {
+            return buckets[index];
+        }
+        if (keyCount == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            buckets = Arrays.copyOf(buckets, buckets.length * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, keyCount - index);
+        System.arraycopy(buckets, index, buckets, index + 1, keyCount - index);
+        keys[index] = key;
+        buckets[index] = new Bucket();
+        keyCount = keyCount + 1;
+        return buckets[index];
+    }
+    
+    /**
+     * Первый ключ, не меньший запроса (двоичный поиск).
+     */
+    private int lowerBound(CharSequence query, int start, int end) {
+        int low = 0;
+        int high = keyCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(keys[middle], query, start, end) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Сравнить ключ с запросом без учета регистра запроса (ключи уже в нижнем регистре).
+     */
+    private static int compare(String key, CharSequence query, int start, int end) {
+        int length = end - start;
+        int common = Math.min(key.length(), length);
+        for (int i = 0; i < common; i++) {
+            char a = key.charAt(i);
+            char b = Character.toLowerCase(query.charAt(start + i));
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return key.length() - length;
+    }
+    
+    /**
+     * Проверить, начинается ли ключ с запроса.
+     */
+    private static boolean startsWith(String key, CharSequence query, int start, int end) {
+        if (key.length() < end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (key.charAt(i - start) != Character.toLowerCase(query.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Найти точку после номера в запросе ("2.гоблин").
+     * 
+     * @return позиция точки или -1, если запрос не начинается с номера
+     */
+    private static int ordinalEnd(CharSequence query, int start, int end) {
+        int i = start;
+        // Больше 9 цифр не бывает - иначе номер не поместится в int
+        while (i < end && i - start < 9 && query.charAt(i) >= '0' && query.charAt(i) <= '9') {
+            i = i + 1;
+        }
+        if (i > start && i < end && query.charAt(i) == ORDINAL_SEPARATOR) {
+            return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Получить ключи имени: каждое слово (без повторов) и, если слов несколько, имя целиком.
+     */
+    private String[] keysOf(String name) {
+        String[] keys = keysByName.get(name);
+        if (keys != null) {
+            return keys;
+        }
+        String[] words = new String[name.length() + 1];
+        int count = 0;
+        int start = 0;
+        while (start < name.length()) {
+            int end = wordEnd(name, start);
+            if (end > start) {
+                // Повторное слово ("волк волк") - тот же ключ: объект ложится в корзину один раз
+                String word = toKey(name, start, end);
+                if (!Arrays.asList(words).subList(0, count).contains(word)) {
+                    words[count] = word;
+                    count = count + 1;
+                }
+            }
+            start = end + 1;
+        }
+        if (name.indexOf(' ') >= 0) {
+            words[count] = toKey(name, 0, name.length());
+            count = count + 1;
+        }
+        keys = Arrays.copyOf(words, count);
+        keysByName.put(name, keys);
+        return keys;
+    }
+    
+    /**
+     * Конец слова имени, начинающегося с позиции start.
+     */
+    private static int wordEnd(String name, int start) {
+        int end = name.indexOf(' ', start);
+        return end < 0 ? name.length() : end;
+    }
+    
+    /**
+     * Ключ - часть имени в нижнем регистре (посимвольно, как и при сравнении с запросом).
+     */
+    private static String toKey(String name, int start, int end) {
+        char[] key = new char[end - start];
+        for (int i = start; i < end; i++) {
+            key[i - start] = Character.toLowerCase(name.charAt(i));
+        }
+        return new String(key);
+    }
+    
+    /**
+     * Корзина ключа: объекты в порядке добавления и их номера добавления.
+     * Удаленный объект оставляет дыру (null), дыры убираются сжатием.
+     */
+    private static final class Bucket {
+        
+        // Объекты (null - дыра удаленного объекта) и их номера добавления (по возрастанию)
+        Object[] objects;
+        long[] sequences;
+        
+        // Занято ячеек (вместе с дырами) и сколько из них дыр
+        int count;
+        int holes;
+        
+        /**
+         * Конструктор - пустая корзина.
+         */
+        Bucket() {
+            this.objects = new Object[4];
+            this.sequences = new long[4];
+        }
+        
+        /**
+         * Дописать объект в конец (номер добавления больше всех номеров корзины).
+         */
+        void append(Object object, long sequence) {
+            if (count == objects.length) {
+                objects = Arrays.copyOf(objects, count * 2);
+                sequences = Arrays.copyOf(sequences, count * 2);
+            }
+            objects[count] = object;
+            sequences[count] = sequence;
+            count = count + 1;
+        }
+        
+        /**
+         * Удалить объект с заданным номером добавления.
+         * 
+         * @return true если объект был в корзине
+         */
+        boolean remove(long sequence) {
+            int index = Arrays.binarySearch(sequences, 0, count, sequence);
+            if (index < 0 || objects[index] == null) {
+                return false;
+            }
+            objects[index] = null;
+            holes = holes + 1;
+            if (holes * 2 > count) {
+                compact();
+            }
+            return true;
+        }
+        
+        /**
+         * Убрать дыры, сохранив порядок объектов.
+         */
+        private void compact() {
+            int live = 0;
+            for (int i = 0; i < count; i++) {
+                if (objects[i] != null) {
+                    objects[live] = objects[i];
+                    sequences[live] = sequences[i];
+                    live = live + 1;
+                }
+            }
+            Arrays.fill(objects, live, count, null);
+            count = live;
+            holes = 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mudgame.model;
+
+/**
+ * Неизменяемое состояние игрового объекта на момент публикации вида комнаты (TRoomView).
+ * 
+ * Игровые объекты (TPlayer, TNPC, TItem) меняет актор их комнаты, и читать
+ * их поля из других потоков нельзя. Состояние - их копия, которую можно читать
+ * из любого потока: новое состояние создается, только когда объект изменился.
+ */
+public final class TObjectState {
+    
+    // Идентификатор и имя объекта
+    private final String id;
+    private final String name;
+    
+    // Координаты объекта
+    private final double x;
+    private final double y;
+    
+    // Здоровье (у предметов - 0)
+    private final int health;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param id идентификатор объекта
+     * @param name имя объекта
+     * @param x координата X
+     * @param y координата Y
+     * @param health здоровье (у предметов - 0)
+     */
+    public TObjectState(String id, String name, double x, double y, int health) {
+        this.id = id;
+        this.name = name;
+        this.x = x;
+        this.y = y;
+        this.health = health;
+    }
+    
+    /**
+     * Получить идентификатор объекта.
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * Получить имя объекта.
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Получить координату X.
+     */
+    public double getX() {
+        return x;
+    }
+    
+    /**
+     * Получить координату Y.
+     */
+    public double getY() {
+        return y;
+    }
+    
+    /**
+     * Получить здоровье (у предметов - 0).
+     */
+    public int getHealth() {
+        return health;
+    }
+}
@@ -0,0 +1,326 @@
+package com.mudgame.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Неизменяемый (персистентный) вектор - список, который после создания никогда не меняется.
+ * 
+ * Элементы лежат в листьях дерева, у каждого узла до 32 потомков, поэтому
+ * глубина дерева для миллиона элементов - 4. Новая версия вектора не копирует
+ * старую целиком: она копирует только узлы на пути от корня к измененному
+ * элементу, а все остальные узлы у версий общие. Поэтому изменение одного
+ * элемента стоит O(log32 n), а новая версия после k изменений - O(k).
+ * 
+ * Менять вектор можно только через редактор (Editor). Редактор меняет на месте
+ * узлы, которые сам создал с прошлой публикации, и копирует чужие узлы при первом
+ * изменении. Поэтому за одну публикацию каждый узел копируется не больше одного раза,
+ * сколько бы элементов в нем ни поменялось.
+ * 
+ * Опубликованную версию могут одновременно читать любые потоки без блокировок:
+ * её узлы больше никто не меняет.
+ * 
+ * Пример:
+ *     TPersistentVector.Editor<String> editor = TPersistentVector.<String>empty().edit();
+ *     editor.add("меч");
+ *     TPersistentVector<String> first = editor.publish();
+ *     editor.set(0, "щит");
+ *     TPersistentVector<String> second = editor.publish();  // first.get(0) - по-прежнему "меч"
+ * 
+ * @param <E> тип элементов
+ */
+public final class TPersistentVector<E> implements Iterable<E> {
+    
+    // Бит индекса на один уровень дерева и число потомков узла
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    
+    // Пустой вектор (общий для всех типов элементов - в нем нет ни одного элемента)
+    private static final TPersistentVector<Object> EMPTY =
+            new TPersistentVector<>(0, 0, new Node(null, new Object[WIDTH]));
+    
+    // Количество элементов
+    private final int size;
+    
+    // Сдвиг индекса для корня (0 - корень сам является листом)
+    private final int shift;
+    
+    // Корень дерева
+    private final Node root;
+    
+    /**
+     * Конструктор - создается только редактором.
+     */
+    private TPersistentVector(int size, int shift, Node root) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+    }
+    
+    /**
+     * Получить пустой вектор.
+     * 
+     * @param <E> тип элементов
+     * @return пустой вектор
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> TPersistentVector<E> empty() {
+        return (TPersistentVector<E>) EMPTY;
+    }
+    
+    /**
+     * Получить количество элементов.
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Получить элемент по индексу (индекс от 0 до size()-1).
+     * 
+     * @throws IndexOutOfBoundsException если индекс вне вектора
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Индекс " + index + " вне вектора размера " + size);
+        }
+        return (E) leafOf(root, shift, index).array[index & MASK];
+    }
+    
+    /**
+     * Начать редактирование: редактор начинает с этой версии, сама версия не меняется.
+     * 
+     * @return новый редактор
+     */
+    public Editor<E> edit() {
+        return new Editor<>(this);
+    }
+    
+    /**
+     * Обойти элементы по порядку.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            
+            // Индекс следующего элемента и лист, в котором он лежит
+            private int index;
+            private Node leaf;
+            
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+            
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                // Лист ищется от корня только при переходе в следующий лист
+                if ((index & MASK) == 0 || leaf == null) {
+                    leaf = leafOf(root, shift, index);
+                }
+                E element = (E) leaf.array[index & MASK];
+                index = index + 1;
+                return element;
+            }
+        };
+    }
+    
+    /**
+     * Спуститься от корня к листу, в котором лежит элемент с индексом index.
+     */
+    private static Node leafOf(Node root, int shift, int index) {
+        Node node = root;
+        for (int level = shift; level > 0; level = level - BITS) {
+            node = (Node) node.array[(index >>> level) & MASK];
+        }
+        return node;
+    }
+    
+    /**
+     * Узел дерева: потомки (Node) или, в листе, элементы.
+     * 
+     * Поле edit - метка редактора, создавшего узел: только этот редактор
+     * и только до своей следующей публикации может менять массив на месте.
+     */
+    private static final class Node {
+        
+        // Метка редактора, который создал узел (null - узел ничей)
+        private final Object edit;
+        
+        // Потомки или элементы (всегда WIDTH ячеек)
+        private final Object[] array;
+        
+        /**
+         * Конструктор.
+         */
+        Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+    }
+    
+    /**
+     * Редактор вектора - изменяемая сторона, из которой публикуются неизменяемые версии.
+     * 
+     * Редактор не потокобезопасен: его использует один поток-владелец
+     * (для комнаты - её актор). Опубликованные версии можно отдавать любым потокам.
+     * 
+     * @param <E> тип элементов
+     */
+    public static final class Editor<E> {
+        
+        // Метка узлов, созданных с прошлой публикации (меняется при каждой публикации)
+        private Object edit;
+        
+        // Текущее состояние: количество элементов, сдвиг корня и корень
+        private int size;
+        private int shift;
+        private Node root;
+        
+        // Последняя опубликованная версия и были ли изменения после нее
+        private TPersistentVector<E> published;
+        private boolean changed;
+        
+        /**
+         * Конструктор - создается методом TPersistentVector.edit().
+         */
+        private Editor(TPersistentVector<E> from) {
+            this.edit = new Object();
+            this.size = from.size;
+            this.shift = from.shift;
+            this.root = from.root;
+            this.published = from;
+            this.changed = false;
+        }
+        
+        /**
+         * Получить количество элементов.
+         */
+        public int size() {
+            return size;
+        }
+        
+        /**
+         * Получить элемент по индексу (индекс от 0 до size()-1).
+         * 
+         * @throws IndexOutOfBoundsException если индекс вне вектора
+         */
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            checkIndex(index);
+            return (E) leafOf(root, shift, index).array[index & MASK];
+        }
+        
+        /**
+         * Заменить элемент по индексу.
+         * 
+         * @param index индекс от 0 до size()-1
+         * @param element новый элемент
+         * @throws IndexOutOfBoundsException если индекс вне вектора
+         */
+        public void set(int index, E element) {
+            checkIndex(index);
+            editableLeaf(index).array[index & MASK] = element;
+            changed = true;
+        }
+        
+        /**
+         * Добавить элемент в конец.
+         * 
+         * @param element элемент
+         */
+        public void add(E element) {
+            // Корень заполнен - над ним появляется новый уровень
+            if (size == 1 << (shift + BITS)) {
+                Node parent = new Node(edit, new Object[WIDTH]);
+                parent.array[0] = root;
+                root = parent;
+                shift = shift + BITS;
+            }
+            int index = size;
+            size = size + 1;
+            editableLeaf(index).array[index & MASK] = element;
+            changed = true;
+        }
+        
+        /**
+         * Убрать последний элемент.
+         * 
+         * @return убранный элемент
+         * @throws IndexOutOfBoundsException если вектор пуст
+         */
+        public E removeLast() {
+            E last = get(size - 1);
+            // Ячейка очищается, чтобы вектор не держал убранный элемент в памяти
+            editableLeaf(size - 1).array[(size - 1) & MASK] = null;
+            size = size - 1;
+            // Все элементы поместились в первый потомок корня - лишний уровень убираем
+            while (shift > 0 && size <= 1 << shift) {
+                root = (Node) root.array[0];
+                shift = shift - BITS;
+            }
+            changed = true;
+            return last;
+        }
+        
+        /**
+         * Опубликовать текущее состояние как неизменяемую версию.
+         * 
+         * Если изменений с прошлой публикации не было, возвращается та же версия.
+         * После публикации все узлы становятся общими с версией, и следующее
+         * изменение снова копирует путь к элементу.
+         * 
+         * @return неизменяемая версия
+         */
+        public TPersistentVector<E> publish() {
+            if (changed) {
+                published = new TPersistentVector<>(size, shift, root);
+                edit = new Object();
+                changed = false;
+            }
+            return published;
+        }
+        
+        /**
+         * Получить лист с элементом index, сделав изменяемыми (своими) все узлы пути.
+         * Недостающие узлы (после add за границей прежнего размера) создаются.
+         */
+        private Node editableLeaf(int index) {
+            root = editable(root);
+            Node node = root;
+            for (int level = shift; level > 0; level = level - BITS) {
+                int slot = (index >>> level) & MASK;
+                Node child = (Node) node.array[slot];
+                child = child == null ? new Node(edit, new Object[WIDTH]) : editable(child);
+                node.array[slot] = child;
+                node = child;
+            }
+            return node;
+        }
+        
+        /**
+         * Получить узел, который можно менять на месте: свой узел - как есть, чужой - копию.
+         */
+        private Node editable(Node node) {
+            if (node.edit == edit) {
+                return node;
+            }
+            return new Node(edit, node.array.clone());
+        }
+        
+        /**
+         * Проверить индекс.
+         */
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Индекс " + index + " вне вектора размера " + size);
+            }
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.mudgame.model;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Класс игрока - главный персонаж, которым управляет пользователь.
@@ -16,17 +16,14 @@ import java.util.Random;
  */
 public class TPlayer extends TGameObject {
     
-    // Максимальное количество предметов в инвентаре
-    private static final int MAX_INVENTORY = 10;
+    // Золото нового игрока
+    public static final long START_GOLD = 100;
     
     // Здоровье игрока - когда становится 0 или меньше, игрок умирает
     private int health;
     
-    // Инвентарь игрока - массив предметов, которые игрок поднял
-    private TItem[] inventory;
-    
-    // Количество предметов в инвентаре
-    private int inventoryCount;
+    // Инвентарь игрока - предметы, которые игрок поднял (без ограничения по количеству)
+    private TInventory inventory;
     
     // Текущая комната, в которой находится игрок
     private TRoom currentRoom;
@@ -34,8 +31,17 @@ public class TPlayer extends TGameObject {
     // Базовая сила атаки игрока (без оружия)
     private int baseAttackPower;
     
-    // Объект для генерации случайных чисел (для случайного перемещения)
-    private Random random;
+    // Золото игрока (для торговли на аукционе)
+    private long gold;
+    
+    // Счетчик изменений здоровья, золота и комнаты (изменения инвентаря считает сам инвентарь)
+    private long stateVersion;
+    
+    // Тик движка, на котором игрок последний раз отдал команду или вошел в комнату
+    private long lastActiveTick;
+    
+    // Получатель изменений здоровья и инвентаря (null - никто не наблюдает)
+    private TChangeListener changeListener;
     
     /**
      * Конструктор - создает нового игрока.
@@ -54,16 +60,13 @@ public class TPlayer extends TGameObject {
         // Сохраняем здоровье и базовую силу атаки
         this.health = health;
         this.baseAttackPower = baseAttackPower;
+        this.gold = START_GOLD;
         
-        // Создаем пустой инвентарь (массив)
-        this.inventory = new TItem[MAX_INVENTORY];
-        this.inventoryCount = 0;
+        // Создаем пустой инвентарь
+        this.inventory = new TInventory();
         
         // Изначально игрок не находится ни в одной комнате
         this.currentRoom = null;
-        
-        // Создаем объект для генерации случайных чисел
-        this.random = new Random();
     }
     
     /**
@@ -75,21 +78,196 @@ public class TPlayer extends TGameObject {
         return health;
     }
     
+    /**
+     * Установить здоровье игрока (например, при восстановлении сохраненного игрока).
+     * 
+     * @param health здоровье (отрицательное значение считается нулем)
+     */
+    public void setHealth(int health) {
+        this.health = Math.max(0, health);
+        stateVersion = stateVersion + 1;
+        viewChanged();
+        healthChanged();
+    }
+    
+    /**
+     * Получить золото игрока.
+     * 
+     * @return количество золота
+     */
+    public long getGold() {
+        return gold;
+    }
+    
+    /**
+     * Установить золото игрока (например, при восстановлении сохраненного игрока).
+     * 
+     * @param gold количество золота (отрицательное значение считается нулем)
+     */
+    public void setGold(long gold) {
+        this.gold = Math.max(0, gold);
+        stateVersion = stateVersion + 1;
+    }
+    
+    /**
+     * Получить золото (выручку с аукциона, возврат залога).
+     * 
+     * @param amount сколько золота получено
+     */
+    public void addGold(long amount) {
+        if (amount > 0) {
+            gold = gold + amount;
+            stateVersion = stateVersion + 1;
+        }
+    }
+    
+    /**
+     * Потратить золото, если его хватает.
+     * 
+     * @param amount сколько золота нужно
+     * @return true если золото списано, false если его не хватает
+     */
+    public boolean spendGold(long amount) {
+        if (amount < 0 || amount > gold) {
+            return false;
+        }
+        gold = gold - amount;
+        stateVersion = stateVersion + 1;
+        return true;
+    }
+    
+    /**
+     * Получить версию состояния игрока.
+     * 
+     * Версия растет при каждом изменении здоровья, золота, комнаты или инвентаря,
+     * поэтому по ней можно понять, что игрока пора сохранить.
+     * 
+     * @return версия состояния
+     */
+    public long getVersion() {
+        return stateVersion + inventory.getVersion();
+    }
+    
+    /**
+     * Продолжить счет версий с версии сохраненной записи (только при восстановлении игрока).
+     * 
+     * Счетчик версий у каждого объекта игрока свой и начинается почти с нуля, а запись
+     * в кэше сохранения несет версию прежнего объекта. Без этого новый объект однажды
+     * дошел бы ровно до версии записи, и кэш счел бы его состояние уже сохраненным.
+     * Вызывается, когда состояние игрока уже совпадает с записью: дальше версия растет от неё.
+     * 
+     * @param version версия записи, из которой восстановлен игрок
+     */
+    public void restoreVersion(long version) {
+        stateVersion = version - inventory.getVersion();
+    }
+    
+    /**
+     * Получить тик движка, на котором игрок последний раз был активен.
+     */
+    public long getLastActiveTick() {
+        return lastActiveTick;
+    }
+    
+    /**
+     * Отметить, что игрок активен (отдал команду или вошел в комнату) на тике tick.
+     * 
+     * @param tick номер тика движка
+     */
+    public void markActive(long tick) {
+        this.lastActiveTick = tick;
+    }
+    
+    /**
+     * Получить базовую силу атаки игрока (без оружия).
+     */
+    public int getBaseAttackPower() {
+        return baseAttackPower;
+    }
+    
+    /**
+     * Проверить, жив ли игрок.
+     * 
+     * @return true если здоровье больше 0
+     */
+    public boolean isAlive() {
+        return health > 0;
+    }
+    
+    /**
+     * Получить урон (например, от атаки NPC).
+     * 
+     * @param damage количество урона
+     */
+    public void takeDamage(int damage) {
+        // Уменьшаем здоровье на полученный урон
+        health = health - damage;
+        
+        // Если здоровье стало отрицательным, устанавливаем его в 0
+        if (health < 0) {
+            health = 0;
+        }
+        stateVersion = stateVersion + 1;
+        viewChanged();
+        healthChanged();
+    }
+    
+    /**
+     * Назначить получателя изменений здоровья и инвентаря игрока (null - перестать сообщать).
+     * 
+     * Новый получатель сразу узнает текущее состояние: INVENTORY_RESET, затем
+     * ITEM_ADDED по каждой стопке и HEALTH_CHANGED. Повторное назначение того же
+     * получателя снова присылает состояние (если получатель потерял изменения).
+     * 
+     * Вызывается владельцем игрока (актором его комнаты).
+     * 
+     * @param changeListener получатель или null
+     */
+    public void setChangeListener(TChangeListener changeListener) {
+        this.changeListener = changeListener;
+        inventory.setChangeListener(changeListener);
+        if (changeListener == null) {
+            return;
+        }
+        changeListener.onChange(TChangeKind.INVENTORY_RESET, this, 0, getX(), getY(), getX(), getY());
+        for (TItemStack stack : inventory.getStacks()) {
+            changeListener.onChange(TChangeKind.ITEM_ADDED, stack.getFirst(), stack.getCount(), 0, 0, 0, 0);
+        }
+        healthChanged();
+    }
+    
+    /**
+     * Получить получателя изменений игрока.
+     * 
+     * @return получатель или null, если никто не наблюдает
+     */
+    public TChangeListener getChangeListener() {
+        return changeListener;
+    }
+    
+    /**
+     * Сообщить получателю о новом здоровье.
+     */
+    private void healthChanged() {
+        if (changeListener != null) {
+            changeListener.onChange(TChangeKind.HEALTH_CHANGED, this, health, getX(), getY(), getX(), getY());
+        }
+    }
+    
     /**
      * Получить количество предметов в инвентаре.
      */
     public int getInventoryCount() {
-        return inventoryCount;
+        return inventory.getTotalCount();
     }
     
     /**
-     * Получить предмет из инвентаря по индексу (индекс от 0 до getInventoryCount()-1).
+     * Получить инвентарь игрока.
+     * 
+     * @return инвентарь игрока
      */
-    public TItem getInventoryItem(int index) {
-        if (index >= 0 && index < inventoryCount) {
-            return inventory[index];
-        }
-        return null;
+    public TInventory getInventory() {
+        return inventory;
     }
     
     /**
@@ -107,34 +285,30 @@ public class TPlayer extends TGameObject {
      * @param currentRoom комната, в которую входит игрок
      */
     public void setCurrentRoom(TRoom currentRoom) {
+        // Выходим из прежней комнаты
+        if (this.currentRoom != null) {
+            this.currentRoom.removePlayer(this);
+        }
+        
         this.currentRoom = currentRoom;
+        stateVersion = stateVersion + 1;
+        
+        // Входим в новую комнату (игрок становится телом в её сетке столкновений)
+        if (currentRoom != null) {
+            currentRoom.addPlayer(this);
+        }
     }
     
     /**
      * Получить общую силу атаки игрока.
      * 
      * Общая сила атаки = базовая сила атаки + сила атаки всех оружий в инвентаре.
+     * Сумму силы атаки оружия инвентарь хранит сам, поэтому перебирать предметы не нужно.
      * 
      * @return общая сила атаки
      */
     public int getTotalAttackPower() {
-        // Начинаем с базовой силы атаки
-        int total = baseAttackPower;
-        
-        // Проходим по всем предметам в инвентаре
-        for (int i = 0; i < inventoryCount; i++) {
-            TItem item = inventory[i];
-            // Если предмет является оружием (TWeapon)
-            if (item instanceof TWeapon) {
-                // Приводим предмет к типу TWeapon
-                TWeapon weapon = (TWeapon) item;
-                // Добавляем силу атаки оружия к общей силе атаки
-                total = total + weapon.getAttackPower();
-            }
-        }
-        
-        // Возвращаем общую силу атаки
-        return total;
+        return baseAttackPower + inventory.getWeaponAttackSum();
     }
     
     /**
@@ -144,18 +318,20 @@ public class TPlayer extends TGameObject {
      * урон = общая_сила_атаки_игрока - защита_NPC
      * 
      * @param npc NPC, которого нужно атаковать
+     * @return сколько здоровья NPC отнято на самом деле (0, если атаки не было;
+     *         меньше урона, если у NPC оставалось меньше здоровья)
      */
-    public void attack(TNPC npc) {
+    public int attack(TNPC npc) {
         // Проверяем, что игрок находится в комнате
         if (currentRoom == null) {
             // Если игрок не в комнате, ничего не делаем
-            return;
+            return 0;
         }
         
         // Проверяем, что NPC жив
         if (!npc.isAlive()) {
             // Если NPC уже мертв, ничего не делаем
-            return;
+            return 0;
         }
         
         // Получаем общую силу атаки игрока (базовая + оружие из инвентаря)
@@ -169,15 +345,18 @@ public class TPlayer extends TGameObject {
             damage = 1;
         }
         
-        // Наносим урон NPC
-        npc.takeDamage(damage);
+        // Наносим урон NPC (урон становится угрозой игрока для этого NPC)
+        int healthBefore = npc.getHealth();
+        npc.takeDamage(damage, this);
+        return healthBefore - npc.getHealth();
     }
     
     /**
      * Случайно переместиться в пределах текущей комнаты.
      * 
-     * Игрок перемещается на случайные координаты внутри комнаты.
-     * После перемещения игрока NPC в комнате тоже случайно перемещается.
+     * Игрок перемещается на случайные свободные координаты внутри комнаты
+     * (не пересекаясь с NPC и другими игроками).
+     * NPC при этом не двигаются - они действуют сами каждый тик симуляции.
      */
     public void move() {
         // Проверяем, что игрок находится в комнате
@@ -186,67 +365,82 @@ public class TPlayer extends TGameObject {
             return;
         }
         
-        // Получаем границы комнаты
-        double roomX = currentRoom.getX();
-        double roomY = currentRoom.getY();
-        double roomWidth = currentRoom.getWidth();
-        double roomHeight = currentRoom.getHeight();
-        
-        // Генерируем случайные координаты внутри комнаты
-        // Минимальная координата X = координата комнаты + небольшой отступ
-        // Максимальная координата X = координата комнаты + ширина комнаты - отступ
-        double minX = roomX + 20;
-        double maxX = roomX + roomWidth - 20;
-        double newX = minX + random.nextDouble() * (maxX - minX);
-        
-        // Аналогично для координаты Y
-        double minY = roomY + 20;
-        double maxY = roomY + roomHeight - 20;
-        double newY = minY + random.nextDouble() * (maxY - minY);
-        
-        // Устанавливаем новые координаты игрока
-        setX(newX);
-        setY(newY);
+        // Комната сама подбирает свободную точку с помощью сетки столкновений
+        currentRoom.moveToFreeSpot(this, ThreadLocalRandom.current());
+    }
+    
+    /**
+     * Поднять предмет из текущей комнаты.
+     * 
+     * Игрок поднимает первый доступный предмет из комнаты и добавляет его в инвентарь.
+     * Предмет удаляется из комнаты. Предметы, чей id уже есть в инвентаре,
+     * пропускаются - они остаются в комнате, иначе пропали бы из мира.
+     * 
+     * @return поднятый предмет или null, если поднимать нечего
+     */
+    public TItem pickUpItem() {
+        // Ищем первый предмет, который инвентарь примет
+        int index = pickableItemIndex();
+        if (index < 0) {
+            // Если такого предмета нет, ничего не делаем
+            return null;
+        }
         
-        // Перемещаем всех NPC в комнате случайным образом
-        for (int i = 0; i < currentRoom.getNPCCount(); i++) {
-            TNPC npc = currentRoom.getNPC(i);
-            // Если NPC жив, перемещаем его
-            if (npc.isAlive()) {
-                npc.moveRandom();
+        // Добавляем предмет в инвентарь игрока и удаляем его из комнаты
+        TItem item = currentRoom.getItem(index);
+        inventory.add(item);
+        currentRoom.removeItem(item);
+        return item;
+    }
+    
+    /**
+     * Проверить, есть ли в текущей комнате предмет, который игрок может поднять
+     * (предмет, чьего id еще нет в инвентаре).
+     */
+    public boolean canPickUpItem() {
+        return pickableItemIndex() >= 0;
+    }
+    
+    /**
+     * Найти в текущей комнате первый предмет, чьего id еще нет в инвентаре.
+     * 
+     * Обычно это первый же предмет комнаты; предметы с повторным id
+     * (например, недоставленные с аукциона) пропускаются.
+     * 
+     * @return индекс предмета в комнате или -1, если такого нет
+     */
+    private int pickableItemIndex() {
+        if (currentRoom == null) {
+            return -1;
+        }
+        for (int i = 0; i < currentRoom.getItemCount(); i++) {
+            if (!inventory.contains(currentRoom.getItem(i).getId())) {
+                return i;
             }
         }
+        return -1;
     }
     
     /**
-     * Поднять предмет из текущей комнаты.
+     * Поднять из текущей комнаты предмет с заданным началом имени.
      * 
-     * Игрок поднимает первый доступный предмет из комнаты и добавляет его в инвентарь.
-     * Предмет удаляется из комнаты.
+     * @param query начало имени предмета, возможно с номером ("2.меч")
+     * @return поднятый предмет или null, если такого предмета в комнате нет или предмет с таким id уже есть в инвентаре
+     * @see TRoom#findItemByName(CharSequence)
      */
-    public void pickUpItem() {
-        // Проверяем, что игрок находится в комнате
+    public TItem pickUpItem(CharSequence query) {
         if (currentRoom == null) {
-            // Если игрок не в комнате, ничего не делаем
-            return;
+            return null;
         }
-        
-        // Проверяем, есть ли предметы в комнате
-        if (currentRoom.getItemCount() == 0) {
-            // Если предметов нет, ничего не делаем
-            return;
+        TItem item = currentRoom.findItemByName(query);
+        if (item == null) {
+            return null;
         }
-        
-        // Берем первый предмет
-        TItem item = currentRoom.getItem(0);
-        
-        // Удаляем предмет из комнаты
-        currentRoom.removeItem(item);
-        
-        // Добавляем предмет в инвентарь игрока
-        if (inventoryCount < MAX_INVENTORY) {
-            inventory[inventoryCount] = item;
-            inventoryCount = inventoryCount + 1;
+        // Предмет с id, который уже есть в инвентаре, остается в комнате
+        if (!inventory.add(item)) {
+            return null;
         }
+        currentRoom.removeItem(item);
+        return item;
     }
 }
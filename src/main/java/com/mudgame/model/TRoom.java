@@ -1,5 +1,8 @@
 package com.mudgame.model;
 
+import java.util.Arrays;
+import java.util.Random;
+
 /**
  * Класс локации (комнаты) в игре.
  * 
@@ -13,11 +16,14 @@ package com.mudgame.model;
  */
 public class TRoom {
     
-    // Максимальное количество предметов в комнате
-    private static final int MAX_ITEMS = 10;
+    // Начальный размер массивов предметов и NPC (при заполнении массивы увеличиваются вдвое)
+    private static final int INITIAL_CAPACITY = 10;
+    
+    // Отступ от стен при выборе случайной точки в комнате
+    private static final double WALL_MARGIN = 20;
     
-    // Максимальное количество NPC в комнате
-    private static final int MAX_NPCS = 10;
+    // Сколько случайных точек пробовать, прежде чем признать, что свободного места нет
+    private static final int MAX_PLACEMENT_ATTEMPTS = 16;
     
     // Имя комнаты (например, "Сумеречный лес")
     private String name;
@@ -43,6 +49,32 @@ public class TRoom {
     // Количество NPC в комнате
     private int npcCount;
     
+    // Массив игроков в комнате
+    private TPlayer[] players;
+    
+    // Количество игроков в комнате
+    private int playerCount;
+    
+    // Выходы в соседние комнаты
+    private TRoom[] exits;
+    
+    // Количество выходов
+    private int exitCount;
+    
+    // Сетка столкновений для игроков и живых NPC
+    private TCollisionGrid collisionGrid;
+    
+    // Поле потока к ближайшему игроку (для преследования)
+    private TFlowField flowField;
+    
+    // Индексы имен NPC и предметов (для поиска цели команды по началу имени)
+    private TNameIndex<TNPC> npcNames;
+    private TNameIndex<TItem> itemNames;
+    
+    // Запись видов комнаты и последний опубликованный вид (его читают любые потоки)
+    private TRoomViewWriter viewWriter;
+    private volatile TRoomView view;
+    
     // Ширина комнаты в пикселях (для отрисовки на экране)
     private double width;
     
@@ -64,12 +96,23 @@ public class TRoom {
         this.id = id;
         this.x = x;
         this.y = y;
-        this.items = new TItem[MAX_ITEMS];
+        this.items = new TItem[INITIAL_CAPACITY];
         this.itemCount = 0;
-        this.npcs = new TNPC[MAX_NPCS];
+        this.npcs = new TNPC[INITIAL_CAPACITY];
         this.npcCount = 0;
+        this.players = new TPlayer[INITIAL_CAPACITY];
+        this.playerCount = 0;
+        this.exits = new TRoom[0];
+        this.exitCount = 0;
         this.width = width;
         this.height = height;
+        // Сетка строится по размерам комнаты, поэтому создается после них
+        this.collisionGrid = new TCollisionGrid(this);
+        this.flowField = new TFlowField(this);
+        this.npcNames = new TNameIndex<>();
+        this.itemNames = new TNameIndex<>();
+        this.viewWriter = new TRoomViewWriter();
+        this.view = TRoomView.EMPTY;
     }
     
     /**
@@ -79,6 +122,13 @@ public class TRoom {
         return name;
     }
     
+    /**
+     * Получить идентификатор комнаты.
+     */
+    public String getId() {
+        return id;
+    }
+    
     /**
      * Получить координату X (левая граница комнаты).
      */
@@ -99,11 +149,15 @@ public class TRoom {
      * @param item предмет, который нужно добавить
      */
     public void addItem(TItem item) {
-        if (itemCount < MAX_ITEMS) {
-            items[itemCount] = item;
-            itemCount = itemCount + 1;
-            item.setLocation(this);
+        // Если массив заполнен, увеличиваем его вдвое
+        if (itemCount == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
         }
+        items[itemCount] = item;
+        itemCount = itemCount + 1;
+        itemNames.add(item);
+        viewWriter.addItem(item);
+        item.setLocation(this);
     }
     
     /**
@@ -120,6 +174,8 @@ public class TRoom {
                 }
                 items[itemCount - 1] = null;
                 itemCount = itemCount - 1;
+                itemNames.remove(item);
+                viewWriter.removeItem(item);
                 item.setLocation(null);
                 break;
             }
@@ -149,11 +205,246 @@ public class TRoom {
      * @param npc NPC, которого нужно добавить
      */
     public void addNPC(TNPC npc) {
-        if (npcCount < MAX_NPCS) {
-            npcs[npcCount] = npc;
-            npcCount = npcCount + 1;
-            npc.setLocation(this);
+        // Если массив заполнен, увеличиваем его вдвое
+        if (npcCount == npcs.length) {
+            npcs = Arrays.copyOf(npcs, npcs.length * 2);
+        }
+        npcs[npcCount] = npc;
+        npcCount = npcCount + 1;
+        npcNames.add(npc);
+        npc.setLocation(this);
+        
+        // Живой NPC - это тело, с которым можно столкнуться
+        if (npc.isAlive()) {
+            collisionGrid.add(npc);
+            viewWriter.addNPC(npc);
+        }
+    }
+    
+    /**
+     * Сообщить комнате, что NPC погиб (вызывается из TNPC.takeDamage).
+     * 
+     * Мертвый NPC больше не мешает перемещаться.
+     */
+    void onNPCDied(TNPC npc) {
+        collisionGrid.remove(npc);
+        viewWriter.removeNPC(npc);
+    }
+    
+    /**
+     * Сообщить комнате, что NPC возродился (вызывается из TNPC).
+     * 
+     * Возрожденный NPC снова становится телом, с которым можно столкнуться.
+     */
+    void onNPCRespawned(TNPC npc) {
+        collisionGrid.add(npc);
+        viewWriter.addNPC(npc);
+    }
+    
+    /**
+     * Опубликовать вид комнаты на конце тика (вызывается владельцем комнаты).
+     * 
+     * Новый вид делит с прошлым всё, кроме изменившихся объектов; если
+     * ничего не изменилось, остается прошлый вид.
+     * 
+     * @param tick номер тика
+     * @return опубликованный вид
+     */
+    public TRoomView publishView(long tick) {
+        view = viewWriter.publish(tick, view);
+        return view;
+    }
+    
+    /**
+     * Получить последний опубликованный вид комнаты.
+     * 
+     * В отличие от остальных методов комнаты, вызывать можно из любого потока:
+     * вид неизменяем и согласован - все объекты в нем на конец одного тика.
+     * 
+     * @return вид комнаты (TRoomView.EMPTY, пока комната ничего не публиковала)
+     */
+    public TRoomView getView() {
+        return view;
+    }
+    
+    /**
+     * Назначить получателя изменений объектов комнаты (null - перестать сообщать).
+     * 
+     * Получатель сразу получает ROOM_RESET, а дальше - APPEARED и DISAPPEARED,
+     * когда объект входит в вид комнаты или покидает его, и MOVED и HEALTH_CHANGED
+     * при публикации вида (publishView) для объектов, изменившихся с прошлой публикации.
+     * Поэтому изменения приходят только те, что видны в опубликованных видах.
+     * 
+     * Вызывается владельцем комнаты.
+     * 
+     * @param changeListener получатель или null
+     */
+    public void setChangeListener(TChangeListener changeListener) {
+        viewWriter.setChangeListener(changeListener);
+        if (changeListener != null) {
+            changeListener.onChange(TChangeKind.ROOM_RESET, null, 0, x, y, x, y);
+        }
+    }
+    
+    /**
+     * Получить получателя изменений комнаты.
+     * 
+     * @return получатель или null, если никто не наблюдает
+     */
+    public TChangeListener getChangeListener() {
+        return viewWriter.getChangeListener();
+    }
+    
+    /**
+     * Добавить выход в соседнюю комнату.
+     * 
+     * @param room соседняя комната
+     */
+    public void addExit(TRoom room) {
+        if (exitCount == exits.length) {
+            exits = Arrays.copyOf(exits, Math.max(4, exits.length * 2));
+        }
+        exits[exitCount] = room;
+        exitCount = exitCount + 1;
+    }
+    
+    /**
+     * Получить количество выходов из комнаты.
+     */
+    public int getExitCount() {
+        return exitCount;
+    }
+    
+    /**
+     * Получить соседнюю комнату по индексу выхода (индекс от 0 до getExitCount()-1).
+     */
+    public TRoom getExit(int index) {
+        if (index >= 0 && index < exitCount) {
+            return exits[index];
+        }
+        return null;
+    }
+    
+    /**
+     * Добавить игрока в комнату (вызывается из TPlayer.setCurrentRoom).
+     */
+    void addPlayer(TPlayer player) {
+        // Если массив заполнен, увеличиваем его вдвое
+        if (playerCount == players.length) {
+            players = Arrays.copyOf(players, players.length * 2);
+        }
+        players[playerCount] = player;
+        playerCount = playerCount + 1;
+        collisionGrid.add(player);
+        viewWriter.addPlayer(player);
+    }
+    
+    /**
+     * Убрать игрока из комнаты (вызывается из TPlayer.setCurrentRoom).
+     */
+    void removePlayer(TPlayer player) {
+        for (int i = 0; i < playerCount; i++) {
+            if (players[i] == player) {
+                // Сдвигаем элементы после удаляемого на одну позицию влево
+                for (int j = i; j < playerCount - 1; j++) {
+                    players[j] = players[j + 1];
+                }
+                players[playerCount - 1] = null;
+                playerCount = playerCount - 1;
+                collisionGrid.remove(player);
+                viewWriter.removePlayer(player);
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Получить количество игроков в комнате.
+     */
+    public int getPlayerCount() {
+        return playerCount;
+    }
+    
+    /**
+     * Получить игрока по индексу (индекс от 0 до getPlayerCount()-1).
+     */
+    public TPlayer getPlayer(int index) {
+        if (index >= 0 && index < playerCount) {
+            return players[index];
         }
+        return null;
+    }
+    
+    /**
+     * Проверить, находится ли игрок в этой комнате.
+     * 
+     * @param player игрок
+     * @return true если игрок в комнате
+     */
+    public boolean containsPlayer(TPlayer player) {
+        for (int i = 0; i < playerCount; i++) {
+            if (players[i] == player) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Получить сетку столкновений комнаты.
+     * 
+     * @return сетка столкновений
+     */
+    public TCollisionGrid getCollisionGrid() {
+        return collisionGrid;
+    }
+    
+    /**
+     * Получить поле потока комнаты (направление к ближайшему живому игроку).
+     * 
+     * @return поле потока
+     */
+    public TFlowField getFlowField() {
+        return flowField;
+    }
+    
+    /**
+     * Переместить объект в случайную свободную точку комнаты.
+     * 
+     * Точка выбирается с отступом от стен. Если в ней объект пересекся бы
+     * с другим телом (игроком или NPC), выбирается другая точка.
+     * 
+     * @param object перемещаемый объект
+     * @param random генератор случайных чисел
+     * @return true если свободная точка найдена, false если объект остался на месте
+     */
+    public boolean moveToFreeSpot(TGameObject object, Random random) {
+        // Границы, внутри которых выбирается точка
+        double minX = x + WALL_MARGIN;
+        double maxX = x + width - WALL_MARGIN;
+        double minY = y + WALL_MARGIN;
+        double maxY = y + height - WALL_MARGIN;
+        
+        for (int attempt = 0; attempt < MAX_PLACEMENT_ATTEMPTS; attempt++) {
+            double newX = minX + random.nextDouble() * (maxX - minX);
+            double newY = minY + random.nextDouble() * (maxY - minY);
+            // Широкая и узкая фазы проверки - внутри сетки столкновений
+            if (collisionGrid.isFree(newX, newY, object)) {
+                object.setX(newX);
+                object.setY(newY);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Раздвинуть все пересекающиеся тела в комнате.
+     * 
+     * Вызывается один раз за тик после перемещения всех тел.
+     */
+    public void resolveCollisions() {
+        collisionGrid.resolveOverlaps(4);
     }
     
     /**
@@ -173,6 +464,89 @@ public class TRoom {
         return null;
     }
     
+    /**
+     * Найти NPC комнаты по идентификатору.
+     * 
+     * @param id идентификатор NPC
+     * @return NPC или null, если в комнате такого нет
+     */
+    public TNPC findNPC(CharSequence id) {
+        for (int i = 0; i < npcCount; i++) {
+            if (npcs[i].getId().contentEquals(id)) {
+                return npcs[i];
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Найти живого NPC комнаты по началу имени.
+     * 
+     * Пример: "гоб" - первый живой гоблин, "2.гоблин" - второй.
+     * 
+     * @param query начало имени, возможно с номером
+     * @return NPC или null, если подходящего нет
+     * @see TNameIndex#find(CharSequence, int, int, java.util.function.Predicate)
+     */
+    public TNPC findNPCByName(CharSequence query) {
+        return npcNames.find(query, 0, query.length(), TNPC::isAlive);
+    }
+    
+    /**
+     * Найти предмет комнаты по началу имени.
+     * 
+     * @param query начало имени, возможно с номером ("2.меч")
+     * @return предмет или null, если подходящего нет
+     */
+    public TItem findItemByName(CharSequence query) {
+        return itemNames.find(query, 0, query.length(), null);
+    }
+    
+    /**
+     * Получить индекс имен NPC комнаты.
+     */
+    public TNameIndex<TNPC> getNPCNames() {
+        return npcNames;
+    }
+    
+    /**
+     * Получить индекс имен предметов комнаты.
+     */
+    public TNameIndex<TItem> getItemNames() {
+        return itemNames;
+    }
+    
+    /**
+     * Начать запрос по NPC комнаты.
+     * 
+     * Пример: room.npcs().alive().near(player, 50).first()
+     * 
+     * @return новый запрос
+     */
+    public TRoomQuery<TNPC> npcs() {
+        return new TRoomQuery<>(this, TRoomQuery.SOURCE_NPCS);
+    }
+    
+    /**
+     * Начать запрос по предметам комнаты.
+     * 
+     * Пример: room.items().ofType(TWeapon.class).near(player, 100).count()
+     * 
+     * @return новый запрос
+     */
+    public TRoomQuery<TItem> items() {
+        return new TRoomQuery<>(this, TRoomQuery.SOURCE_ITEMS);
+    }
+    
+    /**
+     * Начать запрос по всем объектам комнаты (сначала NPC, затем предметы).
+     * 
+     * @return новый запрос
+     */
+    public TRoomQuery<TGameObject> objects() {
+        return new TRoomQuery<>(this, TRoomQuery.SOURCE_NPCS | TRoomQuery.SOURCE_ITEMS);
+    }
+    
     /**
      * Получить ширину комнаты.
      * 
@@ -0,0 +1,343 @@
+package com.mudgame.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Запрос к содержимому комнаты (NPC и предметам).
+ * 
+ * Запрос собирается цепочкой вызовов и выполняется только в конце:
+ * <pre>
+ *     TNPC target = room.npcs().alive().near(player, 50).first();
+ *     int swords = room.items().ofType(TWeapon.class).count();
+ * </pre>
+ * 
+ * Фильтры (тип, "только живые", радиус) хранятся в простых полях запроса,
+ * поэтому при выполнении не создаются промежуточные списки: объекты комнаты
+ * перебираются прямо по её массивам, а first()/any() останавливаются
+ * на первом подходящем объекте.
+ * 
+ * Для очень больших комнат можно получить параллельный поток - parallelStream().
+ * 
+ * Запрос не потокобезопасен и рассчитан на одно выполнение в том же потоке,
+ * который изменяет комнату.
+ * 
+ * @param <T> тип объектов, которые возвращает запрос
+ */
+public final class TRoomQuery<T extends TGameObject> {
+    
+    // Источник "NPC комнаты"
+    static final int SOURCE_NPCS = 1;
+    
+    // Источник "предметы комнаты"
+    static final int SOURCE_ITEMS = 2;
+    
+    // Начиная с какого размера комнаты parallelStream() действительно работает параллельно
+    private static final int PARALLEL_THRESHOLD = 4096;
+    
+    // Комната, по которой выполняется запрос
+    private final TRoom room;
+    
+    // Какие источники перебирать (битовая маска SOURCE_*)
+    private final int sources;
+    
+    // Требуемый тип объектов (null - любой)
+    private Class<?> type;
+    
+    // true - только живые NPC (для предметов фильтр не действует)
+    private boolean aliveOnly;
+    
+    // Фильтр по расстоянию: центр и квадрат радиуса
+    private boolean hasRadius;
+    private double centerX;
+    private double centerY;
+    private double radiusSquared;
+    
+    // Дополнительное произвольное условие (null - без условия)
+    private Predicate<? super T> condition;
+    
+    /**
+     * Конструктор - создается только самой комнатой (см. TRoom.npcs(), TRoom.items()).
+     */
+    TRoomQuery(TRoom room, int sources) {
+        this.room = room;
+        this.sources = sources;
+    }
+    
+    /**
+     * Оставить только объекты заданного типа (например, TWeapon.class).
+     * 
+     * @param type класс объектов
+     * @return этот же запрос с новым типом результата
+     */
+    @SuppressWarnings("unchecked")
+    public <S extends T> TRoomQuery<S> ofType(Class<S> type) {
+        this.type = type;
+        return (TRoomQuery<S>) this;
+    }
+    
+    /**
+     * Оставить только живых NPC.
+     */
+    public TRoomQuery<T> alive() {
+        this.aliveOnly = true;
+        return this;
+    }
+    
+    /**
+     * Оставить только объекты не дальше radius от точки (x, y).
+     */
+    public TRoomQuery<T> near(double x, double y, double radius) {
+        this.hasRadius = true;
+        this.centerX = x;
+        this.centerY = y;
+        this.radiusSquared = radius * radius;
+        return this;
+    }
+    
+    /**
+     * Оставить только объекты не дальше radius от заданного объекта.
+     */
+    public TRoomQuery<T> near(TGameObject center, double radius) {
+        return near(center.getX(), center.getY(), radius);
+    }
+    
+    /**
+     * Добавить произвольное условие.
+     * 
+     * @param condition условие, которому должен удовлетворять объект
+     */
+    @SuppressWarnings("unchecked")
+    public TRoomQuery<T> where(Predicate<? super T> condition) {
+        if (this.condition == null) {
+            this.condition = condition;
+        } else {
+            this.condition = ((Predicate<T>) this.condition).and(condition);
+        }
+        return this;
+    }
+    
+    /**
+     * Получить первый подходящий объект.
+     * 
+     * @return объект или null, если ничего не найдено
+     */
+    public T first() {
+        int total = size();
+        for (int i = 0; i < total; i++) {
+            T object = matchAt(i);
+            if (object != null) {
+                return object;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Получить ближайший к точке (x, y) подходящий объект.
+     * 
+     * @return объект или null, если ничего не найдено
+     */
+    public T nearest(double x, double y) {
+        T best = null;
+        double bestDistance = Double.MAX_VALUE;
+        int total = size();
+        for (int i = 0; i < total; i++) {
+            T object = matchAt(i);
+            if (object != null) {
+                double dx = object.getX() - x;
+                double dy = object.getY() - y;
+                double distance = dx * dx + dy * dy;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = object;
+                }
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Проверить, есть ли хотя бы один подходящий объект.
+     */
+    public boolean any() {
+        return first() != null;
+    }
+    
+    /**
+     * Посчитать подходящие объекты.
+     */
+    public int count() {
+        int result = 0;
+        int total = size();
+        for (int i = 0; i < total; i++) {
+            if (matchAt(i) != null) {
+                result = result + 1;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Выполнить действие для каждого подходящего объекта.
+     * 
+     * Действие не должно добавлять или удалять объекты этой комнаты.
+     * 
+     * @param action действие
+     */
+    public void forEach(Consumer<? super T> action) {
+        int total = size();
+        for (int i = 0; i < total; i++) {
+            T object = matchAt(i);
+            if (object != null) {
+                action.accept(object);
+            }
+        }
+    }
+    
+    /**
+     * Собрать подходящие объекты в новый список.
+     */
+    public List<T> toList() {
+        List<T> result = new ArrayList<>();
+        forEach(result::add);
+        return result;
+    }
+    
+    /**
+     * Получить последовательный поток подходящих объектов.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(new RoomSpliterator(0, size()), false).filter(this::matches);
+    }
+    
+    /**
+     * Получить поток подходящих объектов, параллельный для очень больших комнат.
+     * 
+     * Для небольших комнат поток остается последовательным: накладные расходы
+     * на распределение работы по потокам там больше выигрыша.
+     */
+    public Stream<T> parallelStream() {
+        int total = size();
+        return StreamSupport.stream(new RoomSpliterator(0, total), total >= PARALLEL_THRESHOLD).filter(this::matches);
+    }
+    
+    /**
+     * Количество объектов-кандидатов (NPC и/или предметы).
+     */
+    private int size() {
+        int total = 0;
+        if ((sources & SOURCE_NPCS) != 0) {
+            total = total + room.getNPCCount();
+        }
+        if ((sources & SOURCE_ITEMS) != 0) {
+            total = total + room.getItemCount();
+        }
+        return total;
+    }
+    
+    /**
+     * Получить кандидата по сквозному индексу: сначала NPC, потом предметы.
+     */
+    private TGameObject candidateAt(int index) {
+        if ((sources & SOURCE_NPCS) != 0) {
+            if (index < room.getNPCCount()) {
+                return room.getNPC(index);
+            }
+            index = index - room.getNPCCount();
+        }
+        return room.getItem(index);
+    }
+    
+    /**
+     * Получить кандидата по индексу, если он подходит под все фильтры.
+     * 
+     * @return объект или null, если объект не подходит
+     */
+    @SuppressWarnings("unchecked")
+    private T matchAt(int index) {
+        TGameObject object = candidateAt(index);
+        if (object != null && matches(object)) {
+            return (T) object;
+        }
+        return null;
+    }
+    
+    /**
+     * Проверить объект по всем фильтрам запроса.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean matches(TGameObject object) {
+        if (type != null && !type.isInstance(object)) {
+            return false;
+        }
+        if (aliveOnly && object instanceof TNPC && !((TNPC) object).isAlive()) {
+            return false;
+        }
+        if (hasRadius) {
+            double dx = object.getX() - centerX;
+            double dy = object.getY() - centerY;
+            if (dx * dx + dy * dy > radiusSquared) {
+                return false;
+            }
+        }
+        return condition == null || ((Predicate<Object>) condition).test(object);
+    }
+    
+    /**
+     * Разделяемый перебор кандидатов по диапазону индексов [from, to).
+     * 
+     * Нужен для потоков: параллельный поток делит диапазон пополам между потоками.
+     */
+    private final class RoomSpliterator implements Spliterator<T> {
+        
+        // Минимальный размер куска, который имеет смысл делить дальше
+        private static final int MIN_SPLIT = 1024;
+        
+        private int from;
+        private final int to;
+        
+        RoomSpliterator(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept((T) candidateAt(from));
+            from = from + 1;
+            return true;
+        }
+        
+        @Override
+        public Spliterator<T> trySplit() {
+            int remaining = to - from;
+            if (remaining < MIN_SPLIT) {
+                return null;
+            }
+            int middle = from + remaining / 2;
+            RoomSpliterator prefix = new RoomSpliterator(from, middle);
+            from = middle;
+            return prefix;
+        }
+        
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+        
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+}
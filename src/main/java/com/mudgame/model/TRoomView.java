@@ -0,0 +1,82 @@
+package com.mudgame.model;
+
+/**
+ * Вид комнаты - неизменяемый снимок её содержимого на конце тика.
+ * 
+ * Вид публикует актор комнаты (TRoom.publishView), а читать его могут любые
+ * потоки - отрисовка, рассылка по сети, запросы администратора, статистика -
+ * без блокировок и без копирования: ни сам вид, ни его векторы больше не меняются.
+ * Соседние версии вида делят все узлы векторов, кроме путей к изменившимся объектам.
+ * 
+ * Порядок предметов и NPC в виде может отличаться от порядка в комнате:
+ * убранный объект заменяется последним, чтобы не сдвигать весь вектор.
+ * Мертвых NPC в виде нет.
+ */
+public final class TRoomView {
+    
+    // Пустой вид - комната еще не публиковала содержимое
+    public static final TRoomView EMPTY = new TRoomView(-1, TPersistentVector.empty(),
+            TPersistentVector.empty(), TPersistentVector.empty());
+    
+    // Номер тика, на конце которого опубликован вид
+    private final long tick;
+    
+    // Предметы на полу, живые NPC и игроки комнаты
+    private final TPersistentVector<TObjectState> items;
+    private final TPersistentVector<TObjectState> npcs;
+    private final TPersistentVector<TObjectState> players;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param tick номер тика
+     * @param items предметы на полу
+     * @param npcs живые NPC
+     * @param players игроки
+     */
+    public TRoomView(long tick, TPersistentVector<TObjectState> items, TPersistentVector<TObjectState> npcs,
+                     TPersistentVector<TObjectState> players) {
+        this.tick = tick;
+        this.items = items;
+        this.npcs = npcs;
+        this.players = players;
+    }
+    
+    /**
+     * Получить номер тика, на конце которого опубликован вид (-1 - вид пуст).
+     * 
+     * Если в комнате ничего не меняется, новые версии не публикуются,
+     * и номер остается номером тика последнего изменения.
+     */
+    public long getTick() {
+        return tick;
+    }
+    
+    /**
+     * Получить предметы на полу комнаты.
+     */
+    public TPersistentVector<TObjectState> getItems() {
+        return items;
+    }
+    
+    /**
+     * Получить живых NPC комнаты.
+     */
+    public TPersistentVector<TObjectState> getNPCs() {
+        return npcs;
+    }
+    
+    /**
+     * Получить игроков комнаты.
+     */
+    public TPersistentVector<TObjectState> getPlayers() {
+        return players;
+    }
+    
+    /**
+     * Получить количество объектов всех видов.
+     */
+    public int getObjectCount() {
+        return items.size() + npcs.size() + players.size();
+    }
+}
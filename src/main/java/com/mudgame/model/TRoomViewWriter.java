@@ -0,0 +1,292 @@
+package com.mudgame.model;
+
+import java.util.Arrays;
+
+/**
+ * Запись видов комнаты (TRoomView): ведет редакторы векторов предметов,
+ * живых NPC и игроков и публикует из них неизменяемые версии.
+ * 
+ * Комната сообщает о каждом объекте, который в неё вошел или из неё вышел,
+ * и объект сразу добавляется в вектор или убирается из него (последний объект
+ * встает на место убранного). Объект, который переместился или ранен, сам
+ * отмечается здесь (TGameObject.viewChanged из setX/setY и takeDamage/setHealth)
+ * и попадает в список изменившихся. Публикация обходит только этот список и
+ * создает новые состояния только для объектов, которые действительно изменились.
+ * Поэтому новая версия вида стоит O(изменений) и по времени, и по памяти,
+ * а не O(объектов комнаты).
+ * 
+ * Позиция объекта в векторе и в списке изменившихся хранится в самом объекте
+ * (TGameObject.viewSlot, viewDirtySlot), как и запись, в которой он числится:
+ * объект в каждый момент находится не больше чем в одной комнате.
+ * 
+ * Раз изменения всё равно находятся здесь, отсюда же о них узнает получатель
+ * изменений комнаты (TChangeListener): вход и выход объекта - сразу, перемещение
+ * и изменение здоровья - при публикации.
+ * 
+ * Не потокобезопасен: используется только владельцем комнаты.
+ */
+final class TRoomViewWriter {
+    
+    // Векторы предметов, живых NPC и игроков
+    private final Track items;
+    private final Track npcs;
+    private final Track players;
+    
+    // Получатель изменений (null - никто не наблюдает)
+    private TChangeListener changeListener;
+    
+    // Объекты, изменившиеся после последней публикации
+    private TGameObject[] dirty;
+    private int dirtyCount;
+    
+    /**
+     * Конструктор - виды пусты.
+     */
+    TRoomViewWriter() {
+        this.items = new Track();
+        this.npcs = new Track();
+        this.players = new Track();
+        this.dirty = new TGameObject[16];
+        this.dirtyCount = 0;
+    }
+    
+    /**
+     * Предмет появился на полу комнаты.
+     */
+    void addItem(TItem item) {
+        if (items.add(item, stateOf(item, 0), changeListener)) {
+            item.viewWriter = this;
+        }
+    }
+    
+    /**
+     * Предмет убран с пола комнаты.
+     */
+    void removeItem(TItem item) {
+        if (items.remove(item, changeListener)) {
+            detach(item);
+        }
+    }
+    
+    /**
+     * NPC появился в комнате или возродился.
+     */
+    void addNPC(TNPC npc) {
+        if (npcs.add(npc, stateOf(npc, npc.getHealth()), changeListener)) {
+            npc.viewWriter = this;
+        }
+    }
+    
+    /**
+     * NPC погиб.
+     */
+    void removeNPC(TNPC npc) {
+        if (npcs.remove(npc, changeListener)) {
+            detach(npc);
+        }
+    }
+    
+    /**
+     * Игрок вошел в комнату.
+     */
+    void addPlayer(TPlayer player) {
+        if (players.add(player, stateOf(player, player.getHealth()), changeListener)) {
+            player.viewWriter = this;
+        }
+    }
+    
+    /**
+     * Игрок вышел из комнаты.
+     */
+    void removePlayer(TPlayer player) {
+        if (players.remove(player, changeListener)) {
+            detach(player);
+        }
+    }
+    
+    /**
+     * Отметить объект вида как изменившийся (вызывается из TGameObject.viewChanged).
+     */
+    void markDirty(TGameObject object) {
+        if (dirtyCount == dirty.length) {
+            dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+        }
+        dirty[dirtyCount] = object;
+        object.viewDirtySlot = dirtyCount;
+        dirtyCount = dirtyCount + 1;
+    }
+    
+    /**
+     * Отвязать убранный объект от записи и от списка изменившихся: объект может
+     * сразу перейти в другую комнату (к другому владельцу), и эта запись его больше не трогает.
+     */
+    private void detach(TGameObject object) {
+        object.viewWriter = null;
+        int slot = object.viewDirtySlot;
+        if (slot < 0) {
+            return;
+        }
+        int last = dirtyCount - 1;
+        if (slot != last) {
+            dirty[slot] = dirty[last];
+            dirty[slot].viewDirtySlot = slot;
+        }
+        dirty[last] = null;
+        dirtyCount = last;
+        object.viewDirtySlot = -1;
+    }
+    
+    /**
+     * Назначить получателя изменений.
+     */
+    void setChangeListener(TChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+    
+    /**
+     * Получить получателя изменений.
+     */
+    TChangeListener getChangeListener() {
+        return changeListener;
+    }
+    
+    /**
+     * Обновить состояния изменившихся объектов и опубликовать вид.
+     * 
+     * @param tick номер тика
+     * @param previous прошлый вид (возвращается, если ничего не изменилось)
+     * @return новый или прошлый вид
+     */
+    TRoomView publish(long tick, TRoomView previous) {
+        // Обходим только объекты, которые отметились как изменившиеся
+        for (int i = 0; i < dirtyCount; i++) {
+            TGameObject object = dirty[i];
+            dirty[i] = null;
+            object.viewDirtySlot = -1;
+            if (object instanceof TNPC) {
+                npcs.refresh(object.viewSlot, ((TNPC) object).getHealth(), changeListener);
+            } else if (object instanceof TPlayer) {
+                players.refresh(object.viewSlot, ((TPlayer) object).getHealth(), changeListener);
+            } else {
+                items.refresh(object.viewSlot, 0, changeListener);
+            }
+        }
+        dirtyCount = 0;
+        TPersistentVector<TObjectState> itemVector = items.editor.publish();
+        TPersistentVector<TObjectState> npcVector = npcs.editor.publish();
+        TPersistentVector<TObjectState> playerVector = players.editor.publish();
+        if (itemVector == previous.getItems() && npcVector == previous.getNPCs()
+                && playerVector == previous.getPlayers()) {
+            return previous;
+        }
+        return new TRoomView(tick, itemVector, npcVector, playerVector);
+    }
+    
+    /**
+     * Создать состояние объекта.
+     */
+    private static TObjectState stateOf(TGameObject object, int health) {
+        return new TObjectState(object.getId(), object.getName(), object.getX(), object.getY(), health);
+    }
+    
+    /**
+     * Вектор состояний одного вида объектов и объекты в том же порядке.
+     */
+    private static final class Track {
+        
+        // Редактор вектора состояний
+        private final TPersistentVector.Editor<TObjectState> editor;
+        
+        // Объекты по позиции в векторе
+        private TGameObject[] objects;
+        
+        // Количество объектов
+        private int size;
+        
+        /**
+         * Конструктор.
+         */
+        Track() {
+            this.editor = TPersistentVector.<TObjectState>empty().edit();
+            this.objects = new TGameObject[8];
+            this.size = 0;
+        }
+        
+        /**
+         * Добавить объект в конец вектора.
+         * 
+         * @return false если объект уже в виде
+         */
+        boolean add(TGameObject object, TObjectState state, TChangeListener listener) {
+            if (object.viewSlot >= 0) {
+                return false;
+            }
+            if (listener != null) {
+                listener.onChange(TChangeKind.APPEARED, object, state.getHealth(),
+                        state.getX(), state.getY(), state.getX(), state.getY());
+            }
+            if (size == objects.length) {
+                objects = Arrays.copyOf(objects, size * 2);
+            }
+            objects[size] = object;
+            object.viewSlot = size;
+            size = size + 1;
+            editor.add(state);
+            return true;
+        }
+        
+        /**
+         * Убрать объект: на его место встает последний объект вектора.
+         * 
+         * @return false если объекта нет в этом векторе
+         */
+        boolean remove(TGameObject object, TChangeListener listener) {
+            int slot = object.viewSlot;
+            if (slot < 0 || slot >= size || objects[slot] != object) {
+                return false;
+            }
+            if (listener != null) {
+                // Объект пропадает оттуда, где его видели в последний раз
+                TObjectState state = editor.get(slot);
+                listener.onChange(TChangeKind.DISAPPEARED, object, state.getHealth(),
+                        state.getX(), state.getY(), state.getX(), state.getY());
+            }
+            int last = size - 1;
+            if (slot != last) {
+                TGameObject moved = objects[last];
+                objects[slot] = moved;
+                moved.viewSlot = slot;
+                editor.set(slot, editor.get(last));
+            }
+            objects[last] = null;
+            size = last;
+            editor.removeLast();
+            object.viewSlot = -1;
+            return true;
+        }
+        
+        /**
+         * Заменить состояние объекта на позиции slot, если объект изменился.
+         */
+        void refresh(int slot, int health, TChangeListener listener) {
+            TGameObject object = objects[slot];
+            TObjectState state = editor.get(slot);
+            boolean moved = state.getX() != object.getX() || state.getY() != object.getY();
+            boolean wounded = state.getHealth() != health;
+            if (!moved && !wounded) {
+                return;
+            }
+            editor.set(slot, stateOf(object, health));
+            if (listener != null) {
+                if (moved) {
+                    listener.onChange(TChangeKind.MOVED, object, health,
+                            state.getX(), state.getY(), object.getX(), object.getY());
+                }
+                if (wounded) {
+                    listener.onChange(TChangeKind.HEALTH_CHANGED, object, health,
+                            object.getX(), object.getY(), object.getX(), object.getY());
+                }
+            }
+        }
+    }
+}
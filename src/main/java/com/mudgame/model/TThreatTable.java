@@ -0,0 +1,245 @@
+package com.mudgame.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Таблица угрозы NPC - кто из игроков насолил ему больше всех.
+ * 
+ * Урон, нанесенный игроком, добавляется к угрозе этого игрока, а угроза всех
+ * игроков со временем затухает: каждые halfLifeTicks тиков уменьшается вдвое.
+ * Цель NPC - игрок с наибольшей угрозой.
+ * 
+ * Игроки хранятся в индексированной куче (куча по угрозе + позиция каждого
+ * игрока в куче), поэтому цель - это вершина кучи, O(1), а добавление угрозы
+ * или удаление игрока - O(log n) даже в бою с сотней нападающих.
+ * 
+ * Затухание не пересчитывает таблицу каждый тик. У каждой записи есть угроза
+ * на момент последнего изменения и тик этого изменения (ленивая метка времени),
+ * а текущая угроза вычисляется при чтении. Так как все записи затухают
+ * с одинаковой скоростью, затухание не меняет их порядок, и куча упорядочена
+ * по ключу ln(угроза) + lambda * тик, который не меняется со временем.
+ * 
+ * Время - собственные тики NPC (TNPC считает их и при прокрутке спящей комнаты),
+ * поэтому угроза затухает и пока комната спит.
+ * 
+ * Взаимодействия (Collaborators):
+ * - TNPC - владеет таблицей и выбирает по ней цель
+ * - TPlayer - игроки, накопившие угрозу
+ */
+public final class TThreatTable {
+    
+    // Угроза меньше этой считается забытой
+    private static final double MIN_THREAT = 0.5;
+    
+    // Начальный размер кучи
+    private static final int INITIAL_CAPACITY = 4;
+    
+    // Скорость затухания: угроза умножается на exp(-lambda) каждый тик
+    private final double lambda;
+    
+    // Куча записей: вершина (heap[0]) - запись с наибольшей угрозой
+    private Entry[] heap;
+    
+    // Количество записей в куче
+    private int size;
+    
+    // Запись игрока (для поиска его позиции в куче)
+    private final Map<TPlayer, Entry> entries;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param halfLifeTicks за сколько тиков угроза уменьшается вдвое
+     */
+    public TThreatTable(double halfLifeTicks) {
+        if (halfLifeTicks <= 0) {
+            throw new IllegalArgumentException("Время затухания угрозы должно быть положительным: " + halfLifeTicks);
+        }
+        this.lambda = Math.log(2) / halfLifeTicks;
+        this.heap = new Entry[INITIAL_CAPACITY];
+        this.size = 0;
+        this.entries = new HashMap<>();
+    }
+    
+    /**
+     * Добавить игроку угрозу.
+     * 
+     * @param player игрок
+     * @param amount добавляемая угроза (например, нанесенный урон)
+     * @param tick текущий тик NPC
+     */
+    public void addThreat(TPlayer player, double amount, long tick) {
+        if (amount <= 0) {
+            return;
+        }
+        Entry entry = entries.get(player);
+        if (entry == null) {
+            entry = new Entry(player);
+            entries.put(player, entry);
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            entry.index = size;
+            heap[size] = entry;
+            size = size + 1;
+        }
+        entry.threat = threatOf(entry, tick) + amount;
+        entry.tick = tick;
+        entry.key = Math.log(entry.threat) + lambda * tick;
+        // Ключ записи от добавления угрозы только растет - запись может лишь подняться
+        siftUp(entry.index);
+    }
+    
+    /**
+     * Получить текущую угрозу игрока.
+     * 
+     * @param player игрок
+     * @param tick текущий тик NPC
+     * @return угроза (0, если игрок в таблице не записан)
+     */
+    public double getThreat(TPlayer player, long tick) {
+        Entry entry = entries.get(player);
+        return entry == null ? 0 : threatOf(entry, tick);
+    }
+    
+    /**
+     * Получить игрока с наибольшей угрозой.
+     * 
+     * Если угроза всех игроков затухла, таблица очищается.
+     * 
+     * @param tick текущий тик NPC
+     * @return игрок или null, если таблица пуста
+     */
+    public TPlayer getTop(long tick) {
+        if (size == 0) {
+            return null;
+        }
+        // У остальных угроза не больше, чем у вершины, - значит, забыты все
+        if (threatOf(heap[0], tick) < MIN_THREAT) {
+            clear();
+            return null;
+        }
+        return heap[0].player;
+    }
+    
+    /**
+     * Убрать игрока из таблицы (вышел из комнаты, погиб).
+     * 
+     * @param player игрок
+     */
+    public void remove(TPlayer player) {
+        Entry entry = entries.remove(player);
+        if (entry == null) {
+            return;
+        }
+        int index = entry.index;
+        size = size - 1;
+        if (index != size) {
+            // На место удаленной записи встает последняя и просеивается в нужную сторону
+            Entry last = heap[size];
+            heap[index] = last;
+            last.index = index;
+            if (!siftUp(index)) {
+                siftDown(index);
+            }
+        }
+        heap[size] = null;
+    }
+    
+    /**
+     * Забыть всех игроков.
+     */
+    public void clear() {
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+        entries.clear();
+    }
+    
+    /**
+     * Получить количество игроков в таблице.
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Текущая угроза записи: угроза на тик последнего изменения, затухшая с тех пор.
+     */
+    private double threatOf(Entry entry, long tick) {
+        return entry.threat * Math.exp(-lambda * (tick - entry.tick));
+    }
+    
+    /**
+     * Поднять запись с позиции index, пока она больше родителя.
+     * 
+     * @return true если запись сдвинулась
+     */
+    private boolean siftUp(int index) {
+        Entry entry = heap[index];
+        int start = index;
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].key >= entry.key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+        heap[index] = entry;
+        entry.index = index;
+        return index != start;
+    }
+    
+    /**
+     * Опустить запись с позиции index, пока она меньше большего из детей.
+     */
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].key > heap[child].key) {
+                child = child + 1;
+            }
+            if (heap[child].key <= entry.key) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = entry;
+        entry.index = index;
+    }
+    
+    /**
+     * Запись таблицы - угроза одного игрока.
+     */
+    private static final class Entry {
+        
+        // Игрок
+        private final TPlayer player;
+        
+        // Угроза на тик последнего изменения и сам этот тик
+        private double threat;
+        private long tick;
+        
+        // Ключ кучи: ln(threat) + lambda * tick (не меняется при затухании)
+        private double key;
+        
+        // Позиция записи в куче
+        private int index;
+        
+        /**
+         * Конструктор.
+         */
+        Entry(TPlayer player) {
+            this.player = player;
+        }
+    }
+}
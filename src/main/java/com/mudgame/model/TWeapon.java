@@ -24,8 +24,24 @@ public class TWeapon extends TItem {
      * @param attackPower сила атаки оружия
      */
     public TWeapon(String name, String id, double x, double y, int attackPower) {
+        this(name, id, x, y, attackPower, name);
+    }
+    
+    /**
+     * Конструктор - создает новое оружие по шаблону.
+     * 
+     * Все оружие одного шаблона должно иметь одинаковую силу атаки.
+     * 
+     * @param name имя оружия (например, "Меч", "Кинжал")
+     * @param id уникальный идентификатор оружия
+     * @param x координата X позиции оружия
+     * @param y координата Y позиции оружия
+     * @param attackPower сила атаки оружия
+     * @param templateId идентификатор шаблона оружия
+     */
+    public TWeapon(String name, String id, double x, double y, int attackPower, String templateId) {
         // Вызываем конструктор родительского класса TItem
-        super(name, id, x, y);
+        super(name, id, x, y, templateId, TItemCategory.WEAPON);
         
         // Сохраняем силу атаки оружия
         this.attackPower = attackPower;
@@ -0,0 +1,134 @@
+package com.mudgame.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Игровой мир - все комнаты и все игроки.
+ * 
+ * Мир нужен движку симуляции: движок каждый тик обходит комнаты мира,
+ * а команды игроков находят игрока по его идентификатору.
+ * 
+ * Комнаты не меняются после загрузки, а игроки могут добавляться и удаляться
+ * во время игры (усыпление простаивающих игроков), поэтому справочник игроков
+ * потокобезопасный: его читают акторы всех комнат.
+ * 
+ * Взаимодействия (Collaborators):
+ * - TRoom - комнаты мира
+ * - TPlayer - игроки мира
+ */
+public class TWorld {
+    
+    // Комнаты мира в порядке добавления
+    private final List<TRoom> rooms;
+    
+    // Комнаты по идентификатору
+    private final Map<String, TRoom> roomsById;
+    
+    // Игроки по идентификатору (читается и изменяется из разных потоков)
+    private final Map<String, TPlayer> playersById;
+    
+    // Комната, в которую входят новые игроки
+    private TRoom startRoom;
+    
+    /**
+     * Конструктор - создает пустой мир.
+     */
+    public TWorld() {
+        this.rooms = new ArrayList<>();
+        this.roomsById = new HashMap<>();
+        this.playersById = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Добавить комнату в мир.
+     * 
+     * @param room комната
+     * @throws IllegalArgumentException если комната с таким идентификатором уже есть
+     */
+    public void addRoom(TRoom room) {
+        if (roomsById.putIfAbsent(room.getId(), room) != null) {
+            throw new IllegalArgumentException("Комната с id '" + room.getId() + "' уже есть в мире");
+        }
+        rooms.add(room);
+    }
+    
+    /**
+     * Получить количество комнат.
+     */
+    public int getRoomCount() {
+        return rooms.size();
+    }
+    
+    /**
+     * Получить комнату по индексу (индекс от 0 до getRoomCount()-1).
+     */
+    public TRoom getRoom(int index) {
+        if (index >= 0 && index < rooms.size()) {
+            return rooms.get(index);
+        }
+        return null;
+    }
+    
+    /**
+     * Найти комнату по идентификатору.
+     * 
+     * @return комната или null, если такой нет
+     */
+    public TRoom findRoom(String id) {
+        return roomsById.get(id);
+    }
+    
+    /**
+     * Получить комнату, в которую входят новые игроки.
+     * 
+     * @return стартовая комната или null, если она не назначена
+     */
+    public TRoom getStartRoom() {
+        return startRoom;
+    }
+    
+    /**
+     * Назначить комнату, в которую входят новые игроки.
+     * 
+     * @param startRoom стартовая комната
+     */
+    public void setStartRoom(TRoom startRoom) {
+        this.startRoom = startRoom;
+    }
+    
+    /**
+     * Добавить игрока в мир.
+     * 
+     * Игрок при этом не входит ни в какую комнату - для этого есть TPlayer.setCurrentRoom.
+     * 
+     * @param player игрок
+     * @throws IllegalArgumentException если игрок с таким идентификатором уже есть
+     */
+    public void addPlayer(TPlayer player) {
+        if (playersById.putIfAbsent(player.getId(), player) != null) {
+            throw new IllegalArgumentException("Игрок с id '" + player.getId() + "' уже есть в мире");
+        }
+    }
+    
+    /**
+     * Удалить игрока из мира (игрок при этом уже должен выйти из комнаты).
+     * 
+     * @param id идентификатор игрока
+     */
+    public void removePlayer(String id) {
+        playersById.remove(id);
+    }
+    
+    /**
+     * Найти игрока по идентификатору.
+     * 
+     * @return игрок или null, если такого нет
+     */
+    public TPlayer findPlayer(String id) {
+        return playersById.get(id);
+    }
+}
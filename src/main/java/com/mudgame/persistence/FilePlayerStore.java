@@ -0,0 +1,314 @@
+package com.mudgame.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Хранилище игроков в одном локальном файле - журнал, в который записи только дописываются.
+ * 
+ * Каждая запись игрока хранится в файле кадром: длина данных (4 байта),
+ * контрольная сумма CRC32 (4 байта) и сами данные (PlayerCodec). Новая версия
+ * игрока просто дописывается в конец, старая остается в файле, но больше
+ * не читается. При открытии файл читается целиком и для каждого игрока
+ * запоминается положение и размер его последнего кадра. Сами записи в памяти
+ * не хранятся: load читает кадр игрока с диска (одно позиционное чтение),
+ * поэтому память хранилища - десятки байтов на игрока, сколько бы ни весил
+ * его инвентарь.
+ * 
+ * Пачка записей дописывается одной операцией записи и одним fsync (force),
+ * поэтому на диск уходит не каждая запись, а каждая пачка.
+ * 
+ * Если процесс упал посреди записи пачки, в конце файла останется оборванный
+ * кадр - он не пройдет проверку длины или контрольной суммы и при следующем
+ * открытии будет отрезан. Игроки этой пачки останутся в предыдущих версиях.
+ * 
+ * Когда старых версий в файле становится намного больше, чем живых,
+ * файл переписывается заново (во временный файл, который потом атомарно
+ * подменяет основной). Неудачное сжатие не портит ни пачку, после которой
+ * оно началось (она уже на диске), ни хранилище: журнал остается прежним
+ * и снова открывается, а следующая попытка будет, когда файл вырастет еще
+ * на COMPACT_MIN_SIZE.
+ * 
+ * Хранилище не потокобезопасно: им пользуется один поток (поток записи WriteBehindPlayerCache).
+ */
+public final class FilePlayerStore implements PlayerStore {
+    
+    // Размер заголовка кадра: длина и контрольная сумма
+    private static final int FRAME_HEADER = 8;
+    
+    // Наибольший допустимый размер записи (защита от мусора вместо длины)
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    
+    // Файл переписывается, когда он во столько раз больше живых данных ...
+    private static final int COMPACT_RATIO = 4;
+    
+    // ... и не меньше этого размера
+    private static final long COMPACT_MIN_SIZE = 1024 * 1024;
+    
+    // Сколько младших битов в описании кадра занимает размер кадра (остальные - позиция)
+    private static final int FRAME_SIZE_BITS = 25;
+    
+    // Путь к файлу
+    private final Path path;
+    
+    // Последний кадр каждого игрока: позиция в файле << FRAME_SIZE_BITS | размер кадра
+    private final Map<String, Long> frames;
+    
+    // Суммарный размер последних кадров всех игроков
+    private long liveSize;
+    
+    // Открытый файл
+    private FileChannel channel;
+    
+    // Размер файла, при котором сжатие не удалось (0 - сбоев не было)
+    private long compactFailedSize;
+    
+    /**
+     * Открыть хранилище. Если файла нет, он создается.
+     * 
+     * @param path путь к файлу
+     * @throws IOException если файл не удалось открыть или прочитать
+     */
+    public FilePlayerStore(Path path) throws IOException {
+        this.path = path;
+        this.frames = new HashMap<>();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        replay();
+    }
+    
+    /**
+     * Прочитать журнал и запомнить последний кадр каждого игрока.
+     * Оборванный или поврежденный хвост журнала отрезается.
+     */
+    private void replay() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+        while (position + FRAME_HEADER <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE || position + FRAME_HEADER + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + FRAME_HEADER);
+            byte[] data = payload.array();
+            if (checksum(data) != checksum) {
+                break;
+            }
+            PlayerRecord record;
+            try {
+                record = PlayerCodec.decode(data);
+            } catch (IOException e) {
+                break;
+            }
+            remember(record.getPlayerId(), position, FRAME_HEADER + length);
+            position = position + FRAME_HEADER + length;
+        }
+        if (position < size) {
+            // Хвост после последнего целого кадра - след записи, прерванной падением
+            channel.truncate(position);
+            channel.force(true);
+        }
+        channel.position(position);
+    }
+    
+    /**
+     * Прочитать из файла ровно столько байтов, сколько помещается в буфер.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Неожиданный конец файла " + path);
+            }
+        }
+    }
+    
+    @Override
+    public PlayerRecord load(String playerId) throws IOException {
+        Long frame = frames.get(playerId);
+        if (frame == null) {
+            return null;
+        }
+        ensureOpen();
+        ByteBuffer buffer = ByteBuffer.allocate(frameSize(frame));
+        readFully(buffer, framePosition(frame));
+        buffer.flip();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        byte[] data = new byte[length];
+        buffer.get(data);
+        if (checksum(data) != checksum) {
+            throw new IOException("Повреждена запись игрока " + playerId + " в " + path);
+        }
+        return PlayerCodec.decode(data);
+    }
+    
+    @Override
+    public void writeBatch(Collection<PlayerRecord> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ensureOpen();
+        byte[][] frames = new byte[batch.size()][];
+        int total = 0;
+        int i = 0;
+        for (PlayerRecord record : batch) {
+            frames[i] = PlayerCodec.encode(record);
+            total = total + FRAME_HEADER + frames[i].length;
+            i = i + 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (byte[] data : frames) {
+            buffer.putInt(data.length);
+            buffer.putInt(checksum(data));
+            buffer.put(data);
+        }
+        buffer.flip();
+        long start = channel.position();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // Не оставляем полузаписанную пачку: следующая пачка начнется с того же места
+            channel.truncate(start);
+            channel.position(start);
+            throw e;
+        }
+        i = 0;
+        long position = start;
+        for (PlayerRecord record : batch) {
+            remember(record.getPlayerId(), position, FRAME_HEADER + frames[i].length);
+            position = position + FRAME_HEADER + frames[i].length;
+            i = i + 1;
+        }
+        long size = channel.size();
+        if (size >= COMPACT_MIN_SIZE && size > liveSize * COMPACT_RATIO
+                && size >= compactFailedSize + COMPACT_MIN_SIZE) {
+            try {
+                compact();
+                compactFailedSize = 0;
+            } catch (IOException e) {
+                // Пачка уже на диске, поэтому сбой сжатия не делает её несохраненной:
+                // журнал остается прежним, сжатие повторится, когда файл подрастет
+                compactFailedSize = size;
+            }
+        }
+    }
+    
+    /**
+     * Открыть журнал заново, если он был закрыт неудачным сжатием.
+     */
+    private void ensureOpen() throws IOException {
+        if (!channel.isOpen()) {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+    }
+    
+    /**
+     * Запомнить кадр как последнюю версию игрока.
+     */
+    private void remember(String playerId, long position, int frameSize) {
+        Long previous = frames.put(playerId, (position << FRAME_SIZE_BITS) | frameSize);
+        liveSize = liveSize + frameSize - (previous != null ? frameSize(previous) : 0);
+    }
+    
+    /**
+     * Позиция кадра в файле по его описанию.
+     */
+    private static long framePosition(long frame) {
+        return frame >>> FRAME_SIZE_BITS;
+    }
+    
+    /**
+     * Размер кадра (с заголовком) по его описанию.
+     */
+    private static int frameSize(long frame) {
+        return (int) (frame & ((1L << FRAME_SIZE_BITS) - 1));
+    }
+    
+    /**
+     * Переписать журнал, оставив в нем только последние версии игроков.
+     * 
+     * Новый журнал пишется во временный файл рядом с основным и после fsync
+     * атомарно заменяет его, поэтому при падении посреди сжатия остается
+     * либо старый журнал, либо новый целиком. Если подмена не удалась,
+     * временный файл удаляется, а старый журнал открывается снова.
+     */
+    private void compact() throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        // Новые положения кадров вступают в силу только после подмены файла
+        Map<String, Long> moved = new HashMap<>();
+        try {
+            copyLiveFrames(temporary, moved);
+            // Файл закрывается до подмены: открытый файл нельзя подменить на всех системах
+            channel.close();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            frames.putAll(moved);
+        } finally {
+            Files.deleteIfExists(temporary);
+            ensureOpen();
+        }
+    }
+    
+    /**
+     * Скопировать последние кадры игроков во временный файл и записать на диск.
+     * 
+     * @param temporary временный файл
+     * @param moved сюда кладутся новые положения кадров
+     */
+    private void copyLiveFrames(Path temporary, Map<String, Long> moved) throws IOException {
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            // Кадры копируются байт в байт, без разбора записей
+            for (Map.Entry<String, Long> entry : frames.entrySet()) {
+                long frame = entry.getValue();
+                long position = out.position();
+                long copied = 0;
+                while (copied < frameSize(frame)) {
+                    long count = channel.transferTo(framePosition(frame) + copied, frameSize(frame) - copied, out);
+                    if (count <= 0) {
+                        throw new IOException("Неожиданный конец файла " + path);
+                    }
+                    copied = copied + count;
+                }
+                moved.put(entry.getKey(), (position << FRAME_SIZE_BITS) | frameSize(frame));
+            }
+            out.force(true);
+        }
+    }
+    
+    /**
+     * Контрольная сумма данных записи.
+     */
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,109 @@
+package com.mudgame.persistence;
+
+import com.mudgame.model.TItemCategory;
+import com.mudgame.model.TPlayer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Двоичный формат записи игрока.
+ * 
+ * Формат: версия формата (байт), id, имя, здоровье, золото, флаг и id комнаты,
+ * версия состояния, количество предметов и предметы (id, имя, шаблон,
+ * номер категории, сила атаки). Строки пишутся в модифицированном UTF-8
+ * (DataOutput.writeUTF).
+ */
+final class PlayerCodec {
+    
+    // Версия формата (увеличивается при несовместимых изменениях)
+    private static final byte FORMAT_VERSION = 2;
+    
+    // Версия формата без золота (такие записи еще читаются, золото у них - TPlayer.START_GOLD)
+    private static final byte FORMAT_VERSION_NO_GOLD = 1;
+    
+    /**
+     * Конструктор закрыт: класс содержит только статические методы.
+     */
+    private PlayerCodec() {
+    }
+    
+    /**
+     * Записать игрока в байты.
+     * 
+     * @param record запись игрока
+     * @return байты записи
+     */
+    static byte[] encode(PlayerRecord record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeUTF(record.getPlayerId());
+            out.writeUTF(record.getName());
+            out.writeInt(record.getHealth());
+            out.writeLong(record.getGold());
+            out.writeBoolean(record.getRoomId() != null);
+            if (record.getRoomId() != null) {
+                out.writeUTF(record.getRoomId());
+            }
+            out.writeLong(record.getVersion());
+            out.writeInt(record.getItems().size());
+            for (PlayerRecord.ItemRecord item : record.getItems()) {
+                out.writeUTF(item.getId());
+                out.writeUTF(item.getName());
+                out.writeUTF(item.getTemplateId());
+                out.writeByte(item.getCategory().ordinal());
+                out.writeInt(item.getAttackPower());
+            }
+        } catch (IOException e) {
+            // Запись в память не бросает IOException
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Прочитать игрока из байтов.
+     * 
+     * @param data байты записи
+     * @return запись игрока
+     * @throws IOException если байты повреждены или формат неизвестен
+     */
+    static PlayerRecord decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte format = in.readByte();
+        if (format != FORMAT_VERSION && format != FORMAT_VERSION_NO_GOLD) {
+            throw new IOException("Неизвестная версия формата записи игрока: " + format);
+        }
+        String playerId = in.readUTF();
+        String name = in.readUTF();
+        int health = in.readInt();
+        long gold = format == FORMAT_VERSION_NO_GOLD ? TPlayer.START_GOLD : in.readLong();
+        String roomId = in.readBoolean() ? in.readUTF() : null;
+        long version = in.readLong();
+        int itemCount = in.readInt();
+        if (itemCount < 0) {
+            throw new IOException("Неверное количество предметов: " + itemCount);
+        }
+        TItemCategory[] categories = TItemCategory.values();
+        List<PlayerRecord.ItemRecord> items = new ArrayList<>(Math.min(itemCount, 1024));
+        for (int i = 0; i < itemCount; i++) {
+            String id = in.readUTF();
+            String itemName = in.readUTF();
+            String templateId = in.readUTF();
+            int category = in.readUnsignedByte();
+            if (category >= categories.length) {
+                throw new IOException("Неизвестная категория предмета: " + category);
+            }
+            int attackPower = in.readInt();
+            items.add(new PlayerRecord.ItemRecord(id, itemName, templateId, categories[category], attackPower));
+        }
+        return new PlayerRecord(playerId, name, health, gold, roomId, version, items);
+    }
+}
@@ -0,0 +1,245 @@
+package com.mudgame.persistence;
+
+import com.mudgame.model.TItem;
+import com.mudgame.model.TItemCategory;
+import com.mudgame.model.TItemStack;
+import com.mudgame.model.TPlayer;
+import com.mudgame.model.TWeapon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Сохраняемое состояние игрока: здоровье, золото, инвентарь и текущая комната.
+ * 
+ * Запись неизменяема. Её создает владелец игрока (актор комнаты) из живого
+ * объекта TPlayer, после чего запись можно без блокировок передавать
+ * в другие потоки - например, в фоновый поток записи на диск.
+ */
+public final class PlayerRecord {
+    
+    // Идентификатор игрока
+    private final String playerId;
+    
+    // Имя игрока
+    private final String name;
+    
+    // Здоровье
+    private final int health;
+    
+    // Золото
+    private final long gold;
+    
+    // Идентификатор текущей комнаты или null, если игрок не в комнате
+    private final String roomId;
+    
+    // Версия состояния игрока, с которой сделана запись (TPlayer.getVersion)
+    private final long version;
+    
+    // Предметы инвентаря
+    private final List<ItemRecord> items;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param playerId идентификатор игрока
+     * @param name имя игрока
+     * @param health здоровье
+     * @param gold золото
+     * @param roomId идентификатор комнаты или null
+     * @param version версия состояния игрока
+     * @param items предметы инвентаря (список копируется)
+     */
+    public PlayerRecord(String playerId, String name, int health, long gold, String roomId, long version,
+                        List<ItemRecord> items) {
+        this.playerId = playerId;
+        this.name = name;
+        this.health = health;
+        this.gold = gold;
+        this.roomId = roomId;
+        this.version = version;
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+    }
+    
+    /**
+     * Снять запись с игрока. Вызывается только владельцем игрока.
+     * 
+     * @param player игрок
+     * @return запись с текущим состоянием игрока
+     */
+    public static PlayerRecord of(TPlayer player) {
+        return of(player, player.getCurrentRoom() != null ? player.getCurrentRoom().getId() : null);
+    }
+    
+    /**
+     * Снять запись с игрока, который не стоит ни в одной комнате (например, с игрока,
+     * собранного из записи усыпленного игрока). Вызывается только владельцем игрока.
+     * 
+     * @param player игрок
+     * @param roomId комната, которую нужно записать
+     * @return запись с текущим состоянием игрока
+     */
+    public static PlayerRecord of(TPlayer player, String roomId) {
+        List<ItemRecord> items = new ArrayList<>(player.getInventory().getTotalCount());
+        for (TItemStack stack : player.getInventory().getStacks()) {
+            for (TItem item : stack.getItems()) {
+                items.add(ItemRecord.of(item));
+            }
+        }
+        return new PlayerRecord(player.getId(), player.getName(), player.getHealth(), player.getGold(), roomId,
+                player.getVersion(), items);
+    }
+    
+    /**
+     * Восстановить здоровье, золото, инвентарь и версию состояния игрока из записи.
+     * 
+     * Комната не восстанавливается: войти в неё игрок должен обычной командой
+     * (см. getRoomId).
+     * 
+     * @param player игрок (обычно только что созданный)
+     */
+    public void applyTo(TPlayer player) {
+        player.setHealth(health);
+        player.setGold(gold);
+        for (ItemRecord item : items) {
+            player.getInventory().add(item.toItem());
+        }
+        // Версия продолжается с записи: иначе кэш мог бы принять новое состояние за уже сохраненное
+        player.restoreVersion(version);
+    }
+    
+    /**
+     * Получить идентификатор игрока.
+     */
+    public String getPlayerId() {
+        return playerId;
+    }
+    
+    /**
+     * Получить имя игрока.
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Получить здоровье.
+     */
+    public int getHealth() {
+        return health;
+    }
+    
+    /**
+     * Получить золото.
+     */
+    public long getGold() {
+        return gold;
+    }
+    
+    /**
+     * Получить идентификатор комнаты (null - игрок не в комнате).
+     */
+    public String getRoomId() {
+        return roomId;
+    }
+    
+    /**
+     * Получить версию состояния игрока, с которой сделана запись.
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Получить предметы инвентаря (только для чтения).
+     */
+    public List<ItemRecord> getItems() {
+        return items;
+    }
+    
+    /**
+     * Сохраняемое состояние предмета инвентаря.
+     */
+    public static final class ItemRecord {
+        
+        // Идентификатор предмета
+        private final String id;
+        
+        // Имя предмета
+        private final String name;
+        
+        // Шаблон предмета (по нему предметы складываются в стопки)
+        private final String templateId;
+        
+        // Категория предмета
+        private final TItemCategory category;
+        
+        // Сила атаки (только у оружия, у остальных предметов 0)
+        private final int attackPower;
+        
+        /**
+         * Конструктор.
+         */
+        public ItemRecord(String id, String name, String templateId, TItemCategory category, int attackPower) {
+            this.id = id;
+            this.name = name;
+            this.templateId = templateId;
+            this.category = category;
+            this.attackPower = attackPower;
+        }
+        
+        /**
+         * Снять запись с предмета.
+         */
+        static ItemRecord of(TItem item) {
+            int attackPower = item instanceof TWeapon ? ((TWeapon) item).getAttackPower() : 0;
+            return new ItemRecord(item.getId(), item.getName(), item.getTemplateId(), item.getCategory(), attackPower);
+        }
+        
+        /**
+         * Создать предмет по записи (предмет не лежит ни в какой комнате).
+         */
+        TItem toItem() {
+            if (category == TItemCategory.WEAPON) {
+                return new TWeapon(name, id, 0, 0, attackPower, templateId);
+            }
+            return new TItem(name, id, 0, 0, templateId, category);
+        }
+        
+        /**
+         * Получить идентификатор предмета.
+         */
+        public String getId() {
+            return id;
+        }
+        
+        /**
+         * Получить имя предмета.
+         */
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * Получить шаблон предмета.
+         */
+        public String getTemplateId() {
+            return templateId;
+        }
+        
+        /**
+         * Получить категорию предмета.
+         */
+        public TItemCategory getCategory() {
+            return category;
+        }
+        
+        /**
+         * Получить силу атаки (0 у предметов, которые не оружие).
+         */
+        public int getAttackPower() {
+            return attackPower;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.mudgame.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Хранилище сохраненных игроков.
+ */
+public interface PlayerStore extends Closeable {
+    
+    /**
+     * Прочитать игрока.
+     * 
+     * @param playerId идентификатор игрока
+     * @return запись игрока или null, если игрок не сохранялся
+     * @throws IOException если хранилище не удалось прочитать
+     */
+    PlayerRecord load(String playerId) throws IOException;
+    
+    /**
+     * Записать пачку игроков. После возврата из метода записи должны
+     * пережить падение процесса и выключение машины.
+     * 
+     * @param records записи игроков
+     * @throws IOException если запись не удалась (тогда ни одна запись пачки не считается сохраненной)
+     */
+    void writeBatch(Collection<PlayerRecord> records) throws IOException;
+}
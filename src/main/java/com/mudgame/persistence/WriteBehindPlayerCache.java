@@ -0,0 +1,274 @@
+package com.mudgame.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Кэш сохраненных игроков с отложенной записью (write-behind).
+ * 
+ * Акторы комнат не пишут на диск сами: они кладут в кэш свежую запись игрока
+ * (put) и сразу продолжают тик. Кэш помечает игрока "грязным", а отдельный
+ * фоновый поток раз в flushIntervalMillis (или раньше, если грязных игроков
+ * набралось batchSize) забирает всех грязных игроков и записывает их в хранилище
+ * одной пачкой - одна запись в файл и один fsync на пачку.
+ * 
+ * Если игрок менялся много раз между сбросами, на диск попадет только его
+ * последняя запись: грязные записи хранятся по идентификатору игрока,
+ * и новая запись заменяет старую.
+ * 
+ * Чтение (get) берет запись из кэша и только при промахе идет в хранилище.
+ * 
+ * Запись, положенная через putAndRelease, после записи в хранилище убирается
+ * из кэша - так игрок, выгруженный из памяти (усыпленный), не держит в памяти
+ * и свою запись. Пока запись не попала в хранилище, она остается в кэше,
+ * поэтому get в любой момент найдет её либо в кэше, либо в хранилище.
+ * 
+ * Граница потерь:
+ * - при обычном завершении close() записывает всех грязных игроков, ничего не теряется;
+ * - при падении процесса или машины теряются изменения, положенные в кэш
+ *   не более чем за flushIntervalMillis плюс время записи одной пачки до падения
+ *   (по умолчанию около секунды); актор комнаты кладет изменившегося игрока в кэш
+ *   не позже чем через RoomActor.MAX_SAVE_DELAY_TICKS тиков (секунду), даже если
+ *   его тик не укладывается в бюджет, - всего около двух секунд;
+ * - если запись пачки не удалась, игроки пачки остаются грязными и пишутся
+ *   при следующем сбросе.
+ * 
+ * Методы put, putAndRelease, get и isCurrent можно вызывать из любого потока.
+ */
+public final class WriteBehindPlayerCache implements Closeable {
+    
+    // Интервал фонового сброса по умолчанию (миллисекунды)
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    
+    // Сколько грязных игроков запускают сброс раньше интервала (по умолчанию)
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    
+    // Хранилище (им пользуется только фоновый поток, а при промахе get - под блокировкой)
+    private final PlayerStore store;
+    
+    // Интервал фонового сброса в наносекундах
+    private final long flushIntervalNanos;
+    
+    // Размер пачки, после которого сброс запускается раньше интервала
+    private final int batchSize;
+    
+    // Последние записи игроков
+    private final ConcurrentHashMap<String, PlayerRecord> cache;
+    
+    // Записи, еще не попавшие в хранилище (по одной на игрока)
+    private final ConcurrentHashMap<String, PlayerRecord> dirty;
+    
+    // Записи, которые нужно убрать из кэша после записи в хранилище
+    private final ConcurrentHashMap<String, PlayerRecord> released;
+    
+    // Фоновый поток записи
+    private final Thread writer;
+    
+    // true - фоновый поток должен продолжать работу
+    private volatile boolean running;
+    
+    // Ошибка последней неудачной записи (null - последняя запись удалась)
+    private volatile IOException lastError;
+    
+    /**
+     * Конструктор - создает кэш с интервалом и размером пачки по умолчанию
+     * и запускает фоновый поток записи.
+     * 
+     * @param store хранилище (кэш закрывает его в close())
+     */
+    public WriteBehindPlayerCache(PlayerStore store) {
+        this(store, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * Конструктор - создает кэш и запускает фоновый поток записи.
+     * 
+     * @param store хранилище (кэш закрывает его в close())
+     * @param flushIntervalMillis наибольшая задержка записи грязного игрока (миллисекунды)
+     * @param batchSize сколько грязных игроков запускают сброс раньше интервала
+     */
+    public WriteBehindPlayerCache(PlayerStore store, long flushIntervalMillis, int batchSize) {
+        if (flushIntervalMillis <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Интервал и размер пачки должны быть положительными");
+        }
+        this.store = store;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.batchSize = batchSize;
+        this.cache = new ConcurrentHashMap<>();
+        this.dirty = new ConcurrentHashMap<>();
+        this.released = new ConcurrentHashMap<>();
+        this.running = true;
+        this.writer = new Thread(this::runLoop, "mud-persistence");
+        // Поток-демон не мешает приложению завершиться (данные дописывает close())
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * Положить свежую запись игрока. Запись попадет в хранилище при ближайшем сбросе.
+     * 
+     * @param record запись игрока
+     */
+    public void put(PlayerRecord record) {
+        put(record, false);
+    }
+    
+    /**
+     * Положить последнюю запись игрока, который выгружается из памяти.
+     * 
+     * Запись попадет в хранилище при ближайшем сбросе и после этого будет убрана
+     * из кэша (если к тому времени не придет запись новее).
+     * 
+     * @param record запись игрока
+     */
+    public void putAndRelease(PlayerRecord record) {
+        put(record, true);
+    }
+    
+    /**
+     * Положить запись и пометить игрока грязным.
+     * 
+     * @param release true - убрать запись из кэша после записи в хранилище
+     */
+    private void put(PlayerRecord record, boolean release) {
+        // Обычная запись отменяет выгрузку: игрок снова в памяти
+        if (release) {
+            released.put(record.getPlayerId(), record);
+        } else {
+            released.remove(record.getPlayerId());
+        }
+        cache.put(record.getPlayerId(), record);
+        dirty.put(record.getPlayerId(), record);
+        if (dirty.size() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+    
+    /**
+     * Прочитать игрока: из кэша или, при промахе, из хранилища.
+     * 
+     * @param playerId идентификатор игрока
+     * @return запись игрока или null, если игрок не сохранялся
+     * @throws IOException если хранилище не удалось прочитать
+     */
+    public PlayerRecord get(String playerId) throws IOException {
+        PlayerRecord record = cache.get(playerId);
+        if (record != null) {
+            return record;
+        }
+        synchronized (store) {
+            record = store.load(playerId);
+        }
+        if (record != null) {
+            // Если пока мы читали, кто-то положил запись новее, оставляем её
+            PlayerRecord current = cache.putIfAbsent(playerId, record);
+            if (current != null) {
+                record = current;
+            }
+        }
+        return record;
+    }
+    
+    /**
+     * Проверить, лежит ли в кэше запись игрока именно этой версии.
+     * 
+     * Так владелец игрока дешево решает, нужно ли снимать новую запись:
+     * пока версия игрока не менялась, новых объектов не создается.
+     * 
+     * @param playerId идентификатор игрока
+     * @param version версия состояния игрока (TPlayer.getVersion)
+     * @return true если запись в кэше актуальна
+     */
+    public boolean isCurrent(String playerId, long version) {
+        PlayerRecord record = cache.get(playerId);
+        return record != null && record.getVersion() == version;
+    }
+    
+    /**
+     * Получить количество игроков, еще не записанных в хранилище.
+     */
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+    
+    /**
+     * Получить ошибку последней неудачной записи.
+     * 
+     * @return ошибка или null, если последняя запись удалась
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+    
+    /**
+     * Записать всех грязных игроков в хранилище одной пачкой.
+     * 
+     * Игрок перестает быть грязным, только если в хранилище записана его
+     * последняя запись: если за время записи пришла новая, она останется
+     * грязной до следующего сброса.
+     * 
+     * @throws IOException если запись не удалась (игроки пачки остаются грязными)
+     */
+    public void flush() throws IOException {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<PlayerRecord> batch = new ArrayList<>(dirty.values());
+        synchronized (store) {
+            store.writeBatch(batch);
+        }
+        for (PlayerRecord record : batch) {
+            dirty.remove(record.getPlayerId(), record);
+            // Запись выгруженного игрока уже в хранилище - в памяти она больше не нужна
+            if (released.remove(record.getPlayerId(), record)) {
+                cache.remove(record.getPlayerId(), record);
+            }
+        }
+    }
+    
+    /**
+     * Цикл фонового потока: сброс по интервалу или по заполнению пачки.
+     */
+    private void runLoop() {
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            if (!running) {
+                break;
+            }
+            try {
+                flush();
+                lastError = null;
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+    }
+    
+    /**
+     * Остановить фоновый поток, записать оставшихся грязных игроков и закрыть хранилище.
+     * 
+     * @throws IOException если последнюю пачку не удалось записать или хранилище не закрылось
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            synchronized (store) {
+                store.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.mudgame.stats;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Боевая статистика мира: счетчики каждого игрока и каждого типа NPC
+ * и таблицы лидеров среди игроков.
+ * 
+ * Тип NPC - его имя: все NPC одного элемента мира (например, сто волков
+ * из count="100") называются одинаково и считаются вместе.
+ * 
+ * Запись идет из акторов комнат, то есть из нескольких потоков сразу,
+ * и не берет блокировок: счетчики - LongAdder (StatCounters), справочники
+ * счетчиков - ConcurrentHashMap, а таблица лидеров блокируется, только
+ * когда счет игрока действительно меняет её (Leaderboard).
+ */
+public final class CombatStats {
+    
+    // Размер таблиц лидеров по умолчанию
+    public static final int DEFAULT_LEADERBOARD_SIZE = 100;
+    
+    // Счетчики игроков по идентификатору игрока
+    private final ConcurrentHashMap<String, StatCounters> players;
+    
+    // Счетчики типов NPC по имени NPC
+    private final ConcurrentHashMap<String, StatCounters> npcTypes;
+    
+    // Таблицы лидеров среди игроков по номеру вида статистики
+    private final Leaderboard[] leaderboards;
+    
+    /**
+     * Конструктор - таблицы лидеров размера DEFAULT_LEADERBOARD_SIZE.
+     */
+    public CombatStats() {
+        this(DEFAULT_LEADERBOARD_SIZE);
+    }
+    
+    /**
+     * Конструктор.
+     * 
+     * @param leaderboardSize сколько лучших игроков хранит каждая таблица лидеров
+     */
+    public CombatStats(int leaderboardSize) {
+        this.players = new ConcurrentHashMap<>();
+        this.npcTypes = new ConcurrentHashMap<>();
+        StatKind[] kinds = StatKind.values();
+        this.leaderboards = new Leaderboard[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            leaderboards[i] = new Leaderboard(leaderboardSize);
+        }
+    }
+    
+    /**
+     * Записать удар игрока по NPC.
+     * 
+     * @param playerId идентификатор игрока
+     * @param npcType тип NPC (имя)
+     * @param damage сколько здоровья отнято у NPC
+     * @param killed true если NPC погиб от этого удара
+     */
+    public void recordHit(String playerId, String npcType, int damage, boolean killed) {
+        StatCounters player = counters(players, playerId);
+        StatCounters npc = counters(npcTypes, npcType);
+        if (damage > 0) {
+            player.add(StatKind.DAMAGE, damage);
+            npc.add(StatKind.DAMAGE, damage);
+            rank(StatKind.DAMAGE, playerId, player);
+        }
+        if (killed) {
+            player.add(StatKind.KILLS, 1);
+            npc.add(StatKind.KILLS, 1);
+            rank(StatKind.KILLS, playerId, player);
+        }
+    }
+    
+    /**
+     * Записать, что игрок поднял предмет.
+     * 
+     * @param playerId идентификатор игрока
+     */
+    public void recordPickUp(String playerId) {
+        StatCounters player = counters(players, playerId);
+        player.add(StatKind.ITEMS_PICKED_UP, 1);
+        rank(StatKind.ITEMS_PICKED_UP, playerId, player);
+    }
+    
+    /**
+     * Получить счетчики игрока.
+     * 
+     * @param playerId идентификатор игрока
+     * @return счетчики или null, если у игрока еще нет статистики
+     */
+    public StatCounters getPlayer(String playerId) {
+        return players.get(playerId);
+    }
+    
+    /**
+     * Получить счетчики типа NPC.
+     * 
+     * @param npcType тип NPC (имя)
+     * @return счетчики или null, если NPC этого типа еще не били
+     */
+    public StatCounters getNPCType(String npcType) {
+        return npcTypes.get(npcType);
+    }
+    
+    /**
+     * Получить все типы NPC со статистикой (только для чтения).
+     */
+    public Map<String, StatCounters> getNPCTypes() {
+        return Collections.unmodifiableMap(npcTypes);
+    }
+    
+    /**
+     * Получить лучших игроков по виду статистики.
+     * 
+     * Таблица поддерживается при каждой записи, поэтому запрос не сортирует игроков.
+     * 
+     * @param kind вид статистики
+     * @param count сколько мест нужно (не больше размера таблицы лидеров)
+     * @return игроки по убыванию счета
+     */
+    public List<Leaderboard.Entry> top(StatKind kind, int count) {
+        return leaderboards[kind.ordinal()].top(count);
+    }
+    
+    /**
+     * Получить версию таблицы лидеров по показателю (см. Leaderboard.getVersion).
+     * 
+     * @param kind показатель
+     */
+    public int getLeaderboardVersion(StatKind kind) {
+        return leaderboards[kind.ordinal()].getVersion();
+    }
+    
+    /**
+     * Сообщить таблице лидеров новый счет игрока.
+     */
+    private void rank(StatKind kind, String playerId, StatCounters player) {
+        leaderboards[kind.ordinal()].offer(playerId, player.get(kind));
+    }
+    
+    /**
+     * Найти или создать счетчики по ключу.
+     */
+    private static StatCounters counters(ConcurrentHashMap<String, StatCounters> map, String key) {
+        // get не блокирует, а computeIfAbsent нужен только при первой записи
+        StatCounters counters = map.get(key);
+        if (counters == null) {
+            counters = map.computeIfAbsent(key, k -> new StatCounters());
+        }
+        return counters;
+    }
+}
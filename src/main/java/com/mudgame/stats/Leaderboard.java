@@ -0,0 +1,183 @@
+package com.mudgame.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Таблица лидеров - K участников с наибольшим счетом.
+ * 
+ * Таблица хранит только K лучших, упорядоченных по убыванию счета,
+ * и обновляется при каждом изменении счета, поэтому запрос "первые 100"
+ * только копирует готовый список, а не сортирует всех игроков.
+ * 
+ * Счет участника только растет (урон, убийства, предметы), поэтому
+ * участник вне таблицы может попасть в неё только в момент, когда его счет
+ * вырос выше последнего места - и таблица узнает об этом из offer().
+ * Вытесненный участник вернется, как только его счет снова обгонит последнее место.
+ * 
+ * Обновление, которое не попадает в таблицу (большинство, когда участников
+ * много), стоит одного чтения volatile-поля без блокировок. Изменение таблицы
+ * выполняется под блокировкой: в таблице K элементов, и перестановка
+ * занимает не больше K шагов.
+ * 
+ * Места хранятся в двух массивах (идентификаторы и счета), а не объектами,
+ * поэтому и изменение таблицы не создает объектов; неизменяемые Entry
+ * собираются только для того, кто запросил первые места.
+ * 
+ * Версия таблицы растет при каждом её изменении: кто показывает таблицу,
+ * сравнивает версию и запрашивает места (и создает Entry), только если она изменилась.
+ */
+public final class Leaderboard {
+    
+    // Размер таблицы
+    private final int capacity;
+    
+    // Участники таблицы по убыванию счета: идентификаторы и счета (занято size первых ячеек)
+    private final String[] ids;
+    private final long[] scores;
+    
+    // Место каждого участника таблицы (индекс в ids и scores)
+    private final Map<String, Integer> positions;
+    
+    // Сколько мест занято
+    private int size;
+    
+    // Счет, который нужно превысить, чтобы попасть в таблицу или подняться в ней
+    // (0, пока таблица не заполнена)
+    private volatile long threshold;
+    
+    // Версия таблицы (растет при каждом изменении)
+    private volatile int version;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param capacity сколько лучших участников хранить
+     */
+    public Leaderboard(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Размер таблицы лидеров должен быть положительным: " + capacity);
+        }
+        this.capacity = capacity;
+        this.ids = new String[capacity];
+        this.scores = new long[capacity];
+        this.positions = new HashMap<>();
+    }
+    
+    /**
+     * Сообщить новый счет участника.
+     * 
+     * Метод можно вызывать из любого потока. Счет одного участника
+     * не должен уменьшаться.
+     * 
+     * @param id идентификатор участника
+     * @param score новый счет
+     */
+    public void offer(String id, long score) {
+        // Участники таблицы не ниже порога, поэтому счет не выше порога ничего не меняет
+        if (score <= threshold) {
+            return;
+        }
+        synchronized (this) {
+            Integer position = positions.get(id);
+            int index;
+            if (position != null) {
+                index = position;
+                if (scores[index] >= score) {
+                    // Счет, сообщенный позже, уже учтен
+                    return;
+                }
+            } else if (size < capacity) {
+                index = size;
+                size = size + 1;
+            } else {
+                if (score <= scores[capacity - 1]) {
+                    return;
+                }
+                // Вытесняем последнее место
+                index = capacity - 1;
+                positions.remove(ids[index]);
+            }
+            // Поднимаем участника, пока впереди стоит счет меньше
+            while (index > 0 && scores[index - 1] < score) {
+                ids[index] = ids[index - 1];
+                scores[index] = scores[index - 1];
+                positions.put(ids[index], index);
+                index = index - 1;
+            }
+            ids[index] = id;
+            scores[index] = score;
+            if (position == null || position != index) {
+                positions.put(id, index);
+            }
+            threshold = size < capacity ? 0 : scores[capacity - 1];
+            version = version + 1;
+        }
+    }
+    
+    /**
+     * Получить первые места таблицы.
+     * 
+     * @param count сколько мест нужно (не больше размера таблицы)
+     * @return участники по убыванию счета (не больше count)
+     */
+    public synchronized List<Entry> top(int count) {
+        int n = Math.min(count, size);
+        List<Entry> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(new Entry(ids[i], scores[i]));
+        }
+        return Collections.unmodifiableList(result);
+    }
+    
+    /**
+     * Получить версию таблицы: она меняется при каждом изменении мест или счетов.
+     */
+    public int getVersion() {
+        return version;
+    }
+    
+    /**
+     * Получить размер таблицы.
+     */
+    public int capacity() {
+        return capacity;
+    }
+    
+    /**
+     * Место в таблице лидеров. Объект неизменяем.
+     */
+    public static final class Entry {
+        
+        // Идентификатор участника
+        private final String id;
+        
+        // Счет
+        private final long score;
+        
+        /**
+         * Конструктор.
+         */
+        Entry(String id, long score) {
+            this.id = id;
+            this.score = score;
+        }
+        
+        /**
+         * Получить идентификатор участника.
+         */
+        public String getId() {
+            return id;
+        }
+        
+        /**
+         * Получить счет.
+         */
+        public long getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.mudgame.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики статистики одного игрока или одного типа NPC - по счетчику на каждый StatKind.
+ * 
+ * Счетчики - LongAdder: при одновременной записи из нескольких потоков
+ * каждый поток попадает в свою ячейку и не ждет остальных, а значение
+ * складывается из ячеек только при чтении. Это важно для счетчиков типов NPC:
+ * волков бьют игроки во всех комнатах сразу, то есть акторы на разных потоках.
+ */
+public final class StatCounters {
+    
+    // Счетчики по номеру вида статистики (StatKind.ordinal)
+    private final LongAdder[] counters;
+    
+    /**
+     * Конструктор - создает нулевые счетчики.
+     */
+    StatCounters() {
+        StatKind[] kinds = StatKind.values();
+        this.counters = new LongAdder[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+    
+    /**
+     * Прибавить к счетчику.
+     * 
+     * @param kind вид статистики
+     * @param amount сколько прибавить
+     */
+    void add(StatKind kind, long amount) {
+        counters[kind.ordinal()].add(amount);
+    }
+    
+    /**
+     * Получить значение счетчика.
+     * 
+     * Во время одновременной записи значение может не учитывать последние прибавления.
+     * 
+     * @param kind вид статистики
+     * @return значение счетчика
+     */
+    public long get(StatKind kind) {
+        return counters[kind.ordinal()].sum();
+    }
+}
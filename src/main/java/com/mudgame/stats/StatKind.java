@@ -0,0 +1,16 @@
+package com.mudgame.stats;
+
+/**
+ * Виды боевой статистики.
+ */
+public enum StatKind {
+    
+    // Урон: у игрока - нанесенный NPC, у типа NPC - полученный от игроков
+    DAMAGE,
+    
+    // Убийства: у игрока - убитые NPC, у типа NPC - сколько NPC этого типа погибло
+    KILLS,
+    
+    // Поднятые предметы (только у игроков)
+    ITEMS_PICKED_UP
+}
@@ -0,0 +1,166 @@
+package com.mudgame.ui;
+
+/**
+ * Камера - какая часть мира видна на холсте и в каком масштабе.
+ * 
+ * Камера хранит точку мира, которая видна в центре холста, и масштаб
+ * (сколько пикселей экрана приходится на единицу мира). По ним мировые
+ * координаты (TGameObject.getX/getY, границы TRoom) переводятся в координаты
+ * холста и обратно, а видимая область мира используется для отсечения:
+ * объекты за её пределами не рисуются.
+ * 
+ * Камера используется только в потоке JavaFX.
+ */
+public final class Camera {
+    
+    // Пределы масштаба
+    public static final double MIN_ZOOM = 0.25;
+    public static final double MAX_ZOOM = 4;
+    
+    // Размер холста в пикселях
+    private final double viewportWidth;
+    private final double viewportHeight;
+    
+    // Точка мира в центре холста
+    private double centerX;
+    private double centerY;
+    
+    // Масштаб: пикселей холста на единицу мира
+    private double zoom;
+    
+    /**
+     * Конструктор - камера с масштабом 1, при которой мировые координаты
+     * совпадают с координатами холста.
+     * 
+     * @param viewportWidth ширина холста
+     * @param viewportHeight высота холста
+     */
+    public Camera(double viewportWidth, double viewportHeight) {
+        this.viewportWidth = viewportWidth;
+        this.viewportHeight = viewportHeight;
+        this.centerX = viewportWidth / 2;
+        this.centerY = viewportHeight / 2;
+        this.zoom = 1;
+    }
+    
+    /**
+     * Поставить точку мира (x, y) в центр холста.
+     */
+    public void centerOn(double x, double y) {
+        this.centerX = x;
+        this.centerY = y;
+    }
+    
+    /**
+     * Сдвинуть камеру вслед за перетаскиванием мыши.
+     * 
+     * @param screenDx на сколько пикселей сдвинулась мышь по X
+     * @param screenDy на сколько пикселей сдвинулась мышь по Y
+     */
+    public void pan(double screenDx, double screenDy) {
+        // Мир едет вместе с мышью, то есть камера - в обратную сторону
+        centerX = centerX - screenDx / zoom;
+        centerY = centerY - screenDy / zoom;
+    }
+    
+    /**
+     * Изменить масштаб так, чтобы точка мира под курсором осталась под курсором.
+     * 
+     * @param factor во сколько раз увеличить масштаб (меньше 1 - уменьшить)
+     * @param screenX координата X курсора на холсте
+     * @param screenY координата Y курсора на холсте
+     */
+    public void zoomAt(double factor, double screenX, double screenY) {
+        double worldX = toWorldX(screenX);
+        double worldY = toWorldY(screenY);
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        // Сдвигаем центр так, чтобы (worldX, worldY) снова оказалась в (screenX, screenY)
+        centerX = worldX - (screenX - viewportWidth / 2) / zoom;
+        centerY = worldY - (screenY - viewportHeight / 2) / zoom;
+    }
+    
+    /**
+     * Получить масштаб (пикселей холста на единицу мира).
+     */
+    public double getZoom() {
+        return zoom;
+    }
+    
+    /**
+     * Перевести мировую координату X в координату холста.
+     */
+    public double toScreenX(double worldX) {
+        return (worldX - centerX) * zoom + viewportWidth / 2;
+    }
+    
+    /**
+     * Перевести мировую координату Y в координату холста.
+     */
+    public double toScreenY(double worldY) {
+        return (worldY - centerY) * zoom + viewportHeight / 2;
+    }
+    
+    /**
+     * Перевести координату X холста в мировую.
+     */
+    public double toWorldX(double screenX) {
+        return (screenX - viewportWidth / 2) / zoom + centerX;
+    }
+    
+    /**
+     * Перевести координату Y холста в мировую.
+     */
+    public double toWorldY(double screenY) {
+        return (screenY - viewportHeight / 2) / zoom + centerY;
+    }
+    
+    /**
+     * Левая граница видимой области мира.
+     */
+    public double getViewLeft() {
+        return toWorldX(0);
+    }
+    
+    /**
+     * Верхняя граница видимой области мира.
+     */
+    public double getViewTop() {
+        return toWorldY(0);
+    }
+    
+    /**
+     * Правая граница видимой области мира.
+     */
+    public double getViewRight() {
+        return toWorldX(viewportWidth);
+    }
+    
+    /**
+     * Нижняя граница видимой области мира.
+     */
+    public double getViewBottom() {
+        return toWorldY(viewportHeight);
+    }
+    
+    /**
+     * Проверить, попадает ли прямоугольник мира в видимую область.
+     * 
+     * @param x левая граница прямоугольника
+     * @param y верхняя граница прямоугольника
+     * @param width ширина
+     * @param height высота
+     * @return true если прямоугольник хотя бы частично виден
+     */
+    public boolean isVisible(double x, double y, double width, double height) {
+        return x + width >= getViewLeft() && x <= getViewRight()
+                && y + height >= getViewTop() && y <= getViewBottom();
+    }
+    
+    /**
+     * Проверить, попадает ли точка мира в видимую область с запасом margin
+     * (запас - размер значка и надписи вокруг точки).
+     */
+    public boolean isVisible(double x, double y, double margin) {
+        return isVisible(x - margin, y - margin, margin * 2, margin * 2);
+    }
+}
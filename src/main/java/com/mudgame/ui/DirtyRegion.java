@@ -0,0 +1,121 @@
+package com.mudgame.ui;
+
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Участки холста, которые нужно перерисовать, - по изменениям объектов комнаты.
+ * 
+ * Каждое изменение (объект появился, пропал, переместился) добавляет точку мира,
+ * где объект был или стал, и половину ширины его надписи в пикселях. Близкие
+ * точки собираются в один прямоугольник; прямоугольников не больше MAX_RECTS -
+ * дальше новая точка расширяет ближайший из них.
+ * 
+ * Участки хранятся в мировых координатах и переводятся в координаты холста
+ * только при отсечении (addToPath), поэтому остаются верными, если камера
+ * сдвинулась или изменила масштаб между изменением и перерисовкой.
+ * 
+ * Используется только в потоке JavaFX.
+ */
+public final class DirtyRegion {
+    
+    // Наибольшее количество прямоугольников
+    private static final int MAX_RECTS = 16;
+    
+    // Точка ближе этого (в единицах мира) к прямоугольнику расширяет его, а не создает новый
+    private static final double MERGE_DISTANCE = 40;
+    
+    // Границы прямоугольников в мировых координатах
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+    
+    // Наибольшая половина ширины надписи объектов прямоугольника (пиксели холста)
+    private final double[] labelHalfWidth;
+    
+    // Количество прямоугольников
+    private int count;
+    
+    /**
+     * Конструктор - пустой участок.
+     */
+    public DirtyRegion() {
+        this.minX = new double[MAX_RECTS];
+        this.minY = new double[MAX_RECTS];
+        this.maxX = new double[MAX_RECTS];
+        this.maxY = new double[MAX_RECTS];
+        this.labelHalfWidth = new double[MAX_RECTS];
+        this.count = 0;
+    }
+    
+    /**
+     * Добавить место объекта, которое нужно перерисовать.
+     * 
+     * @param x координата X объекта в мире
+     * @param y координата Y объекта в мире
+     * @param labelHalf половина ширины надписи объекта в пикселях холста
+     */
+    public void add(double x, double y, double labelHalf) {
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            double dx = Math.max(0, Math.max(minX[i] - x, x - maxX[i]));
+            double dy = Math.max(0, Math.max(minY[i] - y, y - maxY[i]));
+            double distance = dx + dy;
+            if (distance < nearestDistance) {
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+        if (nearest < 0 || (nearestDistance > MERGE_DISTANCE && count < MAX_RECTS)) {
+            minX[count] = x;
+            minY[count] = y;
+            maxX[count] = x;
+            maxY[count] = y;
+            labelHalfWidth[count] = labelHalf;
+            count = count + 1;
+            return;
+        }
+        minX[nearest] = Math.min(minX[nearest], x);
+        minY[nearest] = Math.min(minY[nearest], y);
+        maxX[nearest] = Math.max(maxX[nearest], x);
+        maxY[nearest] = Math.max(maxY[nearest], y);
+        labelHalfWidth[nearest] = Math.max(labelHalfWidth[nearest], labelHalf);
+    }
+    
+    /**
+     * Проверить, пуст ли участок.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+    
+    /**
+     * Очистить участок.
+     */
+    public void clear() {
+        count = 0;
+    }
+    
+    /**
+     * Добавить прямоугольники участка в текущий путь холста (для gc.clip()).
+     * 
+     * Прямоугольник расширяется на размер объекта: значок - квадрат spriteSize
+     * с центром в точке объекта, под ним надпись высотой labelHeight.
+     * 
+     * @param gc контекст холста (путь уже начат beginPath)
+     * @param camera камера
+     * @param spriteSize наибольший размер значка в пикселях холста (с учетом масштаба)
+     * @param labelHeight высота надписи под значком вместе с отступом
+     */
+    public void addToPath(GraphicsContext gc, Camera camera, double spriteSize, double labelHeight) {
+        for (int i = 0; i < count; i++) {
+            double halfWidth = Math.max(spriteSize / 2, labelHalfWidth[i]) + 1;
+            double left = camera.toScreenX(minX[i]) - halfWidth;
+            double right = camera.toScreenX(maxX[i]) + halfWidth;
+            double top = camera.toScreenY(minY[i]) - spriteSize / 2 - 1;
+            double bottom = camera.toScreenY(maxY[i]) + spriteSize / 2 + labelHeight + 1;
+            gc.rect(left, top, right - left, bottom - top);
+        }
+    }
+}
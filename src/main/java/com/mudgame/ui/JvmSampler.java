@@ -0,0 +1,165 @@
+package com.mudgame.ui;
+
+import com.sun.management.GcInfo;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Замер скорости выделения памяти и пауз сборщика мусора по управляющим объектам JVM.
+ * 
+ * Объекты JVM опрашиваются только в sample(), а между замерами
+ * хранятся готовые числа, поэтому читать их можно хоть каждый кадр.
+ * Вызывать sample() часто не нужно (раз в полсекунды достаточно):
+ * опрос всех потоков сам выделяет немного памяти.
+ * 
+ * Используется только в потоке JavaFX.
+ */
+public final class JvmSampler {
+    
+    // Потоки JVM (для подсчета выделенной памяти; null - JVM этого не умеет)
+    private final com.sun.management.ThreadMXBean threads;
+    
+    // Сборщики мусора
+    private final List<GarbageCollectorMXBean> collectors;
+    
+    // Значения на прошлом замере
+    private long lastNanos;
+    private long lastAllocatedBytes;
+    private long lastGcCount;
+    private long lastGcMillis;
+    
+    // Результаты последнего замера
+    private double allocationRate;
+    private long gcCount;
+    private long gcMillis;
+    private long lastPauseMillis;
+    
+    /**
+     * Конструктор - делает первый замер, от которого считаются следующие.
+     */
+    public JvmSampler() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threads = null;
+        }
+        this.collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        this.lastNanos = System.nanoTime();
+        this.lastAllocatedBytes = allocatedBytes();
+        this.lastGcCount = totalGcCount();
+        this.lastGcMillis = totalGcMillis();
+    }
+    
+    /**
+     * Сделать замер: посчитать выделение памяти и сборки мусора со времени прошлого замера.
+     */
+    public void sample() {
+        long now = System.nanoTime();
+        long allocated = allocatedBytes();
+        long count = totalGcCount();
+        long millis = totalGcMillis();
+        
+        // Память завершившихся потоков пропадает из суммы, поэтому разница может быть отрицательной
+        double seconds = Math.max(1e-9, (now - lastNanos) / 1e9);
+        allocationRate = Math.max(0, allocated - lastAllocatedBytes) / seconds;
+        gcCount = count - lastGcCount;
+        gcMillis = millis - lastGcMillis;
+        lastPauseMillis = lastPause();
+        
+        lastNanos = now;
+        lastAllocatedBytes = allocated;
+        lastGcCount = count;
+        lastGcMillis = millis;
+    }
+    
+    /**
+     * Получить скорость выделения памяти на последнем замере (байт в секунду; 0 - JVM этого не умеет).
+     */
+    public double getAllocationRate() {
+        return allocationRate;
+    }
+    
+    /**
+     * Получить количество сборок мусора между двумя последними замерами.
+     */
+    public long getGcCount() {
+        return gcCount;
+    }
+    
+    /**
+     * Получить суммарное время сборок мусора между двумя последними замерами (мс).
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+    
+    /**
+     * Получить длительность последней сборки мусора (мс; 0 - сборок еще не было).
+     */
+    public long getLastPauseMillis() {
+        return lastPauseMillis;
+    }
+    
+    /**
+     * Сколько байт выделили все живые потоки за время своей жизни.
+     */
+    private long allocatedBytes() {
+        if (threads == null) {
+            return 0;
+        }
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            // -1 - поток завершился между двумя вызовами
+            if (bytes > 0) {
+                total = total + bytes;
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Сколько сборок мусора выполнили все сборщики.
+     */
+    private long totalGcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            total = total + Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+    
+    /**
+     * Сколько миллисекунд заняли все сборки мусора.
+     */
+    private long totalGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            total = total + Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+    
+    /**
+     * Длительность самой поздней из последних сборок всех сборщиков.
+     */
+    private long lastPause() {
+        long latestEnd = -1;
+        long duration = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            if (collector instanceof com.sun.management.GarbageCollectorMXBean) {
+                GcInfo info = ((com.sun.management.GarbageCollectorMXBean) collector).getLastGcInfo();
+                if (info != null && info.getEndTime() > latestEnd) {
+                    latestEnd = info.getEndTime();
+                    duration = info.getDuration();
+                }
+            }
+        }
+        return duration;
+    }
+}
@@ -0,0 +1,117 @@
+package com.mudgame.ui;
+
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш заранее растеризованных надписей (имен объектов на холсте).
+ * 
+ * Растеризация текста (fillText) - самая дорогая часть кадра, когда надписей
+ * много: для каждой надписи каждый кадр заново раскладываются и рисуются глифы.
+ * Но имена объектов почти не меняются, поэтому каждая надпись растеризуется
+ * один раз в картинку, а на кадре картинка копируется методом drawImage.
+ * 
+ * Картинки хранятся по шрифту и тексту. Для каждого шрифта хранится не больше
+ * maxPerFont надписей: давно не показанные вытесняются (LRU), чтобы кэш
+ * не рос бесконечно, если имена меняются (например, выпавшие предметы).
+ * 
+ * Кэш используется только в потоке JavaFX.
+ */
+public final class LabelCache {
+    
+    // Сколько надписей одного шрифта хранить по умолчанию
+    public static final int DEFAULT_MAX_PER_FONT = 512;
+    
+    // Сколько надписей одного шрифта хранить
+    private final int maxPerFont;
+    
+    // Картинки надписей по шрифту, внутри - по тексту (в порядке последнего показа)
+    private final Map<Font, Map<String, Image>> images;
+    
+    // Узел для растеризации текста (используется повторно)
+    private final Text text;
+    
+    // Параметры снимка: прозрачный фон
+    private final SnapshotParameters parameters;
+    
+    /**
+     * Конструктор - кэш на DEFAULT_MAX_PER_FONT надписей каждого шрифта.
+     */
+    public LabelCache() {
+        this(DEFAULT_MAX_PER_FONT);
+    }
+    
+    /**
+     * Конструктор.
+     * 
+     * @param maxPerFont сколько надписей одного шрифта хранить
+     */
+    public LabelCache(int maxPerFont) {
+        this.maxPerFont = maxPerFont;
+        this.images = new HashMap<>();
+        this.text = new Text("");
+        text.setFill(Color.BLACK);
+        // Картинка начинается с верхнего края строки, а не с базовой линии
+        text.setTextOrigin(VPos.TOP);
+        this.parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+    }
+    
+    /**
+     * Получить картинку надписи, растеризовав её при первом обращении.
+     * 
+     * @param label текст надписи
+     * @param font шрифт
+     * @return картинка надписи (черный текст на прозрачном фоне)
+     */
+    public Image get(String label, Font font) {
+        Map<String, Image> byText = images.get(font);
+        if (byText == null) {
+            byText = new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+                    return size() > maxPerFont;
+                }
+            };
+            images.put(font, byText);
+        }
+        Image image = byText.get(label);
+        if (image == null) {
+            image = rasterize(label, font);
+            byText.put(label, image);
+        }
+        return image;
+    }
+    
+    /**
+     * Нарисовать надпись по центру относительно x, верхним краем на y.
+     * 
+     * @param gc контекст холста
+     * @param label текст надписи
+     * @param font шрифт
+     * @param centerX координата X центра надписи
+     * @param top координата Y верхнего края надписи
+     */
+    public void draw(GraphicsContext gc, String label, Font font, double centerX, double top) {
+        Image image = get(label, font);
+        gc.drawImage(image, centerX - image.getWidth() / 2, top);
+    }
+    
+    /**
+     * Растеризовать надпись в картинку.
+     */
+    private Image rasterize(String label, Font font) {
+        text.setText(label);
+        text.setFont(font);
+        return text.snapshot(parameters, null);
+    }
+}
@@ -0,0 +1,215 @@
+package com.mudgame.ui;
+
+import com.mudgame.engine.GameEngine;
+import com.mudgame.engine.RenderSnapshot;
+import com.mudgame.engine.TickPhase;
+import com.mudgame.model.TRoomView;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.Arrays;
+
+/**
+ * Панель производительности поверх холста (включается клавишей F3).
+ * 
+ * Показывает, где теряется время, когда игра тормозит:
+ * - кадры: FPS, процентили длительности кадра и время отрисовки;
+ * - ввод: сколько команд ждут движка;
+ * - симуляция: длительность последнего тика по этапам (TickPhase);
+ * - комната: сколько в ней игроков, NPC и предметов;
+ * - JVM: скорость выделения памяти и сборки мусора (JvmSampler).
+ * 
+ * Чтобы панель не искажала то, что показывает, на каждом кадре она только
+ * записывает длительность кадра в кольцевой массив. Всё остальное (процентили,
+ * опрос JVM, строки текста) считается раз в SAMPLE_INTERVAL_NANOS и только
+ * пока панель видна.
+ * 
+ * Используется только в потоке JavaFX.
+ */
+public final class PerfOverlay {
+    
+    // Как часто пересчитываются показания (полсекунды)
+    private static final long SAMPLE_INTERVAL_NANOS = 500_000_000L;
+    
+    // Сколько последних кадров учитывается в процентилях
+    private static final int FRAME_WINDOW = 256;
+    
+    // Отступ панели от края холста и высота строки
+    private static final double MARGIN = 6;
+    private static final double LINE_HEIGHT = 14;
+    private static final double WIDTH = 470;
+    
+    // Длительности последних кадров (кольцо) и сколько кадров записано всего
+    private final long[] frameNanos;
+    private long frameCount;
+    
+    // Массив для сортировки при подсчете процентилей (переиспользуется)
+    private final long[] sorted;
+    
+    // Время прошлого кадра (0 - кадров еще не было)
+    private long lastFrameTime;
+    
+    // Кадры и время отрисовки с прошлого замера
+    private int framesSinceSample;
+    private long renderNanosSinceSample;
+    
+    // Время прошлого замера
+    private long lastSampleTime;
+    
+    // Замер памяти и сборок мусора
+    private final JvmSampler jvm;
+    
+    // Строки панели, построенные на последнем замере
+    private String[] lines;
+    
+    // Шрифт панели
+    private final Font font;
+    
+    // true - панель видна
+    private boolean visible;
+    
+    /**
+     * Конструктор - создает скрытую панель.
+     */
+    public PerfOverlay() {
+        this.frameNanos = new long[FRAME_WINDOW];
+        this.sorted = new long[FRAME_WINDOW];
+        this.jvm = new JvmSampler();
+        this.lines = new String[0];
+        this.font = Font.font("Monospaced", 11);
+    }
+    
+    /**
+     * Показать или скрыть панель.
+     */
+    public void toggle() {
+        visible = !visible;
+        // Первый замер после показа - сразу на следующем кадре
+        lastSampleTime = 0;
+    }
+    
+    /**
+     * Проверить, видна ли панель.
+     */
+    public boolean isVisible() {
+        return visible;
+    }
+    
+    /**
+     * Записать начало кадра. Вызывается таймером анимации на каждом кадре.
+     * 
+     * @param now время кадра от AnimationTimer (наносекунды)
+     */
+    public void onFrame(long now) {
+        if (lastFrameTime != 0) {
+            frameNanos[(int) (frameCount % FRAME_WINDOW)] = now - lastFrameTime;
+            frameCount = frameCount + 1;
+        }
+        lastFrameTime = now;
+        framesSinceSample = framesSinceSample + 1;
+    }
+    
+    /**
+     * Записать, сколько заняла отрисовка кадра.
+     * 
+     * @param nanos время отрисовки в наносекундах
+     */
+    public void onRender(long nanos) {
+        renderNanosSinceSample = renderNanosSinceSample + nanos;
+    }
+    
+    /**
+     * Пересчитать показания, если панель видна и с прошлого замера прошло достаточно времени.
+     * 
+     * @param now время кадра (наносекунды)
+     * @param snapshot последний снимок состояния
+     * @param engine движок (очередь команд, усыпленные игроки)
+     * @return true если показания обновились и панель нужно перерисовать
+     */
+    public boolean sample(long now, RenderSnapshot snapshot, GameEngine engine) {
+        if (!visible || now - lastSampleTime < SAMPLE_INTERVAL_NANOS) {
+            return false;
+        }
+        double seconds = lastSampleTime == 0 ? 0 : (now - lastSampleTime) / 1e9;
+        lastSampleTime = now;
+        jvm.sample();
+        
+        // Процентили длительности кадра по последним кадрам
+        int n = (int) Math.min(frameCount, FRAME_WINDOW);
+        System.arraycopy(frameNanos, 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+        
+        // Объекты комнаты по видам
+        TRoomView view = snapshot.getView();
+        
+        lines = new String[] {
+            String.format("FPS %.0f   кадр p50/p95/p99 %.1f/%.1f/%.1f мс",
+                    seconds > 0 ? framesSinceSample / seconds : 0,
+                    millis(percentile(n, 0.50)), millis(percentile(n, 0.95)), millis(percentile(n, 0.99))),
+            String.format("Отрисовка %.2f мс/кадр   команд в очереди %d",
+                    framesSinceSample > 0 ? millis(renderNanosSinceSample) / framesSinceSample : 0,
+                    engine.getPendingCommandCount()),
+            String.format("Тик %d: %.2f мс   движок: команды %.2f, планирование %.2f",
+                    snapshot.getTick(), millis(snapshot.getTickNanos()),
+                    millis(snapshot.getPhaseNanos(TickPhase.COMMANDS)),
+                    millis(snapshot.getPhaseNanos(TickPhase.SCHEDULING))),
+            String.format("  комната: сообщ. %.2f, поле %.2f, NPC в бою %.2f, столкн. %.2f, вид %.2f",
+                    millis(snapshot.getPhaseNanos(TickPhase.ROOM_MESSAGES)),
+                    millis(snapshot.getPhaseNanos(TickPhase.FLOW_FIELD)),
+                    millis(snapshot.getPhaseNanos(TickPhase.NPCS)),
+                    millis(snapshot.getPhaseNanos(TickPhase.COLLISIONS)),
+                    millis(snapshot.getPhaseNanos(TickPhase.PUBLISH))),
+            String.format("  откладываемое: NPC вне боя %.2f, сохр. %.2f   отложено %d, тиков сверх бюджета %d",
+                    millis(snapshot.getPhaseNanos(TickPhase.IDLE_NPCS)),
+                    millis(snapshot.getPhaseNanos(TickPhase.SAVE)),
+                    snapshot.getDeferredWork(), snapshot.getOverBudgetTicks()),
+            String.format("Комната: игроков %d, NPC %d, предметов %d   вид тика %d",
+                    view.getPlayers().size(), view.getNPCs().size(), view.getItems().size(), view.getTick()),
+            String.format("Спящих игроков %d   пробуждений %d, последнее %.2f мс, макс. %.2f мс",
+                    engine.getHibernatedCount(), engine.getThawCount(),
+                    millis(engine.getLastThawNanos()), millis(engine.getMaxThawNanos())),
+            String.format("Память %.1f МБ/с   GC %d за замер, %d мс, последняя %d мс",
+                    jvm.getAllocationRate() / (1024 * 1024), jvm.getGcCount(), jvm.getGcMillis(),
+                    jvm.getLastPauseMillis())
+        };
+        framesSinceSample = 0;
+        renderNanosSinceSample = 0;
+        return true;
+    }
+    
+    /**
+     * Нарисовать панель в левом верхнем углу холста (если она видна).
+     * 
+     * @param gc контекст холста
+     */
+    public void draw(GraphicsContext gc) {
+        if (!visible) {
+            return;
+        }
+        gc.setFill(Color.rgb(0, 0, 0, 0.65));
+        gc.fillRect(MARGIN, MARGIN, WIDTH, lines.length * LINE_HEIGHT + MARGIN);
+        gc.setFill(Color.WHITE);
+        gc.setFont(font);
+        gc.setTextBaseline(VPos.TOP);
+        for (int i = 0; i < lines.length; i++) {
+            gc.fillText(lines[i], MARGIN * 2, MARGIN * 1.5 + i * LINE_HEIGHT);
+        }
+        gc.setTextBaseline(VPos.BASELINE);
+    }
+    
+    /**
+     * Длительность кадра на процентиле q среди n отсортированных кадров.
+     */
+    private long percentile(int n, double q) {
+        return n == 0 ? 0 : sorted[(int) Math.round((n - 1) * q)];
+    }
+    
+    /**
+     * Перевести наносекунды в миллисекунды.
+     */
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,158 @@
+package com.mudgame.ui;
+
+import com.mudgame.model.TRoom;
+import com.mudgame.model.TWorld;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Пространственный индекс комнат мира для отсечения по видимой области.
+ * 
+ * Мир накрыт равномерной сеткой крупных ячеек, и в каждой ячейке записаны
+ * комнаты, которые её задевают. Запрос "какие комнаты пересекают прямоугольник"
+ * смотрит только ячейки под прямоугольником, поэтому его цена зависит от того,
+ * сколько комнат видно, а не от того, сколько их в мире.
+ * 
+ * Комнаты не двигаются и не меняют размер, поэтому индекс строится один раз
+ * при загрузке мира и дальше только читается (в потоке JavaFX).
+ */
+public final class RoomIndex {
+    
+    // Сторона ячейки индекса (в единицах мира)
+    private static final double CELL_SIZE = 512;
+    
+    // Наибольшее количество ячеек по каждой стороне (защита от мира с огромным разбросом координат)
+    private static final int MAX_CELLS_PER_SIDE = 1024;
+    
+    // Все комнаты мира
+    private final TRoom[] rooms;
+    
+    // Левый верхний угол сетки и сторона ячейки
+    private final double originX;
+    private final double originY;
+    private final double cellSize;
+    
+    // Размер сетки в ячейках
+    private final int columns;
+    private final int rows;
+    
+    // Комнаты каждой ячейки: номера комнат в rooms (ячейка cell - с cellStart[cell] до cellStart[cell + 1])
+    private final int[] cellStart;
+    private final int[] cellRooms;
+    
+    // Отметка "комната уже выдана этим запросом" (комната задевает несколько ячеек)
+    private final int[] seen;
+    private int query;
+    
+    /**
+     * Конструктор - строит индекс по комнатам мира.
+     * 
+     * @param world игровой мир
+     */
+    public RoomIndex(TWorld world) {
+        this.rooms = new TRoom[world.getRoomCount()];
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < rooms.length; i++) {
+            rooms[i] = world.getRoom(i);
+            minX = Math.min(minX, rooms[i].getX());
+            minY = Math.min(minY, rooms[i].getY());
+            maxX = Math.max(maxX, rooms[i].getX() + rooms[i].getWidth());
+            maxY = Math.max(maxY, rooms[i].getY() + rooms[i].getHeight());
+        }
+        if (rooms.length == 0) {
+            minX = 0;
+            minY = 0;
+            maxX = 0;
+            maxY = 0;
+        }
+        this.originX = minX;
+        this.originY = minY;
+        this.cellSize = Math.max(CELL_SIZE, Math.max(maxX - minX, maxY - minY) / MAX_CELLS_PER_SIDE);
+        this.columns = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+        this.seen = new int[rooms.length];
+        
+        // Два прохода: сначала считаем комнаты в каждой ячейке, потом раскладываем
+        int[] counts = new int[columns * rows + 1];
+        for (TRoom room : rooms) {
+            for (int row = rowOf(room.getY()); row <= rowOf(room.getY() + room.getHeight()); row++) {
+                for (int column = columnOf(room.getX()); column <= columnOf(room.getX() + room.getWidth()); column++) {
+                    counts[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int i = 1; i < counts.length; i++) {
+            counts[i] = counts[i] + counts[i - 1];
+        }
+        this.cellStart = counts.clone();
+        this.cellRooms = new int[counts[counts.length - 1]];
+        for (int i = 0; i < rooms.length; i++) {
+            TRoom room = rooms[i];
+            for (int row = rowOf(room.getY()); row <= rowOf(room.getY() + room.getHeight()); row++) {
+                for (int column = columnOf(room.getX()); column <= columnOf(room.getX() + room.getWidth()); column++) {
+                    int cell = row * columns + column;
+                    cellRooms[counts[cell]] = i;
+                    counts[cell]++;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Найти комнаты, которые пересекают прямоугольник мира.
+     * 
+     * @param left левая граница
+     * @param top верхняя граница
+     * @param right правая граница
+     * @param bottom нижняя граница
+     * @param result список для результата (очищается; переиспользуется между кадрами)
+     */
+    public void query(double left, double top, double right, double bottom, List<TRoom> result) {
+        result.clear();
+        if (rooms.length == 0 || right < originX || bottom < originY
+                || left > originX + columns * cellSize || top > originY + rows * cellSize) {
+            return;
+        }
+        query = query + 1;
+        if (query == 0) {
+            // Счетчик запросов переполнился - сбрасываем отметки
+            Arrays.fill(seen, 0);
+            query = 1;
+        }
+        for (int row = rowOf(top); row <= rowOf(bottom); row++) {
+            for (int column = columnOf(left); column <= columnOf(right); column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int index = cellRooms[i];
+                    if (seen[index] == query) {
+                        continue;
+                    }
+                    seen[index] = query;
+                    TRoom room = rooms[index];
+                    if (room.getX() <= right && room.getX() + room.getWidth() >= left
+                            && room.getY() <= bottom && room.getY() + room.getHeight() >= top) {
+                        result.add(room);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Номер столбца сетки для координаты X (за пределами сетки - крайний столбец).
+     */
+    private int columnOf(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - originX) / cellSize)));
+    }
+    
+    /**
+     * Номер строки сетки для координаты Y (за пределами сетки - крайняя строка).
+     */
+    private int rowOf(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - originY) / cellSize)));
+    }
+}
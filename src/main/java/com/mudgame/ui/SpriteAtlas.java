@@ -0,0 +1,120 @@
+package com.mudgame.ui;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * Атлас спрайтов - одна картинка, в которой заранее нарисованы значки всех видов объектов.
+ * 
+ * Вместо того чтобы каждый кадр заново растеризовать круг игрока или квадрат
+ * предмета (fillOval/fillRect со сменой цвета), значки рисуются один раз при
+ * создании атласа, а на кадре копируются из атласа методом drawImage.
+ * Все копирования берут одну и ту же картинку, поэтому JavaFX рисует их
+ * одной пачкой без смены текстуры, сколько бы объектов ни было на экране.
+ * 
+ * Атлас создается и используется только в потоке JavaFX.
+ */
+public final class SpriteAtlas {
+    
+    // Номера спрайтов в атласе
+    public static final int PLAYER = 0;
+    public static final int NPC = 1;
+    public static final int ITEM = 2;
+    
+    // Количество спрайтов
+    private static final int SPRITE_COUNT = 3;
+    
+    // Сторона ячейки атласа (с запасом в 1 пиксель с каждой стороны, чтобы
+    // при масштабировании соседний спрайт не "просвечивал" по краю)
+    private static final int CELL = 32;
+    
+    // Диаметр круга игрока и NPC и сторона квадрата предмета
+    private static final double BODY_SIZE = 30;
+    private static final double ITEM_SIZE = 10;
+    
+    // Картинка атласа
+    private final Image image;
+    
+    // Размер значка каждого спрайта (значок стоит в центре своей ячейки)
+    private final double[] size;
+    
+    /**
+     * Конструктор - рисует все значки в атлас.
+     */
+    public SpriteAtlas() {
+        this.size = new double[SPRITE_COUNT];
+        Canvas canvas = new Canvas(CELL * SPRITE_COUNT, CELL);
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        
+        // Игрок - синий круг
+        size[PLAYER] = BODY_SIZE;
+        gc.setFill(Color.BLUE);
+        gc.fillOval(cellX(PLAYER) + offset(PLAYER), offset(PLAYER), BODY_SIZE, BODY_SIZE);
+        
+        // NPC - красный круг
+        size[NPC] = BODY_SIZE;
+        gc.setFill(Color.RED);
+        gc.fillOval(cellX(NPC) + offset(NPC), offset(NPC), BODY_SIZE, BODY_SIZE);
+        
+        // Предмет - зеленый квадрат
+        size[ITEM] = ITEM_SIZE;
+        gc.setFill(Color.GREEN);
+        gc.fillRect(cellX(ITEM) + offset(ITEM), offset(ITEM), ITEM_SIZE, ITEM_SIZE);
+        
+        // Снимок с прозрачным фоном - вокруг значков ничего не закрашивается
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        this.image = canvas.snapshot(parameters, null);
+    }
+    
+    /**
+     * Нарисовать спрайт с центром в точке (x, y).
+     * 
+     * @param gc контекст холста
+     * @param sprite номер спрайта (PLAYER, NPC, ITEM)
+     * @param x координата X центра
+     * @param y координата Y центра
+     */
+    public void draw(GraphicsContext gc, int sprite, double x, double y) {
+        draw(gc, sprite, x, y, 1);
+    }
+    
+    /**
+     * Нарисовать спрайт с центром в точке (x, y) в масштабе scale.
+     * 
+     * @param gc контекст холста
+     * @param sprite номер спрайта (PLAYER, NPC, ITEM)
+     * @param x координата X центра
+     * @param y координата Y центра
+     * @param scale масштаб (1 - исходный размер значка)
+     */
+    public void draw(GraphicsContext gc, int sprite, double x, double y, double scale) {
+        double s = size[sprite];
+        double d = s * scale;
+        gc.drawImage(image, cellX(sprite) + offset(sprite), offset(sprite), s, s, x - d / 2, y - d / 2, d, d);
+    }
+    
+    /**
+     * Получить размер значка спрайта.
+     */
+    public double getSize(int sprite) {
+        return size[sprite];
+    }
+    
+    /**
+     * Левый край ячейки спрайта в атласе.
+     */
+    private static double cellX(int sprite) {
+        return sprite * CELL;
+    }
+    
+    /**
+     * Отступ значка от края ячейки (значок стоит в центре ячейки).
+     */
+    private double offset(int sprite) {
+        return (CELL - size[sprite]) / 2;
+    }
+}
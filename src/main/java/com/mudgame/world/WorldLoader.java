@@ -0,0 +1,464 @@
+package com.mudgame.world;
+
+import com.mudgame.ai.BehaviourLibrary;
+import com.mudgame.model.TItem;
+import com.mudgame.model.TItemCategory;
+import com.mudgame.model.TLootEntry;
+import com.mudgame.model.TLootTable;
+import com.mudgame.model.TNPC;
+import com.mudgame.model.TPlayer;
+import com.mudgame.model.TRoom;
+import com.mudgame.model.TWeapon;
+import com.mudgame.model.TWorld;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Загрузчик игрового мира из XML-файла.
+ * 
+ * Файл мира описывает комнаты, NPC, предметы и игроков:
+ * <pre>
+ *     &lt;world start="room1"&gt;
+ *       &lt;loot id="wolf-loot"&gt;
+ *         &lt;drop name="Шкура" template="pelt" category="MISC" weight="3"/&gt;
+ *         &lt;drop name="Клык" template="fang" category="WEAPON" attack="4" weight="1"/&gt;
+ *         &lt;nothing weight="6"/&gt;
+ *       &lt;/loot&gt;
+ *       &lt;room id="room1" name="Сумеречный лес" x="25" y="25" width="350" height="250"&gt;
+ *         &lt;npc id="npc1" name="Враг" health="50" defense="5" behaviour="hunter"/&gt;
+ *         &lt;npc id="wolf" name="Волк" health="30" defense="2" count="100" loot="wolf-loot"/&gt;
+ *         &lt;weapon id="weapon1" name="Меч" attack="15"/&gt;
+ *         &lt;item id="potion" name="Зелье" template="potion" category="CONSUMABLE"/&gt;
+ *         &lt;exit to="room2"/&gt;
+ *       &lt;/room&gt;
+ *       &lt;player id="player1" name="Игрок" x="200" y="100" health="100" attack="10"/&gt;
+ *     &lt;/world&gt;
+ * </pre>
+ * 
+ * Атрибуты:
+ * - x, y у NPC и предметов необязательны: без них объект ставится в случайную свободную точку комнаты;
+ * - attack у NPC, behaviour, loot, template, category - необязательны;
+ * - loot - таблица добычи: строки drop (предмет) и nothing (ничего не выпало) с весами;
+ *   таблица описывается вне комнат и раньше NPC, которые на неё ссылаются,
+ *   и одна на всех NPC элемента (и на все элементы, которые на неё ссылаются);
+ * - count - сколько одинаковых объектов создать (идентификаторы id-1, id-2, ...);
+ * - идентификаторы комнат, игроков, NPC и предметов уникальны во всем мире (с учетом id-1, id-2, ...):
+ *   по id комнаты связываются выходами, а игроки и предметы восстанавливаются из сохранения;
+ * - идентификаторы предметов не содержат '#': '#' есть только в id выпавшей добычи;
+ * - exit - выход в соседнюю комнату (в одну сторону; комната может быть описана ниже по файлу).
+ * 
+ * Файл читается потоковым парсером StAX: объекты создаются и сразу добавляются
+ * в мир по мере чтения элементов, а дерево документа в памяти не строится.
+ * Поэтому память загрузчика не зависит от размера файла - растет только сам мир.
+ */
+public final class WorldLoader {
+    
+    // Папка с файлами миров внутри ресурсов
+    private static final String RESOURCE_FOLDER = "/com/mudgame/world/";
+    
+    // Расширение файлов миров
+    private static final String EXTENSION = ".xml";
+    
+    // Библиотека поведения NPC
+    private final BehaviourLibrary behaviours;
+    
+    // Генератор случайных чисел для расстановки объектов без координат
+    private final Random random;
+    
+    // Фабрика парсеров (настраивается один раз)
+    private final XMLInputFactory factory;
+    
+    /**
+     * Конструктор.
+     * 
+     * @param behaviours библиотека поведения, из которой NPC получают поведение
+     */
+    public WorldLoader(BehaviourLibrary behaviours) {
+        this.behaviours = behaviours;
+        this.random = new Random();
+        this.factory = XMLInputFactory.newInstance();
+        // Файл мира - это данные, а не документ: внешние сущности и DTD не нужны
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+    
+    /**
+     * Загрузить мир из ресурсов приложения (файл вида com/mudgame/world/NAME.xml).
+     * 
+     * @param name имя мира (например, "default")
+     * @return загруженный мир
+     * @throws IllegalArgumentException если такого мира нет или в нем ошибка
+     */
+    public TWorld loadResource(String name) {
+        InputStream stream = WorldLoader.class.getResourceAsStream(RESOURCE_FOLDER + name + EXTENSION);
+        if (stream == null) {
+            throw new IllegalArgumentException("Мир " + name + " не найден");
+        }
+        try (InputStream input = stream) {
+            return load(name, input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Загрузить мир из потока.
+     * 
+     * @param name имя мира (для сообщений об ошибках)
+     * @param input XML-описание мира
+     * @return загруженный мир
+     * @throws IllegalArgumentException если в описании ошибка
+     */
+    public TWorld load(String name, InputStream input) {
+        TWorld world = new TWorld();
+        String startRoomId = null;
+        
+        // Выходы, которые ссылаются на еще не прочитанные комнаты, связываются в конце:
+        // из какой комнаты, в какую и строка файла (для сообщения об ошибке)
+        List<TRoom> exitFrom = new ArrayList<>();
+        List<String> exitTo = new ArrayList<>();
+        List<Integer> exitLines = new ArrayList<>();
+        
+        // Прочитанные таблицы добычи и строки таблицы, внутри которой находится парсер
+        Map<String, TLootTable> lootTables = new HashMap<>();
+        String lootId = null;
+        List<TLootEntry> lootEntries = null;
+        
+        // Идентификаторы уже созданных NPC и предметов (id уникален во всем мире;
+        // комнаты и игроки проверяются по самому миру)
+        Set<String> npcIds = new HashSet<>();
+        Set<String> itemIds = new HashSet<>();
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(input, "UTF-8");
+            
+            // Комната, внутри элемента которой находится парсер (null - вне комнаты)
+            TRoom room = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    if ("room".equals(reader.getLocalName())) {
+                        room = null;
+                    } else if ("loot".equals(reader.getLocalName())) {
+                        if (lootEntries.isEmpty()) {
+                            throw error(name, reader, "в таблице добычи '" + lootId + "' нет строк");
+                        }
+                        lootTables.put(lootId, new TLootTable(lootEntries));
+                        lootId = null;
+                        lootEntries = null;
+                    }
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                
+                String element = reader.getLocalName();
+                switch (element) {
+                    case "world":
+                        startRoomId = optional(reader, "start");
+                        break;
+                    case "room":
+                        room = readRoom(name, reader);
+                        if (world.findRoom(room.getId()) != null) {
+                            throw error(name, reader, "комната с id '" + room.getId() + "' уже есть в мире");
+                        }
+                        world.addRoom(room);
+                        break;
+                    case "npc":
+                        readNPCs(name, reader, inside(name, reader, room), lootTables, npcIds);
+                        break;
+                    case "loot":
+                        if (room != null || lootEntries != null) {
+                            throw error(name, reader, "таблица добычи должна быть вне комнат и других таблиц");
+                        }
+                        lootId = required(name, reader, "id");
+                        lootEntries = new ArrayList<>();
+                        break;
+                    case "drop":
+                    case "nothing":
+                        if (lootEntries == null) {
+                            throw error(name, reader, "элемент '" + element + "' должен быть внутри loot");
+                        }
+                        lootEntries.add(readLootEntry(name, reader, "nothing".equals(element)));
+                        break;
+                    case "weapon":
+                    case "item":
+                        readItems(name, reader, inside(name, reader, room), "weapon".equals(element), itemIds);
+                        break;
+                    case "exit":
+                        exitFrom.add(inside(name, reader, room));
+                        exitTo.add(required(name, reader, "to"));
+                        exitLines.add(reader.getLocation().getLineNumber());
+                        break;
+                    case "player":
+                        TPlayer player = readPlayer(name, reader);
+                        if (world.findPlayer(player.getId()) != null) {
+                            throw error(name, reader, "игрок с id '" + player.getId() + "' уже есть в мире");
+                        }
+                        world.addPlayer(player);
+                        break;
+                    default:
+                        throw error(name, reader, "неизвестный элемент '" + element + "'");
+                }
+            }
+        } catch (XMLStreamException e) {
+            int line = e.getLocation() != null ? e.getLocation().getLineNumber() : -1;
+            throw new IllegalArgumentException("Мир " + name + ", строка " + line + ": " + e.getMessage(), e);
+        } finally {
+            close(reader);
+        }
+        
+        for (int i = 0; i < exitFrom.size(); i++) {
+            TRoom target = world.findRoom(exitTo.get(i));
+            if (target == null) {
+                throw new IllegalArgumentException("Мир " + name + ", строка " + exitLines.get(i)
+                        + ": выход в несуществующую комнату '" + exitTo.get(i) + "'");
+            }
+            exitFrom.get(i).addExit(target);
+        }
+        
+        if (startRoomId != null) {
+            TRoom start = world.findRoom(startRoomId);
+            if (start == null) {
+                throw new IllegalArgumentException("Мир " + name + ": стартовой комнаты '" + startRoomId + "' нет");
+            }
+            world.setStartRoom(start);
+        } else if (world.getRoomCount() > 0) {
+            world.setStartRoom(world.getRoom(0));
+        }
+        return world;
+    }
+    
+    /**
+     * Прочитать элемент room.
+     */
+    private static TRoom readRoom(String name, XMLStreamReader reader) {
+        return new TRoom(required(name, reader, "name"), required(name, reader, "id"),
+                number(name, reader, "x"), number(name, reader, "y"),
+                number(name, reader, "width"), number(name, reader, "height"));
+    }
+    
+    /**
+     * Прочитать элемент npc и добавить NPC в комнату.
+     * 
+     * @param npcIds идентификаторы NPC, уже созданных в мире (новые добавляются)
+     */
+    private void readNPCs(String name, XMLStreamReader reader, TRoom room, Map<String, TLootTable> lootTables,
+                          Set<String> npcIds) {
+        String id = required(name, reader, "id");
+        String npcName = required(name, reader, "name");
+        int health = integer(name, reader, "health");
+        int defense = integer(name, reader, "defense");
+        int attack = optionalInteger(name, reader, "attack", TNPC.DEFAULT_ATTACK_POWER);
+        String behaviour = optional(reader, "behaviour");
+        String loot = optional(reader, "loot");
+        TLootTable lootTable = null;
+        if (loot != null) {
+            lootTable = lootTables.get(loot);
+            if (lootTable == null) {
+                throw error(name, reader, "таблица добычи '" + loot + "' не описана выше по файлу");
+            }
+        }
+        int count = optionalInteger(name, reader, "count", 1);
+        boolean placed = optional(reader, "x") != null;
+        double x = placed ? number(name, reader, "x") : room.getX();
+        double y = placed ? number(name, reader, "y") : room.getY();
+        
+        for (int i = 1; i <= count; i++) {
+            String npcId = count == 1 ? id : id + "-" + i;
+            if (!npcIds.add(npcId)) {
+                throw error(name, reader, "NPC с id '" + npcId + "' уже есть в мире");
+            }
+            TNPC npc = new TNPC(npcName, npcId, x, y, health, defense, attack);
+            if (behaviour != null) {
+                try {
+                    npc.setBehaviour(behaviours.get(behaviour));
+                } catch (IllegalArgumentException e) {
+                    throw error(name, reader, e.getMessage());
+                }
+            }
+            npc.setLootTable(lootTable);
+            if (!placed) {
+                // Ставим NPC до добавления в комнату, чтобы сетка столкновений сразу знала его место
+                room.moveToFreeSpot(npc, random);
+            }
+            room.addNPC(npc);
+        }
+    }
+    
+    /**
+     * Прочитать элемент item или weapon и добавить предметы в комнату.
+     * 
+     * @param itemIds идентификаторы предметов, уже созданных в мире (новые добавляются)
+     */
+    private void readItems(String name, XMLStreamReader reader, TRoom room, boolean weapon, Set<String> itemIds) {
+        String id = required(name, reader, "id");
+        if (id.indexOf('#') >= 0) {
+            throw error(name, reader, "id предмета '" + id + "' не может содержать '#'");
+        }
+        String itemName = required(name, reader, "name");
+        String template = optional(reader, "template");
+        if (template == null) {
+            template = itemName;
+        }
+        int attack = weapon ? integer(name, reader, "attack") : 0;
+        TItemCategory category = weapon ? TItemCategory.WEAPON : category(name, reader);
+        int count = optionalInteger(name, reader, "count", 1);
+        boolean placed = optional(reader, "x") != null;
+        double x = placed ? number(name, reader, "x") : room.getX();
+        double y = placed ? number(name, reader, "y") : room.getY();
+        
+        for (int i = 1; i <= count; i++) {
+            String itemId = count == 1 ? id : id + "-" + i;
+            if (!itemIds.add(itemId)) {
+                throw error(name, reader, "предмет с id '" + itemId + "' уже есть в мире");
+            }
+            TItem item = weapon
+                    ? new TWeapon(itemName, itemId, x, y, attack, template)
+                    : new TItem(itemName, itemId, x, y, template, category);
+            if (!placed) {
+                room.moveToFreeSpot(item, random);
+            }
+            room.addItem(item);
+        }
+    }
+    
+    /**
+     * Прочитать строку таблицы добычи: элемент drop или nothing.
+     */
+    private static TLootEntry readLootEntry(String name, XMLStreamReader reader, boolean nothing) {
+        double weight = number(name, reader, "weight");
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw error(name, reader, "вес строки добычи должен быть положительным: " + weight);
+        }
+        if (nothing) {
+            return TLootEntry.nothing(weight);
+        }
+        String itemName = required(name, reader, "name");
+        String template = optional(reader, "template");
+        if (template == null) {
+            template = itemName;
+        }
+        TItemCategory category = category(name, reader);
+        int attack = category == TItemCategory.WEAPON ? integer(name, reader, "attack") : 0;
+        return new TLootEntry(itemName, template, category, attack, weight);
+    }
+    
+    /**
+     * Прочитать элемент player.
+     */
+    private static TPlayer readPlayer(String name, XMLStreamReader reader) {
+        return new TPlayer(required(name, reader, "name"), required(name, reader, "id"),
+                number(name, reader, "x"), number(name, reader, "y"),
+                integer(name, reader, "health"), integer(name, reader, "attack"));
+    }
+    
+    /**
+     * Прочитать категорию предмета (по умолчанию MISC).
+     */
+    private static TItemCategory category(String name, XMLStreamReader reader) {
+        String value = optional(reader, "category");
+        if (value == null) {
+            return TItemCategory.MISC;
+        }
+        try {
+            return TItemCategory.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            throw error(name, reader, "неизвестная категория предмета '" + value + "'");
+        }
+    }
+    
+    /**
+     * Проверить, что элемент находится внутри комнаты, и вернуть её.
+     */
+    private static TRoom inside(String name, XMLStreamReader reader, TRoom room) {
+        if (room == null) {
+            throw error(name, reader, "элемент '" + reader.getLocalName() + "' должен быть внутри room");
+        }
+        return room;
+    }
+    
+    /**
+     * Получить значение необязательного атрибута или null.
+     */
+    private static String optional(XMLStreamReader reader, String attribute) {
+        return reader.getAttributeValue(null, attribute);
+    }
+    
+    /**
+     * Получить значение обязательного атрибута.
+     */
+    private static String required(String name, XMLStreamReader reader, String attribute) {
+        String value = reader.getAttributeValue(null, attribute);
+        if (value == null) {
+            throw error(name, reader, "у элемента '" + reader.getLocalName() + "' нет атрибута '" + attribute + "'");
+        }
+        return value;
+    }
+    
+    /**
+     * Получить значение обязательного числового атрибута.
+     */
+    private static double number(String name, XMLStreamReader reader, String attribute) {
+        String value = required(name, reader, attribute);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw error(name, reader, "атрибут '" + attribute + "' не число: '" + value + "'");
+        }
+    }
+    
+    /**
+     * Получить значение обязательного целочисленного атрибута.
+     */
+    private static int integer(String name, XMLStreamReader reader, String attribute) {
+        String value = required(name, reader, attribute);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw error(name, reader, "атрибут '" + attribute + "' не целое число: '" + value + "'");
+        }
+    }
+    
+    /**
+     * Получить значение необязательного целочисленного атрибута.
+     */
+    private static int optionalInteger(String name, XMLStreamReader reader, String attribute, int defaultValue) {
+        return optional(reader, attribute) == null ? defaultValue : integer(name, reader, attribute);
+    }
+    
+    /**
+     * Создать исключение с именем мира и номером строки.
+     */
+    private static IllegalArgumentException error(String name, XMLStreamReader reader, String message) {
+        return new IllegalArgumentException("Мир " + name + ", строка " + reader.getLocation().getLineNumber()
+                + ": " + message);
+    }
+    
+    /**
+     * Закрыть парсер, не скрывая исходную ошибку.
+     */
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // Поток все равно закрывает вызывающий, ошибка закрытия парсера не важна
+            }
+        }
+    }
+}
@@ -11,6 +11,30 @@ module com.mudgame {
     // Экспортируем пакет model, чтобы JavaFX мог использовать игровые объекты
     exports com.mudgame.model;
     
+    // Экспортируем пакет ai с деревьями поведения NPC
+    exports com.mudgame.ai;
+    
+    // Экспортируем пакет engine с движком симуляции и очередью команд игроков
+    exports com.mudgame.engine;
+    
+    // Экспортируем пакет world с загрузчиком мира из XML-файлов
+    exports com.mudgame.world;
+    
+    // Экспортируем пакет persistence с сохранением игроков на диск
+    exports com.mudgame.persistence;
+    
+    // Экспортируем пакет stats с боевой статистикой и таблицами лидеров
+    exports com.mudgame.stats;
+    
+    // Экспортируем пакет ui со вспомогательными классами отрисовки на холсте
+    exports com.mudgame.ui;
+    
+    // Требуем модуль java.xml для потокового чтения файлов мира (StAX)
+    requires java.xml;
+    
+    // Требуем модуль jdk.management для замера выделения памяти и пауз GC на панели производительности
+    requires jdk.management;
+    
     // Требуем модуль javafx.controls для работы с элементами управления JavaFX
     requires javafx.controls;
     